@@ -0,0 +1,84 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 基准使用的 ANCS 数据包与中文文本
+ */
+final class AncsPackets {
+    // 常见通知中的词语，按固定种子随机拼接成标题与正文
+    static final String[] WORDS = {
+        "验证码", "您的", "快递", "已到达", "取件码", "会议", "明天", "下午", "三点", "提醒",
+        "微信", "红包", "转账", "收到", "一条", "新消息", "订单", "已发货", "支付宝", "账单",
+        "航班", "延误", "登机口", "变更", "天气", "预警", "暴雨", "请注意", "安全", "回复"
+    };
+    static final String[] APP_IDS = {
+        "com.tencent.xin", "com.apple.MobileSMS", "com.apple.mobilemail", "com.alipay.iphoneclient",
+        "com.taobao.taobao4iphone", "com.apple.mobilecal"
+    };
+
+    private AncsPackets() {
+    }
+
+    static String sentence(Random random, int minBytes) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.toString().getBytes(StandardCharsets.UTF_8).length < minBytes) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            if (random.nextInt(4) == 0) {
+                sb.append('，');
+            }
+        }
+        return sb.toString();
+    }
+
+    static byte[] notificationSource(byte eventId, byte eventFlags, byte categoryId, int uid) {
+        return new byte[] {
+            eventId, eventFlags, categoryId, 1,
+            (byte) uid, (byte) (uid >>> 8), (byte) (uid >>> 16), (byte) (uid >>> 24)
+        };
+    }
+
+    /**
+     * Get Notification Attributes 的响应：应用 ID、标题、正文
+     */
+    static byte[] dataSource(int uid, String appId, String title, String message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES);
+        out.write(uid);
+        out.write(uid >>> 8);
+        out.write(uid >>> 16);
+        out.write(uid >>> 24);
+        writeAttribute(out, NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER, appId);
+        writeAttribute(out, NotificationHandler.ATTRIBUTE_ID_TITLE, title);
+        writeAttribute(out, NotificationHandler.ATTRIBUTE_ID_MESSAGE, message);
+        return out.toByteArray();
+    }
+
+    private static void writeAttribute(ByteArrayOutputStream out, byte attributeId, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(attributeId);
+        out.write(bytes.length);
+        out.write(bytes.length >>> 8);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 按 MTU 切分数据包，模拟 Data Source 分多次通知送达
+     */
+    static byte[][] fragment(byte[] packet, int mtu) {
+        if (mtu <= 0 || packet.length <= mtu) {
+            return new byte[][] { packet };
+        }
+        int count = (packet.length + mtu - 1) / mtu;
+        byte[][] fragments = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int start = i * mtu;
+            int length = Math.min(mtu, packet.length - start);
+            fragments[i] = new byte[length];
+            System.arraycopy(packet, start, fragments[i], 0, length);
+        }
+        return fragments;
+    }
+}
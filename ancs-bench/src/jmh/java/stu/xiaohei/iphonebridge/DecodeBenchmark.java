@@ -0,0 +1,75 @@
+package stu.xiaohei.iphonebridge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Notification Source 与 Data Source 的解码开销
+ * payloadBytes 为标题与正文各自的 UTF-8 字节数；mtu 为 0 时 Data Source 一次送达，
+ * 否则按该大小分片，先拼接再解析
+ */
+@State(Scope.Thread)
+public class DecodeBenchmark {
+    private static final int UID = 0x01020304;
+
+    @Param({"32", "256", "1024"})
+    public int payloadBytes;
+
+    @Param({"0", "20", "185"})
+    public int mtu;
+
+    private NotificationHandler handler;
+    private byte[] notificationSource;
+    private byte[][] dataSourceFragments;
+    private byte[] reassembly;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        handler = new NotificationHandler();
+        notificationSource = AncsPackets.notificationSource(
+            NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, (byte) 0, NotificationHandler.CATEGORY_ID_SOCIAL, UID);
+        byte[] dataSource = AncsPackets.dataSource(UID, AncsPackets.APP_IDS[0],
+            AncsPackets.sentence(random, payloadBytes), AncsPackets.sentence(random, payloadBytes));
+        dataSourceFragments = AncsPackets.fragment(dataSource, mtu);
+        reassembly = new byte[dataSource.length];
+        // 只有已知 UID 的响应会被解析
+        handler.parseNotificationSource(notificationSource);
+    }
+
+    private byte[] reassemble() {
+        if (dataSourceFragments.length == 1) {
+            return dataSourceFragments[0];
+        }
+        int pos = 0;
+        for (byte[] fragment : dataSourceFragments) {
+            System.arraycopy(fragment, 0, reassembly, pos, fragment.length);
+            pos += fragment.length;
+        }
+        return reassembly;
+    }
+
+    @Benchmark
+    public NotificationSnapshot notificationSource() {
+        return handler.parseNotificationSource(notificationSource);
+    }
+
+    @Benchmark
+    public NotificationSnapshot dataSource() {
+        return handler.parseDataSource(reassemble());
+    }
+
+    /**
+     * 一次完整的新通知：Notification Source + Data Source
+     */
+    @Benchmark
+    public NotificationSnapshot roundTrip() {
+        handler.parseNotificationSource(notificationSource);
+        return handler.parseDataSource(reassemble());
+    }
+}
@@ -0,0 +1,95 @@
+package stu.xiaohei.iphonebridge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * shouldShowNotification 随规则数量的变化
+ * 规则为随机组合的中文词语，大部分通知不命中（黑名单需要检查全部规则，是最坏情况）；
+ * regex 模式把同样数量的关键字合并成一个分支正则
+ */
+@State(Scope.Thread)
+public class FilterBenchmark {
+    private static final int NOTIFICATIONS = 64;
+
+    @Param({"10", "100", "1000"})
+    public int rules;
+
+    @Param({"blacklist", "whitelist", "regex"})
+    public String mode;
+
+    private NotificationFilter filter;
+    private AttributeBlock[] attributes;
+    private String[] titles;
+    private String[] messages;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(7);
+        Set<String> keywords = new HashSet<>();
+        while (keywords.size() < rules) {
+            keywords.add(AncsPackets.WORDS[random.nextInt(AncsPackets.WORDS.length)]
+                + AncsPackets.WORDS[random.nextInt(AncsPackets.WORDS.length)] + keywords.size());
+        }
+
+        filter = new NotificationFilter();
+        filter.setFilterEnabled(true);
+        if ("regex".equals(mode)) {
+            filter.setFilterMode(NotificationFilter.MODE_BLACKLIST);
+            filter.setRegexEnabled(true);
+            filter.setRegexPattern(String.join("|", keywords));
+            filter.saveSettings();
+        } else if ("whitelist".equals(mode)) {
+            filter.setFilterMode(NotificationFilter.MODE_WHITELIST);
+            filter.setWhitelist(keywords);
+        } else {
+            filter.setFilterMode(NotificationFilter.MODE_BLACKLIST);
+            filter.setBlacklist(keywords);
+        }
+
+        attributes = new AttributeBlock[NOTIFICATIONS];
+        titles = new String[NOTIFICATIONS];
+        messages = new String[NOTIFICATIONS];
+        AttributeBlock.Builder builder = new AttributeBlock.Builder();
+        for (int i = 0; i < NOTIFICATIONS; i++) {
+            titles[i] = AncsPackets.sentence(random, 24);
+            messages[i] = AncsPackets.sentence(random, 120 + random.nextInt(200));
+            builder.reset();
+            builder.set(NotificationHandler.ATTRIBUTE_ID_TITLE, titles[i]);
+            builder.set(NotificationHandler.ATTRIBUTE_ID_MESSAGE, messages[i]);
+            attributes[i] = builder.build();
+        }
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (index + 1) % NOTIFICATIONS;
+        return index;
+    }
+
+    /**
+     * 直接在 UTF-8 字节上匹配
+     */
+    @Benchmark
+    public boolean attributeBlock() {
+        return filter.shouldShowNotification(attributes[nextIndex()]);
+    }
+
+    /**
+     * 先解码为 String 再匹配
+     */
+    @Benchmark
+    public void strings(Blackhole blackhole) {
+        int index = nextIndex();
+        blackhole.consume(filter.shouldShowNotification(titles[index], messages[index]));
+    }
+}
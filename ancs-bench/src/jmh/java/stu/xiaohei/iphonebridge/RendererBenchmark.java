@@ -0,0 +1,126 @@
+package stu.xiaohei.iphonebridge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+
+/**
+ * 发送一条通知时 JVM 上可测的部分，对比改为 NotificationRenderer 之前与之后
+ * legacy：之前的 showLocalNotification 已删除，这里保留它的文本处理：每次发送都用 += 拼接标题、副标题与正文再 split，
+ * 并为请求码拼接 UID 字符串；它同时重新创建 Builder、BigTextStyle、详情与每个操作各一个 Intent 和 PendingIntent
+ * cached：调用 NotificationRenderer.render 使用的 NotificationText 与 NotificationBook，
+ * 生成标题与正文，按 UID 取回条目，只更新变化的字段；平台对象只在条目第一次出现（或操作标签第一次出现）时创建
+ * Builder 与 PendingIntent（一次 IPC）在 JVM 上无法构建，两边都不计入耗时；
+ * event 为 modified 时同一批通知反复修改，added 时每条发送后即取消，每次都是新通知（cached 含取消的开销）
+ */
+@State(Scope.Thread)
+public class RendererBenchmark {
+    private static final int NOTIFICATIONS = 64;
+
+    @Param({"modified", "added"})
+    public String event;
+
+    private NotificationSnapshot[] snapshots;
+    private NotificationBook<Object> book;
+    private final NotificationText text = new NotificationText();
+    private boolean cancelAfterPost;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(5);
+        NotificationHandler handler = new NotificationHandler();
+        snapshots = new NotificationSnapshot[NOTIFICATIONS];
+        for (int uid = 0; uid < NOTIFICATIONS; uid++) {
+            // 一半的通知带否定操作
+            byte flags = uid % 2 == 0 ? NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION : 0;
+            handler.parseNotificationSource(AncsPackets.notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED,
+                flags, NotificationHandler.CATEGORY_ID_SOCIAL, uid));
+            snapshots[uid] = handler.parseDataSource(AncsPackets.dataSource(uid,
+                AncsPackets.APP_IDS[uid % AncsPackets.APP_IDS.length],
+                AncsPackets.sentence(random, 24), AncsPackets.sentence(random, 120 + random.nextInt(200))));
+        }
+        book = new NotificationBook<>(new NotificationIdAllocator(), new NotificationBook.Poster<Object>() {
+            @Override
+            public Object createView(int id, NotificationSnapshot info) {
+                return new Object();
+            }
+
+            @Override
+            public void onGroupAssigned(NotificationBook.Entry<Object> entry) {
+            }
+
+            @Override
+            public void cancel(int id) {
+            }
+
+            @Override
+            public void onRemoved(NotificationBook.Entry<Object> entry) {
+            }
+
+            @Override
+            public void onGroupChanged(NotificationBook.Group<Object> group) {
+            }
+
+            @Override
+            public void onGroupRemoved(NotificationBook.Group<Object> group) {
+            }
+        });
+        cancelAfterPost = "added".equals(event);
+    }
+
+    private NotificationSnapshot nextSnapshot() {
+        NotificationSnapshot info = snapshots[next];
+        next = (next + 1) % NOTIFICATIONS;
+        return info;
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        NotificationSnapshot info = nextSnapshot();
+        String fullContent = "";
+        if (info.getTitle() != null && !info.getTitle().isEmpty()) {
+            fullContent += info.getTitle();
+        }
+        if (info.getSubtitle() != null && !info.getSubtitle().isEmpty()) {
+            if (!fullContent.isEmpty()) fullContent += "\n";
+            fullContent += info.getSubtitle();
+        }
+        if (info.getMessage() != null && !info.getMessage().isEmpty()) {
+            if (!fullContent.isEmpty()) fullContent += "\n";
+            fullContent += info.getMessage();
+        }
+        String[] lines = fullContent.split("\n", 2);
+        blackhole.consume(lines[0]);
+        blackhole.consume(lines.length > 1 ? lines[1] : "");
+
+        // 每次发送都重新计算的 PendingIntent 请求码
+        blackhole.consume(Integer.valueOf(info.getUid().hashCode()));
+        if (info.hasPositiveAction()) {
+            blackhole.consume(Integer.valueOf((info.getUid() + "_positive").hashCode()));
+        }
+        if (info.hasNegativeAction()) {
+            blackhole.consume(Integer.valueOf((info.getUid() + "_negative").hashCode()));
+        }
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        NotificationSnapshot info = nextSnapshot();
+        if (!text.format(info)) {
+            return;
+        }
+        NotificationBook.Entry<Object> entry = book.entryFor(info);
+        book.assignGroup(entry, info.getAppId());
+        blackhole.consume(text.update(entry, info));
+        blackhole.consume(entry);
+        if (cancelAfterPost) {
+            book.cancel(info.getRawUid());
+        }
+    }
+}
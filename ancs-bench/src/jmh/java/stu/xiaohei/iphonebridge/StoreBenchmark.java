@@ -0,0 +1,99 @@
+package stu.xiaohei.iphonebridge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通知存储在增删交替下的开销，以及连接时一次重放大量已有通知的总耗时
+ */
+@State(Scope.Thread)
+public class StoreBenchmark {
+    private static final int PACKETS = 1024;
+
+    @Param({"50", "500"})
+    public int activeCount;
+
+    private NotificationHandler handler;
+    private byte[][] added;
+    private byte[][] removed;
+    private byte[][] dataSources;
+    private byte[][] preExisting;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(11);
+        added = new byte[PACKETS][];
+        removed = new byte[PACKETS][];
+        dataSources = new byte[PACKETS][];
+        preExisting = new byte[PACKETS][];
+        for (int uid = 0; uid < PACKETS; uid++) {
+            added[uid] = AncsPackets.notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED,
+                (byte) 0, NotificationHandler.CATEGORY_ID_SOCIAL, uid);
+            removed[uid] = AncsPackets.notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED,
+                (byte) 0, NotificationHandler.CATEGORY_ID_SOCIAL, uid);
+            preExisting[uid] = AncsPackets.notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED,
+                NotificationHandler.EVENT_FLAG_PRE_EXISTING, NotificationHandler.CATEGORY_ID_SOCIAL, uid);
+            dataSources[uid] = AncsPackets.dataSource(uid, AncsPackets.APP_IDS[uid % AncsPackets.APP_IDS.length],
+                AncsPackets.sentence(random, 24), AncsPackets.sentence(random, 160));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        handler = new NotificationHandler();
+        for (int uid = 0; uid < activeCount; uid++) {
+            handler.parseNotificationSource(added[uid]);
+            handler.parseDataSource(dataSources[uid]);
+        }
+        next = activeCount;
+    }
+
+    /**
+     * 保持 activeCount 条活动通知：移除最旧的一条，再加入一条新的
+     */
+    @Benchmark
+    public NotificationSnapshot churn() {
+        int newest = next % PACKETS;
+        int oldest = (next - activeCount) % PACKETS;
+        next++;
+        handler.parseNotificationSource(removed[oldest]);
+        handler.parseNotificationSource(added[newest]);
+        return handler.parseDataSource(dataSources[newest]);
+    }
+
+    @Benchmark
+    public List<NotificationSnapshot> activeList() {
+        return handler.getActiveNotifications();
+    }
+
+    /**
+     * 新建连接后 iPhone 重放 activeCount 条已有通知，每条都获取属性
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 50)
+    public NotificationHandler preExistingFlood() {
+        NotificationHandler fresh = new NotificationHandler();
+        for (int uid = 0; uid < activeCount; uid++) {
+            fresh.parseNotificationSource(preExisting[uid]);
+            fresh.parseDataSource(dataSources[uid]);
+        }
+        return fresh;
+    }
+}
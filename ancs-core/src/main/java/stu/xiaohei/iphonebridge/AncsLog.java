@@ -0,0 +1,107 @@
+package stu.xiaohei.iphonebridge;
+
+/**
+ * ancs-core 的日志入口
+ * 本模块不依赖 Android，日志输出由使用方通过 setLogger 提供：应用中转发到 android.util.Log，
+ * 在 JVM 上运行测试或基准时默认不输出。
+ * 逐包、逐属性的调试日志先检查 isDebugEnabled，关闭时不拼接日志字符串；
+ * 应用的 release 构建中 R8 把 isDebugEnabled 视为常量 false，这些日志连同字符串拼接一起被删除
+ */
+public final class AncsLog {
+
+    public interface Logger {
+        void d(String tag, String message);
+        void i(String tag, String message);
+        void w(String tag, String message, Throwable error);
+        void e(String tag, String message, Throwable error);
+    }
+
+    public static final Logger NONE = new Logger() {
+        @Override
+        public void d(String tag, String message) {
+        }
+
+        @Override
+        public void i(String tag, String message) {
+        }
+
+        @Override
+        public void w(String tag, String message, Throwable error) {
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable error) {
+        }
+    };
+
+    /**
+     * 输出到标准错误，供命令行工具使用
+     */
+    public static final Logger STDERR = new Logger() {
+        @Override
+        public void d(String tag, String message) {
+            System.err.println("D/" + tag + ": " + message);
+        }
+
+        @Override
+        public void i(String tag, String message) {
+            System.err.println("I/" + tag + ": " + message);
+        }
+
+        @Override
+        public void w(String tag, String message, Throwable error) {
+            System.err.println("W/" + tag + ": " + message + (error != null ? " " + error : ""));
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable error) {
+            System.err.println("E/" + tag + ": " + message + (error != null ? " " + error : ""));
+        }
+    };
+
+    private static volatile Logger logger = NONE;
+    private static volatile boolean debugEnabled = false;
+
+    private AncsLog() {
+    }
+
+    /**
+     * 同时按是否有输出开启或关闭调试日志
+     */
+    public static void setLogger(Logger newLogger) {
+        logger = newLogger != null ? newLogger : NONE;
+        debugEnabled = logger != NONE;
+    }
+
+    public static void setDebugEnabled(boolean enabled) {
+        debugEnabled = enabled;
+    }
+
+    public static boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+
+    public static void d(String tag, String message) {
+        logger.d(tag, message);
+    }
+
+    public static void i(String tag, String message) {
+        logger.i(tag, message);
+    }
+
+    public static void w(String tag, String message) {
+        logger.w(tag, message, null);
+    }
+
+    public static void w(String tag, String message, Throwable error) {
+        logger.w(tag, message, error);
+    }
+
+    public static void e(String tag, String message) {
+        logger.e(tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        logger.e(tag, message, error);
+    }
+}
@@ -0,0 +1,656 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个 ANCS 连接上的协议逻辑
+ * 解析 Notification Source，按需通过 Control Point 获取属性，重组 Data Source 响应，
+ * 并在 iPhone 重放完已有通知后找出断开期间已被移除的通知。
+ * 只通过 GattTransport 与外设交互，结果交给 Listener（应用中负责历史、界面与 Android 通知），
+ * 因此可以在 JVM 上对着模拟的 iPhone 运行
+ */
+public class AncsSession implements GattTransport.Listener {
+    private static final String TAG = "AncsSession";
+    // 最后一条已有通知之后这么久没有新的重放，视为重放结束
+    public static final long PRE_EXISTING_SETTLE_MS = 2000;
+    // 属性获取写入失败时的最多尝试次数
+    private static final int MAX_FETCH_ATTEMPTS = 3;
+    // 本次连接中重放通知已有属性的核对状态：尚未核对、正在核对样本、一致（沿用）、不一致（重新获取）
+    private static final int KEPT_UNVERIFIED = 0;
+    private static final int KEPT_VERIFYING = 1;
+    private static final int KEPT_TRUSTED = 2;
+    private static final int KEPT_STALE = 3;
+
+    /**
+     * 延迟任务，应用中由 Handler 实现
+     */
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+        void removeCallbacks(Runnable task);
+    }
+
+    /**
+     * 会话产生的通知事件，在传输层或 Scheduler 的线程上回调
+     */
+    public interface Listener {
+        /**
+         * 每个 Notification Source 事件解析完成后回调，早于下面的其他回调
+         */
+        void onNotificationSource(NotificationSnapshot info);
+
+        /**
+         * 重放的已有通知已有属性（上次连接获取或从检查点恢复），且应用 ID 与日期核对一致，不再获取全部属性
+         */
+        void onAttributesRetained(NotificationSnapshot info);
+
+        /**
+         * 新增或修改的通知属性获取完成
+         */
+        void onNotificationReady(NotificationSnapshot info);
+
+        /**
+         * iPhone 发来 REMOVED 事件
+         */
+        void onNotificationRemoved(NotificationSnapshot info);
+
+        /**
+         * 已有通知重放结束
+         * @param removed 本次连接中没有重放、已从记录中删除的通知，可能为空
+         */
+        void onReconciled(List<NotificationSnapshot> removed);
+
+        /**
+         * 收到无法解析的数据（长度不对的 Notification Source、错乱、超长或属性被截断的 Data Source 响应），
+         * 可在此时保存 getPacketRing() 中的现场
+         */
+        default void onProtocolError(String reason) {
+        }
+    }
+
+    private final GattTransport transport;
+    private final NotificationHandler notificationHandler;
+    private final Scheduler scheduler;
+    private final Listener listener;
+    private final ControlPointQueue controlPointQueue;
+    private final DataSourceReassembler reassembler = new DataSourceReassembler();
+    // 需要获取属性的通知的分阶段耗时，Listener 负责记录决定与发出两个阶段
+    private final PipelineTrace pipelineTrace = new PipelineTrace();
+    // 最近收发的原始数据包，用于诊断
+    private final PacketRing packetRing = new PacketRing();
+    // 本次连接中 Notification Source 出现过的 UID，重放结束后用于找出已不存在的通知
+    private final IntHashSet seenUids = new IntHashSet(256);
+    // 只用于诊断：最近一次被断开打断的对账中仍未确认存在的通知，下一次对账完成时清空；
+    // 对账本身不依赖它，下一次连接重放结束后本来就会删除没有出现的活动通知。与 reconcilePending 一起由 seenUids 保护
+    private final IntHashSet unreconciled = new IntHashSet(64);
+    private boolean reconcilePending = false;
+    // 本次连接中等待核对结果的重放通知（Notification Source 数据），队首为正在核对的样本；
+    // 与 keptState、verifyUid、verifyInFlight 一起以自身为锁
+    private final ArrayDeque<byte[]> awaitingVerify = new ArrayDeque<>();
+    private int keptState = KEPT_UNVERIFIED;
+    private int verifyUid;
+    private boolean verifyInFlight = false;
+    private final Runnable settledRunnable = this::onPreExistingSettled;
+    private final Runnable drainRunnable = this::drainHeldEvents;
+    // 检查点恢复完成之前收到的 Notification Source 事件，恢复后按到达顺序处理；以自身为锁
+    private final ArrayDeque<HeldEvent> heldEvents = new ArrayDeque<>();
+    private boolean restorePending = false;
+    private volatile boolean connected = false;
+    // 本次连接中 iPhone 重放的已有通知；只在传输层线程上修改，诊断读取不加锁
+    private volatile int preExistingCount = 0;
+    private volatile int fetchesSaved = 0;
+
+    private final ControlPointQueue.Callback fetchCallback = new FetchCallback(1);
+
+    private static final class HeldEvent {
+        final byte[] data;
+        final long arrivalNanos;
+
+        HeldEvent(byte[] data, long arrivalNanos) {
+            this.data = data;
+            this.arrivalNanos = arrivalNanos;
+        }
+    }
+
+    public AncsSession(GattTransport transport, NotificationHandler notificationHandler,
+                       Scheduler scheduler, Listener listener) {
+        this.transport = transport;
+        this.notificationHandler = notificationHandler;
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.controlPointQueue = new ControlPointQueue(this::write, scheduler);
+    }
+
+    @Override
+    public void onConnected() {
+        packetRing.record(AncsTrace.TYPE_CONNECT, nowMicros(), null);
+        connected = true;
+        preExistingCount = 0;
+        fetchesSaved = 0;
+        synchronized (seenUids) {
+            seenUids.clear();
+            reconcilePending = true;
+        }
+        synchronized (heldEvents) {
+            // 上一次连接中保留的事件会在本次连接中重新重放
+            heldEvents.clear();
+        }
+        resetVerification();
+        reassembler.reset();
+    }
+
+    /**
+     * 检查点在后台恢复时调用：之后的 Notification Source 事件先保留，直到 onRestoreComplete，
+     * 否则恢复完成前重放的已有通知找不到记录，会被当作新通知重新获取属性，对账也会漏掉尚未恢复的通知
+     */
+    public void awaitRestore() {
+        synchronized (heldEvents) {
+            restorePending = true;
+        }
+    }
+
+    /**
+     * 检查点恢复结束（无论是否恢复了通知），可在任意线程调用；保留的事件在 Scheduler 上处理
+     */
+    public void onRestoreComplete() {
+        scheduler.postDelayed(drainRunnable, 0);
+    }
+
+    private void drainHeldEvents() {
+        int drained = 0;
+        while (true) {
+            HeldEvent event;
+            synchronized (heldEvents) {
+                event = heldEvents.poll();
+                if (event == null || !connected) {
+                    // 处理完之前新到的事件继续排在后面，保持到达顺序；已断开的连接中的事件会在重连后重新重放
+                    heldEvents.clear();
+                    restorePending = false;
+                    break;
+                }
+            }
+            handleNotificationSource(event.data, event.arrivalNanos);
+            drained++;
+        }
+        if (drained > 0) {
+            AncsLog.i(TAG, "Processed " + drained + " Notification Source events held during checkpoint restore");
+        }
+        if (connected) {
+            // 恢复期间跳过的对账从现在开始重新计时
+            scheduler.removeCallbacks(settledRunnable);
+            scheduler.postDelayed(settledRunnable, PRE_EXISTING_SETTLE_MS);
+        }
+    }
+
+    @Override
+    public void onReady() {
+        packetRing.record(AncsTrace.TYPE_READY, nowMicros(), null);
+        // 没有已有通知时也要在重放窗口结束后对账
+        scheduler.removeCallbacks(settledRunnable);
+        scheduler.postDelayed(settledRunnable, PRE_EXISTING_SETTLE_MS);
+    }
+
+    @Override
+    public void onDisconnected() {
+        packetRing.record(AncsTrace.TYPE_DISCONNECT, nowMicros(), null);
+        connected = false;
+        // 重放未完成时不能据此判断哪些通知已不存在
+        scheduler.removeCallbacks(settledRunnable);
+        recordInterruptedReconcile();
+        // 未完成的 Control Point 命令与拼接到一半的响应随连接一起失效
+        controlPointQueue.clear();
+        reassembler.reset();
+        resetVerification();
+        pipelineTrace.discardAll();
+    }
+
+    @Override
+    public void onNotificationSource(byte[] data) {
+        long arrivalNanos = System.nanoTime();
+        packetRing.record(AncsTrace.TYPE_NOTIFICATION_SOURCE, arrivalNanos / 1000, data);
+        if (data == null || data.length < 8) {
+            AncsLog.e(TAG, "Invalid notification source data");
+            listener.onProtocolError("Notification Source of " + (data != null ? data.length : 0) + " bytes");
+            return;
+        }
+
+        synchronized (heldEvents) {
+            if (restorePending) {
+                // 传输层可能复用数组
+                heldEvents.add(new HeldEvent(data.clone(), arrivalNanos));
+                return;
+            }
+        }
+        handleNotificationSource(data, arrivalNanos);
+    }
+
+    private void handleNotificationSource(byte[] data, long arrivalNanos) {
+        // 先记录 UID 再发布快照，对账时任何已发布的本次连接通知都在集合中
+        synchronized (seenUids) {
+            seenUids.add(NotificationHandler.readUid(data, 4));
+        }
+        NotificationSnapshot info = notificationHandler.parseNotificationSource(data);
+        if (info == null) {
+            return;
+        }
+        listener.onNotificationSource(info);
+
+        boolean preExisting = (info.getEventFlags() & NotificationHandler.EVENT_FLAG_PRE_EXISTING) != 0;
+        if (preExisting) {
+            preExistingCount++;
+            scheduler.removeCallbacks(settledRunnable);
+            scheduler.postDelayed(settledRunnable, PRE_EXISTING_SETTLE_MS);
+        }
+
+        if (preExisting && info.getEventId() == NotificationHandler.EVENT_ID_NOTIFICATION_ADDED && info.hasAttributes()) {
+            retainOrVerify(info, data, arrivalNanos);
+        } else if (info.getEventId() == NotificationHandler.EVENT_ID_NOTIFICATION_ADDED
+            || info.getEventId() == NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED) {
+            // 等待 Data Source 响应完整后再交给 Listener
+            pipelineTrace.begin(info.getRawUid(), arrivalNanos);
+            controlPointQueue.enqueue(createFetchCommand(data, 4), fetchCallback);
+        } else if (info.getEventId() == NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED) {
+            listener.onNotificationRemoved(info);
+        }
+    }
+
+    @Override
+    public void onDataSource(byte[] data) {
+        packetRing.record(AncsTrace.TYPE_DATA_SOURCE, nowMicros(), data);
+        if (data != null && data.length >= 5 && reassembler.getBufferedBytes() == 0
+            && data[0] == NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES) {
+            pipelineTrace.mark(NotificationHandler.readUid(data, 1), PipelineTrace.STAGE_FIRST_FRAGMENT);
+        }
+        long droppedBefore = reassembler.getDroppedCount();
+        byte[] response = reassembler.offer(data);
+        if (reassembler.getDroppedCount() != droppedBefore) {
+            listener.onProtocolError("Data Source response dropped by reassembler");
+        }
+        if (response == null) {
+            return;
+        }
+        if (response.length >= 5 && takeVerifyResponse(NotificationHandler.readUid(response, 1))) {
+            onVerifyResponse(response);
+            return;
+        }
+        if (response.length >= 5) {
+            pipelineTrace.mark(NotificationHandler.readUid(response, 1), PipelineTrace.STAGE_LAST_FRAGMENT);
+        }
+        long malformedBefore = notificationHandler.getMalformedCount();
+        NotificationSnapshot info = notificationHandler.parseDataSource(response);
+        if (notificationHandler.getMalformedCount() != malformedBefore) {
+            listener.onProtocolError("Malformed Data Source response");
+        }
+        if (info != null) {
+            listener.onNotificationReady(info);
+        } else if (response.length >= 5) {
+            // 响应无效或通知已被移除，不会再交给 Listener
+            pipelineTrace.discard(NotificationHandler.readUid(response, 1));
+        }
+    }
+
+    /**
+     * 重放的已有通知已有属性时决定是否沿用。iPhone 重启后 UID 从头计数，记录中的 UID 可能已属于另一条通知；
+     * 重启会让全部 UID 同时失效，所以每次连接只核对第一条（只获取应用 ID 与日期），结果适用于本次连接的全部重放：
+     * 一致时全部沿用，不一致时全部重新获取。核对期间到达的重放通知等待结果，不为每条通知各写一次核对命令
+     */
+    private void retainOrVerify(NotificationSnapshot info, byte[] data, long arrivalNanos) {
+        int state;
+        synchronized (awaitingVerify) {
+            state = keptState;
+            if (state == KEPT_UNVERIFIED || state == KEPT_VERIFYING) {
+                // 传输层可能复用数组
+                awaitingVerify.add(data.clone());
+            }
+            if (state == KEPT_UNVERIFIED) {
+                keptState = KEPT_VERIFYING;
+                verifyUid = info.getRawUid();
+                verifyInFlight = true;
+            }
+        }
+        if (state == KEPT_UNVERIFIED) {
+            controlPointQueue.enqueue(createVerifyCommand(data, 4), new VerifyCallback(1));
+        } else if (state == KEPT_TRUSTED) {
+            fetchesSaved++;
+            listener.onAttributesRetained(info);
+        } else if (state == KEPT_STALE) {
+            pipelineTrace.begin(info.getRawUid(), arrivalNanos);
+            controlPointQueue.enqueue(createFetchCommand(data, 4), fetchCallback);
+        }
+    }
+
+    /**
+     * @return 响应属于正在等待的核对命令时返回 true；响应按命令顺序到达，之后同一 UID 的响应按普通获取处理
+     */
+    private boolean takeVerifyResponse(int rawUid) {
+        synchronized (awaitingVerify) {
+            if (!verifyInFlight || verifyUid != rawUid) {
+                return false;
+            }
+            verifyInFlight = false;
+            return true;
+        }
+    }
+
+    /**
+     * 核对响应：样本已被移除时无法判断，改为核对下一条等待中的通知
+     */
+    private void onVerifyResponse(byte[] response) {
+        NotificationSnapshot current = notificationHandler.getNotification(NotificationHandler.formatUid(response, 1));
+        if (current == null || current.isRemoved()) {
+            verifyNext();
+            return;
+        }
+        long malformedBefore = notificationHandler.getMalformedCount();
+        NotificationSnapshot info = notificationHandler.verifyDataSource(response);
+        if (notificationHandler.getMalformedCount() != malformedBefore) {
+            listener.onProtocolError("Malformed verification response");
+        }
+        settleVerification(info != null);
+    }
+
+    /**
+     * 去掉无法判断的样本，核对下一条等待中的通知；没有等待的通知时由下一条重放重新开始核对
+     */
+    private void verifyNext() {
+        byte[] next;
+        synchronized (awaitingVerify) {
+            awaitingVerify.poll();
+            next = awaitingVerify.peek();
+            if (next == null) {
+                keptState = KEPT_UNVERIFIED;
+                return;
+            }
+            verifyUid = NotificationHandler.readUid(next, 4);
+            verifyInFlight = true;
+        }
+        controlPointQueue.enqueue(createVerifyCommand(next, 4), new VerifyCallback(1));
+    }
+
+    /**
+     * 按核对结果处理等待中的重放通知，本次连接之后的重放直接沿用或获取
+     * @param trusted 样本与记录一致
+     */
+    private void settleVerification(boolean trusted) {
+        List<byte[]> pending;
+        synchronized (awaitingVerify) {
+            keptState = trusted ? KEPT_TRUSTED : KEPT_STALE;
+            pending = new ArrayList<>(awaitingVerify);
+            awaitingVerify.clear();
+        }
+        if (!trusted) {
+            AncsLog.i(TAG, "Kept attributes do not match the replay, fetching " + pending.size() + " notifications again");
+        }
+        for (byte[] data : pending) {
+            NotificationSnapshot current = notificationHandler.getNotification(NotificationHandler.formatUid(data, 4));
+            if (current == null || current.isRemoved() || !connected) {
+                continue;
+            }
+            if (trusted && current.hasAttributes()) {
+                fetchesSaved++;
+                listener.onAttributesRetained(current);
+            } else {
+                pipelineTrace.begin(current.getRawUid(), System.nanoTime());
+                controlPointQueue.enqueue(createFetchCommand(data, 4), fetchCallback);
+            }
+        }
+    }
+
+    private void resetVerification() {
+        synchronized (awaitingVerify) {
+            awaitingVerify.clear();
+            keptState = KEPT_UNVERIFIED;
+            verifyInFlight = false;
+        }
+    }
+
+    @Override
+    public void onControlPointWriteComplete(int status) {
+        packetRing.recordByte(AncsTrace.TYPE_CONTROL_POINT_ACK, nowMicros(), status);
+        controlPointQueue.onWriteComplete(status);
+    }
+
+    /**
+     * 放入 Control Point 写入队列，例如通知操作命令
+     * @param callback 可为 null
+     */
+    public void enqueueControlPoint(byte[] command, ControlPointQueue.Callback callback) {
+        controlPointQueue.enqueue(command, callback);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public int getControlPointQueueDepth() {
+        return controlPointQueue.depth();
+    }
+
+    public long getControlPointTimeoutCount() {
+        return controlPointQueue.getTimeoutCount();
+    }
+
+    public int getPreExistingCount() {
+        return preExistingCount;
+    }
+
+    public int getFetchesSaved() {
+        return fetchesSaved;
+    }
+
+    /**
+     * @return 最近一次被断开打断的对账中未确认存在、等待下一次对账的通知数，只用于诊断
+     */
+    public int getUnreconciledCount() {
+        synchronized (seenUids) {
+            return unreconciled.size();
+        }
+    }
+
+    public PipelineTrace getPipelineTrace() {
+        return pipelineTrace;
+    }
+
+    public long getDroppedResponseCount() {
+        return reassembler.getDroppedCount();
+    }
+
+    /**
+     * @return 最近的 NS/DS/CP 数据包与连接事件，可以 AncsTrace 格式写出后由 ancs-sim 回放
+     */
+    public PacketRing getPacketRing() {
+        return packetRing;
+    }
+
+    private boolean write(byte[] command) {
+        // 先登记再写入，响应可能在写入回调之前到达；写入失败时由 FetchCallback 撤销
+        reassembler.expect(command);
+        packetRing.record(AncsTrace.TYPE_CONTROL_POINT, nowMicros(), command);
+        if (command[0] == NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES && command.length >= 5) {
+            pipelineTrace.mark(NotificationHandler.readUid(command, 1), PipelineTrace.STAGE_WRITE_ISSUED);
+        }
+        return transport.writeControlPoint(command);
+    }
+
+    private static long nowMicros() {
+        return System.nanoTime() / 1000;
+    }
+
+    /**
+     * 属性获取命令的写入结果，失败时在通知仍存在的情况下重新入队
+     */
+    private class FetchCallback implements ControlPointQueue.Callback {
+        private final int attempt;
+
+        FetchCallback(int attempt) {
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void onWriteComplete(byte[] command, int status) {
+            if (status == 0) {
+                pipelineTrace.mark(NotificationHandler.readUid(command, 1), PipelineTrace.STAGE_WRITE_ACKED);
+                return;
+            }
+            // 不会有对应的 Data Source 响应
+            reassembler.cancel(command);
+            String uid = NotificationHandler.formatUid(command, 1);
+            NotificationSnapshot info = notificationHandler.getNotification(uid);
+            boolean retry = status != ControlPointQueue.STATUS_DISCONNECTED && attempt < MAX_FETCH_ATTEMPTS
+                && info != null && !info.isRemoved();
+            if (status != ControlPointQueue.STATUS_DISCONNECTED) {
+                AncsLog.w(TAG, "Attribute fetch for " + uid + " failed with status " + status
+                    + (retry ? ", retrying" : ""));
+            }
+            if (retry) {
+                controlPointQueue.enqueue(command, new FetchCallback(attempt + 1));
+            } else {
+                pipelineTrace.discard(NotificationHandler.readUid(command, 1));
+            }
+        }
+    }
+
+    /**
+     * 核对命令的写入结果，失败时在样本仍存在的情况下重新入队；多次失败则无法确认，按不一致处理
+     */
+    private class VerifyCallback implements ControlPointQueue.Callback {
+        private final int attempt;
+
+        VerifyCallback(int attempt) {
+            this.attempt = attempt;
+        }
+
+        @Override
+        public void onWriteComplete(byte[] command, int status) {
+            if (status == 0) {
+                return;
+            }
+            reassembler.cancel(command);
+            if (status == ControlPointQueue.STATUS_DISCONNECTED) {
+                // 重连后重新核对
+                return;
+            }
+            int rawUid = NotificationHandler.readUid(command, 1);
+            synchronized (awaitingVerify) {
+                if (!verifyInFlight || verifyUid != rawUid) {
+                    return;
+                }
+            }
+            NotificationSnapshot info = notificationHandler.getNotification(NotificationHandler.formatUid(command, 1));
+            boolean retry = attempt < MAX_FETCH_ATTEMPTS;
+            AncsLog.w(TAG, "Verification for " + NotificationHandler.formatUid(command, 1) + " failed with status " + status
+                + (retry ? ", retrying" : ", fetching all replayed notifications"));
+            if (info == null || info.isRemoved()) {
+                synchronized (awaitingVerify) {
+                    verifyInFlight = false;
+                }
+                verifyNext();
+            } else if (retry) {
+                controlPointQueue.enqueue(command, new VerifyCallback(attempt + 1));
+            } else {
+                synchronized (awaitingVerify) {
+                    verifyInFlight = false;
+                }
+                settleVerification(false);
+            }
+        }
+    }
+
+    /**
+     * 对账之前断开时记录本次连接中没有出现过的活动通知，供日志与 dumpsys 查看；
+     * 每次打断都按当时的活动通知重新计算，之前的连接中确认过的通知在本次没有出现时同样未确认。
+     * 这些通知由下一次对账照常处理，这里不改变对账的结果
+     */
+    private void recordInterruptedReconcile() {
+        synchronized (seenUids) {
+            if (!reconcilePending) {
+                return;
+            }
+            reconcilePending = false;
+            unreconciled.clear();
+            for (NotificationSnapshot notification : notificationHandler.getActiveNotifications()) {
+                if (!seenUids.contains(notification.getRawUid())) {
+                    unreconciled.add(notification.getRawUid());
+                }
+            }
+            AncsLog.i(TAG, "Disconnected before reconcile, " + unreconciled.size()
+                + " active notifications not replayed yet");
+        }
+    }
+
+    /**
+     * iPhone 重放完连接前已有的通知：本次连接中没有出现过的活动通知已在断开期间被移除，
+     * 一次性从记录中删除并交给 Listener
+     */
+    private void onPreExistingSettled() {
+        synchronized (heldEvents) {
+            if (restorePending) {
+                // 恢复完成后 drainHeldEvents 重新安排对账
+                return;
+            }
+        }
+        if (!connected) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<NotificationSnapshot> active = notificationHandler.getActiveNotifications();
+        List<NotificationSnapshot> removed = new ArrayList<>();
+        int fromInterrupted = 0;
+        synchronized (seenUids) {
+            for (NotificationSnapshot notification : active) {
+                if (!seenUids.contains(notification.getRawUid())) {
+                    NotificationSnapshot snapshot = notificationHandler.expire(notification.getUid());
+                    if (snapshot != null) {
+                        removed.add(snapshot);
+                        if (unreconciled.contains(notification.getRawUid())) {
+                            fromInterrupted++;
+                        }
+                    }
+                }
+            }
+            unreconciled.clear();
+            reconcilePending = false;
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1000;
+
+        AncsLog.i(TAG, "Pre-existing replay settled: replayed=" + preExistingCount
+            + " fetchesSaved=" + fetchesSaved + " fetched=" + (preExistingCount - fetchesSaved));
+        AncsLog.i(TAG, "Reconciled " + active.size() + " active notifications in " + elapsedMicros + "us: stale="
+            + removed.size() + " fromInterrupted=" + fromInterrupted);
+        listener.onReconciled(removed);
+    }
+
+    /**
+     * Get Notification Attributes：应用 ID、日期、标题、正文与两个操作标签；日期用于重连后核对 UID 是否仍是同一条通知。
+     * 按 ANCS 规范只有标题、副标题与正文带最大长度参数
+     * @param uidOffset data 中 4 字节 UID 的位置
+     */
+    private static byte[] createFetchCommand(byte[] data, int uidOffset) {
+        return new byte[] {
+            NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES,
+            // UID
+            data[uidOffset], data[uidOffset + 1], data[uidOffset + 2], data[uidOffset + 3],
+            NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER,
+            NotificationHandler.ATTRIBUTE_ID_DATE,
+            NotificationHandler.ATTRIBUTE_ID_TITLE, (byte) 0xff, (byte) 0xff,
+            NotificationHandler.ATTRIBUTE_ID_MESSAGE, (byte) 0xff, (byte) 0xff,
+            NotificationHandler.ATTRIBUTE_ID_POSITIVE_ACTION_LABEL,
+            NotificationHandler.ATTRIBUTE_ID_NEGATIVE_ACTION_LABEL
+        };
+    }
+
+    /**
+     * 核对重放通知用的 Get Notification Attributes：只有应用 ID 与日期，响应通常不到一个分片
+     * @param uidOffset data 中 4 字节 UID 的位置
+     */
+    private static byte[] createVerifyCommand(byte[] data, int uidOffset) {
+        return new byte[] {
+            NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES,
+            // UID
+            data[uidOffset], data[uidOffset + 1], data[uidOffset + 2], data[uidOffset + 3],
+            NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER,
+            NotificationHandler.ATTRIBUTE_ID_DATE
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package stu.xiaohei.iphonebridge;
+
+/**
+ * 冷启动与 ANCS 连接建立的步骤顺序
+ * 冷启动时先发起 GATT 连接，再进入前台，其余初始化推迟到之后的 Scheduler 任务中，不占用连接建立的时间；
+ * 连接建立后依次发现服务、启用 Data Source、启用 Notification Source，全部完成即 ANCS 就绪，交给 AncsSession。
+ * 每个步骤记录到 StartupTrace。蓝牙操作通过 Link 发出，应用中由 BluetoothGatt 实现，
+ * 在 JVM 上可以换成模拟的外设，测量从开机到就绪的耗时
+ */
+public class AncsStartup {
+    private static final String TAG = "AncsStartup";
+
+    public static final int CHARACTERISTIC_DATA_SOURCE = 0;
+    public static final int CHARACTERISTIC_NOTIFICATION_SOURCE = 1;
+
+    /**
+     * 冷启动中由服务完成的步骤，在 start 的线程（应用中为主线程）上调用
+     */
+    public interface Host {
+        /**
+         * 发起 GATT 连接
+         * @return 没有可连接的设备或已在重连时返回 false
+         */
+        boolean connect();
+
+        /**
+         * 进入前台，必须在 startForegroundService 之后限时完成
+         */
+        void startForeground();
+
+        /**
+         * 不影响连接建立的初始化工作
+         */
+        void deferredInit();
+    }
+
+    /**
+     * 连接建立后的 GATT 操作，结果通过 onServicesDiscovered 与 onNotificationsEnabled 返回
+     */
+    public interface Link {
+        /**
+         * @return 请求是否已被接受
+         */
+        boolean discoverServices();
+
+        /**
+         * 写入该特征的客户端特征配置描述符
+         * @param characteristic CHARACTERISTIC_DATA_SOURCE 或 CHARACTERISTIC_NOTIFICATION_SOURCE
+         * @return 请求是否已被接受
+         */
+        boolean enableNotifications(int characteristic);
+    }
+
+    private final Host host;
+    private final Link link;
+    private final AncsSession.Scheduler scheduler;
+    private final GattTransport.Listener session;
+    private final Runnable deferredRunnable = this::runDeferredInit;
+    // 在 start 中设置一次，蓝牙回调线程读取
+    private volatile StartupTrace trace;
+    // 以下两项只在 start 的线程上访问
+    private boolean foregroundStarted = false;
+    private boolean deferredScheduled = false;
+    // 本次连接是否已就绪，在蓝牙回调线程上修改
+    private volatile boolean ready = false;
+
+    public AncsStartup(Host host, Link link, AncsSession.Scheduler scheduler, GattTransport.Listener session) {
+        this.host = host;
+        this.link = link;
+        this.scheduler = scheduler;
+        this.session = session;
+    }
+
+    /**
+     * 每次服务启动时调用：发起连接，首次调用时进入前台并安排延迟初始化
+     * @param trace 记录各步骤耗时，只使用首次传入的追踪，可为 null
+     */
+    public void start(StartupTrace trace) {
+        if (this.trace == null) {
+            this.trace = trace;
+        }
+        // 1. 尽早发起 GATT 连接
+        if (host.connect()) {
+            mark("gatt_connect");
+        }
+        // 2. 前台通知
+        if (!foregroundStarted) {
+            foregroundStarted = true;
+            host.startForeground();
+            mark("foreground");
+        }
+        // 3. 其余初始化推迟到当前任务之后
+        if (!deferredScheduled) {
+            deferredScheduled = true;
+            scheduler.postDelayed(deferredRunnable, 0);
+        }
+    }
+
+    private void runDeferredInit() {
+        host.deferredInit();
+        mark("deferred_init");
+    }
+
+    /**
+     * 链路已建立
+     */
+    public void onLinkConnected() {
+        ready = false;
+        session.onConnected();
+        mark("gatt_connected");
+        if (!link.discoverServices()) {
+            AncsLog.w(TAG, "Service discovery request rejected");
+        }
+    }
+
+    /**
+     * @param ancsFound 是否找到 ANCS 服务及其三个特征
+     * @return 开始启用通知时返回 true
+     */
+    public boolean onServicesDiscovered(boolean ancsFound) {
+        if (!ancsFound) {
+            AncsLog.e(TAG, "ANCS service not found");
+            return false;
+        }
+        mark("services_discovered");
+        // 按照 ANCS 规范，先启用 Data Source 通知
+        return enableNotifications(CHARACTERISTIC_DATA_SOURCE);
+    }
+
+    /**
+     * 描述符写入完成
+     * @param status GATT 状态，0 表示成功
+     * @return ANCS 因此就绪时返回 true
+     */
+    public boolean onNotificationsEnabled(int characteristic, int status) {
+        if (status != 0) {
+            AncsLog.w(TAG, "Enabling notifications on characteristic " + characteristic + " failed with status " + status);
+            return false;
+        }
+        if (characteristic == CHARACTERISTIC_DATA_SOURCE) {
+            // Data Source 启用后，启用 Notification Source
+            enableNotifications(CHARACTERISTIC_NOTIFICATION_SOURCE);
+            return false;
+        }
+        if (characteristic != CHARACTERISTIC_NOTIFICATION_SOURCE || ready) {
+            return false;
+        }
+        ready = true;
+        AncsLog.i(TAG, "ANCS notifications enabled");
+        session.onReady();
+        if (trace != null && trace.markReady()) {
+            long readyMs = trace.getTimeToReadyMs();
+            if (trace.isWithinTarget()) {
+                AncsLog.i(TAG, "Time to ANCS ready: " + readyMs + "ms\n" + trace.format());
+            } else {
+                AncsLog.w(TAG, "Time to ANCS ready " + readyMs + "ms exceeds target "
+                    + StartupTrace.TARGET_READY_MS + "ms\n" + trace.format());
+            }
+        }
+        return true;
+    }
+
+    public void onLinkDisconnected() {
+        ready = false;
+        session.onDisconnected();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isForegroundStarted() {
+        return foregroundStarted;
+    }
+
+    private boolean enableNotifications(int characteristic) {
+        if (!link.enableNotifications(characteristic)) {
+            AncsLog.w(TAG, "Enable notifications request rejected for characteristic " + characteristic);
+            return false;
+        }
+        return true;
+    }
+
+    private void mark(String step) {
+        StartupTrace current = trace;
+        if (current != null) {
+            current.mark(step);
+        }
+    }
+}
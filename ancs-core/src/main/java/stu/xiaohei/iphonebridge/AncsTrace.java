@@ -0,0 +1,118 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ANCS 流量记录的文本格式，每行一条记录：
+ * <相对时间微秒> <类型> [十六进制数据]
+ * 类型为 CONNECT、READY、DISCONNECT、NS、DS、CP（写入的命令）与 CPACK（写入结果，数据为 1 字节 GATT 状态）；
+ * 空行与 # 开头的行为注释。模拟器（ancs-sim）按该格式回放记录的流量
+ */
+public final class AncsTrace {
+    public static final int TYPE_CONNECT = 0;
+    public static final int TYPE_READY = 1;
+    public static final int TYPE_DISCONNECT = 2;
+    public static final int TYPE_NOTIFICATION_SOURCE = 3;
+    public static final int TYPE_DATA_SOURCE = 4;
+    public static final int TYPE_CONTROL_POINT = 5;
+    public static final int TYPE_CONTROL_POINT_ACK = 6;
+
+    private static final String[] TYPE_NAMES = { "CONNECT", "READY", "DISCONNECT", "NS", "DS", "CP", "CPACK" };
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final byte[] EMPTY = new byte[0];
+
+    public static final class Record {
+        public final long timeMicros;
+        public final int type;
+        public final byte[] data;
+
+        public Record(long timeMicros, int type, byte[] data) {
+            this.timeMicros = timeMicros;
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private AncsTrace() {
+    }
+
+    public static String typeName(int type) {
+        return type >= 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : "?";
+    }
+
+    /**
+     * @return 类型，无法识别时返回 -1
+     */
+    public static int parseType(String name) {
+        for (int i = 0; i < TYPE_NAMES.length; i++) {
+            if (TYPE_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 写入一条记录（含换行）
+     */
+    public static void write(Appendable out, long timeMicros, int type, byte[] data, int offset, int length)
+            throws IOException {
+        out.append(Long.toString(timeMicros)).append(' ').append(typeName(type));
+        if (length > 0) {
+            out.append(' ');
+            for (int i = offset; i < offset + length; i++) {
+                out.append(HEX[(data[i] >> 4) & 0xF]).append(HEX[data[i] & 0xF]);
+            }
+        }
+        out.append('\n');
+    }
+
+    /**
+     * 读取全部记录
+     * @throws IOException 读取失败或某一行格式错误
+     */
+    public static List<Record> read(BufferedReader reader) throws IOException {
+        List<Record> records = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            int type = fields.length >= 2 ? parseType(fields[1]) : -1;
+            if (type < 0 || fields.length > 3) {
+                throw new IOException("Malformed trace record at line " + lineNumber + ": " + line);
+            }
+            try {
+                long time = Long.parseLong(fields[0]);
+                byte[] data = fields.length == 3 ? parseHex(fields[2]) : EMPTY;
+                records.add(new Record(time, type, data));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed trace record at line " + lineNumber + ": " + line, e);
+            }
+        }
+        return records;
+    }
+
+    private static byte[] parseHex(String hex) {
+        if ((hex.length() & 1) != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits");
+        }
+        byte[] data = new byte[hex.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid hex digit");
+            }
+            data[i] = (byte) (high << 4 | low);
+        }
+        return data;
+    }
+}
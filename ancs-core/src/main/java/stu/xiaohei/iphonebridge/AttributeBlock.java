@@ -0,0 +1,216 @@
+package stu.xiaohei.iphonebridge;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 通知属性的紧凑存储
+ * 所有属性的 UTF-8 字节连续存放在一个数组中，按属性 ID 记录起止位置；
+ * 只有调用 getString 时才解码为 String 并缓存，过滤等逻辑可以直接在字节上进行
+ */
+public final class AttributeBlock {
+    // 属性 ID 0~7（App Identifier ~ Negative Action Label）
+    public static final int ATTRIBUTE_COUNT = 8;
+
+    public static final AttributeBlock EMPTY = new AttributeBlock(new byte[0], emptyBounds());
+
+    private final byte[] data;
+    // 每个属性占两个元素：起始位置与结束位置，起始位置为 -1 表示没有该属性
+    private final int[] bounds;
+    // 延迟创建；String 不可变，并发下重复解码也不会读到不完整的对象
+    private String[] decoded;
+
+    private AttributeBlock(byte[] data, int[] bounds) {
+        this.data = data;
+        this.bounds = bounds;
+    }
+
+    private static int[] emptyBounds() {
+        int[] bounds = new int[ATTRIBUTE_COUNT * 2];
+        Arrays.fill(bounds, -1);
+        return bounds;
+    }
+
+    private static boolean isValidId(int attributeId) {
+        return attributeId >= 0 && attributeId < ATTRIBUTE_COUNT;
+    }
+
+    public boolean has(int attributeId) {
+        return isValidId(attributeId) && bounds[attributeId * 2] >= 0;
+    }
+
+    /**
+     * @return 属性的 UTF-8 字节数，没有该属性时返回 0
+     */
+    public int length(int attributeId) {
+        if (!has(attributeId)) {
+            return 0;
+        }
+        return bounds[attributeId * 2 + 1] - bounds[attributeId * 2];
+    }
+
+    /**
+     * 将属性的 UTF-8 字节复制到 dest
+     * @return 复制的字节数
+     */
+    public int copyTo(int attributeId, byte[] dest, int destOffset) {
+        int length = length(attributeId);
+        if (length > 0) {
+            System.arraycopy(data, bounds[attributeId * 2], dest, destOffset, length);
+        }
+        return length;
+    }
+
+    /**
+     * 将属性中从 srcOffset 开始的 length 个字节复制到 dest，调用方保证范围有效
+     */
+    public void copyRange(int attributeId, int srcOffset, byte[] dest, int destOffset, int length) {
+        System.arraycopy(data, bounds[attributeId * 2] + srcOffset, dest, destOffset, length);
+    }
+
+    /**
+     * @return 解码后的属性值，没有该属性时返回 null
+     */
+    public String getString(int attributeId) {
+        if (!has(attributeId)) {
+            return null;
+        }
+        String[] cache = decoded;
+        if (cache == null) {
+            cache = new String[ATTRIBUTE_COUNT];
+            decoded = cache;
+        }
+        String value = cache[attributeId];
+        if (value == null) {
+            int start = bounds[attributeId * 2];
+            value = new String(data, start, bounds[attributeId * 2 + 1] - start, StandardCharsets.UTF_8);
+            cache[attributeId] = value;
+        }
+        return value;
+    }
+
+    /**
+     * @return 所有属性占用的字节数
+     */
+    public int byteSize() {
+        return data.length;
+    }
+
+    /**
+     * 解析时使用的可变构建器，可重复使用
+     */
+    public static final class Builder {
+        private byte[] buffer = new byte[256];
+        private int size = 0;
+        private final int[] bounds = emptyBounds();
+
+        /**
+         * 设置属性值，去掉首尾空白（与 String.trim 一致：UTF-8 中不大于 0x20 的字节只会是 ASCII 控制符和空格）
+         * 同一属性重复设置时以最后一次为准
+         * @return 属性 ID 无效时返回 false
+         */
+        public boolean set(int attributeId, byte[] src, int offset, int length) {
+            if (!isValidId(attributeId)) {
+                return false;
+            }
+            int start = offset;
+            int end = offset + length;
+            while (start < end && (src[start] & 0xFF) <= ' ') {
+                start++;
+            }
+            while (end > start && (src[end - 1] & 0xFF) <= ' ') {
+                end--;
+            }
+            int trimmed = end - start;
+            if (size + trimmed > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + trimmed));
+            }
+            System.arraycopy(src, start, buffer, size, trimmed);
+            bounds[attributeId * 2] = size;
+            bounds[attributeId * 2 + 1] = size + trimmed;
+            size += trimmed;
+            return true;
+        }
+
+        public boolean set(int attributeId, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            return set(attributeId, bytes, 0, bytes.length);
+        }
+
+        public boolean has(int attributeId) {
+            return isValidId(attributeId) && bounds[attributeId * 2] >= 0;
+        }
+
+        public void reset() {
+            size = 0;
+            Arrays.fill(bounds, -1);
+        }
+
+        /**
+         * @return 两个构建器中该属性都不存在，或值的字节相同
+         */
+        public boolean valueEquals(int attributeId, Builder other) {
+            if (has(attributeId) != other.has(attributeId)) {
+                return false;
+            }
+            if (!has(attributeId)) {
+                return true;
+            }
+            int start = bounds[attributeId * 2];
+            int otherStart = other.bounds[attributeId * 2];
+            int length = bounds[attributeId * 2 + 1] - start;
+            if (other.bounds[attributeId * 2 + 1] - otherStart != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (buffer[start + i] != other.buffer[otherStart + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 生成只包含当前属性值的紧凑副本，重复设置留下的旧字节不会被复制
+         */
+        public AttributeBlock build() {
+            int total = 0;
+            for (int i = 0; i < ATTRIBUTE_COUNT; i++) {
+                if (bounds[i * 2] >= 0) {
+                    total += bounds[i * 2 + 1] - bounds[i * 2];
+                }
+            }
+            if (total == 0 && isEmpty()) {
+                return EMPTY;
+            }
+
+            byte[] data = new byte[total];
+            int[] compactBounds = emptyBounds();
+            int pos = 0;
+            for (int i = 0; i < ATTRIBUTE_COUNT; i++) {
+                int start = bounds[i * 2];
+                if (start < 0) {
+                    continue;
+                }
+                int length = bounds[i * 2 + 1] - start;
+                System.arraycopy(buffer, start, data, pos, length);
+                compactBounds[i * 2] = pos;
+                compactBounds[i * 2 + 1] = pos + length;
+                pos += length;
+            }
+            return new AttributeBlock(data, compactBounds);
+        }
+
+        /**
+         * @return 没有设置任何属性时返回 true
+         */
+        public boolean isEmpty() {
+            for (int i = 0; i < ATTRIBUTE_COUNT; i++) {
+                if (bounds[i * 2] >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
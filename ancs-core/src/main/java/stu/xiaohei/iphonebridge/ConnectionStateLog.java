@@ -0,0 +1,106 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 连接状态与最近的状态变化
+ * 每次变化打包为一个 long（时间、GATT 状态码、连接状态）写入原子数组，读写都不加锁
+ */
+public class ConnectionStateLog {
+    public static final int STATE_IDLE = 0;
+    public static final int STATE_CONNECTING = 1;
+    public static final int STATE_CONNECTED = 2;
+    // 已发现 ANCS 服务，正在启用 Data Source / Notification Source 通知
+    public static final int STATE_SUBSCRIBING = 3;
+    public static final int STATE_READY = 4;
+    // 连接断开，等待自动重连
+    public static final int STATE_DISCONNECTED = 5;
+
+    private static final String[] STATE_NAMES = {
+        "IDLE", "CONNECTING", "CONNECTED", "SUBSCRIBING", "READY", "DISCONNECTED"
+    };
+    private static final int HISTORY_SIZE = 32;
+
+    // 当前状态，与历史记录格式相同
+    private final AtomicLong current = new AtomicLong(pack(0, 0, STATE_IDLE));
+    private final AtomicLongArray history = new AtomicLongArray(HISTORY_SIZE);
+    private final AtomicLong transitions = new AtomicLong();
+
+    public static String stateName(int state) {
+        return state >= 0 && state < STATE_NAMES.length ? STATE_NAMES[state] : "?";
+    }
+
+    /**
+     * 时间占高 40 位，GATT 状态码 16 位，连接状态 8 位
+     */
+    private static long pack(long timeMillis, int status, int state) {
+        return timeMillis << 24 | (long) (status & 0xFFFF) << 8 | (state & 0xFF);
+    }
+
+    private static long timeOf(long packed) {
+        return packed >>> 24;
+    }
+
+    private static int statusOf(long packed) {
+        return (int) (packed >>> 8) & 0xFFFF;
+    }
+
+    private static int stateOf(long packed) {
+        return (int) packed & 0xFF;
+    }
+
+    /**
+     * @param status 触发变化的 GATT 状态码，没有时为 0
+     * @param nowMillis 单调时间，应用中为 SystemClock.elapsedRealtime
+     */
+    public void transition(int state, int status, long nowMillis) {
+        long packed = pack(nowMillis, status, state);
+        current.set(packed);
+        long index = transitions.getAndIncrement();
+        history.set((int) (index % HISTORY_SIZE), packed);
+    }
+
+    public int getState() {
+        return stateOf(current.get());
+    }
+
+    public long getStateSinceMillis() {
+        return timeOf(current.get());
+    }
+
+    public long getTransitionCount() {
+        return transitions.get();
+    }
+
+    /**
+     * 最近的状态变化，由旧到新，每行：距今毫秒数、状态、GATT 状态码
+     */
+    public String formatHistory(long nowMillis) {
+        StringBuilder sb = new StringBuilder(HISTORY_SIZE * 32);
+        long end = transitions.get();
+        for (long i = Math.max(0, end - HISTORY_SIZE); i < end; i++) {
+            long packed = history.get((int) (i % HISTORY_SIZE));
+            sb.append(String.format(Locale.US, "-%dms %s status=%d\n",
+                nowMillis - timeOf(packed), stateName(stateOf(packed)), statusOf(packed)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 单行形式，例如 "CONNECTING@-5012,CONNECTED@-4870"，用于紧凑输出
+     */
+    public String formatHistoryCompact(long nowMillis) {
+        StringBuilder sb = new StringBuilder(HISTORY_SIZE * 20);
+        long end = transitions.get();
+        for (long i = Math.max(0, end - HISTORY_SIZE); i < end; i++) {
+            long packed = history.get((int) (i % HISTORY_SIZE));
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(stateName(stateOf(packed))).append("@-").append(nowMillis - timeOf(packed));
+        }
+        return sb.toString();
+    }
+}
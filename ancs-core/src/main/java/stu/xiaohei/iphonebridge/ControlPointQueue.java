@@ -0,0 +1,183 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.ArrayDeque;
+
+/**
+ * Control Point 写入队列
+ * GATT 同一时间只能有一个未完成的写操作，这里按顺序逐条写入，收到写入回调后再发送下一条。
+ * 写入回调一直不来时（蓝牙栈丢失回调），看门狗以 STATUS_TIMEOUT 结束该命令并继续写入下一条，
+ * 避免队列永久停住
+ */
+public class ControlPointQueue {
+    private static final String TAG = "ControlPointQueue";
+
+    // 写入请求被蓝牙栈直接拒绝（例如连接已断开）
+    public static final int STATUS_WRITE_REJECTED = -1;
+    // 连接断开时仍在排队的命令
+    public static final int STATUS_DISCONNECTED = -2;
+    // 写入后超过 WRITE_TIMEOUT_MS 没有写入回调
+    public static final int STATUS_TIMEOUT = -3;
+
+    public static final long WRITE_TIMEOUT_MS = 3000;
+
+    public interface Writer {
+        /**
+         * @return 写入请求是否已被蓝牙栈接受
+         */
+        boolean write(byte[] command);
+    }
+
+    public interface Callback {
+        /**
+         * @param status GATT 状态，0 表示成功，ANCS 错误码为 0xA0~0xA3
+         */
+        void onWriteComplete(byte[] command, int status);
+    }
+
+    private static class Command {
+        final byte[] payload;
+        final Callback callback;
+
+        Command(byte[] payload, Callback callback) {
+            this.payload = payload;
+            this.callback = callback;
+        }
+    }
+
+    private final Writer writer;
+    private final AncsSession.Scheduler scheduler;
+    private final Runnable watchdog = this::onWriteTimeout;
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    private Command inFlight;
+    // 排队中与正在写入的命令数，只在持有锁时修改，诊断读取不加锁
+    private volatile int depth = 0;
+    // 只在持有锁时修改，诊断读取不加锁
+    private volatile long timeoutCount = 0;
+
+    /**
+     * @param scheduler 运行写入看门狗
+     */
+    public ControlPointQueue(Writer writer, AncsSession.Scheduler scheduler) {
+        this.writer = writer;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param callback 可为 null
+     */
+    public void enqueue(byte[] command, Callback callback) {
+        synchronized (this) {
+            queue.add(new Command(command, callback));
+            depth++;
+        }
+        issueNext();
+    }
+
+    /**
+     * 在 onCharacteristicWrite 中调用
+     */
+    public void onWriteComplete(int status) {
+        complete(status);
+    }
+
+    /**
+     * 看门狗到期：正在写入的命令以 STATUS_TIMEOUT 回调，之后迟到的写入回调会算到下一条命令上，
+     * 但这时链路通常已经异常，很快会断开并清空队列
+     */
+    private void onWriteTimeout() {
+        Command stalled;
+        synchronized (this) {
+            stalled = inFlight;
+            if (stalled == null) {
+                return;
+            }
+            inFlight = null;
+            depth--;
+            timeoutCount++;
+        }
+        AncsLog.w(TAG, "Control Point write timed out after " + WRITE_TIMEOUT_MS + "ms");
+        if (stalled.callback != null) {
+            stalled.callback.onWriteComplete(stalled.payload, STATUS_TIMEOUT);
+        }
+        issueNext();
+    }
+
+    private void complete(int status) {
+        Command done;
+        synchronized (this) {
+            done = inFlight;
+            inFlight = null;
+            if (done != null) {
+                depth--;
+            }
+            // 在锁内移除，不会误删之后 issueNext 为下一条命令安排的看门狗
+            scheduler.removeCallbacks(watchdog);
+        }
+        if (done != null && done.callback != null) {
+            done.callback.onWriteComplete(done.payload, status);
+        }
+        issueNext();
+    }
+
+    /**
+     * 连接断开时清空队列，所有未完成的命令以 STATUS_DISCONNECTED 回调
+     */
+    public void clear() {
+        Command[] dropped;
+        synchronized (this) {
+            int size = queue.size() + (inFlight != null ? 1 : 0);
+            dropped = new Command[size];
+            int i = 0;
+            if (inFlight != null) {
+                dropped[i++] = inFlight;
+                inFlight = null;
+            }
+            while (!queue.isEmpty()) {
+                dropped[i++] = queue.poll();
+            }
+            depth = 0;
+            scheduler.removeCallbacks(watchdog);
+        }
+        for (Command command : dropped) {
+            if (command.callback != null) {
+                command.callback.onWriteComplete(command.payload, STATUS_DISCONNECTED);
+            }
+        }
+    }
+
+    /**
+     * @return 排队中与正在写入的命令数
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * @return 看门狗结束的写入数
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    private void issueNext() {
+        while (true) {
+            Command rejected;
+            synchronized (this) {
+                if (inFlight != null || queue.isEmpty()) {
+                    return;
+                }
+                Command next = queue.poll();
+                if (writer.write(next.payload)) {
+                    inFlight = next;
+                    scheduler.postDelayed(watchdog, WRITE_TIMEOUT_MS);
+                    return;
+                }
+                rejected = next;
+                depth--;
+            }
+            if (rejected.callback != null) {
+                rejected.callback.onWriteComplete(rejected.payload, STATUS_WRITE_REJECTED);
+            }
+        }
+    }
+}
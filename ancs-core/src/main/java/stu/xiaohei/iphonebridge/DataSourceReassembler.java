@@ -0,0 +1,171 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Arrays;
+
+/**
+ * Data Source 响应重组
+ * Get Notification Attributes 的响应超过 MTU 时由 iPhone 分成多个通知发送，后续分片不带命令与 UID 头。
+ * 这里按写入的请求记录每个 UID 请求的属性个数，把分片拼接到属性数量与长度都完整为止，再整体交给解析器。
+ * 响应按请求顺序到达，同一时间只有一个响应在拼接
+ */
+public class DataSourceReassembler {
+    private static final String TAG = "DataSourceReassembler";
+    // 命令 ID + 4 字节 UID
+    private static final int HEADER_BYTES = 5;
+    // 属性 ID + 2 字节长度
+    private static final int ATTRIBUTE_HEADER_BYTES = 3;
+    // 单个响应的上限，超过时视为数据错乱并丢弃
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024;
+
+    // UID -> (未完成的请求数 << 8) | 请求的属性个数
+    private final LongIntHashMap expected = new LongIntHashMap(32, 0);
+    private byte[] buffer = new byte[512];
+    private int length = 0;
+    private int attributeCount = 0;
+    // 只在持有锁时修改，读取不加锁
+    private volatile long dropped = 0;
+
+    /**
+     * 记录一个已写入的 Get Notification Attributes 命令，其他命令忽略
+     */
+    public synchronized void expect(byte[] command) {
+        int count = countAttributes(command);
+        if (count <= 0) {
+            return;
+        }
+        long key = uidKey(command, 1);
+        int pending = expected.get(key) >>> 8;
+        expected.put(key, (pending + 1) << 8 | count);
+    }
+
+    /**
+     * 命令写入失败，iPhone 不会发送对应的响应
+     */
+    public synchronized void cancel(byte[] command) {
+        if (countAttributes(command) > 0) {
+            release(uidKey(command, 1));
+        }
+    }
+
+    /**
+     * @return 完整的响应；响应尚未完整时返回 null。不是由 expect 记录的请求的响应原样返回
+     */
+    public synchronized byte[] offer(byte[] fragment) {
+        if (fragment == null) {
+            return null;
+        }
+        if (length == 0) {
+            if (fragment.length < HEADER_BYTES
+                || fragment[0] != NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES) {
+                return fragment;
+            }
+            attributeCount = release(uidKey(fragment, 1));
+            if (attributeCount == 0) {
+                return fragment;
+            }
+        }
+
+        if (length + fragment.length > MAX_RESPONSE_BYTES) {
+            AncsLog.w(TAG, "Data Source response exceeds " + MAX_RESPONSE_BYTES + " bytes, dropping");
+            dropped++;
+            length = 0;
+            return null;
+        }
+        if (length + fragment.length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + fragment.length));
+        }
+        System.arraycopy(fragment, 0, buffer, length, fragment.length);
+        length += fragment.length;
+
+        int end = completeLength();
+        if (end < 0) {
+            return null;
+        }
+        if (end < length) {
+            AncsLog.w(TAG, "Discarding " + (length - end) + " trailing bytes after response");
+        }
+        length = 0;
+        return Arrays.copyOf(buffer, end);
+    }
+
+    /**
+     * 连接断开时调用，丢弃拼接到一半的响应与所有未完成的请求
+     */
+    public synchronized void reset() {
+        if (length > 0) {
+            dropped++;
+        }
+        length = 0;
+        expected.clear();
+    }
+
+    /**
+     * @return 因数据错乱或断开而丢弃的不完整响应数
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * @return 正在拼接的字节数，没有未完成的响应时为 0
+     */
+    public synchronized int getBufferedBytes() {
+        return length;
+    }
+
+    private int release(long key) {
+        int value = expected.get(key);
+        if (value == 0) {
+            return 0;
+        }
+        int pending = (value >>> 8) - 1;
+        if (pending <= 0) {
+            expected.remove(key);
+        } else {
+            expected.put(key, pending << 8 | (value & 0xFF));
+        }
+        return value & 0xFF;
+    }
+
+    /**
+     * @return 缓冲区中完整响应的长度，不完整时返回 -1
+     */
+    private int completeLength() {
+        int pos = HEADER_BYTES;
+        for (int i = 0; i < attributeCount; i++) {
+            if (pos + ATTRIBUTE_HEADER_BYTES > length) {
+                return -1;
+            }
+            int valueLength = (buffer[pos + 1] & 0xFF) | (buffer[pos + 2] & 0xFF) << 8;
+            pos += ATTRIBUTE_HEADER_BYTES + valueLength;
+            if (pos > length) {
+                return -1;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * 按 ANCS 规范，只有标题、副标题与正文带 2 字节最大长度参数
+     * @return 命令请求的属性个数，不是 Get Notification Attributes 命令时返回 0
+     */
+    static int countAttributes(byte[] command) {
+        if (command == null || command.length <= HEADER_BYTES
+            || command[0] != NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES) {
+            return 0;
+        }
+        int count = 0;
+        int pos = HEADER_BYTES;
+        while (pos < command.length) {
+            if (NotificationHandler.hasMaxLength(command[pos++])) {
+                pos += 2;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static long uidKey(byte[] data, int offset) {
+        return NotificationHandler.readUid(data, offset) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,43 @@
+package stu.xiaohei.iphonebridge;
+
+/**
+ * 对 ANCS 所用 GATT 操作的抽象
+ * 应用中由 BluetoothGatt 实现，在 JVM 上由模拟的 iPhone（ancs-sim）实现，AncsSession 只通过它与外设交互
+ */
+public interface GattTransport {
+
+    /**
+     * 外设事件，由传输层在其回调线程上调用
+     */
+    interface Listener {
+        /**
+         * 链路已建立，尚未启用通知
+         */
+        void onConnected();
+
+        /**
+         * Data Source 与 Notification Source 通知均已启用，iPhone 随后开始重放已有通知
+         */
+        void onReady();
+
+        void onDisconnected();
+
+        void onNotificationSource(byte[] data);
+
+        /**
+         * @param data 一个 Data Source 通知，长响应会按 MTU 分成多个
+         */
+        void onDataSource(byte[] data);
+
+        /**
+         * @param status GATT 状态，0 表示成功
+         */
+        void onControlPointWriteComplete(int status);
+    }
+
+    /**
+     * 发起一次 Control Point 写入，结果通过 Listener.onControlPointWriteComplete 返回
+     * @return 写入请求是否已被接受
+     */
+    boolean writeControlPoint(byte[] command);
+}
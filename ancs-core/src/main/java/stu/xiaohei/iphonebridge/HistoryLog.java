@@ -0,0 +1,522 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 只追加的二进制通知历史日志
+ * 调用方线程只把记录复制进预先分配的环形缓冲区，不分配内存也不做 I/O；
+ * 后台写线程把记录写入内存映射的日志段，定期 force 落盘，按大小和时间轮转日志段。
+ *
+ * 记录格式（小端序）：
+ * int 记录总长度（最后写入，为 0 表示段结束）| byte 版本 | byte eventId | byte eventFlags | byte categoryId |
+ * int UID | long 写入时间 | long 首次收到时间 | 若干属性：byte 属性 ID, short 长度, UTF-8 字节
+ */
+public class HistoryLog {
+    private static final String TAG = "HistoryLog";
+
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 28;
+    // 单条记录上限，超出的属性按 UTF-8 字符边界截断
+    public static final int MAX_RECORD_SIZE = 4096;
+
+    private static final int RING_CAPACITY = 256 * 1024;
+    private static final int RING_MASK = RING_CAPACITY - 1;
+    private static final long FORCE_INTERVAL_NANOS = 2_000_000_000L;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_AGE_MS = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    /**
+     * 回放时复用的记录，只在 onRecord 期间有效
+     */
+    public static final class Record {
+        public byte eventId;
+        public byte eventFlags;
+        public byte categoryId;
+        public int rawUid;
+        public long timeMillis;
+        public long receivedAt;
+        public final AttributeBlock.Builder attributes = new AttributeBlock.Builder();
+    }
+
+    public interface Visitor {
+        /**
+         * @return false 停止回放
+         */
+        boolean onRecord(Record record);
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final long segmentAgeMs;
+    private final int maxSegments;
+
+    // 环形缓冲区：tail 由写入方推进（持有 producerLock），head 由后台线程推进
+    private final byte[] ring = new byte[RING_CAPACITY];
+    private final Object producerLock = new Object();
+    private volatile long head = 0;
+    private volatile long tail = 0;
+
+    private volatile Thread writerThread;
+    private volatile boolean running = false;
+
+    // 以下只在写线程中访问
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private long segmentStartMillis;
+    private boolean dirty = false;
+    private long lastForceNanos;
+
+    // 当前段名称和已提交的长度，回放时据此读取正在写入的段
+    private volatile String activeSegmentName;
+    private volatile int activeLimit;
+
+    private final AtomicLong appendedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong rotationCount = new AtomicLong();
+
+    public HistoryLog(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SEGMENT_AGE_MS, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public HistoryLog(File directory, int segmentSize, long segmentAgeMs, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segmentAgeMs = segmentAgeMs;
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * 启动后台写线程，打开日志段的 I/O 也在该线程中进行；启动前追加的记录会先留在缓冲区中
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread thread = new Thread(this::writerLoop, "HistoryLog");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        writerThread = thread;
+        thread.start();
+    }
+
+    /**
+     * 写完缓冲区中的记录后停止，最多等待 timeoutMs
+     */
+    public synchronized void stop(long timeoutMs) {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread thread = writerThread;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+    }
+
+    /**
+     * 追加一条事件记录，可在任意线程调用；不分配内存，缓冲区已满时丢弃并计数
+     * @return 是否已放入缓冲区
+     */
+    public boolean append(NotificationSnapshot notification, long nowMillis) {
+        AttributeBlock attributes = notification.getAttributes();
+        int length = HEADER_SIZE;
+        for (int i = 0; i < AttributeBlock.ATTRIBUTE_COUNT; i++) {
+            if (attributes.has(i)) {
+                length += 3 + attributes.length(i);
+            }
+        }
+        boolean truncated = length > MAX_RECORD_SIZE;
+        if (truncated) {
+            length = MAX_RECORD_SIZE;
+        }
+
+        synchronized (producerLock) {
+            long start = tail;
+            if (RING_CAPACITY - (start - head) < length) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+
+            long pos = start;
+            pos = putInt(pos, length);
+            pos = putByte(pos, VERSION);
+            pos = putByte(pos, notification.getEventId());
+            pos = putByte(pos, notification.getEventFlags());
+            pos = putByte(pos, notification.getCategoryId());
+            pos = putInt(pos, notification.getRawUid());
+            pos = putLong(pos, nowMillis);
+            pos = putLong(pos, notification.getReceivedAt());
+
+            long end = start + length;
+            for (int i = 0; i < AttributeBlock.ATTRIBUTE_COUNT && end - pos > 3; i++) {
+                if (!attributes.has(i)) {
+                    continue;
+                }
+                int valueLength = attributes.length(i);
+                long lengthPos = pos + 1;
+                pos = putByte(pos, (byte) i);
+                pos += 2;
+                int available = (int) Math.min(valueLength, end - pos);
+                int written = copyAttribute(attributes, i, pos, available, available < valueLength);
+                putShort(lengthPos, written);
+                pos += written;
+            }
+            // 截断时实际写入的长度可能小于预留长度
+            if (truncated && pos != end) {
+                putInt(start, (int) (pos - start));
+                end = pos;
+            }
+            tail = end;
+        }
+        appendedCount.incrementAndGet();
+        Thread thread = writerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    // ---- 环形缓冲区读写（小端序），位置对 RING_MASK 取模 ----
+
+    private long putByte(long pos, byte value) {
+        ring[(int) (pos & RING_MASK)] = value;
+        return pos + 1;
+    }
+
+    private long putShort(long pos, int value) {
+        pos = putByte(pos, (byte) value);
+        return putByte(pos, (byte) (value >>> 8));
+    }
+
+    private long putInt(long pos, int value) {
+        pos = putShort(pos, value);
+        return putShort(pos, value >>> 16);
+    }
+
+    private long putLong(long pos, long value) {
+        pos = putInt(pos, (int) value);
+        return putInt(pos, (int) (value >>> 32));
+    }
+
+    private int getInt(long pos) {
+        return (ring[(int) (pos & RING_MASK)] & 0xFF)
+            | (ring[(int) ((pos + 1) & RING_MASK)] & 0xFF) << 8
+            | (ring[(int) ((pos + 2) & RING_MASK)] & 0xFF) << 16
+            | (ring[(int) ((pos + 3) & RING_MASK)] & 0xFF) << 24;
+    }
+
+    /**
+     * 把属性复制进环形缓冲区，跨越末尾时分两段复制
+     * @param truncate 需要截断时回退到 UTF-8 字符边界
+     * @return 写入的字节数
+     */
+    private int copyAttribute(AttributeBlock attributes, int attributeId, long pos, int length, boolean truncate) {
+        if (length <= 0) {
+            return 0;
+        }
+        int offset = (int) (pos & RING_MASK);
+        int first = Math.min(length, RING_CAPACITY - offset);
+        attributes.copyRange(attributeId, 0, ring, offset, first);
+        if (first < length) {
+            attributes.copyRange(attributeId, first, ring, 0, length - first);
+        }
+        if (truncate) {
+            // 去掉被截断的多字节字符的后续字节与首字节
+            int end = length;
+            while (end > 0 && (ring[(int) ((pos + end - 1) & RING_MASK)] & 0xC0) == 0x80) {
+                end--;
+            }
+            if (end > 0 && (ring[(int) ((pos + end - 1) & RING_MASK)] & 0x80) != 0) {
+                end--;
+            }
+            return end;
+        }
+        return length;
+    }
+
+    // ---- 后台写线程 ----
+
+    private void writerLoop() {
+        try {
+            openLatestSegment();
+        } catch (IOException e) {
+            AncsLog.e(TAG, "Failed to open history segment", e);
+        }
+        lastForceNanos = System.nanoTime();
+
+        while (true) {
+            boolean stopping = !running;
+            drain();
+
+            long now = System.nanoTime();
+            if (dirty && (stopping || now - lastForceNanos >= FORCE_INTERVAL_NANOS)) {
+                segment.force();
+                dirty = false;
+                lastForceNanos = now;
+            }
+            if (segment != null && activeLimit > 0
+                    && System.currentTimeMillis() - segmentStartMillis >= segmentAgeMs) {
+                rotate();
+            }
+            if (stopping) {
+                break;
+            }
+            LockSupport.parkNanos(this, FORCE_INTERVAL_NANOS);
+        }
+        closeSegment();
+    }
+
+    private void drain() {
+        long h = head;
+        long t = tail;
+        while (h < t) {
+            int length = getInt(h);
+            if (!ensureCapacity(length)) {
+                // 无法写入时丢弃，避免缓冲区被占满
+                droppedCount.incrementAndGet();
+                h += length;
+                head = h;
+                continue;
+            }
+
+            int start = activeLimit;
+            // 先写记录内容，最后写长度，崩溃时不会留下半条记录
+            int bodyOffset = (int) ((h + 4) & RING_MASK);
+            int bodyLength = length - 4;
+            int first = Math.min(bodyLength, RING_CAPACITY - bodyOffset);
+            segment.position(start + 4);
+            segment.put(ring, bodyOffset, first);
+            if (first < bodyLength) {
+                segment.put(ring, 0, bodyLength - first);
+            }
+            segment.putInt(start, length);
+
+            activeLimit = start + length;
+            dirty = true;
+            writtenCount.incrementAndGet();
+            writtenBytes.addAndGet(length);
+            h += length;
+            head = h;
+        }
+    }
+
+    /**
+     * 当前段放不下时轮转
+     * @return 是否有可写入的段
+     */
+    private boolean ensureCapacity(int length) {
+        // 段末尾至少保留 4 字节的 0 作为结束标记
+        if (segment != null && activeLimit + length + 4 <= segmentSize) {
+            return true;
+        }
+        rotate();
+        return segment != null && activeLimit + length + 4 <= segmentSize;
+    }
+
+    private void rotate() {
+        closeSegment();
+        try {
+            openSegment(new File(directory, segmentName(System.currentTimeMillis())), true);
+            rotationCount.incrementAndGet();
+            pruneSegments();
+        } catch (IOException e) {
+            AncsLog.e(TAG, "Failed to rotate history segment", e);
+        }
+    }
+
+    private static String segmentName(long startMillis) {
+        // 定长数字，文件名排序即时间顺序
+        return String.format(Locale.US, "%s%013d%s", SEGMENT_PREFIX, startMillis, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentStart(String name) {
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private File[] listSegments() {
+        File[] files = directory.listFiles((dir, name) ->
+            name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return files;
+    }
+
+    /**
+     * 重启后继续写最新的段，已过期或已写满时新建
+     */
+    private void openLatestSegment() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File[] segments = listSegments();
+        long now = System.currentTimeMillis();
+        if (segments.length > 0) {
+            File latest = segments[segments.length - 1];
+            if (now - segmentStart(latest.getName()) < segmentAgeMs && latest.length() == segmentSize) {
+                openSegment(latest, false);
+                if (activeLimit + HEADER_SIZE + 4 <= segmentSize) {
+                    return;
+                }
+                closeSegment();
+            }
+        }
+        openSegment(new File(directory, segmentName(now)), true);
+        pruneSegments();
+    }
+
+    private void openSegment(File file, boolean created) throws IOException {
+        segmentFile = new RandomAccessFile(file, "rw");
+        if (created || segmentFile.length() != segmentSize) {
+            segmentFile.setLength(segmentSize);
+        }
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segmentStartMillis = segmentStart(file.getName());
+        activeLimit = created ? 0 : scanEnd(segment, segmentSize);
+        activeSegmentName = file.getName();
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        if (dirty) {
+            segment.force();
+            dirty = false;
+        }
+        try {
+            segmentFile.close();
+        } catch (IOException e) {
+            AncsLog.w(TAG, "Failed to close history segment", e);
+        }
+        segment = null;
+        segmentFile = null;
+        activeSegmentName = null;
+        activeLimit = 0;
+    }
+
+    private void pruneSegments() {
+        File[] segments = listSegments();
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            if (!segments[i].delete()) {
+                AncsLog.w(TAG, "Failed to delete " + segments[i].getName());
+            }
+        }
+    }
+
+    /**
+     * @return 段中已提交记录的结束位置
+     */
+    private static int scanEnd(MappedByteBuffer buffer, int limit) {
+        int pos = 0;
+        while (pos + 4 <= limit) {
+            int length = buffer.getInt(pos);
+            if (length < HEADER_SIZE || pos + length > limit) {
+                break;
+            }
+            pos += length;
+        }
+        return pos;
+    }
+
+    // ---- 回放 ----
+
+    /**
+     * 按时间顺序顺序读取所有已提交的记录，可在任意线程调用
+     * @return 回放的记录数
+     */
+    public int replay(Visitor visitor) throws IOException {
+        Record record = new Record();
+        int count = 0;
+        for (File file : listSegments()) {
+            // 正在写入的段只读取已提交的部分；读取期间发生轮转时该段已完整
+            String active = activeSegmentName;
+            int committed = activeLimit;
+            boolean isActive = file.getName().equals(active) && active.equals(activeSegmentName);
+            int limit = isActive ? committed : (int) Math.min(file.length(), segmentSize);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                limit = (int) Math.min(limit, raf.length());
+                if (limit <= 0) {
+                    continue;
+                }
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, limit);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                int pos = 0;
+                byte[] value = new byte[MAX_RECORD_SIZE];
+                while (pos + HEADER_SIZE <= limit) {
+                    int length = buffer.getInt(pos);
+                    if (length < HEADER_SIZE || pos + length > limit) {
+                        break;
+                    }
+                    record.eventId = buffer.get(pos + 5);
+                    record.eventFlags = buffer.get(pos + 6);
+                    record.categoryId = buffer.get(pos + 7);
+                    record.rawUid = buffer.getInt(pos + 8);
+                    record.timeMillis = buffer.getLong(pos + 12);
+                    record.receivedAt = buffer.getLong(pos + 20);
+                    record.attributes.reset();
+                    int attrPos = pos + HEADER_SIZE;
+                    int end = pos + length;
+                    while (attrPos + 3 <= end) {
+                        int attributeId = buffer.get(attrPos);
+                        int valueLength = buffer.getShort(attrPos + 1) & 0xFFFF;
+                        attrPos += 3;
+                        if (attrPos + valueLength > end) {
+                            break;
+                        }
+                        buffer.position(attrPos);
+                        buffer.get(value, 0, valueLength);
+                        record.attributes.set(attributeId, value, 0, valueLength);
+                        attrPos += valueLength;
+                    }
+                    count++;
+                    if (!visitor.onRecord(record)) {
+                        return count;
+                    }
+                    pos = end;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getAppendedCount() {
+        return appendedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public String formatStats() {
+        return String.format(Locale.US, "appended=%d written=%d dropped=%d bytes=%d rotations=%d buffered=%d",
+            appendedCount.get(), writtenCount.get(), droppedCount.get(), writtenBytes.get(),
+            rotationCount.get(), tail - head);
+    }
+}
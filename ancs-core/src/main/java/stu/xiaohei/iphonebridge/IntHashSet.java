@@ -0,0 +1,91 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Arrays;
+
+/**
+ * int 的开放寻址哈希集合，线性探测，不装箱
+ * 只支持添加与查询，用于重连后一次性比对 UID 集合，清空后可重复使用
+ */
+public class IntHashSet {
+    private int[] keys;
+    private boolean[] used;
+    private int mask;
+    private int size = 0;
+
+    public IntHashSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(int key) {
+        // 32 位混合函数，打散连续的 UID
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        return key & mask;
+    }
+
+    public boolean contains(int key) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return 原来不存在时返回 true
+     */
+    public boolean add(int key) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = key;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int j = slot(oldKeys[i]);
+                while (used[j]) {
+                    j = (j + 1) & mask;
+                }
+                used[j] = true;
+                keys[j] = oldKeys[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数-线性分桶的延迟直方图（HDR 风格）
+ * 每个 2 的幂区间再线性分为 8 个子桶，相对误差不超过 12.5%；
+ * 桶数组预先分配，记录时只做原子自增，不加锁也不分配内存
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 小于该值的数值各占一个桶
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (magnitude - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return 桶的上界（包含）
+     */
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int offset = bucket - LINEAR_LIMIT;
+        int magnitude = offset / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int sub = offset % SUB_BUCKETS;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    /**
+     * 记录一个数值，单位由调用方决定（通常为微秒）
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+        long max = maxValue.get();
+        while (value > max && !maxValue.compareAndSet(max, value)) {
+            max = maxValue.get();
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    public long getMean() {
+        long count = totalCount.get();
+        return count > 0 ? totalValue.get() / count : 0;
+    }
+
+    /**
+     * @param percentile 0~100
+     * @return 该百分位所在桶的上界，没有数据时返回 0
+     */
+    public long getPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    public String format() {
+        return String.format(Locale.US, "n=%d mean=%d p50=%d p90=%d p99=%d max=%d",
+            getCount(), getMean(), getPercentile(50), getPercentile(90), getPercentile(99), getMax());
+    }
+}
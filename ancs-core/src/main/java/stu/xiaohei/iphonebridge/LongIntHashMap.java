@@ -0,0 +1,142 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Arrays;
+
+/**
+ * long 到 int 的开放寻址哈希表
+ * 线性探测，删除时回移后续元素而不留墓碑，查找、插入、删除均为 O(1) 且不装箱
+ */
+public class LongIntHashMap {
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int size = 0;
+
+    /**
+     * @param expectedSize 预期元素数量
+     * @param missingValue 键不存在时 get/remove 返回的值
+     */
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        // 64 位混合函数，打散连续的键
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    private int indexOf(long key) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int get(long key) {
+        int i = indexOf(key);
+        return i >= 0 ? values[i] : missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return 原来的值，不存在时返回 missingValue
+     */
+    public int put(long key, int value) {
+        int i = slot(key);
+        while (used[i]) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        used[i] = true;
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            rehash(keys.length << 1);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @return 被删除的值，不存在时返回 missingValue
+     */
+    public int remove(long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return missingValue;
+        }
+        int removed = values[i];
+        // 回移同一探测链上的后续元素
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!used[j]) {
+                break;
+            }
+            int k = slot(keys[j]);
+            boolean stay = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+            if (!stay) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        used[i] = false;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int j = slot(oldKeys[i]);
+                while (used[j]) {
+                    j = (j + 1) & mask;
+                }
+                used[j] = true;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 已显示通知的簿记，与显示方式无关：按 NotificationIdAllocator 分配的 ID 保存每条通知的条目，
+ * 按应用分组并为分组分配摘要 ID，取消与批量取消时释放对应的 ID、条目与分组。
+ * 实际的发送与取消交给 Poster（应用中为 NotificationRenderer，ancs-sim 中为浸泡测试）。
+ * 不加锁，由调用方保证同一时间只有一个线程使用
+ * @param <V> Poster 为每个条目保存的显示对象
+ */
+public class NotificationBook<V> {
+    private static final String GROUP_PREFIX = "ancs_group_";
+
+    /**
+     * 单条通知的条目，title 等字段由 Poster 在发送时更新，用于判断内容是否变化与生成摘要
+     */
+    public static final class Entry<V> {
+        public final int id;
+        public final V view;
+        public int rawUid;
+        public Group<V> group;
+        public String title;
+        public String content;
+        public String positiveLabel;
+        public String negativeLabel;
+
+        Entry(int id, V view) {
+            this.id = id;
+            this.view = view;
+        }
+    }
+
+    /**
+     * 同一应用的通知分组，成员按加入顺序排列
+     */
+    public static final class Group<V> {
+        public final String key;
+        public final int summaryId;
+        public final String appId;
+        public final List<Entry<V>> members = new ArrayList<>();
+        // 摘要是否已发送，由 Poster 设置
+        public boolean summaryPosted;
+
+        Group(String key, int summaryId, String appId) {
+            this.key = key;
+            this.summaryId = summaryId;
+            this.appId = appId;
+        }
+    }
+
+    /**
+     * 通知的实际发送与取消
+     */
+    public interface Poster<V> {
+        /**
+         * 为新条目创建显示对象，之后同一 ID 的通知一直复用
+         */
+        V createView(int id, NotificationSnapshot info);
+
+        /**
+         * 条目加入了 entry.group
+         */
+        void onGroupAssigned(Entry<V> entry);
+
+        /**
+         * 取消 ID 对应的通知；从检查点恢复的通知可能没有条目
+         */
+        void cancel(int id);
+
+        /**
+         * 条目已从簿记中移除
+         */
+        void onRemoved(Entry<V> entry);
+
+        /**
+         * 分组成员有变化且仍有成员
+         */
+        void onGroupChanged(Group<V> group);
+
+        /**
+         * 分组已没有成员，摘要 ID 随后释放
+         */
+        void onGroupRemoved(Group<V> group);
+    }
+
+    private final NotificationIdAllocator idAllocator;
+    private final Poster<V> poster;
+    // 以通知 ID 为键
+    private final Map<Integer, Entry<V>> entries = new HashMap<>();
+    private final Map<String, Group<V>> groups = new HashMap<>();
+
+    public NotificationBook(NotificationIdAllocator idAllocator, Poster<V> poster) {
+        this.idAllocator = idAllocator;
+        this.poster = poster;
+    }
+
+    /**
+     * 为要发送的通知分配（或沿用）ID 并返回其条目，第一次出现时由 Poster 创建显示对象
+     */
+    public Entry<V> entryFor(NotificationSnapshot info) {
+        int id = idAllocator.allocate(info.getRawUid());
+        Entry<V> entry = entries.get(id);
+        if (entry == null) {
+            entry = new Entry<>(id, poster.createView(id, info));
+            entries.put(id, entry);
+        }
+        entry.rawUid = info.getRawUid();
+        return entry;
+    }
+
+    /**
+     * 重放的已有通知仍在显示，只把 ID 沿用到新的会话纪元
+     */
+    public void retain(int rawUid) {
+        idAllocator.allocate(rawUid);
+    }
+
+    /**
+     * 按应用加入分组，应用变化时先离开原分组
+     */
+    public void assignGroup(Entry<V> entry, String appId) {
+        String key = GROUP_PREFIX + (appId != null ? appId : "unknown");
+        if (entry.group != null) {
+            if (entry.group.key.equals(key)) {
+                return;
+            }
+            leaveGroup(entry);
+        }
+        Group<V> group = groups.get(key);
+        if (group == null) {
+            group = new Group<>(key, idAllocator.allocateId(), appId);
+            groups.put(key, group);
+        }
+        group.members.add(entry);
+        entry.group = group;
+        poster.onGroupAssigned(entry);
+    }
+
+    /**
+     * 取消通知并释放 ID 与条目
+     * @return 该 UID 没有显示中的通知时返回 false
+     */
+    public boolean cancel(int rawUid) {
+        int id = idAllocator.release(rawUid);
+        if (id == NotificationIdAllocator.NO_ID) {
+            return false;
+        }
+        poster.cancel(id);
+        Entry<V> entry = entries.remove(id);
+        if (entry != null) {
+            poster.onRemoved(entry);
+            if (entry.group != null) {
+                leaveGroup(entry);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 批量取消之前的会话纪元中显示、本次连接中已不存在的通知，受影响的分组在最后各通知 Poster 一次
+     * @return 取消的通知数
+     */
+    public int cancelStale(List<NotificationSnapshot> stale) {
+        int cancelled = 0;
+        Set<Group<V>> touched = new LinkedHashSet<>();
+        for (NotificationSnapshot info : stale) {
+            int id = idAllocator.releasePrevious(info.getRawUid());
+            if (id == NotificationIdAllocator.NO_ID) {
+                continue;
+            }
+            poster.cancel(id);
+            cancelled++;
+            Entry<V> entry = entries.remove(id);
+            if (entry == null) {
+                continue;
+            }
+            poster.onRemoved(entry);
+            if (entry.group != null) {
+                entry.group.members.remove(entry);
+                touched.add(entry.group);
+                entry.group = null;
+            }
+        }
+        for (Group<V> group : touched) {
+            updateGroup(group);
+        }
+        return cancelled;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    public int getGroupCount() {
+        return groups.size();
+    }
+
+    private void leaveGroup(Entry<V> entry) {
+        Group<V> group = entry.group;
+        entry.group = null;
+        group.members.remove(entry);
+        updateGroup(group);
+    }
+
+    private void updateGroup(Group<V> group) {
+        if (group.members.isEmpty()) {
+            groups.remove(group.key);
+            poster.onGroupRemoved(group);
+            idAllocator.freeId(group.summaryId);
+        } else {
+            poster.onGroupChanged(group);
+        }
+    }
+}
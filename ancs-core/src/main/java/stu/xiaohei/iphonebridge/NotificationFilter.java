@@ -0,0 +1,400 @@
+package stu.xiaohei.iphonebridge;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 通知过滤管理类
+ * 支持关键字黑白名单和正则表达式过滤；设置的读写由 Store 提供，应用中保存在 SharedPreferences
+ */
+public class NotificationFilter {
+    private static final String TAG = "NotificationFilter";
+
+    // 过滤模式
+    public static final int MODE_WHITELIST = 0;  // 白名单模式：只显示匹配的
+    public static final int MODE_BLACKLIST = 1;  // 黑名单模式：隐藏匹配的
+
+    /**
+     * 过滤设置的持久化
+     */
+    public interface Store {
+        /**
+         * 通过 setter 把保存的设置写入 filter
+         */
+        void load(NotificationFilter filter);
+
+        void save(NotificationFilter filter);
+    }
+
+    // 进程内所有过滤器实例的检查与过滤次数（界面在设置变化后会重建过滤器），供诊断输出
+    private static final AtomicLong sCheckedCount = new AtomicLong();
+    private static final AtomicLong sFilteredCount = new AtomicLong();
+
+    private final Store mStore;
+    private boolean mFilterEnabled = false;
+    private int mFilterMode = MODE_BLACKLIST;
+    private Set<String> mWhitelist = new HashSet<>();
+    private Set<String> mBlacklist = new HashSet<>();
+    private boolean mRegexEnabled = false;
+    private String mRegexPattern = "";
+    private Pattern mCompiledPattern;
+
+    // 关键字的 UTF-8 编码，名单变化后在下次匹配时重新生成
+    private byte[][] mWhitelistBytes;
+    private byte[][] mBlacklistBytes;
+    // 标题 + " " + 内容的 UTF-8 字节，重复使用，因此字节匹配只能在同一线程调用
+    private byte[] mContentBuffer = new byte[512];
+
+    /**
+     * 不保存设置的过滤器，用于测试与基准
+     */
+    public NotificationFilter() {
+        this(null);
+    }
+
+    public NotificationFilter(Store store) {
+        mStore = store;
+        loadSettings();
+    }
+
+    /**
+     * 从 Store 加载设置
+     */
+    private void loadSettings() {
+        if (mStore != null) {
+            mStore.load(this);
+        }
+        invalidateKeywordBytes();
+
+        // 编译正则表达式
+        if (mRegexEnabled && !mRegexPattern.isEmpty()) {
+            try {
+                mCompiledPattern = Pattern.compile(mRegexPattern);
+            } catch (PatternSyntaxException e) {
+                AncsLog.e(TAG, "Invalid regex pattern: " + mRegexPattern, e);
+                mCompiledPattern = null;
+            }
+        }
+    }
+
+    /**
+     * 保存设置到 Store，并按新设置重新编译正则表达式
+     */
+    public void saveSettings() {
+        if (mStore != null) {
+            mStore.save(this);
+        }
+
+        // 重新编译正则表达式
+        if (mRegexEnabled && !mRegexPattern.isEmpty()) {
+            try {
+                mCompiledPattern = Pattern.compile(mRegexPattern);
+            } catch (PatternSyntaxException e) {
+                AncsLog.e(TAG, "Invalid regex pattern: " + mRegexPattern, e);
+                mCompiledPattern = null;
+            }
+        } else {
+            mCompiledPattern = null;
+        }
+    }
+
+    /**
+     * 检查通知是否应该被显示
+     * @param title 通知标题
+     * @param message 通知内容
+     * @return true表示应该显示，false表示应该过滤
+     */
+    public boolean shouldShowNotification(String title, String message) {
+        return count(matchesContent(title, message));
+    }
+
+    private boolean matchesContent(String title, String message) {
+        // 如果过滤未启用，显示所有通知
+        if (!mFilterEnabled) {
+            return true;
+        }
+
+        // 合并标题和内容用于匹配
+        String fullContent = (title != null ? title : "") + " " + (message != null ? message : "");
+
+        // 首先检查正则表达式过滤
+        if (mRegexEnabled && mCompiledPattern != null) {
+            boolean regexMatches = mCompiledPattern.matcher(fullContent).find();
+            if (AncsLog.isDebugEnabled()) {
+                AncsLog.d(TAG, "Regex match result: " + regexMatches + " for content: " + fullContent);
+            }
+
+            // 正则表达式在黑名单模式下：匹配则过滤
+            // 正则表达式在白名单模式下：匹配则显示
+            if (mFilterMode == MODE_BLACKLIST) {
+                if (regexMatches) {
+                    AncsLog.d(TAG, "Filtered by regex blacklist");
+                    return false;
+                }
+            } else {
+                if (!regexMatches) {
+                    AncsLog.d(TAG, "Filtered by regex whitelist");
+                    return false;
+                }
+                // 正则匹配通过，继续检查关键字
+            }
+        }
+
+        // 然后检查关键字过滤
+        if (mFilterMode == MODE_WHITELIST) {
+            // 白名单模式：必须包含白名单中的任意关键字
+            if (mWhitelist.isEmpty()) {
+                return true; // 白名单为空，显示所有
+            }
+            for (String keyword : mWhitelist) {
+                if (fullContent.contains(keyword)) {
+                    if (AncsLog.isDebugEnabled()) {
+                        AncsLog.d(TAG, "Matched whitelist keyword: " + keyword);
+                    }
+                    return true;
+                }
+            }
+            AncsLog.d(TAG, "Filtered by whitelist");
+            return false;
+        } else {
+            // 黑名单模式：不能包含黑名单中的任何关键字
+            for (String keyword : mBlacklist) {
+                if (fullContent.contains(keyword)) {
+                    if (AncsLog.isDebugEnabled()) {
+                        AncsLog.d(TAG, "Matched blacklist keyword: " + keyword);
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 直接在 UTF-8 字节上检查通知是否应该被显示，结果与 shouldShowNotification(title, message) 相同；
+     * 关键字匹配不解码字符串，只有启用正则表达式时才需要解码
+     * @param attributes 通知属性
+     * @return true表示应该显示，false表示应该过滤
+     */
+    public boolean shouldShowNotification(AttributeBlock attributes) {
+        return count(matchesContent(attributes));
+    }
+
+    private boolean matchesContent(AttributeBlock attributes) {
+        if (!mFilterEnabled) {
+            return true;
+        }
+
+        if (mRegexEnabled && mCompiledPattern != null) {
+            return matchesContent(
+                attributes.getString(NotificationHandler.ATTRIBUTE_ID_TITLE),
+                attributes.getString(NotificationHandler.ATTRIBUTE_ID_MESSAGE));
+        }
+
+        // UTF-8 是自同步编码，合法关键字的字节序列只会在字符边界上匹配，与 String.contains 等价
+        int length = fillContentBuffer(attributes);
+        ensureKeywordBytes();
+        if (mFilterMode == MODE_WHITELIST) {
+            if (mWhitelistBytes.length == 0) {
+                return true; // 白名单为空，显示所有
+            }
+            for (byte[] keyword : mWhitelistBytes) {
+                if (indexOf(mContentBuffer, length, keyword) >= 0) {
+                    return true;
+                }
+            }
+            AncsLog.d(TAG, "Filtered by whitelist");
+            return false;
+        } else {
+            for (byte[] keyword : mBlacklistBytes) {
+                if (indexOf(mContentBuffer, length, keyword) >= 0) {
+                    AncsLog.d(TAG, "Matched blacklist keyword");
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static boolean count(boolean show) {
+        sCheckedCount.incrementAndGet();
+        if (!show) {
+            sFilteredCount.incrementAndGet();
+        }
+        return show;
+    }
+
+    /**
+     * @return 进程启动以来检查过的通知数
+     */
+    public static long getCheckedCount() {
+        return sCheckedCount.get();
+    }
+
+    /**
+     * @return 进程启动以来被过滤掉的通知数
+     */
+    public static long getFilteredCount() {
+        return sFilteredCount.get();
+    }
+
+    private int fillContentBuffer(AttributeBlock attributes) {
+        int titleLength = attributes.length(NotificationHandler.ATTRIBUTE_ID_TITLE);
+        int messageLength = attributes.length(NotificationHandler.ATTRIBUTE_ID_MESSAGE);
+        int total = titleLength + 1 + messageLength;
+        if (total > mContentBuffer.length) {
+            mContentBuffer = new byte[Math.max(total, mContentBuffer.length * 2)];
+        }
+        int pos = attributes.copyTo(NotificationHandler.ATTRIBUTE_ID_TITLE, mContentBuffer, 0);
+        mContentBuffer[pos++] = ' ';
+        pos += attributes.copyTo(NotificationHandler.ATTRIBUTE_ID_MESSAGE, mContentBuffer, pos);
+        return pos;
+    }
+
+    private static int indexOf(byte[] content, int length, byte[] keyword) {
+        if (keyword.length == 0) {
+            return 0;
+        }
+        byte first = keyword[0];
+        int last = length - keyword.length;
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (content[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < keyword.length; j++) {
+                if (content[i + j] != keyword[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void invalidateKeywordBytes() {
+        mWhitelistBytes = null;
+        mBlacklistBytes = null;
+    }
+
+    private void ensureKeywordBytes() {
+        if (mWhitelistBytes == null) {
+            mWhitelistBytes = encode(mWhitelist);
+        }
+        if (mBlacklistBytes == null) {
+            mBlacklistBytes = encode(mBlacklist);
+        }
+    }
+
+    private static byte[][] encode(Set<String> keywords) {
+        byte[][] result = new byte[keywords.size()][];
+        int i = 0;
+        for (String keyword : keywords) {
+            result[i++] = keyword.getBytes(StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    // Getters and Setters
+    public boolean isFilterEnabled() {
+        return mFilterEnabled;
+    }
+
+    public void setFilterEnabled(boolean enabled) {
+        mFilterEnabled = enabled;
+    }
+
+    public int getFilterMode() {
+        return mFilterMode;
+    }
+
+    public void setFilterMode(int mode) {
+        mFilterMode = mode;
+    }
+
+    public Set<String> getWhitelist() {
+        return new HashSet<>(mWhitelist);
+    }
+
+    public void setWhitelist(Set<String> whitelist) {
+        mWhitelist = new HashSet<>(whitelist);
+        invalidateKeywordBytes();
+    }
+
+    public Set<String> getBlacklist() {
+        return new HashSet<>(mBlacklist);
+    }
+
+    public void setBlacklist(Set<String> blacklist) {
+        mBlacklist = new HashSet<>(blacklist);
+        invalidateKeywordBytes();
+    }
+
+    public boolean isRegexEnabled() {
+        return mRegexEnabled;
+    }
+
+    public void setRegexEnabled(boolean enabled) {
+        mRegexEnabled = enabled;
+    }
+
+    public String getRegexPattern() {
+        return mRegexPattern;
+    }
+
+    public void setRegexPattern(String pattern) {
+        mRegexPattern = pattern;
+    }
+
+    /**
+     * 添加关键字到白名单
+     */
+    public void addToWhitelist(String keyword) {
+        if (keyword != null && !keyword.trim().isEmpty()) {
+            mWhitelist.add(keyword.trim());
+            invalidateKeywordBytes();
+        }
+    }
+
+    /**
+     * 从白名单移除关键字
+     */
+    public void removeFromWhitelist(String keyword) {
+        mWhitelist.remove(keyword);
+        invalidateKeywordBytes();
+    }
+
+    /**
+     * 添加关键字到黑名单
+     */
+    public void addToBlacklist(String keyword) {
+        if (keyword != null && !keyword.trim().isEmpty()) {
+            mBlacklist.add(keyword.trim());
+            invalidateKeywordBytes();
+        }
+    }
+
+    /**
+     * 从黑名单移除关键字
+     */
+    public void removeFromBlacklist(String keyword) {
+        mBlacklist.remove(keyword);
+        invalidateKeywordBytes();
+    }
+
+    /**
+     * 验证正则表达式是否有效
+     */
+    public static boolean isValidRegex(String regex) {
+        try {
+            Pattern.compile(regex);
+            return true;
+        } catch (PatternSyntaxException e) {
+            return false;
+        }
+    }
+}
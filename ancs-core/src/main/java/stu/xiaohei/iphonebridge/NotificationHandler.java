@@ -0,0 +1,477 @@
+package stu.xiaohei.iphonebridge;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class NotificationHandler {
+    private static final String TAG = "NotificationHandler";
+    
+    // ANCS Event IDs
+    public static final byte EVENT_ID_NOTIFICATION_ADDED = 0;
+    public static final byte EVENT_ID_NOTIFICATION_MODIFIED = 1;
+    public static final byte EVENT_ID_NOTIFICATION_REMOVED = 2;
+    
+    // ANCS Category IDs
+    public static final byte CATEGORY_ID_OTHER = 0;
+    public static final byte CATEGORY_ID_INCOMING_CALL = 1;
+    public static final byte CATEGORY_ID_MISSED_CALL = 2;
+    public static final byte CATEGORY_ID_VOICEMAIL = 3;
+    public static final byte CATEGORY_ID_SOCIAL = 4;
+    public static final byte CATEGORY_ID_SCHEDULE = 5;
+    public static final byte CATEGORY_ID_EMAIL = 6;
+    public static final byte CATEGORY_ID_NEWS = 7;
+    public static final byte CATEGORY_ID_HEALTH_AND_FITNESS = 8;
+    public static final byte CATEGORY_ID_BUSINESS_AND_FINANCE = 9;
+    public static final byte CATEGORY_ID_LOCATION = 10;
+    public static final byte CATEGORY_ID_ENTERTAINMENT = 11;
+    
+    // ANCS Event Flags
+    public static final byte EVENT_FLAG_SILENT = (byte) (1 << 0);
+    public static final byte EVENT_FLAG_IMPORTANT = (byte) (1 << 1);
+    public static final byte EVENT_FLAG_PRE_EXISTING = (byte) (1 << 2);
+    public static final byte EVENT_FLAG_POSITIVE_ACTION = (byte) (1 << 3);
+    public static final byte EVENT_FLAG_NEGATIVE_ACTION = (byte) (1 << 4);
+    
+    // ANCS Command IDs
+    public static final byte COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES = 0;
+    public static final byte COMMAND_ID_GET_APP_ATTRIBUTES = 1;
+    public static final byte COMMAND_ID_PERFORM_NOTIFICATION_ACTION = 2;
+    
+    // ANCS Notification Attribute IDs
+    public static final byte ATTRIBUTE_ID_APP_IDENTIFIER = 0;
+    public static final byte ATTRIBUTE_ID_TITLE = 1;
+    public static final byte ATTRIBUTE_ID_SUBTITLE = 2;
+    public static final byte ATTRIBUTE_ID_MESSAGE = 3;
+    public static final byte ATTRIBUTE_ID_MESSAGE_SIZE = 4;
+    public static final byte ATTRIBUTE_ID_DATE = 5;
+    public static final byte ATTRIBUTE_ID_POSITIVE_ACTION_LABEL = 6;
+    public static final byte ATTRIBUTE_ID_NEGATIVE_ACTION_LABEL = 7;
+    
+    // ANCS Action IDs
+    public static final byte ACTION_ID_POSITIVE = 0;
+    public static final byte ACTION_ID_NEGATIVE = 1;
+    
+    // 属性头部：ID(1) + 长度(2)
+    private static final int ATTRIBUTE_HEADER_BYTES = 3;
+    // 每条通知除属性字节外的大致内存开销：快照、可变记录与其 256 字节的属性缓冲、UID 字符串和两个 Map 条目
+    private static final int ENTRY_OVERHEAD_BYTES = 512;
+    
+    // 解析器私有的可变记录，只在持有 this 锁的解析方法中读写
+    private final Map<String, NotificationInfo> builders = new HashMap<>();
+    // 对外发布的不可变快照，读取无需加锁，也不会看到解析到一半的记录
+    private final ConcurrentHashMap<String, NotificationSnapshot> snapshots = new ConcurrentHashMap<>();
+    // 格式错误（过短或属性被截断）的 Data Source 响应数，只在持有锁时修改
+    private volatile long malformedCount = 0;
+    // 响应先解析到这里，完整时才与记录的属性交换，格式错误的响应不会覆盖之前的属性
+    private AttributeBlock.Builder scratchAttributes = new AttributeBlock.Builder();
+    
+    /**
+     * 解析过程中使用的可变记录，解析完成后通过 publish 生成 NotificationSnapshot
+     */
+    static class NotificationInfo {
+        public String uid;
+        public int rawUid;
+        public byte eventId;
+        public byte categoryId;
+        public byte eventFlags;
+        // 属性值以 UTF-8 字节保存，发布快照时才复制为紧凑数组
+        public AttributeBlock.Builder attributes = new AttributeBlock.Builder();
+        public boolean hasPositiveAction;
+        public boolean hasNegativeAction;
+        // 首次收到该通知的时间（毫秒）
+        public long receivedAt;
+        
+        public NotificationInfo(String uid) {
+            this.uid = uid;
+        }
+        
+        public String getFormattedInfo() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("UID: ").append(uid);
+            sb.append(", Category: ").append(getCategoryName(categoryId));
+            // 只输出属性是否存在，避免为日志解码字符串
+            for (int i = 0; i < AttributeBlock.ATTRIBUTE_COUNT; i++) {
+                if (attributes.has(i)) sb.append(", Attr").append(i);
+            }
+            return sb.toString();
+        }
+    }
+    
+    /**
+     * @return 发布的快照，数据无效时返回 null
+     */
+    public synchronized NotificationSnapshot parseNotificationSource(byte[] data) {
+        if (data == null || data.length < 8) {
+            AncsLog.e(TAG, "Invalid notification source data");
+            return null;
+        }
+        
+        byte eventId = data[0];
+        byte eventFlags = data[1];
+        byte categoryId = data[2];
+        byte categoryCount = data[3];
+        
+        // UID is 4 bytes, little endian
+        String uid = String.format("%02X%02X%02X%02X", 
+            data[4] & 0xFF, data[5] & 0xFF, data[6] & 0xFF, data[7] & 0xFF);
+        
+        NotificationInfo previous = builders.get(uid);
+        NotificationInfo info;
+        if (eventId == EVENT_ID_NOTIFICATION_REMOVED) {
+            // 移除的通知不再保留记录，返回的快照只交给 Listener，否则记录随运行时间无限增长
+            info = new NotificationInfo(uid);
+            info.rawUid = readUid(data, 4);
+            info.receivedAt = previous != null ? previous.receivedAt : System.currentTimeMillis();
+            builders.remove(uid);
+            snapshots.remove(uid);
+        } else if (isKnownPreExisting(previous, eventId, eventFlags, categoryId)) {
+            // 重连后 iPhone 重放的已有通知，沿用之前获取（或从检查点恢复）的属性
+            info = previous;
+        } else if (eventId == EVENT_ID_NOTIFICATION_MODIFIED && previous != null) {
+            // 新的属性响应解析完成之前继续发布之前的属性，读取方不会看到没有标题与内容的通知
+            info = previous;
+        } else {
+            info = new NotificationInfo(uid);
+            info.rawUid = readUid(data, 4);
+            info.receivedAt = previous != null ? previous.receivedAt : System.currentTimeMillis();
+            builders.put(uid, info);
+        }
+        info.eventId = eventId;
+        info.categoryId = categoryId;
+        info.eventFlags = eventFlags;
+        info.hasPositiveAction = (eventFlags & EVENT_FLAG_POSITIVE_ACTION) != 0;
+        info.hasNegativeAction = (eventFlags & EVENT_FLAG_NEGATIVE_ACTION) != 0;
+        
+        if (AncsLog.isDebugEnabled()) {
+            AncsLog.d(TAG, "Parsed notification: " + info.getFormattedInfo());
+        }
+        return eventId == EVENT_ID_NOTIFICATION_REMOVED ? NotificationSnapshot.of(info) : publish(info);
+    }
+    
+    /**
+     * 同一 UID、同一类别且已有属性的重放事件视为同一条通知；
+     * iPhone 重启后 UID 会重新计数，类别不同时按新通知处理
+     */
+    private static boolean isKnownPreExisting(NotificationInfo previous, byte eventId, byte eventFlags, byte categoryId) {
+        return previous != null
+            && eventId == EVENT_ID_NOTIFICATION_ADDED
+            && (eventFlags & EVENT_FLAG_PRE_EXISTING) != 0
+            && previous.categoryId == categoryId
+            && !previous.attributes.isEmpty();
+    }
+    
+    /**
+     * 放入从检查点恢复的通知记录，需在连接建立之前调用
+     */
+    public synchronized NotificationSnapshot restore(NotificationInfo info) {
+        builders.put(info.uid, info);
+        return publish(info);
+    }
+    
+    /**
+     * @return 解析完成后发布的快照；数据无效、属性被截断或通知已被移除时返回 null，之前发布的快照保持不变
+     */
+    public synchronized NotificationSnapshot parseDataSource(byte[] data) {
+        if (data == null || data.length < 5) {
+            AncsLog.e(TAG, "Invalid data source data");
+            malformedCount++;
+            return null;
+        }
+        
+        byte commandId = data[0];
+        String uid = String.format("%02X%02X%02X%02X", 
+            data[1] & 0xFF, data[2] & 0xFF, data[3] & 0xFF, data[4] & 0xFF);
+        
+        if (AncsLog.isDebugEnabled()) {
+            AncsLog.d(TAG, "Parsing data source for UID: " + uid + ", command: " + (commandId & 0xFF) + ", length: " + data.length);
+        }
+        
+        NotificationInfo info = builders.get(uid);
+        if (info == null) {
+            // 属性获取只在 Notification Source 之后发出，找不到说明响应到达前通知已被移除，
+            // 不能据此重新创建记录，否则它再也不会被删除
+            AncsLog.w(TAG, "Notification not found for UID: " + uid + ", ignoring response");
+            return null;
+        }
+        
+        if (commandId == COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES) {
+            // 响应包含请求的全部属性，替换之前的属性（MODIFIED 时沿用到现在），修改后变为空的属性不会残留；
+            // 截断的响应只计数，保留之前完整的属性，不发布只有一部分属性的快照
+            AttributeBlock.Builder parsed = scratchAttributes;
+            parsed.reset();
+            // 直接解析属性数据，从第5个字节开始
+            if (data.length > 5) {
+                if (!parseNotificationAttributes(data, 5, parsed)) {
+                    malformedCount++;
+                    AncsLog.w(TAG, "Keeping previous attributes for UID: " + uid);
+                    return null;
+                }
+            } else {
+                AncsLog.w(TAG, "No attribute data to parse");
+            }
+            scratchAttributes = info.attributes;
+            info.attributes = parsed;
+            if (AncsLog.isDebugEnabled()) {
+                AncsLog.d(TAG, "Updated notification info: " + info.getFormattedInfo());
+            }
+        }
+        return publish(info);
+    }
+    
+    /**
+     * 核对重放的已有通知与记录是否为同一条：iPhone 重启后 UID 重新计数，同一 UID 可能属于另一条通知。
+     * data 为只请求应用 ID 与日期的响应，两者都与记录一致时记录不变；
+     * 不一致、记录中没有日期或响应无效时清除记录的属性，调用方应重新获取全部属性
+     * @return 一致时返回记录当前的快照，否则返回 null
+     */
+    public synchronized NotificationSnapshot verifyDataSource(byte[] data) {
+        if (data == null || data.length < 5 || data[0] != COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES) {
+            AncsLog.e(TAG, "Invalid verification response");
+            malformedCount++;
+            return null;
+        }
+        String uid = formatUid(data, 1);
+        NotificationInfo info = builders.get(uid);
+        if (info == null) {
+            AncsLog.w(TAG, "Notification not found for UID: " + uid + ", ignoring verification");
+            return null;
+        }
+        AttributeBlock.Builder parsed = scratchAttributes;
+        parsed.reset();
+        if (!parseNotificationAttributes(data, 5, parsed)) {
+            malformedCount++;
+        } else if (info.attributes.has(ATTRIBUTE_ID_DATE)
+            && info.attributes.valueEquals(ATTRIBUTE_ID_DATE, parsed)
+            && info.attributes.valueEquals(ATTRIBUTE_ID_APP_IDENTIFIER, parsed)) {
+            return snapshots.get(uid);
+        }
+        AncsLog.i(TAG, "Replayed UID " + uid + " does not match the kept attributes, fetching again");
+        info.attributes.reset();
+        publish(info);
+        return null;
+    }
+    
+    private NotificationSnapshot publish(NotificationInfo info) {
+        NotificationSnapshot snapshot = NotificationSnapshot.of(info);
+        snapshots.put(info.uid, snapshot);
+        return snapshot;
+    }
+    
+    /**
+     * 属性依次为 ID(1) + 长度(2，小端序) + 值。数据在某个属性的头部或值中间结束时停止解析并返回 false，
+     * 由调用方丢弃整个响应，避免把截断的值或后续字节当作别的属性
+     * @return 数据完整时返回 true
+     */
+    private boolean parseNotificationAttributes(byte[] data, int offset, AttributeBlock.Builder attributes) {
+        int pos = offset;
+        
+        if (AncsLog.isDebugEnabled()) {
+            AncsLog.d(TAG, "Parsing notification attributes, data length: " + data.length + ", offset: " + offset);
+        }
+        
+        while (pos < data.length) {
+            if (data.length - pos < ATTRIBUTE_HEADER_BYTES) {
+                AncsLog.w(TAG, "Truncated attribute header at position " + pos + " of " + data.length);
+                return false;
+            }
+            byte attributeId = data[pos];
+            int length = (data[pos + 1] & 0xFF) | (data[pos + 2] & 0xFF) << 8;
+            pos += ATTRIBUTE_HEADER_BYTES;
+            
+            if (AncsLog.isDebugEnabled()) {
+                AncsLog.d(TAG, "Attribute ID: " + (attributeId & 0xFF) + ", Length: " + length + ", Position: " + pos);
+            }
+            
+            if (length > data.length - pos) {
+                AncsLog.w(TAG, "Attribute " + (attributeId & 0xFF) + " declares " + length + " bytes, only "
+                    + (data.length - pos) + " left");
+                return false;
+            }
+            
+            // 保留 UTF-8 字节，由使用方按需解码；长度为 0 表示没有该属性
+            if (length > 0 && !attributes.set(attributeId, data, pos, length)) {
+                AncsLog.w(TAG, "Unknown attribute ID: " + (attributeId & 0xFF));
+            }
+            pos += length;
+        }
+        return true;
+    }
+    
+    public byte[] createGetNotificationAttributesCommand(String uid, byte... attributeIds) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + attributeIds.length * 3);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        
+        // Command ID
+        buffer.put(COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES);
+        
+        // UID (4 bytes, little endian)
+        String[] uidBytes = {uid.substring(0, 2), uid.substring(2, 4), uid.substring(4, 6), uid.substring(6, 8)};
+        for (String b : uidBytes) {
+            buffer.put((byte) Integer.parseInt(b, 16));
+        }
+        
+        // 按 ANCS 规范只有标题、副标题与正文带最大长度参数
+        for (byte attributeId : attributeIds) {
+            buffer.put(attributeId);
+            if (hasMaxLength(attributeId)) {
+                buffer.putShort((short) 256); // Max length
+            }
+        }
+        
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+    
+    /**
+     * @return Get Notification Attributes 中该属性是否带 2 字节最大长度参数
+     */
+    public static boolean hasMaxLength(byte attributeId) {
+        return attributeId == ATTRIBUTE_ID_TITLE
+            || attributeId == ATTRIBUTE_ID_SUBTITLE
+            || attributeId == ATTRIBUTE_ID_MESSAGE;
+    }
+    
+    public byte[] createPerformActionCommand(String uid, boolean positive) {
+        ByteBuffer buffer = ByteBuffer.allocate(6);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        
+        // Command ID
+        buffer.put(COMMAND_ID_PERFORM_NOTIFICATION_ACTION);
+        
+        // UID (4 bytes, little endian)
+        String[] uidBytes = {uid.substring(0, 2), uid.substring(2, 4), uid.substring(4, 6), uid.substring(6, 8)};
+        for (String b : uidBytes) {
+            buffer.put((byte) Integer.parseInt(b, 16));
+        }
+        
+        // Action ID
+        buffer.put(positive ? ACTION_ID_POSITIVE : ACTION_ID_NEGATIVE);
+        
+        return buffer.array();
+    }
+    
+    /**
+     * 将 4 字节 UID 格式化为十六进制字符串，与 NotificationInfo.uid 一致
+     */
+    public static String formatUid(byte[] data, int offset) {
+        return String.format("%02X%02X%02X%02X",
+            data[offset] & 0xFF, data[offset + 1] & 0xFF, data[offset + 2] & 0xFF, data[offset + 3] & 0xFF);
+    }
+    
+    /**
+     * 将 UID 格式化为十六进制字符串，字节顺序与 formatUid(byte[], int) 一致
+     */
+    public static String formatUid(int rawUid) {
+        return String.format("%02X%02X%02X%02X",
+            rawUid & 0xFF, (rawUid >>> 8) & 0xFF, (rawUid >>> 16) & 0xFF, (rawUid >>> 24) & 0xFF);
+    }
+    
+    /**
+     * 读取 4 字节小端序 UID
+     */
+    public static int readUid(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+            | (data[offset + 1] & 0xFF) << 8
+            | (data[offset + 2] & 0xFF) << 16
+            | (data[offset + 3] & 0xFF) << 24;
+    }
+    
+    /**
+     * 可在任意线程调用，不加锁
+     */
+    public NotificationSnapshot getNotification(String uid) {
+        return snapshots.get(uid);
+    }
+    
+    /**
+     * 可在任意线程调用，不加锁
+     * @return 当前仍存在于 iPhone 上的通知
+     */
+    public List<NotificationSnapshot> getActiveNotifications() {
+        List<NotificationSnapshot> result = new ArrayList<>(snapshots.size());
+        for (NotificationSnapshot snapshot : snapshots.values()) {
+            if (!snapshot.isRemoved()) {
+                result.add(snapshot);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 可在任意线程调用，不加锁
+     * @return 过短或属性被截断的 Data Source 响应数
+     */
+    public long getMalformedCount() {
+        return malformedCount;
+    }
+    
+    /**
+     * 可在任意线程调用，不加锁
+     * @return 记录中的通知数
+     */
+    public int size() {
+        return snapshots.size();
+    }
+    
+    /**
+     * 可在任意线程调用，不加锁
+     * @return 通知记录占用内存的估计值（字节），属性字节在快照与可变记录中各有一份
+     */
+    public long estimateMemoryBytes() {
+        long bytes = 0;
+        for (NotificationSnapshot snapshot : snapshots.values()) {
+            bytes += ENTRY_OVERHEAD_BYTES + 2L * snapshot.getAttributes().byteSize();
+        }
+        return bytes;
+    }
+    
+    /**
+     * 删除已不在 iPhone 上的通知（例如断开期间被移除、没有收到 REMOVED 事件）
+     * @return 供界面与历史使用的移除快照，不存在时返回 null
+     */
+    public synchronized NotificationSnapshot expire(String uid) {
+        NotificationInfo info = builders.remove(uid);
+        snapshots.remove(uid);
+        if (info == null) {
+            return null;
+        }
+        info.eventId = EVENT_ID_NOTIFICATION_REMOVED;
+        return NotificationSnapshot.of(info);
+    }
+    
+    public synchronized void removeNotification(String uid) {
+        builders.remove(uid);
+        snapshots.remove(uid);
+    }
+    
+    public static String getCategoryName(byte categoryId) {
+        switch (categoryId) {
+            case CATEGORY_ID_INCOMING_CALL: return "来电";
+            case CATEGORY_ID_MISSED_CALL: return "未接来电";
+            case CATEGORY_ID_VOICEMAIL: return "语音邮件";
+            case CATEGORY_ID_SOCIAL: return "社交";
+            case CATEGORY_ID_SCHEDULE: return "日程";
+            case CATEGORY_ID_EMAIL: return "邮件";
+            case CATEGORY_ID_NEWS: return "新闻";
+            case CATEGORY_ID_HEALTH_AND_FITNESS: return "健康";
+            case CATEGORY_ID_BUSINESS_AND_FINANCE: return "商务";
+            case CATEGORY_ID_LOCATION: return "位置";
+            case CATEGORY_ID_ENTERTAINMENT: return "娱乐";
+            default: return "其他";
+        }
+    }
+    
+    public static String getEventName(byte eventId) {
+        switch (eventId) {
+            case EVENT_ID_NOTIFICATION_ADDED: return "新增";
+            case EVENT_ID_NOTIFICATION_MODIFIED: return "修改";
+            case EVENT_ID_NOTIFICATION_REMOVED: return "移除";
+            default: return "未知";
+        }
+    }
+}
\ No newline at end of file
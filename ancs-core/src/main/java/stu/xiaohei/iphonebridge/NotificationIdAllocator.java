@@ -0,0 +1,142 @@
+package stu.xiaohei.iphonebridge;
+
+/**
+ * Android 通知 ID 分配器
+ * 为每个 32 位 ANCS UID 记录最后一次显示时使用的 Android 通知 ID，避免 hashCode 冲突。
+ * 会话纪元在每次建立连接时递增，并记录每个 UID 最后一次使用 ID 的纪元：
+ * 本次连接中出现过的 UID 继续使用原来的 ID，没有出现的 UID 由对账时的 releasePrevious 释放。
+ * ID 不随纪元切换丢失，重放窗口内断开、一直没有对账的连接留下的 ID 在之后的连接中仍能释放
+ */
+public class NotificationIdAllocator {
+    // 起始 ID，避开前台服务通知使用的 ID
+    public static final int FIRST_ID = 0x100;
+    public static final int NO_ID = -1;
+    // 从检查点恢复的 ID 所属的纪元，早于本进程中的任何纪元
+    private static final int RESTORED_EPOCH = -1;
+
+    // PendingIntent 请求码类型
+    public static final int REQUEST_DETAIL = 0;
+    public static final int REQUEST_POSITIVE = 1;
+    public static final int REQUEST_NEGATIVE = 2;
+    public static final int REQUEST_SUMMARY = 3;
+
+    // 以无符号 UID 为键
+    private final LongIntHashMap ids = new LongIntHashMap(64, NO_ID);
+    // 每个 UID 最后一次分配或沿用 ID 时的纪元
+    private final LongIntHashMap epochs = new LongIntHashMap(64, 0);
+    private int[] freeIds = new int[64];
+    private int freeCount = 0;
+    private int nextId = FIRST_ID;
+    private int epoch = 0;
+
+    /**
+     * 开始新的会话纪元，在每次建立连接时调用
+     */
+    public synchronized int beginSession() {
+        return ++epoch;
+    }
+
+    public synchronized int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * 恢复检查点中的映射，视为上一个进程中显示的通知，本次连接中没有重放时由对账释放；
+     * 可在建立连接之后、处理已有通知之前调用
+     */
+    public synchronized void restore(int uid, int id) {
+        long key = key(uid);
+        if (ids.containsKey(key)) {
+            return;
+        }
+        ids.put(key, id);
+        epochs.put(key, RESTORED_EPOCH);
+        if (id >= nextId) {
+            nextId = id + 1;
+        }
+    }
+
+    private static long key(int uid) {
+        return uid & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return 该 UID 最后一次显示时使用的 ID，不论属于哪个纪元，不存在时返回 NO_ID
+     */
+    public synchronized int get(int uid) {
+        return ids.get(key(uid));
+    }
+
+    /**
+     * 获取该 UID 的 ID，不存在时分配新 ID，并将其记入当前纪元。
+     * 之前的纪元中已有 ID 时直接沿用：重放的已有通知原地更新；
+     * iPhone 重启后 UID 重新计数时，新通知替换掉同一 UID 的旧通知，旧通知在 iPhone 上已不存在
+     */
+    public synchronized int allocate(int uid) {
+        long key = key(uid);
+        int id = ids.get(key);
+        if (id == NO_ID) {
+            id = allocateId();
+            ids.put(key, id);
+        }
+        epochs.put(key, epoch);
+        return id;
+    }
+
+    /**
+     * 释放该 UID 的 ID
+     * @return 被释放的 ID，不存在时返回 NO_ID
+     */
+    public synchronized int release(int uid) {
+        long key = key(uid);
+        int id = ids.remove(key);
+        if (id != NO_ID) {
+            epochs.remove(key);
+            freeId(id);
+        }
+        return id;
+    }
+
+    /**
+     * 释放当前纪元中没有再出现过的 UID 的 ID，用于重连后清理 iPhone 上已不存在的通知；
+     * 该 UID 可能来自之前任意一个纪元
+     * @return 被释放的 ID，本次连接中已沿用或不存在时返回 NO_ID
+     */
+    public synchronized int releasePrevious(int uid) {
+        long key = key(uid);
+        if (!ids.containsKey(key) || epochs.get(key) == epoch) {
+            return NO_ID;
+        }
+        return release(uid);
+    }
+
+    /**
+     * 分配一个不与 UID 关联的 ID，例如分组摘要通知
+     */
+    public synchronized int allocateId() {
+        if (freeCount > 0) {
+            return freeIds[--freeCount];
+        }
+        return nextId++;
+    }
+
+    public synchronized void freeId(int id) {
+        if (freeCount == freeIds.length) {
+            int[] grown = new int[freeIds.length * 2];
+            System.arraycopy(freeIds, 0, grown, 0, freeCount);
+            freeIds = grown;
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * PendingIntent 请求码，每个通知 ID 占用 4 个连续请求码
+     */
+    public static int requestCode(int id, int type) {
+        return (id << 2) | type;
+    }
+}
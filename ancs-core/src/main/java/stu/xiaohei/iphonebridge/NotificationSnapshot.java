@@ -0,0 +1,116 @@
+package stu.xiaohei.iphonebridge;
+
+/**
+ * 通知的不可变快照
+ * 由 NotificationHandler 在每次解析完成后发布，服务、界面和订阅者在任意线程读取都不会看到解析中途的状态
+ */
+public final class NotificationSnapshot {
+    private final String uid;
+    private final int rawUid;
+    private final byte eventId;
+    private final byte categoryId;
+    private final byte eventFlags;
+    private final AttributeBlock attributes;
+    private final boolean hasPositiveAction;
+    private final boolean hasNegativeAction;
+    private final long receivedAt;
+
+    private NotificationSnapshot(NotificationHandler.NotificationInfo info) {
+        this.uid = info.uid;
+        this.rawUid = info.rawUid;
+        this.eventId = info.eventId;
+        this.categoryId = info.categoryId;
+        this.eventFlags = info.eventFlags;
+        this.attributes = info.attributes.build();
+        this.hasPositiveAction = info.hasPositiveAction;
+        this.hasNegativeAction = info.hasNegativeAction;
+        this.receivedAt = info.receivedAt;
+    }
+
+    static NotificationSnapshot of(NotificationHandler.NotificationInfo info) {
+        return new NotificationSnapshot(info);
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public int getRawUid() {
+        return rawUid;
+    }
+
+    public byte getEventId() {
+        return eventId;
+    }
+
+    public byte getCategoryId() {
+        return categoryId;
+    }
+
+    public byte getEventFlags() {
+        return eventFlags;
+    }
+
+    /**
+     * @return 属性的 UTF-8 字节，可在不解码的情况下匹配关键字
+     */
+    public AttributeBlock getAttributes() {
+        return attributes;
+    }
+
+    // 以下属性在首次读取时解码
+
+    public String getAppId() {
+        return attributes.getString(NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER);
+    }
+
+    public String getTitle() {
+        return attributes.getString(NotificationHandler.ATTRIBUTE_ID_TITLE);
+    }
+
+    public String getSubtitle() {
+        return attributes.getString(NotificationHandler.ATTRIBUTE_ID_SUBTITLE);
+    }
+
+    public String getMessage() {
+        return attributes.getString(NotificationHandler.ATTRIBUTE_ID_MESSAGE);
+    }
+
+    public String getDate() {
+        return attributes.getString(NotificationHandler.ATTRIBUTE_ID_DATE);
+    }
+
+    public String getPositiveActionLabel() {
+        return attributes.getString(NotificationHandler.ATTRIBUTE_ID_POSITIVE_ACTION_LABEL);
+    }
+
+    public String getNegativeActionLabel() {
+        return attributes.getString(NotificationHandler.ATTRIBUTE_ID_NEGATIVE_ACTION_LABEL);
+    }
+
+    public boolean hasPositiveAction() {
+        return hasPositiveAction;
+    }
+
+    public boolean hasNegativeAction() {
+        return hasNegativeAction;
+    }
+
+    /**
+     * @return 首次收到该通知的时间（毫秒）
+     */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /**
+     * @return 已获取到属性时返回 true
+     */
+    public boolean hasAttributes() {
+        return attributes != AttributeBlock.EMPTY;
+    }
+
+    public boolean isRemoved() {
+        return eventId == NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED;
+    }
+}
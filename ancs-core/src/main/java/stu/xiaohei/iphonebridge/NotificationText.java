@@ -0,0 +1,125 @@
+package stu.xiaohei.iphonebridge;
+
+/**
+ * 由通知属性生成 Android 通知的标题、正文与操作标签，并与条目中上次发送的内容比较，
+ * NotificationRenderer 与 ancs-bench 的 RendererBenchmark 共用。
+ * 复用内部缓冲区，不加锁，由调用方保证同一时间只有一个线程使用
+ */
+public class NotificationText {
+    // update 返回的变化字段
+    public static final int CHANGED_TITLE = 1;
+    public static final int CHANGED_CONTENT = 1 << 1;
+    public static final int CHANGED_ACTIONS = 1 << 2;
+
+    private static final String DEFAULT_POSITIVE_LABEL = "确认";
+    private static final String DEFAULT_NEGATIVE_LABEL = "取消";
+
+    // 拼接标题/副标题/内容的复用缓冲区
+    private final StringBuilder buffer = new StringBuilder(256);
+    private String title;
+    private String content;
+
+    /**
+     * 生成标题与正文：应用类通知以第一行为标题、其余为正文，来电、未接来电与语音信箱以应用名称为标题
+     * @return 没有标题、副标题与正文时返回 false，不应发送通知
+     */
+    public boolean format(NotificationSnapshot info) {
+        StringBuilder text = buffer;
+        text.setLength(0);
+        appendLine(text, info.getTitle());
+        appendLine(text, info.getSubtitle());
+        appendLine(text, info.getMessage());
+        if (text.length() == 0) {
+            title = null;
+            content = null;
+            return false;
+        }
+
+        if (isAppNotification(info.getCategoryId())) {
+            int newline = text.indexOf("\n");
+            if (newline >= 0) {
+                title = text.substring(0, newline);
+                content = text.substring(newline + 1);
+            } else {
+                title = text.toString();
+                content = "";
+            }
+        } else {
+            title = ANCSConstants.getAppDisplayName(info.getAppId());
+            content = text.toString();
+        }
+        return true;
+    }
+
+    /**
+     * 把 format 生成的标题与正文以及操作标签写入条目，只替换发生变化的字段
+     * @return 变化的字段，CHANGED_* 的组合，没有变化时为 0
+     */
+    public int update(NotificationBook.Entry<?> entry, NotificationSnapshot info) {
+        int changed = 0;
+        if (!title.equals(entry.title)) {
+            entry.title = title;
+            changed |= CHANGED_TITLE;
+        }
+        if (!content.equals(entry.content)) {
+            entry.content = content;
+            changed |= CHANGED_CONTENT;
+        }
+        String positiveLabel = positiveLabel(info);
+        String negativeLabel = negativeLabel(info);
+        if (!equals(positiveLabel, entry.positiveLabel) || !equals(negativeLabel, entry.negativeLabel)) {
+            entry.positiveLabel = positiveLabel;
+            entry.negativeLabel = negativeLabel;
+            changed |= CHANGED_ACTIONS;
+        }
+        return changed;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @return 肯定操作的按钮标签，没有该操作时返回 null
+     */
+    public static String positiveLabel(NotificationSnapshot info) {
+        if (!info.hasPositiveAction()) {
+            return null;
+        }
+        return info.getPositiveActionLabel() != null ? info.getPositiveActionLabel() : DEFAULT_POSITIVE_LABEL;
+    }
+
+    /**
+     * @return 否定操作的按钮标签，没有该操作时返回 null
+     */
+    public static String negativeLabel(NotificationSnapshot info) {
+        if (!info.hasNegativeAction()) {
+            return null;
+        }
+        return info.getNegativeActionLabel() != null ? info.getNegativeActionLabel() : DEFAULT_NEGATIVE_LABEL;
+    }
+
+    /**
+     * 除了系统通知类型（来电、未接来电、语音信箱）外的其他类型
+     */
+    private static boolean isAppNotification(byte categoryId) {
+        return categoryId != NotificationHandler.CATEGORY_ID_INCOMING_CALL
+            && categoryId != NotificationHandler.CATEGORY_ID_MISSED_CALL
+            && categoryId != NotificationHandler.CATEGORY_ID_VOICEMAIL;
+    }
+
+    private static void appendLine(StringBuilder sb, String value) {
+        if (value != null && !value.isEmpty()) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(value);
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,135 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 最近收发的原始 ANCS 数据包，固定大小的环形缓冲区
+ * 记录索引与数据字节各占一个预先分配的环，写入时只做两次原子自增和数组拷贝，不加锁也不分配内存，
+ * 可以在多个线程（GATT 回调与 Control Point 写入）上同时写入。
+ * 读取只用于诊断：读到正在被覆盖的记录时跳过该条，不会阻塞写入方
+ */
+public class PacketRing {
+    public static final int DEFAULT_RECORDS = 1024;
+    public static final int DEFAULT_DATA_BYTES = 64 * 1024;
+
+    // 下标为 序号 % records.length
+    private final AtomicLongArray published;
+    private final long[] times;
+    private final long[] positions;
+    private final int[] lengths;
+    private final byte[] types;
+    private final byte[] data;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong nextPosition = new AtomicLong();
+
+    public PacketRing() {
+        this(DEFAULT_RECORDS, DEFAULT_DATA_BYTES);
+    }
+
+    /**
+     * @param records 保留的记录数
+     * @param dataBytes 保留的数据字节数，单条记录超过该长度时只保留开头部分
+     */
+    public PacketRing(int records, int dataBytes) {
+        published = new AtomicLongArray(records);
+        for (int i = 0; i < records; i++) {
+            published.set(i, -1);
+        }
+        times = new long[records];
+        positions = new long[records];
+        lengths = new int[records];
+        types = new byte[records];
+        data = new byte[dataBytes];
+    }
+
+    /**
+     * @param type AncsTrace.TYPE_*
+     * @param timeMicros 单调时间
+     * @param bytes 可为 null
+     */
+    public void record(int type, long timeMicros, byte[] bytes) {
+        int length = bytes != null ? Math.min(bytes.length, data.length) : 0;
+        long sequence = nextSequence.getAndIncrement();
+        int slot = claim(sequence, type, timeMicros, length);
+        if (length > 0) {
+            int start = (int) (positions[slot] % data.length);
+            int first = Math.min(length, data.length - start);
+            System.arraycopy(bytes, 0, data, start, first);
+            System.arraycopy(bytes, first, data, 0, length - first);
+        }
+        published.set(slot, sequence);
+    }
+
+    /**
+     * 记录只有一个字节数据的事件，例如写入结果的 GATT 状态
+     */
+    public void recordByte(int type, long timeMicros, int value) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = claim(sequence, type, timeMicros, 1);
+        data[(int) (positions[slot] % data.length)] = (byte) value;
+        published.set(slot, sequence);
+    }
+
+    private int claim(long sequence, int type, long timeMicros, int length) {
+        int slot = (int) (sequence % times.length);
+        // 先作废槽位再写入，读取方据此识别写到一半的记录
+        published.set(slot, -1);
+        times[slot] = timeMicros;
+        positions[slot] = nextPosition.getAndAdd(length);
+        lengths[slot] = length;
+        types[slot] = (byte) type;
+        return slot;
+    }
+
+    /**
+     * @return 记录过的总条数，包括已被覆盖的
+     */
+    public long getRecordCount() {
+        return nextSequence.get();
+    }
+
+    /**
+     * 以 AncsTrace 文本格式写出最近的记录，时间相对于写出的第一条
+     * @param maxRecords 最多写出的条数，0 表示全部保留的记录
+     * @return 写出的条数
+     */
+    public int writeTo(Appendable out, int maxRecords) throws IOException {
+        long end = nextSequence.get();
+        long count = Math.min(end, times.length);
+        if (maxRecords > 0) {
+            count = Math.min(count, maxRecords);
+        }
+        byte[] buffer = new byte[256];
+        long baseMicros = -1;
+        int written = 0;
+        for (long sequence = end - count; sequence < end; sequence++) {
+            int slot = (int) (sequence % times.length);
+            if (published.get(slot) != sequence) {
+                continue;
+            }
+            long timeMicros = times[slot];
+            long position = positions[slot];
+            int length = lengths[slot];
+            int type = types[slot];
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            int start = (int) (position % data.length);
+            int first = Math.min(length, data.length - start);
+            System.arraycopy(data, start, buffer, 0, first);
+            System.arraycopy(data, 0, buffer, first, length - first);
+            // 拷贝期间槽位被复用，或数据已被后来的记录覆盖
+            if (published.get(slot) != sequence || nextPosition.get() - position > data.length) {
+                continue;
+            }
+            if (baseMicros < 0) {
+                baseMicros = timeMicros;
+            }
+            AncsTrace.write(out, timeMicros - baseMicros, type, buffer, 0, length);
+            written++;
+        }
+        return written;
+    }
+}
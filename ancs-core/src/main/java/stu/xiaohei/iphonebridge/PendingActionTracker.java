@@ -0,0 +1,203 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 跟踪尚未完成的 Perform Notification Action
+ * 一个操作在写入成功后还要等到 iPhone 发来对应 UID 的 REMOVED/MODIFIED 事件才算完成；
+ * 写入失败时根据 ANCS 错误码决定重试还是放弃（放弃时由调用方恢复已取消的 Android 通知）
+ */
+public class PendingActionTracker {
+    public static final int MAX_RETRIES = 2;
+
+    // 操作结果
+    public static final int OUTCOME_CONFIRMED = 0;
+    public static final int OUTCOME_RETRIED = 1;
+    public static final int OUTCOME_TIMED_OUT = 2;
+    public static final int OUTCOME_UNKNOWN_COMMAND = 3;
+    public static final int OUTCOME_INVALID_COMMAND = 4;
+    public static final int OUTCOME_INVALID_PARAMETER = 5;
+    public static final int OUTCOME_ACTION_FAILED = 6;
+    public static final int OUTCOME_WRITE_FAILED = 7;
+    private static final String[] OUTCOME_NAMES = {
+        "confirmed", "retried", "timed_out", "unknown_command",
+        "invalid_command", "invalid_parameter", "action_failed", "write_failed"
+    };
+
+    // 写入结果的处理方式；onWriteFailed 只返回前三种
+    public static final int DECISION_RETRY = 0;
+    public static final int DECISION_GIVE_UP = 1;
+    public static final int DECISION_IGNORE = 2;
+    // 写入成功，等待 iPhone 确认
+    public static final int DECISION_WRITTEN = 3;
+
+    public static class PendingAction {
+        public final String uid;
+        public final boolean positive;
+        public final long startNanos;
+        public int attempts = 1;
+        public boolean written = false;
+        public int lastStatus = 0;
+        // 发出操作时已取消对应的 Android 通知（通知栏按钮），失败时需要重新显示
+        public boolean notificationCancelled = false;
+        // 批量清除中的操作，结果由调用方汇总提示
+        public boolean bulk = false;
+
+        PendingAction(String uid, boolean positive, long startNanos) {
+            this.uid = uid;
+            this.positive = positive;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private final Map<String, PendingAction> pending = new HashMap<>();
+    private final AtomicLongArray outcomes = new AtomicLongArray(OUTCOME_NAMES.length);
+    // 从发起到收到确认事件（微秒）
+    private final LatencyHistogram confirmLatency = new LatencyHistogram();
+    // 从发起到写入被确认（微秒）
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    // 从发起到最终失败（微秒）
+    private final LatencyHistogram failureLatency = new LatencyHistogram();
+
+    /**
+     * @return 新建的操作；同一 UID 已有未完成的操作时返回 null
+     */
+    public synchronized PendingAction begin(String uid, boolean positive, long nowNanos) {
+        if (pending.containsKey(uid)) {
+            return null;
+        }
+        PendingAction action = new PendingAction(uid, positive, nowNanos);
+        pending.put(uid, action);
+        return action;
+    }
+
+    /**
+     * @return 该 UID 未完成的操作，没有时返回 null
+     */
+    public synchronized PendingAction get(String uid) {
+        return pending.get(uid);
+    }
+
+    /**
+     * @return 对应的操作，已经完成或不存在时返回 null
+     */
+    public synchronized PendingAction onWritten(String uid, long nowNanos) {
+        PendingAction action = pending.get(uid);
+        if (action != null && !action.written) {
+            action.written = true;
+            writeLatency.record((nowNanos - action.startNanos) / 1000);
+        }
+        return action;
+    }
+
+    /**
+     * @param status GATT 写入状态
+     * @return DECISION_RETRY 时调用方应重新写入，DECISION_GIVE_UP 时操作已移除
+     */
+    public synchronized int onWriteFailed(String uid, int status, long nowNanos) {
+        PendingAction action = pending.get(uid);
+        if (action == null) {
+            return DECISION_IGNORE;
+        }
+        action.lastStatus = status;
+        if (isRetryable(status) && action.attempts <= MAX_RETRIES) {
+            action.attempts++;
+            outcomes.incrementAndGet(OUTCOME_RETRIED);
+            return DECISION_RETRY;
+        }
+        pending.remove(uid);
+        outcomes.incrementAndGet(outcomeForStatus(status));
+        failureLatency.record((nowNanos - action.startNanos) / 1000);
+        return DECISION_GIVE_UP;
+    }
+
+    /**
+     * 收到该 UID 的 REMOVED/MODIFIED 事件
+     * @return 因此完成的操作，没有时返回 null
+     */
+    public synchronized PendingAction onConfirmed(String uid, long nowNanos) {
+        PendingAction action = pending.remove(uid);
+        if (action != null) {
+            outcomes.incrementAndGet(OUTCOME_CONFIRMED);
+            confirmLatency.record((nowNanos - action.startNanos) / 1000);
+        }
+        return action;
+    }
+
+    /**
+     * 等待确认超时
+     * @param action 计时开始时的操作；它已完成、同一 UID 已换成新的操作时不受影响
+     * @return 该操作因此结束时返回 true
+     */
+    public synchronized boolean onTimeout(PendingAction action, long nowNanos) {
+        if (pending.get(action.uid) != action) {
+            return false;
+        }
+        pending.remove(action.uid);
+        outcomes.incrementAndGet(OUTCOME_TIMED_OUT);
+        failureLatency.record((nowNanos - action.startNanos) / 1000);
+        return true;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * ANCS 规定的错误中，只有操作失败可能是暂时性的；
+     * 命令或参数错误重试也不会成功
+     */
+    private static boolean isRetryable(int status) {
+        switch ((byte) status) {
+            case ANCSConstants.ERROR_UNKNOWN_COMMAND:
+            case ANCSConstants.ERROR_INVALID_COMMAND:
+            case ANCSConstants.ERROR_INVALID_PARAMETER:
+                return false;
+            default:
+                return status != ControlPointQueue.STATUS_DISCONNECTED;
+        }
+    }
+
+    private static int outcomeForStatus(int status) {
+        if (status < 0 || status > 0xFF) {
+            return OUTCOME_WRITE_FAILED;
+        }
+        switch ((byte) status) {
+            case ANCSConstants.ERROR_UNKNOWN_COMMAND: return OUTCOME_UNKNOWN_COMMAND;
+            case ANCSConstants.ERROR_INVALID_COMMAND: return OUTCOME_INVALID_COMMAND;
+            case ANCSConstants.ERROR_INVALID_PARAMETER: return OUTCOME_INVALID_PARAMETER;
+            case ANCSConstants.ERROR_ACTION_FAILED: return OUTCOME_ACTION_FAILED;
+            default: return OUTCOME_WRITE_FAILED;
+        }
+    }
+
+    public long getOutcomeCount(int outcome) {
+        return outcomes.get(outcome);
+    }
+
+    public LatencyHistogram getConfirmLatency() {
+        return confirmLatency;
+    }
+
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public LatencyHistogram getFailureLatency() {
+        return failureLatency;
+    }
+
+    public String formatStats() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < OUTCOME_NAMES.length; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(OUTCOME_NAMES[i]).append('=').append(outcomes.get(i));
+        }
+        sb.append(String.format(Locale.US, "\nwrite(us): %s\nconfirm(us): %s\nfailure(us): %s",
+            writeLatency.format(), confirmLatency.format(), failureLatency.format()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,237 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单条通知从 iPhone 事件到 Android 通知发出的分阶段耗时
+ * 需要获取属性的通知在 Notification Source 到达时开始追踪，之后每个阶段记录一次单调时间（System.nanoTime），
+ * 并把与上一个已记录阶段的间隔计入该阶段的直方图；发出 Android 通知时计入端到端耗时并结束追踪。
+ * 追踪槽位与直方图都预先分配，没有空闲槽位时按轮转顺序复用一个仍在追踪的槽位（计为 evicted）。
+ * 直方图单位为微秒，读取不加锁
+ */
+public class PipelineTrace {
+    public static final int STAGE_NOTIFICATION_SOURCE = 0;
+    public static final int STAGE_WRITE_ISSUED = 1;
+    public static final int STAGE_WRITE_ACKED = 2;
+    public static final int STAGE_FIRST_FRAGMENT = 3;
+    public static final int STAGE_LAST_FRAGMENT = 4;
+    // 决定是否发出 Android 通知
+    public static final int STAGE_DECIDED = 5;
+    // NotificationManager.notify 返回
+    public static final int STAGE_POSTED = 6;
+    public static final int STAGE_COUNT = 7;
+
+    private static final String[] STAGE_NAMES = {
+        "ns", "cp_write", "cp_ack", "ds_first", "ds_last", "decide", "notify"
+    };
+    // 控制点队列积压时同时追踪的通知可达数百条
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int NO_SLOT = -1;
+
+    // UID -> 槽位
+    private final LongIntHashMap slots;
+    private final int[] slotUids;
+    // 槽位 * STAGE_COUNT + 阶段，0 表示尚未到达
+    private final long[] stamps;
+    // 空闲槽位栈
+    private final int[] freeSlots;
+    private int freeCount;
+    private int nextSlot = 0;
+
+    // 下标为阶段，记录与上一个已记录阶段的间隔；STAGE_NOTIFICATION_SOURCE 不使用
+    private final LatencyHistogram[] stageHistograms = new LatencyHistogram[STAGE_COUNT];
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public PipelineTrace() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 同时追踪的通知数
+     */
+    public PipelineTrace(int capacity) {
+        slots = new LongIntHashMap(capacity, NO_SLOT);
+        slotUids = new int[capacity];
+        stamps = new long[capacity * STAGE_COUNT];
+        freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stageHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    public static String stageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    /**
+     * 开始追踪一条通知，同一 UID 正在追踪时重新开始
+     * @param nanos Notification Source 到达的时间
+     */
+    public synchronized void begin(int rawUid, long nanos) {
+        long key = rawUid & 0xFFFFFFFFL;
+        int slot = slots.get(key);
+        if (slot == NO_SLOT) {
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                // 仍未完成的一条（例如获取失败或连接断开），不再等待
+                slot = nextSlot;
+                nextSlot = (nextSlot + 1) % slotUids.length;
+                slots.remove(slotUids[slot] & 0xFFFFFFFFL);
+                evicted.incrementAndGet();
+            }
+            slotUids[slot] = rawUid;
+            slots.put(key, slot);
+        }
+        int base = slot * STAGE_COUNT;
+        Arrays.fill(stamps, base, base + STAGE_COUNT, 0);
+        stamps[base + STAGE_NOTIFICATION_SOURCE] = nanos;
+    }
+
+    /**
+     * 以当前时间记录阶段，没有追踪该 UID 或该阶段已记录时忽略
+     */
+    public void mark(int rawUid, int stage) {
+        mark(rawUid, stage, System.nanoTime());
+    }
+
+    public synchronized void mark(int rawUid, int stage, long nanos) {
+        int slot = slots.get(rawUid & 0xFFFFFFFFL);
+        if (slot != NO_SLOT) {
+            record(slot, stage, nanos);
+        }
+    }
+
+    /**
+     * 记录最后一个阶段并结束追踪，计入端到端耗时
+     */
+    public void finish(int rawUid, int stage) {
+        finish(rawUid, stage, System.nanoTime());
+    }
+
+    public synchronized void finish(int rawUid, int stage, long nanos) {
+        int slot = slots.remove(rawUid & 0xFFFFFFFFL);
+        if (slot == NO_SLOT) {
+            return;
+        }
+        record(slot, stage, nanos);
+        release(slot);
+        total.record((nanos - stamps[slot * STAGE_COUNT + STAGE_NOTIFICATION_SOURCE]) / 1000);
+        completed.incrementAndGet();
+    }
+
+    /**
+     * 不会发出 Android 通知（例如已被移除或没有内容），结束追踪但不计入端到端耗时
+     */
+    public synchronized void discard(int rawUid) {
+        int slot = slots.remove(rawUid & 0xFFFFFFFFL);
+        if (slot != NO_SLOT) {
+            release(slot);
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * 连接断开时结束所有追踪：未完成的响应不会再到达，重连后重新获取的通知会重新开始追踪
+     */
+    public synchronized void discardAll() {
+        for (int slot = 0; slot < slotUids.length; slot++) {
+            long key = slotUids[slot] & 0xFFFFFFFFL;
+            if (slots.get(key) == slot) {
+                slots.remove(key);
+                release(slot);
+                discarded.incrementAndGet();
+            }
+        }
+    }
+
+    private void release(int slot) {
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void record(int slot, int stage, long nanos) {
+        int base = slot * STAGE_COUNT;
+        if (stamps[base + stage] != 0) {
+            return;
+        }
+        stamps[base + stage] = nanos;
+        for (int previous = stage - 1; previous >= 0; previous--) {
+            long at = stamps[base + previous];
+            if (at != 0) {
+                stageHistograms[stage].record((nanos - at) / 1000);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return 该阶段与上一个已记录阶段的间隔（微秒）
+     */
+    public LatencyHistogram getStageHistogram(int stage) {
+        return stageHistograms[stage];
+    }
+
+    /**
+     * @return Notification Source 到达至最后一个阶段的耗时（微秒）
+     */
+    public LatencyHistogram getTotalHistogram() {
+        return total;
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    /**
+     * @return 正在追踪、尚未结束的通知数
+     */
+    public synchronized int getActiveCount() {
+        return slotUids.length - freeCount;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : stageHistograms) {
+            histogram.reset();
+        }
+        total.reset();
+        completed.set(0);
+        discarded.set(0);
+        evicted.set(0);
+    }
+
+    /**
+     * 每个阶段一行：阶段名、次数、p50、p99、最大值（微秒），最后一行为端到端耗时
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append(String.format(Locale.US, "completed=%d discarded=%d evicted=%d\n",
+            completed.get(), discarded.get(), evicted.get()));
+        for (int stage = 1; stage < STAGE_COUNT; stage++) {
+            appendRow(sb, STAGE_NAMES[stage], stageHistograms[stage]);
+        }
+        appendRow(sb, "total", total);
+        return sb.toString();
+    }
+
+    private static void appendRow(StringBuilder sb, String name, LatencyHistogram histogram) {
+        sb.append(String.format(Locale.US, "%-9s n=%-7d p50=%-8d p99=%-8d max=%d\n", name,
+            histogram.getCount(), histogram.getPercentile(50), histogram.getPercentile(99), histogram.getMax()));
+    }
+}
@@ -0,0 +1,426 @@
+package stu.xiaohei.iphonebridge;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 通知历史的二元组（bigram）倒排索引
+ * 中文没有分词边界，把标题、副标题、内容和应用 ID 中连续的字母、数字、汉字切成相邻两字的组合建立索引；
+ * 查询时要求所有二元组都出现，按命中标题的数量和时间排序。
+ * 倒排表按文档号递增，以差值 + 变长整数编码保存在字节数组中，每条通常只占 1~2 字节。
+ * 非线程安全，由 HistorySearch 在单一线程中使用
+ */
+public class SearchIndex {
+    // 结果摘要的最大 UTF-8 字节数
+    private static final int SNIPPET_BYTES = 120;
+
+    public static final class Result {
+        public final int docId;
+        public final int rawUid;
+        public final long receivedAt;
+        public final int score;
+        public final String snippet;
+
+        Result(int docId, int rawUid, long receivedAt, int score, String snippet) {
+            this.docId = docId;
+            this.rawUid = rawUid;
+            this.receivedAt = receivedAt;
+            this.score = score;
+            this.snippet = snippet;
+        }
+    }
+
+    // 二元组 -> 词项编号
+    private final LongIntHashMap termIds = new LongIntHashMap(4096, -1);
+    private byte[][] postings = new byte[1024][];
+    private int[] postingSizes = new int[1024];
+    private int[] postingCounts = new int[1024];
+    private int[] lastDocs = new int[1024];
+    private int termCount = 0;
+
+    // 文档信息，下标为文档号
+    private int[] docUids = new int[1024];
+    private long[] docTimes = new long[1024];
+    private int[] snippetStarts = new int[1025];
+    private byte[] snippetPool = new byte[64 * 1024];
+    private int docCount = 0;
+    private final BitSet deleted = new BitSet();
+    // (UID, 首次收到时间) -> 文档号，同一条通知再次索引时替换旧文档
+    private final LongIntHashMap docKeys = new LongIntHashMap(1024, -1);
+
+    // 单个文档的词项缓冲：高位为二元组，最低位表示出现在标题中
+    private long[] scratch = new long[256];
+    private final StringBuilder textBuffer = new StringBuilder();
+
+    public int getDocCount() {
+        return docCount;
+    }
+
+    public int getLiveDocCount() {
+        return docCount - deleted.cardinality();
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * @return 倒排表占用的字节数
+     */
+    public long getPostingBytes() {
+        long total = 0;
+        for (int i = 0; i < termCount; i++) {
+            total += postingSizes[i];
+        }
+        return total;
+    }
+
+    public void clear() {
+        termIds.clear();
+        termCount = 0;
+        docCount = 0;
+        deleted.clear();
+        docKeys.clear();
+        snippetStarts[0] = 0;
+    }
+
+    private static long docKey(int rawUid, long receivedAt) {
+        return ((long) rawUid << 32) ^ (receivedAt & 0xFFFFFFFFL) ^ (receivedAt >>> 32);
+    }
+
+    /**
+     * 索引一条通知，没有可索引的文本时忽略
+     * @return 文档号，忽略时返回 -1
+     */
+    public int add(int rawUid, long receivedAt, AttributeBlock attributes) {
+        String title = attributes.getString(NotificationHandler.ATTRIBUTE_ID_TITLE);
+        String subtitle = attributes.getString(NotificationHandler.ATTRIBUTE_ID_SUBTITLE);
+        String message = attributes.getString(NotificationHandler.ATTRIBUTE_ID_MESSAGE);
+        String appId = attributes.getString(NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER);
+
+        int count = 0;
+        count = collect(title, 1, count);
+        count = collect(appId, 0, count);
+        count = collect(subtitle, 0, count);
+        count = collect(message, 0, count);
+        if (count == 0) {
+            return -1;
+        }
+
+        int docId = docCount;
+        ensureDocCapacity(docId + 1);
+        long key = docKey(rawUid, receivedAt);
+        int previous = docKeys.put(key, docId);
+        if (previous >= 0) {
+            deleted.set(previous);
+        }
+        docUids[docId] = rawUid;
+        docTimes[docId] = receivedAt;
+        appendSnippet(docId, title, message);
+        docCount++;
+
+        // 排序后合并同一二元组，标题标记取或
+        Arrays.sort(scratch, 0, count);
+        int i = 0;
+        while (i < count) {
+            long term = scratch[i] >>> 1;
+            int flag = (int) (scratch[i] & 1);
+            int j = i + 1;
+            while (j < count && (scratch[j] >>> 1) == term) {
+                flag |= (int) (scratch[j] & 1);
+                j++;
+            }
+            appendPosting(term, docId, flag);
+            i = j;
+        }
+        return docId;
+    }
+
+    /**
+     * 把文本切成二元组追加到 scratch
+     * @return 追加后的数量
+     */
+    private int collect(String text, int flag, int count) {
+        if (text == null) {
+            return count;
+        }
+        char prev = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = normalize(text.charAt(i));
+            if (c == 0) {
+                prev = 0;
+                continue;
+            }
+            if (prev != 0) {
+                if (count == scratch.length) {
+                    scratch = Arrays.copyOf(scratch, count * 2);
+                }
+                scratch[count++] = ((long) bigram(prev, c) << 1) | flag;
+            }
+            prev = c;
+        }
+        return count;
+    }
+
+    /**
+     * @return 小写后的字符，不参与索引的字符（空白、标点等）返回 0
+     */
+    private static char normalize(char c) {
+        if (Character.isLetterOrDigit(c)) {
+            return Character.toLowerCase(c);
+        }
+        return 0;
+    }
+
+    private static int bigram(char first, char second) {
+        return (first << 16) | second;
+    }
+
+    private void appendPosting(long term, int docId, int flag) {
+        int termId = termIds.get(term);
+        if (termId < 0) {
+            termId = termCount++;
+            ensureTermCapacity(termCount);
+            postings[termId] = new byte[4];
+            postingSizes[termId] = 0;
+            postingCounts[termId] = 0;
+            lastDocs[termId] = -1;
+            termIds.put(term, termId);
+        }
+        int value = ((docId - lastDocs[termId]) << 1) | flag;
+        lastDocs[termId] = docId;
+        postingCounts[termId]++;
+
+        byte[] bytes = postings[termId];
+        int size = postingSizes[termId];
+        if (size + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 5));
+            postings[termId] = bytes;
+        }
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+        postingSizes[termId] = size;
+    }
+
+    private void appendSnippet(int docId, String title, String message) {
+        textBuffer.setLength(0);
+        if (title != null) {
+            textBuffer.append(title);
+        }
+        if (message != null && !message.isEmpty()) {
+            if (textBuffer.length() > 0) textBuffer.append(" - ");
+            textBuffer.append(message, 0, Math.min(message.length(), SNIPPET_BYTES));
+        }
+        byte[] bytes = textBuffer.toString().getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > SNIPPET_BYTES) {
+            // 截断到字符边界
+            length = SNIPPET_BYTES;
+            while (length > 0 && (bytes[length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        int start = snippetStarts[docId];
+        if (start + length > snippetPool.length) {
+            snippetPool = Arrays.copyOf(snippetPool, Math.max(snippetPool.length * 2, start + length));
+        }
+        System.arraycopy(bytes, 0, snippetPool, start, length);
+        snippetStarts[docId + 1] = start + length;
+    }
+
+    private void ensureTermCapacity(int capacity) {
+        if (capacity > postings.length) {
+            int grown = postings.length * 2;
+            postings = Arrays.copyOf(postings, grown);
+            postingSizes = Arrays.copyOf(postingSizes, grown);
+            postingCounts = Arrays.copyOf(postingCounts, grown);
+            lastDocs = Arrays.copyOf(lastDocs, grown);
+        }
+    }
+
+    private void ensureDocCapacity(int capacity) {
+        if (capacity > docUids.length) {
+            int grown = docUids.length * 2;
+            docUids = Arrays.copyOf(docUids, grown);
+            docTimes = Arrays.copyOf(docTimes, grown);
+            snippetStarts = Arrays.copyOf(snippetStarts, grown + 1);
+        }
+    }
+
+    /**
+     * 查询包含所有二元组的文档，标题命中越多越靠前，同分时较新的在前
+     * @param query 至少包含两个连续的字母、数字或汉字
+     */
+    public List<Result> search(String query, int limit) {
+        List<Result> results = new ArrayList<>();
+        int count = collect(query, 0, 0);
+        if (count == 0 || limit <= 0) {
+            return results;
+        }
+        Arrays.sort(scratch, 0, count);
+
+        // 去重并查找词项，任一二元组不存在时没有结果
+        int[] terms = new int[count];
+        int termTotal = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && scratch[i] == scratch[i - 1]) {
+                continue;
+            }
+            int termId = termIds.get(scratch[i] >>> 1);
+            if (termId < 0) {
+                return results;
+            }
+            terms[termTotal++] = termId;
+        }
+        // 从最短的倒排表开始求交集
+        sortByPostingCount(terms, termTotal);
+
+        int first = terms[0];
+        int candidateCount = postingCounts[first];
+        int[] candidates = new int[candidateCount];
+        int[] titleHits = new int[candidateCount];
+        decodeAll(first, candidates, titleHits);
+
+        for (int t = 1; t < termTotal && candidateCount > 0; t++) {
+            candidateCount = intersect(terms[t], candidates, titleHits, candidateCount);
+        }
+
+        // 用大小为 limit 的最小堆保留前 limit 个；排序键高位为分数，低位为文档号
+        long[] heap = new long[Math.min(limit, candidateCount)];
+        int heapSize = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int docId = candidates[i];
+            if (deleted.get(docId)) {
+                continue;
+            }
+            int score = termTotal + titleHits[i] * 2;
+            long rank = ((long) score << 32) | docId;
+            if (heapSize < heap.length) {
+                heap[heapSize] = rank;
+                siftUp(heap, heapSize++);
+            } else if (rank > heap[0]) {
+                heap[0] = rank;
+                siftDown(heap, heapSize);
+            }
+        }
+        long[] ranked = heap;
+        int rankedCount = heapSize;
+        Arrays.sort(ranked, 0, rankedCount);
+        for (int i = rankedCount - 1; i >= 0; i--) {
+            int docId = (int) ranked[i];
+            int score = (int) (ranked[i] >>> 32);
+            results.add(new Result(docId, docUids[docId], docTimes[docId], score, getSnippet(docId)));
+        }
+        return results;
+    }
+
+    private static void siftUp(long[] heap, int index) {
+        long value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long value = heap[0];
+        int index = 0;
+        int child;
+        while ((child = index * 2 + 1) < size) {
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= value) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    private void sortByPostingCount(int[] terms, int length) {
+        for (int i = 1; i < length; i++) {
+            int term = terms[i];
+            int j = i - 1;
+            while (j >= 0 && postingCounts[terms[j]] > postingCounts[term]) {
+                terms[j + 1] = terms[j];
+                j--;
+            }
+            terms[j + 1] = term;
+        }
+    }
+
+    private void decodeAll(int termId, int[] docs, int[] flags) {
+        byte[] bytes = postings[termId];
+        int size = postingSizes[termId];
+        int pos = 0;
+        int doc = -1;
+        int n = 0;
+        while (pos < size) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            doc += value >>> 1;
+            docs[n] = doc;
+            flags[n] = value & 1;
+            n++;
+        }
+    }
+
+    /**
+     * 保留同时出现在该词项倒排表中的候选，两边都按文档号递增，顺序归并即可
+     * @return 剩余的候选数
+     */
+    private int intersect(int termId, int[] candidates, int[] titleHits, int candidateCount) {
+        byte[] bytes = postings[termId];
+        int size = postingSizes[termId];
+        int pos = 0;
+        int doc = -1;
+        int kept = 0;
+        int c = 0;
+        while (pos < size && c < candidateCount) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            doc += value >>> 1;
+
+            while (c < candidateCount && candidates[c] < doc) {
+                c++;
+            }
+            if (c < candidateCount && candidates[c] == doc) {
+                candidates[kept] = doc;
+                titleHits[kept] = titleHits[c] + (value & 1);
+                kept++;
+                c++;
+            }
+        }
+        return kept;
+    }
+
+    public String getSnippet(int docId) {
+        int start = snippetStarts[docId];
+        return new String(snippetPool, start, snippetStarts[docId + 1] - start, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Locale;
+
+/**
+ * 冷启动追踪
+ * 记录从开机广播到 ANCS 就绪之间每个步骤的耗时，不依赖 Android API，便于替换时钟做测试
+ */
+public class StartupTrace {
+    // 开机后到 ANCS 就绪的目标耗时
+    public static final long TARGET_READY_MS = 10 * 1000;
+
+    private static final int MAX_STEPS = 16;
+
+    public interface Ticker {
+        long nanoTime();
+    }
+
+    private final Ticker ticker;
+    private final long originNanos;
+    private final String[] stepNames = new String[MAX_STEPS];
+    private final long[] stepNanos = new long[MAX_STEPS];
+    private int stepCount = 0;
+    private long readyNanos = -1;
+
+    /**
+     * @param ticker 单调时钟
+     * @param originNanos 起点时间（开机广播或服务创建时刻），与 ticker 同一时钟
+     */
+    public StartupTrace(Ticker ticker, long originNanos) {
+        this.ticker = ticker;
+        this.originNanos = originNanos;
+    }
+
+    /**
+     * 以当前时间记录一个步骤
+     */
+    public void mark(String step) {
+        markAt(step, ticker.nanoTime());
+    }
+
+    /**
+     * 以指定时间记录一个步骤，用于补记在追踪创建之前发生的步骤
+     */
+    public synchronized void markAt(String step, long nanos) {
+        if (readyNanos >= 0 || stepCount >= MAX_STEPS) {
+            return;
+        }
+        stepNames[stepCount] = step;
+        stepNanos[stepCount] = nanos;
+        stepCount++;
+    }
+
+    /**
+     * 记录 ANCS 就绪，之后的步骤不再记录
+     * @return 首次就绪时返回 true
+     */
+    public synchronized boolean markReady() {
+        if (readyNanos >= 0) {
+            return false;
+        }
+        long now = ticker.nanoTime();
+        markAt("ancs_ready", now);
+        readyNanos = now;
+        return true;
+    }
+
+    public synchronized boolean isReady() {
+        return readyNanos >= 0;
+    }
+
+    /**
+     * @return 从起点到 ANCS 就绪的毫秒数，尚未就绪时返回 -1
+     */
+    public synchronized long getTimeToReadyMs() {
+        if (readyNanos < 0) {
+            return -1;
+        }
+        return (readyNanos - originNanos) / 1000000L;
+    }
+
+    public boolean isWithinTarget() {
+        long readyMs = getTimeToReadyMs();
+        return readyMs >= 0 && readyMs <= TARGET_READY_MS;
+    }
+
+    /**
+     * 格式化为每行一个步骤：步骤名、距上一步耗时、距起点耗时
+     */
+    public synchronized String format() {
+        StringBuilder sb = new StringBuilder();
+        long previous = originNanos;
+        for (int i = 0; i < stepCount; i++) {
+            sb.append(String.format(Locale.US, "%-20s +%6dms  @%6dms\n", stepNames[i],
+                (stepNanos[i] - previous) / 1000000L, (stepNanos[i] - originNanos) / 1000000L));
+            previous = stepNanos[i];
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,242 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AncsSessionTest {
+    private static final int REPLAYED = 0x11;
+    private static final int REMOVED_WHILE_DOWN = 0x22;
+    private static final String APP_ID = "com.tencent.xin";
+    private static final String DATE = "20261019T083000";
+
+    /**
+     * 忽略延迟，按投递顺序运行全部任务；Control Point 写入超时不运行，写入由测试应答
+     */
+    private static final class ImmediateScheduler implements AncsSession.Scheduler {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            if (delayMs != ControlPointQueue.WRITE_TIMEOUT_MS) {
+                tasks.add(task);
+            }
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            tasks.removeIf(t -> t == task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+
+    private static final class Recorder implements AncsSession.Listener {
+        final List<String> events = new ArrayList<>();
+        final List<NotificationSnapshot> reconciled = new ArrayList<>();
+
+        @Override
+        public void onNotificationSource(NotificationSnapshot info) {
+            events.add("source " + info.getRawUid());
+        }
+
+        @Override
+        public void onAttributesRetained(NotificationSnapshot info) {
+            events.add("retained " + info.getRawUid());
+        }
+
+        @Override
+        public void onNotificationReady(NotificationSnapshot info) {
+            events.add("ready " + info.getRawUid());
+        }
+
+        @Override
+        public void onNotificationRemoved(NotificationSnapshot info) {
+            events.add("removed " + info.getRawUid());
+        }
+
+        @Override
+        public void onReconciled(List<NotificationSnapshot> removed) {
+            events.add("reconciled");
+            reconciled.addAll(removed);
+        }
+    }
+
+    private final ImmediateScheduler scheduler = new ImmediateScheduler();
+    private final List<byte[]> writes = new ArrayList<>();
+    private final NotificationHandler handler = new NotificationHandler();
+    private final Recorder recorder = new Recorder();
+    private final AncsSession session = new AncsSession(command -> writes.add(command), handler, scheduler, recorder);
+
+    private static NotificationHandler.NotificationInfo checkpointed(int rawUid) {
+        NotificationHandler.NotificationInfo info = new NotificationHandler.NotificationInfo(NotificationHandler.formatUid(rawUid));
+        info.rawUid = rawUid;
+        info.eventId = NotificationHandler.EVENT_ID_NOTIFICATION_ADDED;
+        info.categoryId = NotificationHandler.CATEGORY_ID_SOCIAL;
+        info.attributes.set(NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER, APP_ID);
+        info.attributes.set(NotificationHandler.ATTRIBUTE_ID_DATE, DATE);
+        info.attributes.set(NotificationHandler.ATTRIBUTE_ID_TITLE, "标题");
+        return info;
+    }
+
+    /**
+     * 模拟 iPhone 对核对命令（应用 ID 与日期）的响应
+     */
+    private void answerVerify(int rawUid, String appId, String date) {
+        byte[] command = writes.get(writes.size() - 1);
+        assertEquals(7, command.length);
+        assertEquals(rawUid, NotificationHandler.readUid(command, 1));
+        session.onControlPointWriteComplete(0);
+        session.onDataSource(NotificationHandlerTest.attributesResponse(rawUid,
+            NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER, appId,
+            NotificationHandler.ATTRIBUTE_ID_DATE, date));
+    }
+
+    private void replay(int rawUid) {
+        session.onNotificationSource(NotificationHandlerTest.notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED,
+            NotificationHandler.EVENT_FLAG_PRE_EXISTING, NotificationHandler.CATEGORY_ID_SOCIAL, rawUid));
+    }
+
+    @Test
+    public void replayDuringRestoreWaitsForCheckpoint() {
+        session.awaitRestore();
+        session.onConnected();
+        session.onReady();
+        replay(REPLAYED);
+        scheduler.runAll();
+
+        // 恢复完成之前既不获取属性也不对账
+        assertTrue(recorder.events.isEmpty());
+        assertTrue(writes.isEmpty());
+
+        handler.restore(checkpointed(REPLAYED));
+        handler.restore(checkpointed(REMOVED_WHILE_DOWN));
+        session.onRestoreComplete();
+        scheduler.runAll();
+
+        // 只发出核对命令
+        assertEquals(1, writes.size());
+        assertEquals("reconciled", recorder.events.get(1));
+        assertEquals(1, recorder.reconciled.size());
+        assertEquals(REMOVED_WHILE_DOWN, recorder.reconciled.get(0).getRawUid());
+        assertEquals(1, handler.size());
+
+        answerVerify(REPLAYED, APP_ID, DATE);
+        assertEquals(1, writes.size());
+        assertEquals(1, session.getFetchesSaved());
+        assertEquals("retained " + REPLAYED, recorder.events.get(2));
+        assertEquals("标题", handler.getNotification(NotificationHandler.formatUid(REPLAYED)).getTitle());
+    }
+
+    @Test
+    public void replayedUidReusedAfterPhoneRebootIsFetchedAgain() {
+        handler.restore(checkpointed(REPLAYED));
+        session.onConnected();
+        session.onReady();
+        replay(REPLAYED);
+
+        // iPhone 重启后同一 UID 属于另一条通知，日期不同
+        answerVerify(REPLAYED, APP_ID, "20261019T120500");
+        assertEquals(0, session.getFetchesSaved());
+        assertEquals(2, writes.size());
+        assertTrue(writes.get(1).length > 7);
+        assertFalse(handler.getNotification(NotificationHandler.formatUid(REPLAYED)).hasAttributes());
+
+        session.onControlPointWriteComplete(0);
+        session.onDataSource(NotificationHandlerTest.attributesResponse(REPLAYED,
+            NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER, APP_ID,
+            NotificationHandler.ATTRIBUTE_ID_DATE, "20261019T120500",
+            NotificationHandler.ATTRIBUTE_ID_TITLE, "新标题",
+            NotificationHandler.ATTRIBUTE_ID_MESSAGE, "",
+            NotificationHandler.ATTRIBUTE_ID_POSITIVE_ACTION_LABEL, "",
+            NotificationHandler.ATTRIBUTE_ID_NEGATIVE_ACTION_LABEL, ""));
+        assertEquals("ready " + REPLAYED, recorder.events.get(1));
+        assertEquals("新标题", handler.getNotification(NotificationHandler.formatUid(REPLAYED)).getTitle());
+    }
+
+    @Test
+    public void oneVerificationCoversTheWholeReplay() {
+        handler.restore(checkpointed(REPLAYED));
+        handler.restore(checkpointed(REMOVED_WHILE_DOWN));
+        session.onConnected();
+        session.onReady();
+        replay(REPLAYED);
+        replay(REMOVED_WHILE_DOWN);
+
+        // 第二条重放等待第一条的核对结果，不再单独核对
+        assertEquals(1, writes.size());
+        answerVerify(REPLAYED, APP_ID, DATE);
+        assertEquals(1, writes.size());
+        assertEquals(2, session.getFetchesSaved());
+        assertTrue(recorder.events.contains("retained " + REPLAYED));
+        assertTrue(recorder.events.contains("retained " + REMOVED_WHILE_DOWN));
+    }
+
+    @Test
+    public void eventsHeldFromDroppedLinkAreDiscarded() {
+        session.awaitRestore();
+        session.onConnected();
+        session.onReady();
+        replay(REPLAYED);
+        session.onDisconnected();
+
+        session.onRestoreComplete();
+        scheduler.runAll();
+        assertTrue(recorder.events.isEmpty());
+
+        // 恢复结束后事件不再保留
+        session.onConnected();
+        replay(REPLAYED);
+        assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void reconcileInterruptedByDisconnectIsResumed() {
+        handler.restore(checkpointed(REPLAYED));
+        handler.restore(checkpointed(REMOVED_WHILE_DOWN));
+
+        // 重放窗口内断开，对账被取消
+        session.onConnected();
+        session.onReady();
+        replay(REPLAYED);
+        session.onDisconnected();
+        scheduler.runAll();
+        assertTrue(recorder.reconciled.isEmpty());
+        assertEquals(1, session.getUnreconciledCount());
+
+        // 再次断开时上一次带过来的通知仍未确认
+        session.onConnected();
+        session.onReady();
+        session.onDisconnected();
+        assertEquals(2, session.getUnreconciledCount());
+
+        session.onConnected();
+        session.onReady();
+        replay(REPLAYED);
+        scheduler.runAll();
+        assertEquals(1, recorder.reconciled.size());
+        assertEquals(REMOVED_WHILE_DOWN, recorder.reconciled.get(0).getRawUid());
+        assertEquals(0, session.getUnreconciledCount());
+        assertEquals(1, handler.size());
+    }
+
+    @Test
+    public void withoutRestoreEventsAreHandledImmediately() {
+        session.onConnected();
+        session.onReady();
+        replay(REPLAYED);
+
+        assertEquals("source " + REPLAYED, recorder.events.get(0));
+        assertEquals(1, writes.size());
+    }
+}
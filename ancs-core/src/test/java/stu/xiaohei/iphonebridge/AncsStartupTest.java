@@ -0,0 +1,235 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.junit.Test;
+
+/**
+ * 在模拟的蓝牙链路上检查冷启动顺序与到达 ANCS 就绪的耗时
+ * 时间只在执行任务时前进；服务的步骤按给定耗时占用时间，链路回调按各自的延迟到达
+ */
+public class AncsStartupTest {
+    // 接近真实设备的链路耗时（毫秒）
+    private static final long CONNECT_MS = 1500;
+    private static final long DISCOVERY_MS = 800;
+    private static final long DESCRIPTOR_MS = 100;
+
+    /**
+     * 单线程事件循环，同时作为 Scheduler 与 StartupTrace 的时钟
+     */
+    private static final class Loop implements AncsSession.Scheduler, StartupTrace.Ticker {
+        private static final class Event implements Comparable<Event> {
+            final long atMs;
+            final long sequence;
+            final Runnable task;
+
+            Event(long atMs, long sequence, Runnable task) {
+                this.atMs = atMs;
+                this.sequence = sequence;
+                this.task = task;
+            }
+
+            @Override
+            public int compareTo(Event other) {
+                if (atMs != other.atMs) {
+                    return atMs < other.atMs ? -1 : 1;
+                }
+                return Long.compare(sequence, other.sequence);
+            }
+        }
+
+        private final PriorityQueue<Event> queue = new PriorityQueue<>();
+        private long nowMs = 0;
+        private long nextSequence = 0;
+
+        void schedule(long delayMs, Runnable task) {
+            queue.add(new Event(nowMs + delayMs, nextSequence++, task));
+        }
+
+        /**
+         * 当前任务占用的时间
+         */
+        void spend(long ms) {
+            nowMs += ms;
+        }
+
+        void run() {
+            while (!queue.isEmpty()) {
+                Event event = queue.poll();
+                nowMs = Math.max(nowMs, event.atMs);
+                event.task.run();
+            }
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            schedule(delayMs, task);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            queue.removeIf(event -> event.task == task);
+        }
+
+        @Override
+        public long nanoTime() {
+            return nowMs * 1000000L;
+        }
+    }
+
+    /**
+     * 模拟的服务与 iPhone：记录调用顺序，按固定延迟回调 AncsStartup
+     */
+    private static final class Fixture implements AncsStartup.Host, AncsStartup.Link, GattTransport.Listener {
+        final Loop loop = new Loop();
+        final List<String> calls = new ArrayList<>();
+        final AncsStartup startup = new AncsStartup(this, this, loop, this);
+        long connectMs = CONNECT_MS;
+        long foregroundMs = 50;
+        long deferredInitMs = 400;
+        boolean ancsPresent = true;
+        int connected = 0;
+        int ready = 0;
+        long connectAtMs = -1;
+
+        @Override
+        public boolean connect() {
+            calls.add("connect");
+            connectAtMs = loop.nowMs;
+            loop.schedule(connectMs, startup::onLinkConnected);
+            return true;
+        }
+
+        @Override
+        public void startForeground() {
+            calls.add("foreground");
+            loop.spend(foregroundMs);
+        }
+
+        @Override
+        public void deferredInit() {
+            calls.add("deferred_init");
+            loop.spend(deferredInitMs);
+        }
+
+        @Override
+        public boolean discoverServices() {
+            loop.schedule(DISCOVERY_MS, () -> startup.onServicesDiscovered(ancsPresent));
+            return true;
+        }
+
+        @Override
+        public boolean enableNotifications(int characteristic) {
+            loop.schedule(DESCRIPTOR_MS, () -> startup.onNotificationsEnabled(characteristic, 0));
+            return true;
+        }
+
+        @Override
+        public void onConnected() {
+            connected++;
+        }
+
+        @Override
+        public void onReady() {
+            ready++;
+        }
+
+        @Override
+        public void onDisconnected() {
+        }
+
+        @Override
+        public void onNotificationSource(byte[] data) {
+        }
+
+        @Override
+        public void onDataSource(byte[] data) {
+        }
+
+        @Override
+        public void onControlPointWriteComplete(int status) {
+        }
+
+        StartupTrace start() {
+            StartupTrace trace = new StartupTrace(loop, 0);
+            startup.start(trace);
+            loop.run();
+            return trace;
+        }
+    }
+
+    @Test
+    public void coldStartReachesReadyWithinTarget() {
+        Fixture fixture = new Fixture();
+        StartupTrace trace = fixture.start();
+
+        assertTrue(trace.isReady());
+        // 只有链路本身的耗时在关键路径上
+        assertEquals(CONNECT_MS + DISCOVERY_MS + 2 * DESCRIPTOR_MS, trace.getTimeToReadyMs());
+        assertTrue(trace.isWithinTarget());
+        assertEquals(1, fixture.connected);
+        assertEquals(1, fixture.ready);
+    }
+
+    @Test
+    public void connectIsIssuedBeforeForegroundAndDeferredInit() {
+        Fixture fixture = new Fixture();
+        fixture.start();
+
+        assertEquals(Arrays.asList("connect", "foreground", "deferred_init"), fixture.calls);
+    }
+
+    @Test
+    public void slowDeferredInitDoesNotDelayConnect() {
+        Fixture fixture = new Fixture();
+        fixture.foregroundMs = 300;
+        fixture.deferredInitMs = 5000;
+        StartupTrace trace = fixture.start();
+
+        // 连接在进入前台之前发出，建立连接的时间与前台、延迟初始化重叠
+        assertEquals(0, fixture.connectAtMs);
+        assertTrue(trace.getTimeToReadyMs() < CONNECT_MS + fixture.foregroundMs + fixture.deferredInitMs
+            + DISCOVERY_MS + 2 * DESCRIPTOR_MS);
+        assertTrue(trace.isWithinTarget());
+    }
+
+    @Test
+    public void slowLinkMissesTarget() {
+        Fixture fixture = new Fixture();
+        fixture.connectMs = StartupTrace.TARGET_READY_MS;
+        StartupTrace trace = fixture.start();
+
+        assertTrue(trace.isReady());
+        assertFalse(trace.isWithinTarget());
+    }
+
+    @Test
+    public void missingAncsServiceNeverBecomesReady() {
+        Fixture fixture = new Fixture();
+        fixture.ancsPresent = false;
+        StartupTrace trace = fixture.start();
+
+        assertFalse(trace.isReady());
+        assertFalse(fixture.startup.isReady());
+        assertEquals(0, fixture.ready);
+    }
+
+    @Test
+    public void repeatedStartDoesNotRepeatForegroundOrDeferredInit() {
+        Fixture fixture = new Fixture();
+        fixture.start();
+        fixture.startup.start(null);
+        fixture.loop.run();
+
+        assertEquals(Arrays.asList("connect", "foreground", "deferred_init", "connect"), fixture.calls);
+        assertEquals(2, fixture.connected);
+        assertEquals(2, fixture.ready);
+    }
+}
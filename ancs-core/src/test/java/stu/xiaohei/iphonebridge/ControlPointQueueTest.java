@@ -0,0 +1,112 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ControlPointQueueTest {
+    private static final byte[] FIRST = { 1 };
+    private static final byte[] SECOND = { 2 };
+
+    /**
+     * 只记录延迟任务，由测试决定何时运行
+     */
+    private static final class ManualScheduler implements AncsSession.Scheduler {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            tasks.add(task);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            tasks.removeIf(t -> t == task);
+        }
+
+        void runAll() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<byte[]> written = new ArrayList<>();
+    private final List<Integer> statuses = new ArrayList<>();
+    private final ControlPointQueue.Callback callback = (command, status) -> statuses.add(status);
+    private final ControlPointQueue queue = new ControlPointQueue(command -> written.add(command), scheduler);
+
+    @Test
+    public void writesOneCommandAtATime() {
+        queue.enqueue(FIRST, callback);
+        queue.enqueue(SECOND, callback);
+        assertEquals(1, written.size());
+        assertEquals(2, queue.depth());
+
+        queue.onWriteComplete(0);
+        assertEquals(2, written.size());
+        assertEquals(1, queue.depth());
+        assertEquals(0, (int) statuses.get(0));
+    }
+
+    @Test
+    public void watchdogFailsStalledWriteAndIssuesNext() {
+        queue.enqueue(FIRST, callback);
+        queue.enqueue(SECOND, callback);
+
+        scheduler.runAll();
+        assertEquals(ControlPointQueue.STATUS_TIMEOUT, (int) statuses.get(0));
+        assertEquals(1, queue.getTimeoutCount());
+        assertEquals(2, written.size());
+        assertEquals(SECOND[0], written.get(1)[0]);
+        // 下一条命令有自己的看门狗
+        assertEquals(1, scheduler.tasks.size());
+
+        queue.onWriteComplete(0);
+        assertEquals(0, queue.depth());
+        assertTrue(scheduler.tasks.isEmpty());
+    }
+
+    @Test
+    public void completedWriteCancelsWatchdog() {
+        queue.enqueue(FIRST, callback);
+        queue.onWriteComplete(0);
+        assertTrue(scheduler.tasks.isEmpty());
+        assertEquals(0, queue.getTimeoutCount());
+    }
+
+    @Test
+    public void clearFailsEverythingAndCancelsWatchdog() {
+        queue.enqueue(FIRST, callback);
+        queue.enqueue(SECOND, callback);
+        queue.clear();
+
+        assertEquals(2, statuses.size());
+        assertEquals(ControlPointQueue.STATUS_DISCONNECTED, (int) statuses.get(1));
+        assertEquals(0, queue.depth());
+        assertTrue(scheduler.tasks.isEmpty());
+    }
+
+    @Test
+    public void confirmTimeoutOnlyEndsItsOwnAction() {
+        PendingActionTracker tracker = new PendingActionTracker();
+        PendingActionTracker.PendingAction first = tracker.begin("1", false, 0);
+        assertEquals(first, tracker.onConfirmed("1", 10));
+        PendingActionTracker.PendingAction second = tracker.begin("1", false, 20);
+
+        // 第一次操作的计时到期，不能结束第二次操作
+        assertFalse(tracker.onTimeout(first, 30));
+        assertEquals(1, tracker.size());
+        assertTrue(tracker.onTimeout(second, 40));
+        assertNull(tracker.onConfirmed("1", 50));
+    }
+}
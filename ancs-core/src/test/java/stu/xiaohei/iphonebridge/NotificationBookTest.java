@@ -0,0 +1,140 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NotificationBookTest {
+    private static final String WECHAT = "com.tencent.xin";
+    private static final String MAIL = "com.apple.mobilemail";
+
+    /**
+     * 按顺序记录 Book 对 Poster 的调用
+     */
+    private static final class Recorder implements NotificationBook.Poster<String> {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public String createView(int id, NotificationSnapshot info) {
+            calls.add("create " + id);
+            return "view " + id;
+        }
+
+        @Override
+        public void onGroupAssigned(NotificationBook.Entry<String> entry) {
+            calls.add("group " + entry.id + " " + entry.group.appId);
+        }
+
+        @Override
+        public void cancel(int id) {
+            calls.add("cancel " + id);
+        }
+
+        @Override
+        public void onRemoved(NotificationBook.Entry<String> entry) {
+            calls.add("removed " + entry.id);
+        }
+
+        @Override
+        public void onGroupChanged(NotificationBook.Group<String> group) {
+            calls.add("changed " + group.appId + " " + group.members.size());
+        }
+
+        @Override
+        public void onGroupRemoved(NotificationBook.Group<String> group) {
+            calls.add("group_removed " + group.appId);
+        }
+    }
+
+    private final NotificationIdAllocator idAllocator = new NotificationIdAllocator();
+    private final Recorder poster = new Recorder();
+    private final NotificationBook<String> book = new NotificationBook<>(idAllocator, poster);
+
+    private static NotificationSnapshot snapshot(int rawUid) {
+        NotificationHandler.NotificationInfo info = new NotificationHandler.NotificationInfo(NotificationHandler.formatUid(rawUid));
+        info.rawUid = rawUid;
+        return NotificationSnapshot.of(info);
+    }
+
+    private NotificationBook.Entry<String> post(int rawUid, String appId) {
+        NotificationBook.Entry<String> entry = book.entryFor(snapshot(rawUid));
+        book.assignGroup(entry, appId);
+        return entry;
+    }
+
+    @Test
+    public void viewIsCreatedOncePerId() {
+        NotificationBook.Entry<String> first = post(1, WECHAT);
+        NotificationBook.Entry<String> again = post(1, WECHAT);
+
+        assertSame(first, again);
+        assertEquals("view " + first.id, first.view);
+        assertEquals(Arrays.asList("create " + first.id, "group " + first.id + " " + WECHAT), poster.calls);
+        assertEquals(1, book.getEntryCount());
+        assertEquals(1, book.getGroupCount());
+        assertEquals(1, idAllocator.size());
+    }
+
+    @Test
+    public void lastMemberLeavingRemovesGroupAndFreesSummaryId() {
+        NotificationBook.Entry<String> a = post(1, WECHAT);
+        NotificationBook.Entry<String> b = post(2, WECHAT);
+        int summaryId = a.group.summaryId;
+        poster.calls.clear();
+
+        assertTrue(book.cancel(1));
+        assertEquals(Arrays.asList("cancel " + a.id, "removed " + a.id, "changed " + WECHAT + " 1"), poster.calls);
+        poster.calls.clear();
+
+        assertTrue(book.cancel(2));
+        assertEquals(Arrays.asList("cancel " + b.id, "removed " + b.id, "group_removed " + WECHAT), poster.calls);
+        assertEquals(0, book.getGroupCount());
+        assertEquals(0, idAllocator.size());
+        assertFalse(book.cancel(2));
+        // 释放的摘要 ID 可以再分配
+        assertEquals(summaryId, idAllocator.allocateId());
+    }
+
+    @Test
+    public void changingAppMovesEntryBetweenGroups() {
+        post(1, WECHAT);
+        post(2, WECHAT);
+        poster.calls.clear();
+
+        NotificationBook.Entry<String> moved = post(2, MAIL);
+        assertEquals(MAIL, moved.group.appId);
+        assertEquals(Arrays.asList("changed " + WECHAT + " 1", "group " + moved.id + " " + MAIL), poster.calls);
+        assertEquals(2, book.getGroupCount());
+    }
+
+    @Test
+    public void staleNotificationsUpdateEachGroupOnce() {
+        idAllocator.beginSession();
+        post(1, WECHAT);
+        post(2, WECHAT);
+        post(3, WECHAT);
+        post(4, MAIL);
+        // 从检查点恢复、本进程中没有显示过的通知
+        idAllocator.restore(5, NotificationIdAllocator.FIRST_ID + 50);
+
+        idAllocator.beginSession();
+        book.retain(3);
+        poster.calls.clear();
+        int cancelled = book.cancelStale(Arrays.asList(snapshot(1), snapshot(2), snapshot(3), snapshot(4), snapshot(5)));
+
+        assertEquals(4, cancelled);
+        assertTrue(poster.calls.contains("cancel " + (NotificationIdAllocator.FIRST_ID + 50)));
+        assertEquals(1, poster.calls.stream().filter(call -> call.startsWith("changed ")).count());
+        assertTrue(poster.calls.contains("changed " + WECHAT + " 1"));
+        assertTrue(poster.calls.contains("group_removed " + MAIL));
+        assertEquals(1, book.getEntryCount());
+        assertEquals(1, book.getGroupCount());
+    }
+}
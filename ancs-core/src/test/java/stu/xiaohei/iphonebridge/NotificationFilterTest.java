@@ -0,0 +1,163 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class NotificationFilterTest {
+
+    private static AttributeBlock attributes(String title, String message) {
+        AttributeBlock.Builder builder = new AttributeBlock.Builder();
+        if (title != null) {
+            builder.set(NotificationHandler.ATTRIBUTE_ID_TITLE, title);
+        }
+        if (message != null) {
+            builder.set(NotificationHandler.ATTRIBUTE_ID_MESSAGE, message);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 字符串与 UTF-8 字节两条匹配路径的结果必须一致
+     */
+    private static boolean shows(NotificationFilter filter, String title, String message) {
+        boolean show = filter.shouldShowNotification(title, message);
+        assertEquals(show, filter.shouldShowNotification(attributes(title, message)));
+        return show;
+    }
+
+    private static NotificationFilter enabled(int mode) {
+        NotificationFilter filter = new NotificationFilter();
+        filter.setFilterEnabled(true);
+        filter.setFilterMode(mode);
+        return filter;
+    }
+
+    @Test
+    public void disabledFilterShowsEverything() {
+        NotificationFilter filter = new NotificationFilter();
+        filter.addToBlacklist("验证码");
+        assertTrue(shows(filter, "银行", "您的验证码是 1234"));
+    }
+
+    @Test
+    public void blacklistHidesMatchingTitleOrMessage() {
+        NotificationFilter filter = enabled(NotificationFilter.MODE_BLACKLIST);
+        filter.addToBlacklist("广告");
+
+        assertFalse(shows(filter, "广告", "限时优惠"));
+        assertFalse(shows(filter, "商城", "这是一条广告"));
+        assertTrue(shows(filter, "张三", "晚上吃饭吗"));
+        assertTrue(shows(filter, null, null));
+    }
+
+    @Test
+    public void whitelistShowsOnlyMatching() {
+        NotificationFilter filter = enabled(NotificationFilter.MODE_WHITELIST);
+        assertTrue(shows(filter, "任何", "内容"));
+
+        filter.setWhitelist(new HashSet<>(Arrays.asList("张三", "会议")));
+        assertTrue(shows(filter, "张三", "晚上吃饭吗"));
+        assertTrue(shows(filter, "日历", "下午三点会议"));
+        assertFalse(shows(filter, "李四", "晚上吃饭吗"));
+    }
+
+    @Test
+    public void keywordDoesNotMatchAcrossTitleAndMessage() {
+        NotificationFilter filter = enabled(NotificationFilter.MODE_BLACKLIST);
+        filter.addToBlacklist("张三李四");
+        // 标题与正文之间有空格分隔
+        assertTrue(shows(filter, "张三", "李四"));
+        filter.addToBlacklist("张三 李四");
+        assertFalse(shows(filter, "张三", "李四"));
+    }
+
+    @Test
+    public void keywordChangesTakeEffectImmediately() {
+        NotificationFilter filter = enabled(NotificationFilter.MODE_BLACKLIST);
+        filter.addToBlacklist("  广告 ");
+        assertFalse(shows(filter, "商城", "广告"));
+
+        filter.removeFromBlacklist("广告");
+        assertTrue(shows(filter, "商城", "广告"));
+
+        filter.addToBlacklist("   ");
+        assertTrue(filter.getBlacklist().isEmpty());
+    }
+
+    @Test
+    public void regexBlacklistAndWhitelist() {
+        NotificationFilter filter = enabled(NotificationFilter.MODE_BLACKLIST);
+        filter.setRegexEnabled(true);
+        filter.setRegexPattern("验证码\\D*\\d{4,6}");
+        filter.saveSettings();
+        assertFalse(shows(filter, "银行", "您的验证码是 123456"));
+        assertTrue(shows(filter, "银行", "您的验证码已过期"));
+
+        filter.setFilterMode(NotificationFilter.MODE_WHITELIST);
+        assertTrue(shows(filter, "银行", "您的验证码是 123456"));
+        assertFalse(shows(filter, "银行", "账单已出"));
+    }
+
+    @Test
+    public void regexWhitelistStillChecksKeywords() {
+        NotificationFilter filter = enabled(NotificationFilter.MODE_WHITELIST);
+        filter.setRegexEnabled(true);
+        filter.setRegexPattern("^张三");
+        filter.saveSettings();
+        filter.addToWhitelist("紧急");
+
+        assertTrue(shows(filter, "张三", "紧急：回电话"));
+        assertFalse(shows(filter, "张三", "晚上吃饭吗"));
+    }
+
+    @Test
+    public void invalidRegexIsIgnored() {
+        assertFalse(NotificationFilter.isValidRegex("(未闭合"));
+        NotificationFilter filter = enabled(NotificationFilter.MODE_BLACKLIST);
+        filter.setRegexEnabled(true);
+        filter.setRegexPattern("(未闭合");
+        filter.saveSettings();
+        assertTrue(shows(filter, "(未闭合", "内容"));
+    }
+
+    @Test
+    public void storeIsLoadedAndSaved() {
+        final NotificationFilter[] saved = new NotificationFilter[1];
+        NotificationFilter.Store store = new NotificationFilter.Store() {
+            @Override
+            public void load(NotificationFilter filter) {
+                filter.setFilterEnabled(true);
+                filter.setBlacklist(new HashSet<>(Arrays.asList("广告")));
+            }
+
+            @Override
+            public void save(NotificationFilter filter) {
+                saved[0] = filter;
+            }
+        };
+        NotificationFilter filter = new NotificationFilter(store);
+        assertFalse(shows(filter, "商城", "广告"));
+
+        filter.saveSettings();
+        assertEquals(filter, saved[0]);
+    }
+
+    @Test
+    public void countsCheckedAndFiltered() {
+        NotificationFilter filter = enabled(NotificationFilter.MODE_BLACKLIST);
+        filter.addToBlacklist("广告");
+        long checked = NotificationFilter.getCheckedCount();
+        long filtered = NotificationFilter.getFilteredCount();
+
+        filter.shouldShowNotification("商城", "广告");
+        filter.shouldShowNotification("张三", "晚上吃饭吗");
+        assertEquals(checked + 2, NotificationFilter.getCheckedCount());
+        assertEquals(filtered + 1, NotificationFilter.getFilteredCount());
+    }
+}
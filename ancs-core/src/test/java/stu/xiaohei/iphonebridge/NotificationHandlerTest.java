@@ -0,0 +1,217 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class NotificationHandlerTest {
+    private static final int UID = 0x01020304;
+
+    static byte[] notificationSource(byte eventId, byte eventFlags, byte categoryId, int uid) {
+        return new byte[] {
+            eventId, eventFlags, categoryId, 1,
+            (byte) uid, (byte) (uid >> 8), (byte) (uid >> 16), (byte) (uid >> 24)
+        };
+    }
+
+    /**
+     * @param attributes 依次为属性 ID 与值
+     */
+    static byte[] attributesResponse(int uid, Object... attributes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES);
+        out.write(uid);
+        out.write(uid >> 8);
+        out.write(uid >> 16);
+        out.write(uid >> 24);
+        for (int i = 0; i < attributes.length; i += 2) {
+            byte[] value = ((String) attributes[i + 1]).getBytes(StandardCharsets.UTF_8);
+            out.write((Byte) attributes[i]);
+            out.write(value.length);
+            out.write(value.length >> 8);
+            out.write(value, 0, value.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static NotificationSnapshot add(NotificationHandler handler, String title, String message) {
+        handler.parseNotificationSource(notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, (byte) 0,
+            NotificationHandler.CATEGORY_ID_SOCIAL, UID));
+        return handler.parseDataSource(attributesResponse(UID,
+            NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER, "com.tencent.xin",
+            NotificationHandler.ATTRIBUTE_ID_TITLE, title,
+            NotificationHandler.ATTRIBUTE_ID_MESSAGE, message));
+    }
+
+    @Test
+    public void modifiedKeepsAttributesUntilResponseArrives() {
+        NotificationHandler handler = new NotificationHandler();
+        add(handler, "张三", "晚上吃饭吗");
+
+        NotificationSnapshot modified = handler.parseNotificationSource(notificationSource(
+            NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED, (byte) 0, NotificationHandler.CATEGORY_ID_SOCIAL, UID));
+        assertEquals(NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED, modified.getEventId());
+        assertEquals("张三", modified.getTitle());
+        assertEquals("晚上吃饭吗", handler.getNotification(modified.getUid()).getMessage());
+
+        NotificationSnapshot updated = handler.parseDataSource(attributesResponse(UID,
+            NotificationHandler.ATTRIBUTE_ID_TITLE, "张三",
+            NotificationHandler.ATTRIBUTE_ID_MESSAGE, "改到明天"));
+        assertEquals("改到明天", updated.getMessage());
+        // 新响应中没有的属性不残留
+        assertNull(updated.getAppId());
+        assertEquals(1, handler.size());
+    }
+
+    @Test
+    public void modifiedUnknownUidStartsEmpty() {
+        NotificationHandler handler = new NotificationHandler();
+        NotificationSnapshot modified = handler.parseNotificationSource(notificationSource(
+            NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED, (byte) 0, NotificationHandler.CATEGORY_ID_SOCIAL, UID));
+        assertFalse(modified.hasAttributes());
+        assertNotNull(handler.getNotification(modified.getUid()));
+    }
+
+    @Test
+    public void notificationSourceFieldsAreParsed() {
+        NotificationHandler handler = new NotificationHandler();
+        byte flags = (byte) (NotificationHandler.EVENT_FLAG_IMPORTANT | NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION);
+        NotificationSnapshot info = handler.parseNotificationSource(notificationSource(
+            NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, flags, NotificationHandler.CATEGORY_ID_EMAIL, UID));
+
+        // UID 按线上字节顺序格式化
+        assertEquals("04030201", info.getUid());
+        assertEquals(UID, info.getRawUid());
+        assertEquals(NotificationHandler.CATEGORY_ID_EMAIL, info.getCategoryId());
+        assertEquals(flags, info.getEventFlags());
+        assertFalse(info.hasPositiveAction());
+        assertTrue(info.hasNegativeAction());
+        assertFalse(info.hasAttributes());
+    }
+
+    @Test
+    public void shortNotificationSourceIsRejected() {
+        NotificationHandler handler = new NotificationHandler();
+        assertNull(handler.parseNotificationSource(null));
+        assertNull(handler.parseNotificationSource(new byte[7]));
+        assertEquals(0, handler.size());
+    }
+
+    @Test
+    public void removedDropsRecord() {
+        NotificationHandler handler = new NotificationHandler();
+        NotificationSnapshot added = add(handler, "张三", "晚上吃饭吗");
+
+        NotificationSnapshot removed = handler.parseNotificationSource(notificationSource(
+            NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED, (byte) 0, NotificationHandler.CATEGORY_ID_SOCIAL, UID));
+        assertTrue(removed.isRemoved());
+        assertEquals(added.getUid(), removed.getUid());
+        assertEquals(added.getReceivedAt(), removed.getReceivedAt());
+        assertNull(handler.getNotification(added.getUid()));
+        assertEquals(0, handler.size());
+
+        // 移除之后才到达的属性响应不会重新创建记录
+        assertNull(handler.parseDataSource(attributesResponse(UID, NotificationHandler.ATTRIBUTE_ID_TITLE, "张三")));
+        assertEquals(0, handler.size());
+    }
+
+    @Test
+    public void responseForUnknownUidIsIgnored() {
+        NotificationHandler handler = new NotificationHandler();
+        assertNull(handler.parseDataSource(attributesResponse(UID, NotificationHandler.ATTRIBUTE_ID_TITLE, "张三")));
+        assertEquals(0, handler.size());
+        assertEquals(0, handler.getMalformedCount());
+    }
+
+    @Test
+    public void attributesAreTrimmedAndLengthIsLittleEndian() {
+        NotificationHandler handler = new NotificationHandler();
+        char[] longMessage = new char[300];
+        Arrays.fill(longMessage, '长');
+        NotificationSnapshot info = add(handler, "  张三\n", new String(longMessage));
+
+        assertEquals("张三", info.getTitle());
+        assertEquals(300, info.getMessage().length());
+        assertEquals("com.tencent.xin", info.getAppId());
+        assertNull(info.getSubtitle());
+    }
+
+    @Test
+    public void truncatedResponseKeepsPreviousAttributes() {
+        NotificationHandler handler = new NotificationHandler();
+        add(handler, "张三", "晚上吃饭吗");
+        handler.parseNotificationSource(notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED, (byte) 0,
+            NotificationHandler.CATEGORY_ID_SOCIAL, UID));
+        byte[] response = attributesResponse(UID,
+            NotificationHandler.ATTRIBUTE_ID_TITLE, "李四",
+            NotificationHandler.ATTRIBUTE_ID_MESSAGE, "改到明天");
+        String uid = NotificationHandler.formatUid(UID);
+
+        // 正文的值在中间结束
+        assertNull(handler.parseDataSource(Arrays.copyOf(response, response.length - 2)));
+        assertEquals("张三", handler.getNotification(uid).getTitle());
+        assertEquals("晚上吃饭吗", handler.getNotification(uid).getMessage());
+        assertEquals(1, handler.getMalformedCount());
+
+        // 只剩半个属性头部
+        assertNull(handler.parseDataSource(Arrays.copyOf(response, 5 + 3 + 6 + 2)));
+        assertEquals("张三", handler.getNotification(uid).getTitle());
+        assertEquals(2, handler.getMalformedCount());
+
+        // 之后完整的响应照常替换
+        NotificationSnapshot updated = handler.parseDataSource(response);
+        assertEquals("李四", updated.getTitle());
+        assertEquals("改到明天", updated.getMessage());
+        assertEquals(2, handler.getMalformedCount());
+    }
+
+    @Test
+    public void shortDataSourceIsCounted() {
+        NotificationHandler handler = new NotificationHandler();
+        assertNull(handler.parseDataSource(new byte[4]));
+        assertEquals(1, handler.getMalformedCount());
+    }
+
+    @Test
+    public void getAttributesCommandOnlyLimitsTextAttributes() {
+        NotificationHandler handler = new NotificationHandler();
+        byte[] command = handler.createGetNotificationAttributesCommand("04030201",
+            NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER,
+            NotificationHandler.ATTRIBUTE_ID_TITLE,
+            NotificationHandler.ATTRIBUTE_ID_POSITIVE_ACTION_LABEL,
+            NotificationHandler.ATTRIBUTE_ID_MESSAGE);
+
+        assertArrayEquals(new byte[] {
+            NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES, 4, 3, 2, 1,
+            NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER,
+            NotificationHandler.ATTRIBUTE_ID_TITLE, 0, 1,
+            NotificationHandler.ATTRIBUTE_ID_POSITIVE_ACTION_LABEL,
+            NotificationHandler.ATTRIBUTE_ID_MESSAGE, 0, 1
+        }, command);
+    }
+
+    @Test
+    public void performActionCommandEchoesNotificationSourceUid() {
+        NotificationHandler handler = new NotificationHandler();
+        byte[] source = notificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED,
+            NotificationHandler.EVENT_FLAG_POSITIVE_ACTION, NotificationHandler.CATEGORY_ID_INCOMING_CALL, UID);
+        String uid = handler.parseNotificationSource(source).getUid();
+
+        byte[] positive = handler.createPerformActionCommand(uid, true);
+        assertArrayEquals(new byte[] {
+            NotificationHandler.COMMAND_ID_PERFORM_NOTIFICATION_ACTION, source[4], source[5], source[6], source[7],
+            NotificationHandler.ACTION_ID_POSITIVE
+        }, positive);
+        assertEquals(NotificationHandler.ACTION_ID_NEGATIVE, handler.createPerformActionCommand(uid, false)[5]);
+        assertEquals(UID, NotificationHandler.readUid(positive, 1));
+    }
+}
@@ -0,0 +1,93 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class NotificationIdAllocatorTest {
+    private static final int A = 1;
+    private static final int B = 2;
+    private static final int C = 3;
+
+    @Test
+    public void replayedUidKeepsItsId() {
+        NotificationIdAllocator allocator = new NotificationIdAllocator();
+        allocator.beginSession();
+        int id = allocator.allocate(A);
+
+        allocator.beginSession();
+        assertEquals(id, allocator.allocate(A));
+        assertEquals(NotificationIdAllocator.NO_ID, allocator.releasePrevious(A));
+        assertEquals(1, allocator.size());
+    }
+
+    @Test
+    public void staleIdIsReleasedAfterDisconnectInsideReplayWindow() {
+        NotificationIdAllocator allocator = new NotificationIdAllocator();
+        allocator.beginSession();
+        int idA = allocator.allocate(A);
+        int idB = allocator.allocate(B);
+
+        // A 被重放，B 在断开期间已移除；对账之前再次断开
+        allocator.beginSession();
+        allocator.allocate(A);
+        allocator.beginSession();
+        assertEquals(idA, allocator.allocate(A));
+
+        assertEquals(idB, allocator.releasePrevious(B));
+        assertEquals(NotificationIdAllocator.NO_ID, allocator.releasePrevious(B));
+        assertEquals(1, allocator.size());
+    }
+
+    @Test
+    public void removedBeforeReplayReleasesOlderId() {
+        NotificationIdAllocator allocator = new NotificationIdAllocator();
+        allocator.beginSession();
+        int id = allocator.allocate(A);
+        allocator.beginSession();
+
+        // 重放后在获取属性之前就被移除，本次连接中还没有沿用
+        assertEquals(id, allocator.release(A));
+        assertEquals(0, allocator.size());
+    }
+
+    @Test
+    public void reusedUidReplacesOlderNotification() {
+        NotificationIdAllocator allocator = new NotificationIdAllocator();
+        allocator.beginSession();
+        int id = allocator.allocate(A);
+
+        // iPhone 重启后 UID 重新计数
+        allocator.beginSession();
+        assertEquals(id, allocator.allocate(A));
+        assertEquals(1, allocator.size());
+    }
+
+    @Test
+    public void releasedIdsAreReused() {
+        NotificationIdAllocator allocator = new NotificationIdAllocator();
+        int idA = allocator.allocate(A);
+        int idB = allocator.allocate(B);
+        assertNotEquals(idA, idB);
+
+        allocator.release(A);
+        assertEquals(idA, allocator.allocate(C));
+        assertEquals(NotificationIdAllocator.NO_ID, allocator.release(A));
+    }
+
+    @Test
+    public void restoredIdsAreReleasedByNextReconcile() {
+        NotificationIdAllocator allocator = new NotificationIdAllocator();
+        // 检查点在后台恢复，可能晚于建立连接
+        allocator.beginSession();
+        allocator.restore(A, NotificationIdAllocator.FIRST_ID + 5);
+        allocator.restore(B, NotificationIdAllocator.FIRST_ID + 9);
+        assertEquals(NotificationIdAllocator.FIRST_ID + 5, allocator.get(A));
+
+        assertEquals(NotificationIdAllocator.FIRST_ID + 5, allocator.allocate(A));
+        // 新 ID 不与恢复的 ID 冲突
+        assertEquals(NotificationIdAllocator.FIRST_ID + 10, allocator.allocate(C));
+        assertEquals(NotificationIdAllocator.FIRST_ID + 9, allocator.releasePrevious(B));
+    }
+}
@@ -0,0 +1,95 @@
+package stu.xiaohei.iphonebridge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class NotificationTextTest {
+    private final NotificationText text = new NotificationText();
+    private final NotificationBook<Void> book = new NotificationBook<>(new NotificationIdAllocator(),
+        new NotificationBook.Poster<Void>() {
+            @Override
+            public Void createView(int id, NotificationSnapshot info) {
+                return null;
+            }
+
+            @Override
+            public void onGroupAssigned(NotificationBook.Entry<Void> entry) {
+            }
+
+            @Override
+            public void cancel(int id) {
+            }
+
+            @Override
+            public void onRemoved(NotificationBook.Entry<Void> entry) {
+            }
+
+            @Override
+            public void onGroupChanged(NotificationBook.Group<Void> group) {
+            }
+
+            @Override
+            public void onGroupRemoved(NotificationBook.Group<Void> group) {
+            }
+        });
+
+    private static NotificationSnapshot snapshot(byte categoryId, byte eventFlags, String title, String message) {
+        NotificationHandler.NotificationInfo info = new NotificationHandler.NotificationInfo(NotificationHandler.formatUid(1));
+        info.rawUid = 1;
+        info.categoryId = categoryId;
+        info.hasNegativeAction = (eventFlags & NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION) != 0;
+        info.attributes.set(NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER, "com.apple.mobilephone");
+        if (title != null) {
+            info.attributes.set(NotificationHandler.ATTRIBUTE_ID_TITLE, title);
+        }
+        if (message != null) {
+            info.attributes.set(NotificationHandler.ATTRIBUTE_ID_MESSAGE, message);
+        }
+        return NotificationSnapshot.of(info);
+    }
+
+    @Test
+    public void appNotificationSplitsFirstLine() {
+        assertTrue(text.format(snapshot(NotificationHandler.CATEGORY_ID_SOCIAL, (byte) 0, "张三", "晚上吃饭吗\n七点")));
+        assertEquals("张三", text.getTitle());
+        assertEquals("晚上吃饭吗\n七点", text.getContent());
+
+        assertTrue(text.format(snapshot(NotificationHandler.CATEGORY_ID_SOCIAL, (byte) 0, null, "只有正文")));
+        assertEquals("只有正文", text.getTitle());
+        assertEquals("", text.getContent());
+    }
+
+    @Test
+    public void callUsesAppNameAsTitle() {
+        assertTrue(text.format(snapshot(NotificationHandler.CATEGORY_ID_MISSED_CALL, (byte) 0, "张三", "未接来电")));
+        assertEquals(ANCSConstants.getAppDisplayName("com.apple.mobilephone"), text.getTitle());
+        assertEquals("张三\n未接来电", text.getContent());
+    }
+
+    @Test
+    public void emptyNotificationIsNotFormatted() {
+        assertFalse(text.format(snapshot(NotificationHandler.CATEGORY_ID_SOCIAL, (byte) 0, null, null)));
+        assertNull(text.getTitle());
+    }
+
+    @Test
+    public void updateReportsOnlyChangedFields() {
+        NotificationSnapshot first = snapshot(NotificationHandler.CATEGORY_ID_SOCIAL, (byte) 0, "张三", "晚上吃饭吗");
+        NotificationBook.Entry<Void> entry = book.entryFor(first);
+        text.format(first);
+        assertEquals(NotificationText.CHANGED_TITLE | NotificationText.CHANGED_CONTENT, text.update(entry, first));
+        assertEquals(0, text.update(entry, first));
+
+        NotificationSnapshot modified = snapshot(NotificationHandler.CATEGORY_ID_SOCIAL,
+            NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION, "张三", "改到明天");
+        text.format(modified);
+        assertEquals(NotificationText.CHANGED_CONTENT | NotificationText.CHANGED_ACTIONS, text.update(entry, modified));
+        assertEquals("改到明天", entry.content);
+        assertEquals("取消", entry.negativeLabel);
+        assertNull(entry.positiveLabel);
+    }
+}
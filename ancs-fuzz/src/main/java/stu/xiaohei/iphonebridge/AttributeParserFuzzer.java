@@ -0,0 +1,22 @@
+package stu.xiaohei.iphonebridge;
+
+/**
+ * Jazzer 模糊测试入口
+ * 第一个字节的最低位选择检查：0 把其余字节当作任意的 Data Source 数据（ParserProperties.checkArbitrary），
+ * 1 用其余字节生成一条通知做编解码往返（ParserProperties.checkRoundTrip）。
+ * 解析卡住由 Jazzer 的 -timeout 发现
+ */
+public class AttributeParserFuzzer {
+
+    public static void fuzzerTestOneInput(byte[] data) {
+        if (data.length == 0) {
+            return;
+        }
+        FuzzInput input = new FuzzInput(data, 1);
+        if ((data[0] & 1) == 0) {
+            ParserProperties.checkArbitrary(input.rest());
+        } else {
+            ParserProperties.checkRoundTrip(input);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Arrays;
+
+/**
+ * 把模糊测试的输入字节按顺序解释为各种取值，字节用完后一律取 0，
+ * 因此同一输入总是得到同一组取值，Jazzer 的变异可以逐步影响每个取值
+ */
+final class FuzzInput {
+    // 生成字符串时使用的码点区间：ASCII（含空白与控制符）、拉丁扩展、CJK、emoji
+    private static final int[][] CODE_POINT_RANGES = {
+        { 0x00, 0x7F }, { 0x80, 0x24F }, { 0x4E00, 0x9FFF }, { 0x1F300, 0x1F6FF }
+    };
+
+    private final byte[] data;
+    private int pos;
+
+    FuzzInput(byte[] data, int offset) {
+        this.data = data;
+        this.pos = offset;
+    }
+
+    int remaining() {
+        return data.length - pos;
+    }
+
+    int nextByte() {
+        return pos < data.length ? data[pos++] & 0xFF : 0;
+    }
+
+    boolean nextBoolean() {
+        return (nextByte() & 1) != 0;
+    }
+
+    int nextInt() {
+        return nextByte() | nextByte() << 8 | nextByte() << 16 | nextByte() << 24;
+    }
+
+    /**
+     * @return [0, bound)
+     */
+    int nextInt(int bound) {
+        int value = bound <= 0x100 ? nextByte() : bound <= 0x10000 ? nextByte() | nextByte() << 8 : nextInt() & 0x7FFFFFFF;
+        return value % bound;
+    }
+
+    /**
+     * @return 由合法码点组成、最多 maxCodePoints 个码点的字符串
+     */
+    String nextString(int maxCodePoints) {
+        int count = nextInt(maxCodePoints + 1);
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            int[] range = CODE_POINT_RANGES[nextInt(CODE_POINT_RANGES.length)];
+            sb.appendCodePoint(range[0] + nextInt(range[1] - range[0] + 1));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 剩余的全部字节
+     */
+    byte[] rest() {
+        byte[] rest = pos < data.length ? Arrays.copyOfRange(data, pos, data.length) : new byte[0];
+        pos = data.length;
+        return rest;
+    }
+}
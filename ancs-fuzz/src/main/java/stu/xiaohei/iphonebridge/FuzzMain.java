@@ -0,0 +1,174 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * ancs-fuzz 命令行入口，不需要 Jazzer 即可运行
+ * properties [--iterations N] [--seed N] [--verbose]：随机输入、对合法响应的变异、编解码往返与线性时间检查
+ * reproduce 文件...：把 Jazzer 保存的输入交给 AttributeParserFuzzer
+ * 检查失败时以状态 1 退出
+ */
+public class FuzzMain {
+    // 最多打印的失败数
+    private static final int MAX_REPORTED = 10;
+    private static final int[] TIMING_SIZES = { 1024, 4096, 16384, 65536 };
+    // 最大输入与最小输入的每字节耗时之比的上限，超过视为非线性
+    private static final double MAX_TIME_GROWTH = 4.0;
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        if ("properties".equals(args[0])) {
+            properties(args);
+        } else if ("reproduce".equals(args[0]) && args.length >= 2) {
+            for (int i = 1; i < args.length; i++) {
+                run(Files.readAllBytes(Paths.get(args[i])), false);
+            }
+        } else {
+            usage();
+            return;
+        }
+        System.out.println(failures == 0 ? "PASS" : "FAILED: " + failures + " failures");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void properties(String[] args) {
+        int iterations = 100000;
+        long seed = 1;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--verbose": AncsLog.setLogger(AncsLog.STDERR); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Random random = new Random(seed);
+
+        // 完全随机的输入，两种检查各占一半
+        for (int i = 0; i < iterations; i++) {
+            byte[] data = new byte[random.nextBoolean() ? random.nextInt(32) : random.nextInt(2048)];
+            random.nextBytes(data);
+            run(data, false);
+        }
+        // 对合法响应截断、改写字节或长度字段，覆盖随机输入很少走到的截断路径
+        for (int i = 0; i < iterations; i++) {
+            byte[] data = ParserProperties.mutate(ParserProperties.validResponse(random), random);
+            run(data, true);
+        }
+        System.out.println(String.format(Locale.US, "properties: %d random, %d mutated inputs, seed=%d, failures=%d",
+            iterations, iterations, seed, failures));
+
+        checkLinearTime();
+    }
+
+    /**
+     * @param arbitrary 为 true 时直接做 checkArbitrary，否则交给模糊测试入口
+     */
+    private static void run(byte[] data, boolean arbitrary) {
+        try {
+            if (arbitrary) {
+                ParserProperties.checkArbitrary(data);
+            } else {
+                AttributeParserFuzzer.fuzzerTestOneInput(data);
+            }
+        } catch (AssertionError e) {
+            failures++;
+            if (failures <= MAX_REPORTED) {
+                System.out.println("FAIL: " + e.getMessage() + (e.getCause() != null ? " (" + e.getCause() + ")" : ""));
+            }
+        }
+    }
+
+    /**
+     * 对几种最坏情况的输入比较不同大小下每字节的解析耗时
+     */
+    private static void checkLinearTime() {
+        String[] names = { "empty-attributes", "one-byte-attributes", "unknown-ids", "truncated-tail" };
+        for (int pattern = 0; pattern < names.length; pattern++) {
+            double[] nanosPerByte = new double[TIMING_SIZES.length];
+            for (int i = 0; i < TIMING_SIZES.length; i++) {
+                nanosPerByte[i] = measure(timingInput(pattern, TIMING_SIZES[i]));
+            }
+            double growth = nanosPerByte[TIMING_SIZES.length - 1] / nanosPerByte[0];
+            StringBuilder sb = new StringBuilder(String.format(Locale.US, "linear-time %-20s", names[pattern]));
+            for (int i = 0; i < TIMING_SIZES.length; i++) {
+                sb.append(String.format(Locale.US, " %dB=%.2fns/B", TIMING_SIZES[i], nanosPerByte[i]));
+            }
+            sb.append(String.format(Locale.US, " growth=%.2f", growth));
+            System.out.println(sb);
+            if (growth > MAX_TIME_GROWTH) {
+                failures++;
+                System.out.println("FAIL: " + names[pattern] + " parse time grows " + growth + "x per byte");
+            }
+        }
+    }
+
+    private static byte[] timingInput(int pattern, int size) {
+        byte[] data = new byte[size];
+        data[0] = NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES;
+        int pos = 5;
+        while (pos + 4 <= size) {
+            switch (pattern) {
+                case 0:
+                    data[pos] = NotificationHandler.ATTRIBUTE_ID_TITLE;
+                    pos += 3;
+                    break;
+                case 1:
+                    data[pos] = NotificationHandler.ATTRIBUTE_ID_MESSAGE;
+                    data[pos + 1] = 1;
+                    data[pos + 3] = 'x';
+                    pos += 4;
+                    break;
+                case 2:
+                    data[pos] = (byte) 0xF0;
+                    pos += 3;
+                    break;
+                default:
+                    // 只在最后留下不完整的属性头
+                    data[pos] = NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER;
+                    pos += 3;
+                    if (pos + 4 > size - 2) {
+                        return Arrays.copyOf(data, pos + 2);
+                    }
+                    break;
+            }
+        }
+        return Arrays.copyOf(data, pos);
+    }
+
+    /**
+     * @return 最好一轮的每字节耗时（纳秒）
+     */
+    private static double measure(byte[] input) {
+        int repetitions = Math.max(1, 4 * 65536 / input.length);
+        NotificationHandler handler = new NotificationHandler();
+        handler.parseNotificationSource(ParserProperties.notificationSource(NotificationHandler.readUid(input, 1)));
+        for (int i = 0; i < repetitions * 20; i++) {
+            handler.parseDataSource(input);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 7; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < repetitions; i++) {
+                handler.parseDataSource(input);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / repetitions / input.length;
+    }
+
+    private static void usage() {
+        System.out.println("usage: properties [--iterations N] [--seed N] [--verbose]\n"
+            + "       reproduce FILE...");
+    }
+}
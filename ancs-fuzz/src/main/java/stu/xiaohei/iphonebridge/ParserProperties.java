@@ -0,0 +1,308 @@
+package stu.xiaohei.iphonebridge;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Data Source 解析应满足的性质，违反时抛出 AssertionError，模糊测试与性质检查共用
+ */
+final class ParserProperties {
+    private static final int HEADER_BYTES = 5;
+    private static final int ATTRIBUTE_HEADER_BYTES = 3;
+    // NotificationHandler.createGetNotificationAttributesCommand 请求的最大长度
+    private static final int BUILDER_MAX_LENGTH = 256;
+    private static final int MIN_ATT_MTU = 23;
+    private static final int MAX_ATT_MTU = 517;
+    private static final byte[] ALL_ATTRIBUTE_IDS = { 0, 1, 2, 3, 4, 5, 6, 7 };
+
+    private ParserProperties() {
+    }
+
+    /**
+     * 任意字节作为 Notification Source、Data Source 响应与 Data Source 分片：
+     * 解析不抛出异常，解析出的属性与按规范独立实现的参考解析一致；格式错误时被计数，不发布快照也不改变已有的属性；
+     * 没有对应通知的响应不会留下记录
+     */
+    static void checkArbitrary(byte[] input) {
+        NotificationHandler handler = new NotificationHandler();
+        NotificationSnapshot info;
+        try {
+            new NotificationHandler().parseNotificationSource(input);
+            if (input.length >= HEADER_BYTES) {
+                NotificationHandler unknown = new NotificationHandler();
+                check(unknown.parseDataSource(input) == null && unknown.size() == 0,
+                    "Response for unknown UID kept", input);
+                handler.parseNotificationSource(notificationSource(NotificationHandler.readUid(input, 1)));
+            }
+            info = handler.parseDataSource(input);
+            if (info != null) {
+                for (int id = 0; id < AttributeBlock.ATTRIBUTE_COUNT; id++) {
+                    info.getAttributes().getString(id);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new AssertionError("Parser threw on " + hex(input), e);
+        }
+
+        if (input.length < HEADER_BYTES) {
+            check(info == null && handler.getMalformedCount() == 1, "Short response not rejected", input);
+            return;
+        }
+        byte[][] expected = new byte[AttributeBlock.ATTRIBUTE_COUNT][];
+        boolean complete = input[0] != NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES
+            || referenceParse(input, expected);
+        check(handler.getMalformedCount() == (complete ? 0 : 1), "Malformed count wrong", input);
+        if (!complete) {
+            check(info == null, "Truncated response published", input);
+            NotificationSnapshot kept = handler.getNotification(NotificationHandler.formatUid(input, 1));
+            check(kept != null && !kept.hasAttributes(), "Truncated response changed attributes", input);
+            checkReassembly(input);
+            return;
+        }
+        check(info != null, "Response not parsed", input);
+        AttributeBlock attributes = info.getAttributes();
+        check(attributes.byteSize() <= input.length - HEADER_BYTES, "Attributes larger than input", input);
+        if (input[0] == NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES) {
+            for (int id = 0; id < AttributeBlock.ATTRIBUTE_COUNT; id++) {
+                checkAttribute(attributes, id, expected[id], input);
+            }
+        }
+
+        checkReassembly(input);
+    }
+
+    /**
+     * 构建器生成的命令被模拟外设按规范编码成响应，按任意 MTU 分片后重组、解析，得到的属性与原值一致
+     */
+    static void checkRoundTrip(FuzzInput in) {
+        int rawUid = in.nextInt();
+        byte categoryId = (byte) in.nextInt(12);
+        String appId = in.nextString(64);
+        String title = in.nextString(200);
+        String message = in.nextString(600);
+        boolean withActions = in.nextBoolean();
+        int attMtu = MIN_ATT_MTU + in.nextInt(MAX_ATT_MTU - MIN_ATT_MTU + 1);
+
+        // 随机顺序的属性子集
+        byte[] ids = ALL_ATTRIBUTE_IDS.clone();
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = in.nextInt(i + 1);
+            byte swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+        ids = Arrays.copyOf(ids, 1 + in.nextInt(ids.length));
+
+        NotificationHandler handler = new NotificationHandler();
+        handler.parseNotificationSource(notificationSource(rawUid));
+        byte[] command = handler.createGetNotificationAttributesCommand(NotificationHandler.formatUid(rawUid), ids);
+        check(DataSourceReassembler.countAttributes(command) == ids.length, "Command attribute count wrong", command);
+        check(NotificationHandler.readUid(command, 1) == rawUid, "Command UID wrong", command);
+
+        byte[] response = FakeAncsPeripheral.encodeResponse(command, categoryId, appId, title, message, withActions);
+        check(response != null, "Peripheral rejected command", command);
+
+        // 按 ATT_MTU - 3 分片，只有最后一片之后得到完整响应
+        DataSourceReassembler reassembler = new DataSourceReassembler();
+        reassembler.expect(command);
+        int payload = attMtu - 3;
+        byte[] reassembled = null;
+        for (int offset = 0; offset < response.length; offset += payload) {
+            check(reassembled == null, "Response completed early at MTU " + attMtu, response);
+            reassembled = reassembler.offer(Arrays.copyOfRange(response, offset, Math.min(response.length, offset + payload)));
+        }
+        check(Arrays.equals(response, reassembled), "Reassembly differs at MTU " + attMtu, response);
+
+        NotificationSnapshot info = handler.parseDataSource(reassembled);
+        check(info != null && handler.getMalformedCount() == 0, "Well-formed response rejected", response);
+        check(info.getRawUid() == rawUid, "Response UID wrong", response);
+        AttributeBlock attributes = info.getAttributes();
+        for (byte id : ids) {
+            if (id == NotificationHandler.ATTRIBUTE_ID_DATE) {
+                // 日期由外设按当前时间生成，只检查格式 yyyyMMdd'T'HHmmss
+                check(attributes.length(id) == 15, "Date attribute wrong", response);
+                continue;
+            }
+            String value = attributeValue(id, appId, title, message, withActions);
+            int maxLength = NotificationHandler.hasMaxLength(id) ? BUILDER_MAX_LENGTH : Integer.MAX_VALUE;
+            byte[] encoded = truncate(value.getBytes(StandardCharsets.UTF_8), maxLength);
+            // 长度为 0 的属性视为没有该属性
+            checkAttribute(attributes, id, encoded.length > 0 ? trim(encoded) : null, response);
+        }
+    }
+
+    /**
+     * 把任意字节当作期待中的响应按 20 字节分片交给重组器：不抛出异常，缓冲不会无限增长
+     */
+    private static void checkReassembly(byte[] input) {
+        DataSourceReassembler reassembler = new DataSourceReassembler();
+        byte[] command = { NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES,
+            input[1], input[2], input[3], input[4], NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER,
+            NotificationHandler.ATTRIBUTE_ID_TITLE, (byte) 0xff, (byte) 0xff };
+        try {
+            reassembler.expect(command);
+            for (int offset = 0; offset < input.length; offset += 20) {
+                byte[] response = reassembler.offer(Arrays.copyOfRange(input, offset, Math.min(input.length, offset + 20)));
+                if (response != null) {
+                    new NotificationHandler().parseDataSource(response);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new AssertionError("Reassembler threw on " + hex(input), e);
+        }
+        check(reassembler.getBufferedBytes() <= input.length, "Reassembler buffered more than input", input);
+    }
+
+    /**
+     * 按 ANCS 规范独立实现的参考解析：属性为 ID(1) + 长度(2，小端序) + 值，遇到截断即停止，
+     * 同一属性出现多次时以最后一次为准，值去掉首尾空白，长度为 0 的属性忽略
+     * @return 数据完整时返回 true
+     */
+    private static boolean referenceParse(byte[] input, byte[][] values) {
+        int pos = HEADER_BYTES;
+        while (pos < input.length) {
+            if (input.length - pos < ATTRIBUTE_HEADER_BYTES) {
+                return false;
+            }
+            int id = input[pos] & 0xFF;
+            int length = (input[pos + 1] & 0xFF) | (input[pos + 2] & 0xFF) << 8;
+            pos += ATTRIBUTE_HEADER_BYTES;
+            if (pos + length > input.length) {
+                return false;
+            }
+            if (length > 0 && id < AttributeBlock.ATTRIBUTE_COUNT) {
+                values[id] = trim(Arrays.copyOfRange(input, pos, pos + length));
+            }
+            pos += length;
+        }
+        return true;
+    }
+
+    /**
+     * @return 该 UID 的 ADDED 事件
+     */
+    static byte[] notificationSource(int rawUid) {
+        return new byte[] {
+            NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, 0, NotificationHandler.CATEGORY_ID_OTHER, 1,
+            (byte) rawUid, (byte) (rawUid >>> 8), (byte) (rawUid >>> 16), (byte) (rawUid >>> 24)
+        };
+    }
+
+    private static String attributeValue(byte id, String appId, String title, String message, boolean withActions) {
+        switch (id) {
+            case NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER: return appId;
+            case NotificationHandler.ATTRIBUTE_ID_TITLE: return title;
+            case NotificationHandler.ATTRIBUTE_ID_MESSAGE: return message;
+            case NotificationHandler.ATTRIBUTE_ID_MESSAGE_SIZE:
+                return Integer.toString(message.getBytes(StandardCharsets.UTF_8).length);
+            case NotificationHandler.ATTRIBUTE_ID_POSITIVE_ACTION_LABEL: return withActions ? "接受" : "";
+            case NotificationHandler.ATTRIBUTE_ID_NEGATIVE_ACTION_LABEL: return withActions ? "清除" : "";
+            default: return "";
+        }
+    }
+
+    private static void checkAttribute(AttributeBlock attributes, int id, byte[] expected, byte[] input) {
+        if (expected == null) {
+            check(!attributes.has(id), "Unexpected attribute " + id, input);
+            return;
+        }
+        byte[] actual = new byte[attributes.length(id)];
+        attributes.copyTo(id, actual, 0);
+        check(attributes.has(id) && Arrays.equals(expected, actual), "Attribute " + id + " is " + hex(actual)
+            + ", expected " + hex(expected), input);
+    }
+
+    /**
+     * 在 maxLength 处截断，不拆开 UTF-8 字符
+     */
+    private static byte[] truncate(byte[] value, int maxLength) {
+        if (value.length <= maxLength) {
+            return value;
+        }
+        int length = maxLength;
+        while (length > 0 && (value[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return Arrays.copyOf(value, length);
+    }
+
+    /**
+     * 去掉首尾不大于空格的字节，与 String.trim 一致
+     */
+    private static byte[] trim(byte[] value) {
+        int start = 0;
+        int end = value.length;
+        while (start < end && (value[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (value[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return Arrays.copyOfRange(value, start, end);
+    }
+
+    /**
+     * @return 随机 UID 与属性（ID 可能未知）组成的完整 Get Notification Attributes 响应
+     */
+    static byte[] validResponse(Random random) {
+        int attributes = random.nextInt(8);
+        int size = 5;
+        byte[][] values = new byte[attributes][];
+        for (int i = 0; i < attributes; i++) {
+            values[i] = new byte[random.nextInt(64)];
+            random.nextBytes(values[i]);
+            size += 3 + values[i].length;
+        }
+        byte[] data = new byte[size];
+        data[0] = NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES;
+        for (int i = 1; i < 5; i++) {
+            data[i] = (byte) random.nextInt();
+        }
+        int pos = 5;
+        for (byte[] value : values) {
+            data[pos++] = (byte) random.nextInt(10);
+            data[pos++] = (byte) value.length;
+            data[pos++] = (byte) (value.length >>> 8);
+            System.arraycopy(value, 0, data, pos, value.length);
+            pos += value.length;
+        }
+        return data;
+    }
+
+    /**
+     * 截断、改写一个字节或在末尾追加不完整的属性头，覆盖随机输入很少走到的截断路径
+     */
+    static byte[] mutate(byte[] data, Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                // 截断
+                return Arrays.copyOf(data, random.nextInt(data.length + 1));
+            case 1:
+                // 改写一个字节
+                if (data.length > 5) {
+                    data[5 + random.nextInt(data.length - 5)] = (byte) random.nextInt();
+                }
+                return data;
+            default:
+                // 在末尾追加不完整的属性头
+                byte[] longer = Arrays.copyOf(data, data.length + 1 + random.nextInt(2));
+                longer[data.length] = (byte) random.nextInt(8);
+                return longer;
+        }
+    }
+
+    private static void check(boolean condition, String message, byte[] input) {
+        if (!condition) {
+            throw new AssertionError(message + " for input " + hex(input));
+        }
+    }
+
+    static String hex(byte[] data) {
+        StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,51 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * 以固定种子与次数运行 ParserProperties 的检查，每次构建都能复现；
+ * 更多次数与线性时间检查见 FuzzMain properties
+ */
+public class ParserPropertiesTest {
+    private static final long SEED = 1;
+    private static final int ITERATIONS = 5000;
+
+    private interface Property {
+        void check(Random random);
+    }
+
+    private static void forAll(Property property) {
+        Random random = new Random(SEED);
+        for (int i = 0; i < ITERATIONS; i++) {
+            try {
+                property.check(random);
+            } catch (AssertionError e) {
+                throw new AssertionError("seed=" + SEED + " iteration=" + i + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int maxLength) {
+        byte[] data = new byte[random.nextInt(maxLength)];
+        random.nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void arbitraryBytesMatchReferenceParser() {
+        forAll(random -> ParserProperties.checkArbitrary(randomBytes(random, random.nextBoolean() ? 32 : 2048)));
+    }
+
+    @Test
+    public void mutatedResponsesMatchReferenceParser() {
+        forAll(random -> ParserProperties.checkArbitrary(
+            ParserProperties.mutate(ParserProperties.validResponse(random), random)));
+    }
+
+    @Test
+    public void builtCommandsRoundTripAtAnyMtu() {
+        forAll(random -> ParserProperties.checkRoundTrip(new FuzzInput(randomBytes(random, 1024), 0)));
+    }
+}
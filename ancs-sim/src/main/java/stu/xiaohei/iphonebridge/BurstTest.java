@@ -0,0 +1,269 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 突发测试：以固定速率在模拟 iPhone 上新增通知，中途注入断开，
+ * 检查 AncsSession 最终把每条通知的内容完整交付，并统计从新增到交付的延迟；
+ * 最后移除全部通知，检查会话中不再有活动通知
+ */
+class BurstTest {
+    private static final String TAG = "BurstTest";
+    private static final String[] WORDS = {
+        "验证码", "您的", "快递", "已到达", "取件码", "会议", "明天", "下午", "三点", "提醒",
+        "微信", "红包", "转账", "收到", "一条", "新消息", "订单", "已发货", "支付宝", "账单",
+        "航班", "延误", "登机口", "变更", "天气", "预警", "暴雨", "请注意", "安全", "回复"
+    };
+    private static final String[] APP_IDS = {
+        "com.tencent.xin", "com.apple.MobileSMS", "com.apple.mobilemail", "com.alipay.iphoneclient",
+        "com.taobao.taobao4iphone", "com.apple.mobilecal"
+    };
+    private static final byte[] CATEGORIES = {
+        NotificationHandler.CATEGORY_ID_SOCIAL, NotificationHandler.CATEGORY_ID_OTHER,
+        NotificationHandler.CATEGORY_ID_EMAIL, NotificationHandler.CATEGORY_ID_BUSINESS_AND_FINANCE,
+        NotificationHandler.CATEGORY_ID_NEWS, NotificationHandler.CATEGORY_ID_SCHEDULE
+    };
+
+    static final class Options {
+        int count = 3000;
+        // 每分钟新增的通知数，0 表示不限速
+        int ratePerMinute = 6000;
+        int attMtu = FakeAncsPeripheral.DEFAULT_ATT_MTU;
+        double writeFailureRate = 0.01;
+        int disconnects = 2;
+        long downtimeMillis = 1000;
+        // 0 表示不检查
+        long maxP99Millis = 0;
+        long timeoutMillis = 60000;
+        long seed = 1;
+        Writer trace;
+    }
+
+    private final Options options;
+    private final Object lock = new Object();
+    // 下标为 UID，外设从 1 开始分配
+    private final long[] postNanos;
+    private final String[] titles;
+    private final String[] messages;
+    private final boolean[] delivered;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private PipelineTrace pipelineTrace;
+    private int deliveredCount = 0;
+    private int contentMismatches = 0;
+    private int retainedCount = 0;
+    private int reconciledStale = 0;
+    private int removedEvents = 0;
+
+    BurstTest(Options options) {
+        this.options = options;
+        postNanos = new long[options.count + 1];
+        titles = new String[options.count + 1];
+        messages = new String[options.count + 1];
+        delivered = new boolean[options.count + 1];
+    }
+
+    private final AncsSession.Listener listener = new AncsSession.Listener() {
+        @Override
+        public void onNotificationSource(NotificationSnapshot info) {
+        }
+
+        @Override
+        public void onAttributesRetained(NotificationSnapshot info) {
+            synchronized (lock) {
+                retainedCount++;
+            }
+        }
+
+        @Override
+        public void onNotificationReady(NotificationSnapshot info) {
+            long now = System.nanoTime();
+            int uid = info.getRawUid();
+            // 没有渲染器，决定与发出两个阶段在交付时一并记录
+            pipelineTrace.mark(uid, PipelineTrace.STAGE_DECIDED, now);
+            pipelineTrace.finish(uid, PipelineTrace.STAGE_POSTED, now);
+            synchronized (lock) {
+                if (uid <= 0 || uid >= delivered.length) {
+                    contentMismatches++;
+                    return;
+                }
+                if (!titles[uid].equals(info.getTitle()) || !messages[uid].equals(info.getMessage())) {
+                    contentMismatches++;
+                    AncsLog.w(TAG, "Content mismatch for " + info.getUid());
+                    return;
+                }
+                if (!delivered[uid]) {
+                    delivered[uid] = true;
+                    deliveredCount++;
+                    latency.record((now - postNanos[uid]) / 1000);
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void onNotificationRemoved(NotificationSnapshot info) {
+            synchronized (lock) {
+                removedEvents++;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void onReconciled(List<NotificationSnapshot> removed) {
+            synchronized (lock) {
+                reconciledStale += removed.size();
+            }
+        }
+    };
+
+    /**
+     * @return 所有检查都通过时返回 true
+     */
+    boolean run() throws InterruptedException {
+        FakeAncsPeripheral.Config config = new FakeAncsPeripheral.Config()
+            .setAttMtu(options.attMtu)
+            .setWriteFailureRate(options.writeFailureRate)
+            .setSeed(options.seed);
+        FakeAncsPeripheral peripheral = new FakeAncsPeripheral(config);
+        SimScheduler scheduler = new SimScheduler();
+        NotificationHandler handler = new NotificationHandler();
+        AncsSession session = new AncsSession(peripheral, handler, scheduler, listener);
+        pipelineTrace = session.getPipelineTrace();
+        peripheral.attach(session);
+        if (options.trace != null) {
+            peripheral.setTraceOutput(options.trace);
+        }
+        peripheral.connect();
+
+        Random random = new Random(options.seed);
+        long intervalNanos = options.ratePerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / options.ratePerMinute : 0;
+        int disconnectEvery = options.disconnects > 0 ? options.count / (options.disconnects + 1) : 0;
+        long start = System.nanoTime();
+        for (int i = 1; i <= options.count; i++) {
+            if (intervalNanos > 0) {
+                long waitNanos = start + (i - 1) * intervalNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+            String title = sentence(random, 6 + random.nextInt(40));
+            String message = sentence(random, 20 + random.nextInt(400));
+            synchronized (lock) {
+                postNanos[i] = System.nanoTime();
+                titles[i] = title;
+                messages[i] = message;
+            }
+            int uid = peripheral.post(CATEGORIES[random.nextInt(CATEGORIES.length)],
+                APP_IDS[random.nextInt(APP_IDS.length)], title, message, random.nextBoolean());
+            if (uid != i) {
+                throw new IllegalStateException("Unexpected UID " + uid);
+            }
+            if (disconnectEvery > 0 && i % disconnectEvery == 0 && i < options.count) {
+                peripheral.disconnectFor(options.downtimeMillis);
+            }
+        }
+        long postedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        boolean complete = awaitDelivered(options.count, options.timeoutMillis);
+        long deliveredMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 移除全部通知，会话中的活动通知应随 REMOVED 事件清空
+        List<Integer> uids = peripheral.getNotificationUids();
+        for (int uid : uids) {
+            peripheral.remove(uid);
+        }
+        boolean drained = awaitRemoved(uids.size(), options.timeoutMillis);
+        int active = handler.getActiveNotifications().size();
+
+        List<String> failures = new ArrayList<>();
+        synchronized (lock) {
+            if (!complete) {
+                failures.add("delivered " + deliveredCount + " of " + options.count + " notifications");
+            }
+            if (contentMismatches > 0) {
+                failures.add(contentMismatches + " notifications with wrong content");
+            }
+            if (reconciledStale > 0) {
+                failures.add(reconciledStale + " notifications wrongly reconciled as stale");
+            }
+            if (!drained || active > 0) {
+                failures.add(active + " notifications still active after removing all");
+            }
+            long p99Millis = latency.getPercentile(99) / 1000;
+            if (options.maxP99Millis > 0 && p99Millis > options.maxP99Millis) {
+                failures.add("p99 latency " + p99Millis + "ms exceeds " + options.maxP99Millis + "ms");
+            }
+
+            System.out.println(String.format(Locale.US,
+                "burst: count=%d rate=%d/min mtu=%d failureRate=%.3f disconnects=%d downtime=%dms",
+                options.count, options.ratePerMinute, options.attMtu, options.writeFailureRate,
+                peripheral.getDisconnects(), options.downtimeMillis));
+            System.out.println(String.format(Locale.US,
+                "posted in %dms, delivered %d in %dms; retained on reconnect=%d, removed events=%d",
+                postedMillis, deliveredCount, deliveredMillis, retainedCount, removedEvents));
+            System.out.println(String.format(Locale.US,
+                "peripheral: ns=%d dsFragments=%d writes=%d injectedFailures=%d; session: droppedResponses=%d",
+                peripheral.getNotificationSourceSent(), peripheral.getDataSourceFragmentsSent(),
+                peripheral.getWritesReceived(), peripheral.getInjectedFailures(), session.getDroppedResponseCount()));
+            System.out.println("post-to-delivery latency (us): " + latency.format());
+            System.out.print("pipeline stages (us):\n" + pipelineTrace.format());
+        }
+
+        peripheral.shutdown();
+        scheduler.shutdown();
+        for (String failure : failures) {
+            System.out.println("FAIL: " + failure);
+        }
+        System.out.println(failures.isEmpty() ? "PASS" : "FAILED");
+        return failures.isEmpty();
+    }
+
+    private boolean awaitDelivered(int expected, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            while (deliveredCount < expected) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                lock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private boolean awaitRemoved(int expected, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            while (removedEvents < expected) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                lock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    static String sentence(Random random, int minBytes) {
+        StringBuilder sb = new StringBuilder();
+        int bytes = 0;
+        while (bytes < minBytes) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            sb.append(word);
+            bytes += word.getBytes(StandardCharsets.UTF_8).length;
+            if (random.nextInt(4) == 0) {
+                sb.append('，');
+                bytes += 3;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,540 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在 JVM 中模拟 iPhone 的 ANCS 外设
+ * 保存通知并发送 Notification Source 事件，按 ANCS 规范响应 Get Notification Attributes 与 Perform Notification Action，
+ * Data Source 响应按 ATT MTU 分片发送。可注入写入延迟、响应延迟、写入失败与断开；
+ * 重连时像 iPhone 一样以 PRE_EXISTING 标志重放所有现存通知。
+ * 所有 Listener 回调都在一个外设线程上按顺序执行，对应应用中的蓝牙回调线程
+ */
+public class FakeAncsPeripheral implements GattTransport {
+    private static final String TAG = "FakeAncsPeripheral";
+    public static final int DEFAULT_ATT_MTU = 23;
+    // ATT 通知的操作码与句柄
+    private static final int ATT_HEADER_BYTES = 3;
+    // 注入的写入失败使用 Android 常见的 GATT_ERROR
+    public static final int STATUS_GATT_ERROR = 0x85;
+    private static final int STATUS_UNKNOWN_COMMAND = 0xA0;
+    private static final int STATUS_INVALID_COMMAND = 0xA1;
+    private static final int STATUS_INVALID_PARAMETER = 0xA2;
+
+    public static final class Config {
+        private int attMtu = DEFAULT_ATT_MTU;
+        private long writeLatencyMicros = 2000;
+        private long responseLatencyMicros = 3000;
+        private long fragmentIntervalMicros = 500;
+        private long jitterMicros = 1000;
+        private double writeFailureRate = 0;
+        private long seed = 1;
+
+        /**
+         * @param attMtu 协商的 ATT MTU，每个 Data Source 通知最多携带 attMtu - 3 字节
+         */
+        public Config setAttMtu(int attMtu) {
+            this.attMtu = Math.max(ATT_HEADER_BYTES + 1, attMtu);
+            return this;
+        }
+
+        /**
+         * Control Point 写入到写入回调的时间
+         */
+        public Config setWriteLatencyMicros(long micros) {
+            writeLatencyMicros = micros;
+            return this;
+        }
+
+        /**
+         * 写入回调到第一个 Data Source 分片的时间
+         */
+        public Config setResponseLatencyMicros(long micros) {
+            responseLatencyMicros = micros;
+            return this;
+        }
+
+        /**
+         * 相邻 Data Source 分片的间隔，相当于连接间隔
+         */
+        public Config setFragmentIntervalMicros(long micros) {
+            fragmentIntervalMicros = micros;
+            return this;
+        }
+
+        /**
+         * 每个延迟额外加上 [0, jitter) 的随机值
+         */
+        public Config setJitterMicros(long micros) {
+            jitterMicros = micros;
+            return this;
+        }
+
+        /**
+         * 写入以 STATUS_GATT_ERROR 失败的概率
+         */
+        public Config setWriteFailureRate(double rate) {
+            writeFailureRate = rate;
+            return this;
+        }
+
+        public Config setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+    }
+
+    private static final class Notification {
+        final int uid;
+        final byte categoryId;
+        final byte eventFlags;
+        final String appId;
+        String title;
+        String message;
+        final long postedAt;
+
+        Notification(int uid, byte categoryId, byte eventFlags, String appId, String title, String message, long postedAt) {
+            this.uid = uid;
+            this.categoryId = categoryId;
+            this.eventFlags = eventFlags;
+            this.appId = appId;
+            this.title = title;
+            this.message = message;
+            this.postedAt = postedAt;
+        }
+    }
+
+    private final Config config;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sim-peripheral");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger nextUid = new AtomicInteger(1);
+    private final long startNanos = System.nanoTime();
+    // 以下字段只在外设线程上访问
+    private final Random random;
+    private final LinkedHashMap<Integer, Notification> notifications = new LinkedHashMap<>();
+    private final int[] categoryCounts = new int[256];
+    private GattTransport.Listener listener;
+    private Appendable trace;
+    // 每次断开递增，断开前发出的写入与安排的分片随之作废
+    private volatile int generation = 0;
+    // 已安排发送的 Data Source 分片；定时任务按顺序取队首，调度时间有偏差也不会让响应交错
+    private final ArrayDeque<byte[]> dataSourceQueue = new ArrayDeque<>();
+    // 上一个 Data Source 响应发完的时间
+    private long dataSourceBusyUntilNanos = 0;
+    private volatile boolean connected = false;
+
+    private final AtomicLong notificationSourceSent = new AtomicLong();
+    private final AtomicLong dataSourceFragmentsSent = new AtomicLong();
+    private final AtomicLong writesReceived = new AtomicLong();
+    private final AtomicLong injectedFailures = new AtomicLong();
+    private final AtomicLong disconnects = new AtomicLong();
+
+    public FakeAncsPeripheral(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+    }
+
+    /**
+     * 设置接收外设事件的会话，需在 connect 之前调用
+     */
+    public void attach(GattTransport.Listener listener) {
+        executor.execute(() -> this.listener = listener);
+    }
+
+    /**
+     * 把发出与收到的流量按 AncsTrace 格式写入 out，可用 replay 回放
+     */
+    public void setTraceOutput(Appendable out) {
+        executor.execute(() -> trace = out);
+    }
+
+    public void connect() {
+        executor.execute(this::doConnect);
+    }
+
+    public void disconnect() {
+        executor.execute(this::doDisconnect);
+    }
+
+    /**
+     * 断开并在 downtimeMillis 后重连
+     */
+    public void disconnectFor(long downtimeMillis) {
+        executor.execute(() -> {
+            doDisconnect();
+            executor.schedule(this::doConnect, downtimeMillis, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 在 iPhone 上新增一条通知，连接时立即发送 ADDED 事件
+     * @return 通知 UID
+     */
+    public int post(byte categoryId, String appId, String title, String message, boolean withActions) {
+        int uid = nextUid.getAndIncrement();
+        byte flags = withActions
+            ? (byte) (NotificationHandler.EVENT_FLAG_POSITIVE_ACTION | NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION)
+            : 0;
+        Notification notification = new Notification(uid, categoryId, flags, appId, title, message, System.currentTimeMillis());
+        executor.execute(() -> {
+            notifications.put(uid, notification);
+            categoryCounts[categoryId & 0xFF]++;
+            sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, notification, notification.eventFlags);
+        });
+        return uid;
+    }
+
+    /**
+     * 修改通知内容，连接时发送 MODIFIED 事件
+     */
+    public void modify(int uid, String title, String message) {
+        executor.execute(() -> {
+            Notification notification = notifications.get(uid);
+            if (notification != null) {
+                notification.title = title;
+                notification.message = message;
+                sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED, notification, notification.eventFlags);
+            }
+        });
+    }
+
+    /**
+     * 在 iPhone 上移除通知，连接时发送 REMOVED 事件；断开期间移除的通知重连后不再重放
+     */
+    public void remove(int uid) {
+        executor.execute(() -> doRemove(uid));
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public long getNotificationSourceSent() {
+        return notificationSourceSent.get();
+    }
+
+    public long getDataSourceFragmentsSent() {
+        return dataSourceFragmentsSent.get();
+    }
+
+    public long getWritesReceived() {
+        return writesReceived.get();
+    }
+
+    public long getInjectedFailures() {
+        return injectedFailures.get();
+    }
+
+    public long getDisconnects() {
+        return disconnects.get();
+    }
+
+    /**
+     * @return 外设上当前的通知 UID
+     */
+    public List<Integer> getNotificationUids() throws InterruptedException {
+        List<Integer> uids = new ArrayList<>();
+        try {
+            executor.submit(() -> uids.addAll(notifications.keySet())).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return uids;
+    }
+
+    @Override
+    public boolean writeControlPoint(byte[] command) {
+        if (!connected) {
+            return false;
+        }
+        byte[] copy = command.clone();
+        int writeGeneration = generation;
+        executor.execute(() -> {
+            if (writeGeneration != generation) {
+                return;
+            }
+            record(AncsTrace.TYPE_CONTROL_POINT, copy);
+            executor.schedule(() -> handleWrite(copy, writeGeneration),
+                delayMicros(config.writeLatencyMicros), TimeUnit.MICROSECONDS);
+        });
+        return true;
+    }
+
+    private void doConnect() {
+        if (connected) {
+            return;
+        }
+        connected = true;
+        record(AncsTrace.TYPE_CONNECT, null);
+        listener.onConnected();
+        record(AncsTrace.TYPE_READY, null);
+        listener.onReady();
+        // 像 iPhone 一样重放连接前已有的通知
+        for (Notification notification : new ArrayList<>(notifications.values())) {
+            sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, notification,
+                (byte) (notification.eventFlags | NotificationHandler.EVENT_FLAG_PRE_EXISTING));
+        }
+    }
+
+    private void doDisconnect() {
+        if (!connected) {
+            return;
+        }
+        connected = false;
+        generation++;
+        dataSourceQueue.clear();
+        dataSourceBusyUntilNanos = 0;
+        disconnects.incrementAndGet();
+        record(AncsTrace.TYPE_DISCONNECT, null);
+        listener.onDisconnected();
+    }
+
+    private void doRemove(int uid) {
+        Notification notification = notifications.remove(uid);
+        if (notification != null) {
+            categoryCounts[notification.categoryId & 0xFF]--;
+            sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED, notification, notification.eventFlags);
+        }
+    }
+
+    private void sendNotificationSource(byte eventId, Notification notification, byte eventFlags) {
+        if (!connected) {
+            return;
+        }
+        int count = Math.min(255, categoryCounts[notification.categoryId & 0xFF]);
+        int uid = notification.uid;
+        byte[] packet = {
+            eventId, eventFlags, notification.categoryId, (byte) count,
+            (byte) uid, (byte) (uid >>> 8), (byte) (uid >>> 16), (byte) (uid >>> 24)
+        };
+        notificationSourceSent.incrementAndGet();
+        record(AncsTrace.TYPE_NOTIFICATION_SOURCE, packet);
+        listener.onNotificationSource(packet);
+    }
+
+    private void handleWrite(byte[] command, int writeGeneration) {
+        if (writeGeneration != generation) {
+            // 连接已断开，会话已放弃该命令
+            return;
+        }
+        writesReceived.incrementAndGet();
+        int status;
+        byte[] response = null;
+        int actionUid = 0;
+        if (random.nextDouble() < config.writeFailureRate) {
+            injectedFailures.incrementAndGet();
+            status = STATUS_GATT_ERROR;
+        } else if (command.length < 5) {
+            status = STATUS_INVALID_COMMAND;
+        } else {
+            int uid = NotificationHandler.readUid(command, 1);
+            Notification notification = notifications.get(uid);
+            switch (command[0]) {
+                case NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES:
+                    if (notification == null) {
+                        status = STATUS_INVALID_PARAMETER;
+                    } else {
+                        response = encodeAttributes(command, notification);
+                        status = response != null ? 0 : STATUS_INVALID_COMMAND;
+                    }
+                    break;
+                case NotificationHandler.COMMAND_ID_PERFORM_NOTIFICATION_ACTION:
+                    if (command.length != 6) {
+                        status = STATUS_INVALID_COMMAND;
+                    } else if (notification == null) {
+                        status = STATUS_INVALID_PARAMETER;
+                    } else {
+                        // 两种操作都会让 iPhone 移除该通知（接听、清除）
+                        status = 0;
+                        actionUid = uid;
+                    }
+                    break;
+                default:
+                    status = STATUS_UNKNOWN_COMMAND;
+                    break;
+            }
+        }
+
+        record(AncsTrace.TYPE_CONTROL_POINT_ACK, new byte[] { (byte) status });
+        listener.onControlPointWriteComplete(status);
+        if (response != null) {
+            sendDataSource(response);
+        }
+        if (actionUid != 0) {
+            doRemove(actionUid);
+        }
+    }
+
+    /**
+     * 按 MTU 分片安排 Data Source 通知，紧接在上一个响应之后
+     */
+    private void sendDataSource(byte[] response) {
+        int payload = config.attMtu - ATT_HEADER_BYTES;
+        long now = System.nanoTime();
+        long start = Math.max(now + delayMicros(config.responseLatencyMicros) * 1000, dataSourceBusyUntilNanos);
+        int responseGeneration = generation;
+        int index = 0;
+        for (int offset = 0; offset < response.length; offset += payload) {
+            byte[] fragment = new byte[Math.min(payload, response.length - offset)];
+            System.arraycopy(response, offset, fragment, 0, fragment.length);
+            dataSourceQueue.add(fragment);
+            long at = start + index * config.fragmentIntervalMicros * 1000;
+            executor.schedule(() -> sendNextFragment(responseGeneration),
+                at - System.nanoTime(), TimeUnit.NANOSECONDS);
+            dataSourceBusyUntilNanos = at + config.fragmentIntervalMicros * 1000;
+            index++;
+        }
+    }
+
+    private void sendNextFragment(int responseGeneration) {
+        if (responseGeneration != generation) {
+            return;
+        }
+        byte[] fragment = dataSourceQueue.poll();
+        if (fragment != null) {
+            dataSourceFragmentsSent.incrementAndGet();
+            record(AncsTrace.TYPE_DATA_SOURCE, fragment);
+            listener.onDataSource(fragment);
+        }
+    }
+
+    /**
+     * 不经过连接直接编码一条通知的 Get Notification Attributes 响应，供 ancs-fuzz 检查编解码往返
+     * @return 命令格式错误或请求了未知属性时返回 null
+     */
+    static byte[] encodeResponse(byte[] command, byte categoryId, String appId, String title, String message,
+                                 boolean withActions) {
+        return encodeResponse(command, categoryId, appId, title, message, withActions, System.currentTimeMillis());
+    }
+
+    /**
+     * @param postedAt 日期属性使用的发布时间（毫秒），同一条通知每次响应都应相同
+     */
+    static byte[] encodeResponse(byte[] command, byte categoryId, String appId, String title, String message,
+                                 boolean withActions, long postedAt) {
+        byte eventFlags = withActions
+            ? (byte) (NotificationHandler.EVENT_FLAG_POSITIVE_ACTION | NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION)
+            : 0;
+        Notification notification = new Notification(NotificationHandler.readUid(command, 1), categoryId, eventFlags,
+            appId, title, message, postedAt);
+        return encodeAttributes(command, notification);
+    }
+
+    /**
+     * 按命令请求的属性编码响应；标题、副标题与正文按请求的最大长度截断
+     * @return 命令格式错误时返回 null
+     */
+    private static byte[] encodeAttributes(byte[] command, Notification notification) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(command, 0, 5);
+        int pos = 5;
+        while (pos < command.length) {
+            byte attributeId = command[pos++];
+            int maxLength = Integer.MAX_VALUE;
+            if (NotificationHandler.hasMaxLength(attributeId)) {
+                if (pos + 2 > command.length) {
+                    return null;
+                }
+                maxLength = (command[pos] & 0xFF) | (command[pos + 1] & 0xFF) << 8;
+                pos += 2;
+            }
+            byte[] value = attributeValue(attributeId, notification);
+            if (value == null) {
+                return null;
+            }
+            int length = truncate(value, maxLength);
+            out.write(attributeId);
+            out.write(length);
+            out.write(length >>> 8);
+            out.write(value, 0, length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] attributeValue(byte attributeId, Notification notification) {
+        boolean actions = (notification.eventFlags & NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION) != 0;
+        String value;
+        switch (attributeId) {
+            case NotificationHandler.ATTRIBUTE_ID_APP_IDENTIFIER:
+                value = notification.appId;
+                break;
+            case NotificationHandler.ATTRIBUTE_ID_TITLE:
+                value = notification.title;
+                break;
+            case NotificationHandler.ATTRIBUTE_ID_SUBTITLE:
+                value = "";
+                break;
+            case NotificationHandler.ATTRIBUTE_ID_MESSAGE:
+                value = notification.message;
+                break;
+            case NotificationHandler.ATTRIBUTE_ID_MESSAGE_SIZE:
+                value = Integer.toString(notification.message.getBytes(StandardCharsets.UTF_8).length);
+                break;
+            case NotificationHandler.ATTRIBUTE_ID_DATE:
+                value = new SimpleDateFormat("yyyyMMdd'T'HHmmss", Locale.US).format(new Date(notification.postedAt));
+                break;
+            case NotificationHandler.ATTRIBUTE_ID_POSITIVE_ACTION_LABEL:
+                value = actions ? "接受" : "";
+                break;
+            case NotificationHandler.ATTRIBUTE_ID_NEGATIVE_ACTION_LABEL:
+                value = actions ? "清除" : "";
+                break;
+            default:
+                return null;
+        }
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return 不超过 maxLength 且不截断 UTF-8 字符的长度
+     */
+    private static int truncate(byte[] value, int maxLength) {
+        if (value.length <= maxLength) {
+            return value.length;
+        }
+        int length = maxLength;
+        while (length > 0 && (value[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        return length;
+    }
+
+    private long delayMicros(long base) {
+        return config.jitterMicros > 0 ? base + (long) (random.nextDouble() * config.jitterMicros) : base;
+    }
+
+    private void record(int type, byte[] data) {
+        if (trace == null) {
+            return;
+        }
+        try {
+            long micros = (System.nanoTime() - startNanos) / 1000;
+            AncsTrace.write(trace, micros, type, data, 0, data != null ? data.length : 0);
+        } catch (IOException e) {
+            AncsLog.w(TAG, "Failed to write trace, disabling", e);
+            trace = null;
+        }
+    }
+}
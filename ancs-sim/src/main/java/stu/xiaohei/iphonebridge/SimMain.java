@@ -0,0 +1,215 @@
+package stu.xiaohei.iphonebridge;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * ancs-sim 命令行入口
+ * burst [--count N] [--rate 每分钟] [--mtu N] [--failure-rate F] [--disconnects N] [--downtime-ms N]
+ *       [--max-p99-ms N] [--timeout-ms N] [--seed N] [--trace 输出文件] [--verbose]
+ * replay 记录文件 [--speed F] [--verbose]
+ * soak [--hours F] [--rate 每小时] [--mix 类别=权重,...] [--lifetime-min F] [--max-active N] [--modify-fraction F]
+ *      [--action-fraction F] [--burst-every-min N] [--burst-size N] [--disconnect-every-min N] [--downtime-s N]
+ *      [--flap-ms N] [--mtu N] [--failure-rate F] [--window-min N] [--warmup-windows N] [--max-heap-growth-mb F]
+ *      [--max-alloc-bytes N] [--max-drift F] [--seed N] [--report 输出文件] [--verbose]
+ * compare 基准报告 新报告 [--tolerance F]
+ * 检查失败时以状态 1 退出
+ */
+public class SimMain {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        boolean ok;
+        if ("burst".equals(args[0])) {
+            ok = burst(args);
+        } else if ("replay".equals(args[0]) && args.length >= 2) {
+            ok = replay(args);
+        } else if ("soak".equals(args[0])) {
+            ok = soak(args);
+        } else if ("compare".equals(args[0]) && args.length >= 3) {
+            ok = compare(args);
+        } else {
+            usage();
+            return;
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean burst(String[] args) throws IOException, InterruptedException {
+        BurstTest.Options options = new BurstTest.Options();
+        String tracePath = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--count": options.count = Integer.parseInt(args[++i]); break;
+                case "--rate": options.ratePerMinute = Integer.parseInt(args[++i]); break;
+                case "--mtu": options.attMtu = Integer.parseInt(args[++i]); break;
+                case "--failure-rate": options.writeFailureRate = Double.parseDouble(args[++i]); break;
+                case "--disconnects": options.disconnects = Integer.parseInt(args[++i]); break;
+                case "--downtime-ms": options.downtimeMillis = Long.parseLong(args[++i]); break;
+                case "--max-p99-ms": options.maxP99Millis = Long.parseLong(args[++i]); break;
+                case "--timeout-ms": options.timeoutMillis = Long.parseLong(args[++i]); break;
+                case "--seed": options.seed = Long.parseLong(args[++i]); break;
+                case "--trace": tracePath = args[++i]; break;
+                case "--verbose": AncsLog.setLogger(AncsLog.STDERR); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (tracePath == null) {
+            return new BurstTest(options).run();
+        }
+        try (Writer trace = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tracePath), StandardCharsets.UTF_8))) {
+            options.trace = trace;
+            return new BurstTest(options).run();
+        }
+    }
+
+    private static boolean replay(String[] args) throws IOException, InterruptedException {
+        double speed = 1;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--speed": speed = Double.parseDouble(args[++i]); break;
+                case "--verbose": AncsLog.setLogger(AncsLog.STDERR); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<AncsTrace.Record> records;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(args[1]), StandardCharsets.UTF_8))) {
+            records = AncsTrace.read(reader);
+        }
+
+        final int[] counts = new int[4];
+        AncsSession.Listener listener = new AncsSession.Listener() {
+            @Override
+            public void onNotificationSource(NotificationSnapshot info) {
+            }
+
+            @Override
+            public void onAttributesRetained(NotificationSnapshot info) {
+                counts[1]++;
+            }
+
+            @Override
+            public void onNotificationReady(NotificationSnapshot info) {
+                counts[0]++;
+            }
+
+            @Override
+            public void onNotificationRemoved(NotificationSnapshot info) {
+                counts[2]++;
+            }
+
+            @Override
+            public void onReconciled(List<NotificationSnapshot> removed) {
+                counts[2] += removed.size();
+            }
+
+            @Override
+            public void onProtocolError(String reason) {
+                counts[3]++;
+                AncsLog.w("SimMain", "Protocol error: " + reason);
+            }
+        };
+        TraceReplayer replayer = new TraceReplayer(records, speed);
+        SimScheduler scheduler = new SimScheduler();
+        NotificationHandler handler = new NotificationHandler();
+        AncsSession session = new AncsSession(replayer, handler, scheduler, listener);
+        replayer.replay(session);
+        scheduler.shutdown();
+
+        System.out.println("replay: records=" + records.size() + " ready=" + counts[0] + " retained=" + counts[1]
+            + " removed=" + counts[2] + " active=" + handler.getActiveNotifications().size());
+        System.out.println("writes=" + replayer.getWritesIssued() + " commandMismatches=" + replayer.getCommandMismatches()
+            + " unansweredAcks=" + replayer.getUnansweredAcks()
+            + " droppedResponses=" + session.getDroppedResponseCount() + " protocolErrors=" + counts[3]);
+        // 记录中在响应中途断开时丢弃不完整的响应是正常的，只比较会话发出的命令
+        boolean ok = replayer.getCommandMismatches() == 0;
+        System.out.println(ok ? "PASS" : "FAILED");
+        return ok;
+    }
+
+    private static boolean soak(String[] args) throws IOException {
+        SoakTest.Options options = new SoakTest.Options();
+        String reportPath = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--hours": options.hours = Double.parseDouble(args[++i]); break;
+                case "--rate": options.ratePerHour = Integer.parseInt(args[++i]); break;
+                case "--mix": options.mix = args[++i]; break;
+                case "--lifetime-min": options.lifetimeMinutes = Double.parseDouble(args[++i]); break;
+                case "--max-active": options.maxActive = Integer.parseInt(args[++i]); break;
+                case "--modify-fraction": options.modifyFraction = Double.parseDouble(args[++i]); break;
+                case "--action-fraction": options.actionFraction = Double.parseDouble(args[++i]); break;
+                case "--burst-every-min": options.burstEveryMinutes = Integer.parseInt(args[++i]); break;
+                case "--burst-size": options.burstSize = Integer.parseInt(args[++i]); break;
+                case "--disconnect-every-min": options.disconnectEveryMinutes = Integer.parseInt(args[++i]); break;
+                case "--downtime-s": options.downtimeSeconds = Integer.parseInt(args[++i]); break;
+                case "--flap-ms": options.flapMillis = Long.parseLong(args[++i]); break;
+                case "--mtu": options.attMtu = Integer.parseInt(args[++i]); break;
+                case "--failure-rate": options.writeFailureRate = Double.parseDouble(args[++i]); break;
+                case "--window-min": options.windowMinutes = Integer.parseInt(args[++i]); break;
+                case "--warmup-windows": options.warmupWindows = Integer.parseInt(args[++i]); break;
+                case "--max-heap-growth-mb": options.maxHeapGrowthMb = Double.parseDouble(args[++i]); break;
+                case "--max-alloc-bytes": options.maxAllocBytes = Long.parseLong(args[++i]); break;
+                case "--max-drift": options.maxDrift = Double.parseDouble(args[++i]); break;
+                case "--seed": options.seed = Long.parseLong(args[++i]); break;
+                case "--report": reportPath = args[++i]; break;
+                case "--verbose": AncsLog.setLogger(AncsLog.STDERR); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (reportPath == null) {
+            return new SoakTest(options).run();
+        }
+        try (Writer report = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(reportPath), StandardCharsets.UTF_8))) {
+            options.report = report;
+            return new SoakTest(options).run();
+        }
+    }
+
+    private static boolean compare(String[] args) throws IOException {
+        double tolerance = 0.25;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tolerance": tolerance = Double.parseDouble(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        return SoakTest.compare(readReport(args[1]), readReport(args[2]), tolerance);
+    }
+
+    private static Properties readReport(String path) throws IOException {
+        Properties properties = new Properties();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(path), StandardCharsets.UTF_8))) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private static void usage() {
+        System.out.println("usage: burst [--count N] [--rate perMinute] [--mtu N] [--failure-rate F] [--disconnects N]\n"
+            + "             [--downtime-ms N] [--max-p99-ms N] [--timeout-ms N] [--seed N] [--trace FILE] [--verbose]\n"
+            + "       replay FILE [--speed F] [--verbose]\n"
+            + "       soak [--hours F] [--rate perHour] [--mix name=weight,...] [--lifetime-min F] [--max-active N]\n"
+            + "            [--modify-fraction F] [--action-fraction F] [--burst-every-min N] [--burst-size N]\n"
+            + "            [--disconnect-every-min N] [--downtime-s N] [--flap-ms N] [--mtu N] [--failure-rate F]\n"
+            + "            [--window-min N] [--warmup-windows N] [--max-heap-growth-mb F] [--max-alloc-bytes N]\n"
+            + "            [--max-drift F] [--seed N] [--report FILE] [--verbose]\n"
+            + "       compare BASE_REPORT NEW_REPORT [--tolerance F]");
+    }
+}
@@ -0,0 +1,46 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AncsSession 的延迟任务在独立线程上执行，对应应用中的主线程 Handler
+ * 与 Handler 不同，同一任务只保留最后一次 postDelayed（AncsSession 总是先 removeCallbacks 再 postDelayed）
+ */
+class SimScheduler implements AncsSession.Scheduler {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sim-main");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Runnable, ScheduledFuture<?>> tasks = new HashMap<>();
+
+    @Override
+    public synchronized void postDelayed(Runnable task, long delayMs) {
+        ScheduledFuture<?> previous = tasks.put(task, executor.schedule(() -> {
+            synchronized (this) {
+                tasks.remove(task);
+            }
+            task.run();
+        }, delayMs, TimeUnit.MILLISECONDS));
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    @Override
+    public synchronized void removeCallbacks(Runnable task) {
+        ScheduledFuture<?> future = tasks.remove(task);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
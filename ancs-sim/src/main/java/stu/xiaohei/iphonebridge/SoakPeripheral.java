@@ -0,0 +1,278 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+/**
+ * 运行在 VirtualClock 上的 ANCS 外设，供浸泡测试使用
+ * 行为与 FakeAncsPeripheral 相同（按 MTU 分片、注入写入失败、重连时以 PRE_EXISTING 重放），
+ * 响应由 FakeAncsPeripheral.encodeResponse 编码；所有回调都在事件循环线程上同步执行，不使用真实时间
+ */
+class SoakPeripheral implements GattTransport {
+    private static final int ATT_HEADER_BYTES = 3;
+    // 与 FakeAncsPeripheral.Config 的默认值一致
+    private static final long WRITE_LATENCY_MICROS = 2000;
+    private static final long RESPONSE_LATENCY_MICROS = 3000;
+    private static final long FRAGMENT_INTERVAL_MICROS = 500;
+    private static final long JITTER_MICROS = 1000;
+    private static final int STATUS_INVALID_COMMAND = 0xA1;
+    private static final int STATUS_INVALID_PARAMETER = 0xA2;
+
+    private static final class Notification {
+        final int uid;
+        final byte categoryId;
+        final byte eventFlags;
+        final String appId;
+        String title;
+        String message;
+        // 虚拟时间，作为日期属性返回，重连后的核对依赖它不变
+        final long postedAt;
+
+        Notification(int uid, byte categoryId, byte eventFlags, String appId, String title, String message, long postedAt) {
+            this.uid = uid;
+            this.categoryId = categoryId;
+            this.eventFlags = eventFlags;
+            this.appId = appId;
+            this.title = title;
+            this.message = message;
+            this.postedAt = postedAt;
+        }
+    }
+
+    private final VirtualClock clock;
+    private final int attMtu;
+    private final double writeFailureRate;
+    private final Random random;
+    // 按新增顺序，队首为最早的通知
+    private final LinkedHashMap<Integer, Notification> notifications = new LinkedHashMap<>();
+    private final int[] categoryCounts = new int[256];
+    private GattTransport.Listener listener;
+    private boolean connected = false;
+    // 每次断开递增，断开前安排的回调随之作废
+    private int generation = 0;
+    private long dataSourceBusyUntilMicros = 0;
+    private int nextUid = 1;
+
+    private long notificationSourceSent = 0;
+    private long dataSourceFragmentsSent = 0;
+    private long writesReceived = 0;
+    private long injectedFailures = 0;
+    private long disconnects = 0;
+
+    SoakPeripheral(VirtualClock clock, int attMtu, double writeFailureRate, long seed) {
+        this.clock = clock;
+        this.attMtu = Math.max(ATT_HEADER_BYTES + 1, attMtu);
+        this.writeFailureRate = writeFailureRate;
+        this.random = new Random(seed);
+    }
+
+    void attach(GattTransport.Listener listener) {
+        this.listener = listener;
+    }
+
+    void connect() {
+        if (connected) {
+            return;
+        }
+        connected = true;
+        listener.onConnected();
+        listener.onReady();
+        for (Notification notification : new ArrayList<>(notifications.values())) {
+            sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, notification,
+                (byte) (notification.eventFlags | NotificationHandler.EVENT_FLAG_PRE_EXISTING));
+        }
+    }
+
+    void disconnect() {
+        if (!connected) {
+            return;
+        }
+        connected = false;
+        generation++;
+        dataSourceBusyUntilMicros = 0;
+        disconnects++;
+        listener.onDisconnected();
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return 通知 UID
+     */
+    int post(byte categoryId, String appId, String title, String message, boolean withActions) {
+        int uid = nextUid++;
+        byte flags = withActions
+            ? (byte) (NotificationHandler.EVENT_FLAG_POSITIVE_ACTION | NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION)
+            : 0;
+        Notification notification = new Notification(uid, categoryId, flags, appId, title, message, clock.nowMillis());
+        notifications.put(uid, notification);
+        categoryCounts[categoryId & 0xFF]++;
+        sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_ADDED, notification, flags);
+        return uid;
+    }
+
+    /**
+     * @return 通知已不存在时返回 false
+     */
+    boolean modify(int uid, String title, String message) {
+        Notification notification = notifications.get(uid);
+        if (notification == null) {
+            return false;
+        }
+        notification.title = title;
+        notification.message = message;
+        sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED, notification, notification.eventFlags);
+        return true;
+    }
+
+    /**
+     * 断开期间移除的通知重连后不再重放
+     */
+    void remove(int uid) {
+        Notification notification = notifications.remove(uid);
+        if (notification != null) {
+            categoryCounts[notification.categoryId & 0xFF]--;
+            sendNotificationSource(NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED, notification, notification.eventFlags);
+        }
+    }
+
+    /**
+     * 移除最早的通知，模拟通知中心的数量上限
+     * @return 没有通知时返回 false
+     */
+    boolean removeOldest() {
+        Iterator<Integer> it = notifications.keySet().iterator();
+        if (!it.hasNext()) {
+            return false;
+        }
+        remove(it.next());
+        return true;
+    }
+
+    boolean contains(int uid) {
+        return notifications.containsKey(uid);
+    }
+
+    int activeCount() {
+        return notifications.size();
+    }
+
+    long getNotificationSourceSent() {
+        return notificationSourceSent;
+    }
+
+    long getDataSourceFragmentsSent() {
+        return dataSourceFragmentsSent;
+    }
+
+    long getWritesReceived() {
+        return writesReceived;
+    }
+
+    long getInjectedFailures() {
+        return injectedFailures;
+    }
+
+    long getDisconnects() {
+        return disconnects;
+    }
+
+    @Override
+    public boolean writeControlPoint(byte[] command) {
+        if (!connected) {
+            return false;
+        }
+        byte[] copy = command.clone();
+        int writeGeneration = generation;
+        clock.schedule(delayMicros(WRITE_LATENCY_MICROS), () -> handleWrite(copy, writeGeneration));
+        return true;
+    }
+
+    private void sendNotificationSource(byte eventId, Notification notification, byte eventFlags) {
+        if (!connected) {
+            return;
+        }
+        int count = Math.min(255, categoryCounts[notification.categoryId & 0xFF]);
+        int uid = notification.uid;
+        byte[] packet = {
+            eventId, eventFlags, notification.categoryId, (byte) count,
+            (byte) uid, (byte) (uid >>> 8), (byte) (uid >>> 16), (byte) (uid >>> 24)
+        };
+        notificationSourceSent++;
+        listener.onNotificationSource(packet);
+    }
+
+    private void handleWrite(byte[] command, int writeGeneration) {
+        if (writeGeneration != generation) {
+            return;
+        }
+        writesReceived++;
+        int status;
+        byte[] response = null;
+        int actionUid = 0;
+        if (random.nextDouble() < writeFailureRate) {
+            injectedFailures++;
+            status = FakeAncsPeripheral.STATUS_GATT_ERROR;
+        } else if (command.length < 5) {
+            status = STATUS_INVALID_COMMAND;
+        } else {
+            int uid = NotificationHandler.readUid(command, 1);
+            Notification notification = notifications.get(uid);
+            if (notification == null) {
+                status = STATUS_INVALID_PARAMETER;
+            } else if (command[0] == NotificationHandler.COMMAND_ID_GET_NOTIFICATION_ATTRIBUTES) {
+                response = FakeAncsPeripheral.encodeResponse(command, notification.categoryId, notification.appId,
+                    notification.title, notification.message,
+                    (notification.eventFlags & NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION) != 0, notification.postedAt);
+                status = response != null ? 0 : STATUS_INVALID_COMMAND;
+            } else if (command[0] == NotificationHandler.COMMAND_ID_PERFORM_NOTIFICATION_ACTION && command.length == 6) {
+                status = 0;
+                actionUid = uid;
+            } else {
+                status = STATUS_INVALID_COMMAND;
+            }
+        }
+
+        listener.onControlPointWriteComplete(status);
+        if (response != null) {
+            sendDataSource(response);
+        }
+        if (actionUid != 0) {
+            remove(actionUid);
+        }
+    }
+
+    /**
+     * 按 MTU 分片，紧接在上一个响应之后逐片发送
+     */
+    private void sendDataSource(byte[] response) {
+        int payload = attMtu - ATT_HEADER_BYTES;
+        long now = clock.nowMicros();
+        long start = Math.max(now + delayMicros(RESPONSE_LATENCY_MICROS), dataSourceBusyUntilMicros);
+        int responseGeneration = generation;
+        int index = 0;
+        for (int offset = 0; offset < response.length; offset += payload) {
+            int from = offset;
+            int to = Math.min(response.length, offset + payload);
+            long at = start + index * FRAGMENT_INTERVAL_MICROS;
+            clock.schedule(at - now, () -> {
+                if (responseGeneration == generation) {
+                    byte[] fragment = new byte[to - from];
+                    System.arraycopy(response, from, fragment, 0, fragment.length);
+                    dataSourceFragmentsSent++;
+                    listener.onDataSource(fragment);
+                }
+            });
+            dataSourceBusyUntilMicros = at + FRAGMENT_INTERVAL_MICROS;
+            index++;
+        }
+    }
+
+    private long delayMicros(long base) {
+        return base + (long) (random.nextDouble() * JITTER_MICROS);
+    }
+}
@@ -0,0 +1,885 @@
+package stu.xiaohei.iphonebridge;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * 浸泡测试：在模拟时间上让完整的管线（SoakPeripheral -> AncsSession -> NotificationHandler -> NotificationFilter -> NotificationBook）
+ * 按给定的通知类别比例与速率连续运行几十个小时，期间穿插突发、修改、桥接端操作与断开重连。
+ * 每个统计窗口结束时在 Full GC 后记录堆占用，并统计该窗口内管线每条通知分配的字节数、
+ * 每个 Notification Source 与 Data Source 分片的处理耗时（真实时间）和从发出到渲染的延迟（模拟时间）。
+ * 最后移除全部通知，检查记录、渲染缓存、通知 ID 与分阶段追踪都已清空。
+ * 报告为 key=value 文本，可用 compare 与其他提交的报告比较
+ */
+class SoakTest {
+    private static final String TAG = "SoakTest";
+    static final String DEFAULT_MIX = "social=40,email=15,news=15,finance=10,schedule=5,call=5,other=10";
+    private static final long MICROS_PER_SECOND = 1000000L;
+    private static final long MICROS_PER_MINUTE = 60 * MICROS_PER_SECOND;
+    private static final long MICROS_PER_HOUR = 60 * MICROS_PER_MINUTE;
+    // 突发中相邻通知的间隔
+    private static final long BURST_INTERVAL_MICROS = 20000;
+    // 移除全部通知后等待会话处理完的模拟时间，大于 AncsSession.PRE_EXISTING_SETTLE_MS
+    private static final long DRAIN_MICROS = 10 * MICROS_PER_SECOND;
+    // 由相邻两个词组成的黑名单关键字，只过滤一小部分通知
+    private static final String[] BLACKLIST = { "红包转账", "暴雨预警" };
+    // median 的指标编号
+    private static final int HEAP = 6;
+    // compare 检查的指标，都是越小越好；微秒级处理耗时的 p99 在两次相同的运行之间也会相差三成以上，只打印不检查
+    private static final String[] COMPARED_KEYS = {
+        "heap.end_bytes", "alloc.bytes_per_notification", "cost.ns.p50_ns", "cost.ds.p50_ns", "latency.p99_us"
+    };
+
+    /**
+     * 一类通知的内容与存在时间
+     */
+    private static final class Profile {
+        final String name;
+        final byte categoryId;
+        final String[] appIds;
+        final int minTitleBytes;
+        final int maxTitleBytes;
+        final int minMessageBytes;
+        final int maxMessageBytes;
+        final boolean withActions;
+        // 平均存在时间相对于 Options.lifetimeMinutes 的倍数
+        final double lifetimeScale;
+
+        Profile(String name, byte categoryId, String[] appIds, int minTitleBytes, int maxTitleBytes,
+                int minMessageBytes, int maxMessageBytes, boolean withActions, double lifetimeScale) {
+            this.name = name;
+            this.categoryId = categoryId;
+            this.appIds = appIds;
+            this.minTitleBytes = minTitleBytes;
+            this.maxTitleBytes = maxTitleBytes;
+            this.minMessageBytes = minMessageBytes;
+            this.maxMessageBytes = maxMessageBytes;
+            this.withActions = withActions;
+            this.lifetimeScale = lifetimeScale;
+        }
+    }
+
+    private static final Profile[] PROFILES = {
+        new Profile("social", NotificationHandler.CATEGORY_ID_SOCIAL,
+            new String[] { "com.tencent.xin", "com.tencent.mqq" }, 6, 24, 10, 120, true, 1),
+        new Profile("email", NotificationHandler.CATEGORY_ID_EMAIL,
+            new String[] { "com.apple.mobilemail" }, 20, 60, 200, 1000, true, 4),
+        new Profile("news", NotificationHandler.CATEGORY_ID_NEWS,
+            new String[] { "com.netease.news", "com.ss.iphone.article.News" }, 20, 60, 60, 300, false, 2),
+        new Profile("finance", NotificationHandler.CATEGORY_ID_BUSINESS_AND_FINANCE,
+            new String[] { "com.alipay.iphoneclient" }, 10, 30, 40, 160, true, 1),
+        new Profile("schedule", NotificationHandler.CATEGORY_ID_SCHEDULE,
+            new String[] { "com.apple.mobilecal" }, 10, 30, 20, 80, false, 2),
+        // 来电只有标题，很快消失
+        new Profile("call", NotificationHandler.CATEGORY_ID_INCOMING_CALL,
+            new String[] { "com.apple.mobilephone" }, 6, 20, 0, 0, true, 0.02),
+        new Profile("other", NotificationHandler.CATEGORY_ID_OTHER,
+            new String[] { "com.taobao.taobao4iphone", "com.apple.MobileSMS" }, 6, 40, 20, 400, false, 1)
+    };
+
+    static final class Options {
+        double hours = 24;
+        int ratePerHour = 1200;
+        String mix = DEFAULT_MIX;
+        // 通知在 iPhone 上的平均存在时间（指数分布），再乘以类别的 lifetimeScale
+        double lifetimeMinutes = 30;
+        // iPhone 上同时存在的通知上限，超出时移除最早的
+        int maxActive = 500;
+        double modifyFraction = 0.1;
+        // 在桥接端对带操作的通知执行“清除”的比例
+        double actionFraction = 0.05;
+        // 0 表示没有突发
+        int burstEveryMinutes = 60;
+        int burstSize = 30;
+        // 0 表示不断开
+        int disconnectEveryMinutes = 180;
+        int downtimeSeconds = 30;
+        // 重连后在已有通知的重放窗口（AncsSession.PRE_EXISTING_SETTLE_MS）内再断开一次的时间，0 表示不再断开
+        long flapMillis = 1000;
+        int attMtu = FakeAncsPeripheral.DEFAULT_ATT_MTU;
+        double writeFailureRate = 0.002;
+        int windowMinutes = 60;
+        // 前几个窗口用于 JIT 预热与填满通知中心，不参与检查
+        int warmupWindows = 2;
+        double maxHeapGrowthMb = 4;
+        // 每条通知在管线中分配的字节数上限，0 表示不检查
+        long maxAllocBytes = 32 * 1024;
+        // 后半段与前半段窗口中位数之比的上限，只用于模拟时间的延迟
+        double maxDrift = 1.5;
+        long seed = 1;
+        Writer report;
+    }
+
+    /**
+     * 一个统计窗口的结果
+     */
+    private static final class Window {
+        double endHour;
+        long posted;
+        long heapBytes;
+        long allocBytes;
+        long nsP50;
+        long nsP99;
+        long dsP50;
+        long dsP99;
+        long latencyP50;
+        long latencyP99;
+        int storeSize;
+        long storeBytes;
+        int rendererEntries;
+        int ids;
+        int traceActive;
+        int active;
+    }
+
+    private final Options options;
+    private final Profile[] mix;
+    private final int[] mixWeights;
+    private final int totalWeight;
+    private final Random random;
+    private final VirtualClock clock = new VirtualClock();
+    private final SoakPeripheral peripheral;
+    private final NotificationHandler handler = new NotificationHandler();
+    private final NotificationFilter filter = new NotificationFilter();
+    private final NotificationIdAllocator idAllocator = new NotificationIdAllocator();
+    private final AncsSession session;
+    // 与应用中 NotificationRenderer 相同的簿记，不构建通知，也不模拟突发期间的推迟发送
+    private final NotificationBook<Void> book;
+    private final NotificationText text = new NotificationText();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    // 不支持按线程统计分配量的 JVM 上为 null
+    private ThreadMXBean threads;
+    private long threadId;
+    // 一次空测量本身分配的字节数
+    private long measureOverheadBytes = 0;
+    private long measureStartNanos;
+    private long measureStartBytes;
+    // 连接期间发出（新增或修改）通知的模拟时间，渲染时计算延迟
+    private final Map<Integer, Long> sentAt = new HashMap<>();
+    private boolean stopped = false;
+
+    // 当前窗口
+    private final LatencyHistogram nsCost = new LatencyHistogram();
+    private final LatencyHistogram dsCost = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private long windowPosted = 0;
+    private long windowAllocBytes = 0;
+    private final List<Window> windows = new ArrayList<>();
+
+    // 全程
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private long posted = 0;
+    private long modified = 0;
+    private long rendered = 0;
+    private long filtered = 0;
+    private long removedEvents = 0;
+    private long actions = 0;
+    private long reconciledStale = 0;
+    private long protocolErrors = 0;
+    private int maxStoreSize = 0;
+
+    SoakTest(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+        List<Profile> profiles = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (String part : options.mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            Profile profile = profile(pair[0].trim());
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            if (profile == null || weight < 0) {
+                throw new IllegalArgumentException("Bad mix entry " + part + ", known categories: " + profileNames());
+            }
+            if (weight > 0) {
+                profiles.add(profile);
+                weights.add(weight);
+            }
+        }
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException("Empty mix " + options.mix);
+        }
+        mix = profiles.toArray(new Profile[0]);
+        mixWeights = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < mixWeights.length; i++) {
+            mixWeights[i] = weights.get(i);
+            total += mixWeights[i];
+        }
+        totalWeight = total;
+
+        peripheral = new SoakPeripheral(clock, options.attMtu, options.writeFailureRate, options.seed);
+        session = new AncsSession(peripheral, handler, clock, listener);
+        book = new NotificationBook<>(idAllocator, poster);
+        filter.setFilterEnabled(true);
+        filter.setFilterMode(NotificationFilter.MODE_BLACKLIST);
+        filter.setBlacklist(new HashSet<>(Arrays.asList(BLACKLIST)));
+    }
+
+    private final NotificationBook.Poster<Void> poster = new NotificationBook.Poster<Void>() {
+        @Override
+        public Void createView(int id, NotificationSnapshot info) {
+            return null;
+        }
+
+        @Override
+        public void onGroupAssigned(NotificationBook.Entry<Void> entry) {
+        }
+
+        @Override
+        public void cancel(int id) {
+        }
+
+        @Override
+        public void onRemoved(NotificationBook.Entry<Void> entry) {
+        }
+
+        @Override
+        public void onGroupChanged(NotificationBook.Group<Void> group) {
+        }
+
+        @Override
+        public void onGroupRemoved(NotificationBook.Group<Void> group) {
+        }
+    };
+
+    /**
+     * 应用中 BridgeService 对会话事件的处理：过滤后交给渲染器
+     */
+    private final AncsSession.Listener listener = new AncsSession.Listener() {
+        @Override
+        public void onNotificationSource(NotificationSnapshot info) {
+        }
+
+        @Override
+        public void onAttributesRetained(NotificationSnapshot info) {
+            book.retain(info.getRawUid());
+        }
+
+        @Override
+        public void onNotificationReady(NotificationSnapshot info) {
+            Long at = sentAt.remove(info.getRawUid());
+            if (!filter.shouldShowNotification(info.getAttributes())) {
+                filtered++;
+                session.getPipelineTrace().discard(info.getRawUid());
+                // 修改后命中过滤条件时撤下之前显示的通知
+                book.cancel(info.getRawUid());
+                return;
+            }
+            if (!render(info)) {
+                return;
+            }
+            rendered++;
+            if (at != null) {
+                long micros = clock.nowMicros() - at;
+                latency.record(micros);
+                totalLatency.record(micros);
+            }
+            if (info.hasNegativeAction() && info.getEventId() == NotificationHandler.EVENT_ID_NOTIFICATION_ADDED
+                && random.nextDouble() < options.actionFraction) {
+                scheduleAction(info.getUid(), info.getRawUid());
+            }
+        }
+
+        @Override
+        public void onNotificationRemoved(NotificationSnapshot info) {
+            removedEvents++;
+            sentAt.remove(info.getRawUid());
+            book.cancel(info.getRawUid());
+        }
+
+        @Override
+        public void onReconciled(List<NotificationSnapshot> removed) {
+            reconciledStale += removed.size();
+            for (NotificationSnapshot info : removed) {
+                sentAt.remove(info.getRawUid());
+            }
+            book.cancelStale(removed);
+        }
+
+        @Override
+        public void onProtocolError(String reason) {
+            protocolErrors++;
+            AncsLog.w(TAG, "Protocol error: " + reason);
+        }
+    };
+
+    /**
+     * 外设到会话的每次调用都计入耗时与分配量，外设自身生成内容与分片的开销不计入
+     */
+    private final GattTransport.Listener measured = new GattTransport.Listener() {
+        @Override
+        public void onConnected() {
+            beginMeasure();
+            session.onConnected();
+            endMeasure(null);
+        }
+
+        @Override
+        public void onReady() {
+            beginMeasure();
+            session.onReady();
+            endMeasure(null);
+        }
+
+        @Override
+        public void onDisconnected() {
+            beginMeasure();
+            session.onDisconnected();
+            endMeasure(null);
+        }
+
+        @Override
+        public void onNotificationSource(byte[] data) {
+            beginMeasure();
+            session.onNotificationSource(data);
+            endMeasure(nsCost);
+        }
+
+        @Override
+        public void onDataSource(byte[] data) {
+            beginMeasure();
+            session.onDataSource(data);
+            endMeasure(dsCost);
+        }
+
+        @Override
+        public void onControlPointWriteComplete(int status) {
+            beginMeasure();
+            session.onControlPointWriteComplete(status);
+            endMeasure(null);
+        }
+    };
+
+    /**
+     * @return 所有检查都通过时返回 true
+     */
+    boolean run() throws IOException {
+        initAllocationCounter();
+        peripheral.attach(measured);
+        connect();
+        scheduleArrival();
+        if (options.burstEveryMinutes > 0) {
+            clock.schedule(options.burstEveryMinutes * MICROS_PER_MINUTE, this::burst);
+        }
+        if (options.disconnectEveryMinutes > 0) {
+            clock.schedule(options.disconnectEveryMinutes * MICROS_PER_MINUTE, this::disconnect);
+        }
+
+        long startNanos = System.nanoTime();
+        long endMicros = (long) (options.hours * MICROS_PER_HOUR);
+        long windowMicros = Math.max(1, options.windowMinutes) * MICROS_PER_MINUTE;
+        System.out.println(String.format(Locale.US,
+            "soak: hours=%.1f rate=%d/h mix=%s mtu=%d maxActive=%d lifetime=%.0fmin seed=%d",
+            options.hours, options.ratePerHour, options.mix, options.attMtu, options.maxActive,
+            options.lifetimeMinutes, options.seed));
+        System.out.println("window  hour  posted   heapKB  alloc/n  ns.p50  ns.p99  ds.p50  ds.p99"
+            + "  lat.p50ms  lat.p99ms  store  shown   ids  trace  active");
+        for (long at = windowMicros; at <= endMicros; at += windowMicros) {
+            clock.runUntil(at);
+            sample(at);
+        }
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+
+        // 停止产生新事件，移除全部通知并等待会话处理完
+        stopped = true;
+        if (!peripheral.isConnected()) {
+            connect();
+        }
+        clock.runUntil(clock.nowMicros() + DRAIN_MICROS);
+        while (peripheral.removeOldest()) {
+            // 每条移除都同步发出 REMOVED 事件
+        }
+        clock.runUntil(clock.nowMicros() + DRAIN_MICROS);
+
+        Map<String, String> report = new LinkedHashMap<>();
+        List<String> failures = evaluate(report, elapsedMillis);
+        report.put("result", failures.isEmpty() ? "PASS" : "FAILED");
+        if (options.report != null) {
+            options.report.write("# ancs-sim soak report\n");
+            for (Map.Entry<String, String> entry : report.entrySet()) {
+                options.report.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+        for (String failure : failures) {
+            System.out.println("FAIL: " + failure);
+        }
+        System.out.println(failures.isEmpty() ? "PASS" : "FAILED");
+        return failures.isEmpty();
+    }
+
+    private List<String> evaluate(Map<String, String> report, long elapsedMillis) {
+        List<String> failures = new ArrayList<>();
+        List<Window> checked = windows.subList(Math.min(options.warmupWindows, windows.size()), windows.size());
+
+        report.put("soak.hours", String.format(Locale.US, "%.1f", options.hours));
+        report.put("soak.rate_per_hour", Integer.toString(options.ratePerHour));
+        report.put("soak.mix", options.mix);
+        report.put("soak.mtu", Integer.toString(options.attMtu));
+        report.put("soak.max_active", Integer.toString(options.maxActive));
+        report.put("soak.seed", Long.toString(options.seed));
+        report.put("soak.windows", Integer.toString(windows.size()));
+        report.put("soak.elapsed_ms", Long.toString(elapsedMillis));
+        report.put("notifications.posted", Long.toString(posted));
+        report.put("notifications.modified", Long.toString(modified));
+        report.put("notifications.rendered", Long.toString(rendered));
+        report.put("notifications.filtered", Long.toString(filtered));
+        report.put("notifications.removed_events", Long.toString(removedEvents));
+        report.put("notifications.actions", Long.toString(actions));
+        report.put("notifications.reconciled_stale", Long.toString(reconciledStale));
+        report.put("peripheral.notification_source", Long.toString(peripheral.getNotificationSourceSent()));
+        report.put("peripheral.data_source_fragments", Long.toString(peripheral.getDataSourceFragmentsSent()));
+        report.put("peripheral.writes", Long.toString(peripheral.getWritesReceived()));
+        report.put("peripheral.injected_failures", Long.toString(peripheral.getInjectedFailures()));
+        report.put("peripheral.disconnects", Long.toString(peripheral.getDisconnects()));
+        report.put("session.protocol_errors", Long.toString(protocolErrors));
+        report.put("session.dropped_responses", Long.toString(session.getDroppedResponseCount()));
+        report.put("trace.evicted", Long.toString(session.getPipelineTrace().getEvictedCount()));
+        report.put("store.max_size", Integer.toString(maxStoreSize));
+        report.put("latency.p50_us", Long.toString(totalLatency.getPercentile(50)));
+        report.put("latency.p99_us", Long.toString(totalLatency.getPercentile(99)));
+        report.put("latency.max_us", Long.toString(totalLatency.getMax()));
+
+        if (checked.size() < 2) {
+            System.out.println("note: fewer than 2 windows after warmup, heap, allocation and drift checks skipped");
+        } else {
+            // 个别窗口的堆占用会有 1MB 左右的起伏，比较前后两半的中位数
+            int half = checked.size() / 2;
+            long baseline = median(checked, 0, half, HEAP);
+            long end = median(checked, checked.size() - half, checked.size(), HEAP);
+            long growth = end - baseline;
+            report.put("heap.baseline_bytes", Long.toString(baseline));
+            report.put("heap.end_bytes", Long.toString(end));
+            report.put("heap.growth_bytes", Long.toString(growth));
+            report.put("heap.slope_bytes_per_hour", Long.toString(heapSlope(checked)));
+            if (growth > options.maxHeapGrowthMb * 1024 * 1024) {
+                failures.add(String.format(Locale.US, "heap grew %.1fMB after warmup (limit %.1fMB)",
+                    growth / 1048576.0, options.maxHeapGrowthMb));
+            }
+
+            if (threads != null) {
+                long allocBytes = 0;
+                long allocPosted = 0;
+                for (Window window : checked) {
+                    allocBytes += window.allocBytes;
+                    allocPosted += window.posted;
+                }
+                long perNotification = allocBytes / Math.max(1, allocPosted);
+                report.put("alloc.bytes_per_notification", Long.toString(perNotification));
+                if (options.maxAllocBytes > 0 && perNotification > options.maxAllocBytes) {
+                    failures.add("pipeline allocates " + perNotification + " bytes per notification (limit "
+                        + options.maxAllocBytes + ")");
+                }
+            } else {
+                System.out.println("note: per-thread allocation counter not supported, allocation check skipped");
+            }
+
+            // 处理耗时取后半段，此时 JIT 已稳定
+            report.put("cost.ns.p50_ns", Long.toString(median(checked, checked.size() - half, checked.size(), 0)));
+            report.put("cost.ns.p99_ns", Long.toString(median(checked, checked.size() - half, checked.size(), 1)));
+            report.put("cost.ds.p50_ns", Long.toString(median(checked, checked.size() - half, checked.size(), 2)));
+            report.put("cost.ds.p99_ns", Long.toString(median(checked, checked.size() - half, checked.size(), 3)));
+            String[] names = { "cost.ns.p50", "cost.ns.p99", "cost.ds.p50", "cost.ds.p99", "latency.p50", "latency.p99" };
+            for (int metric = 0; metric < names.length; metric++) {
+                long before = median(checked, 0, half, metric);
+                long after = median(checked, checked.size() - half, checked.size(), metric);
+                double drift = (double) after / Math.max(1, before);
+                report.put(names[metric] + "_drift", String.format(Locale.US, "%.2f", drift));
+                // 处理耗时是真实时间，随机器负载与 JIT 变化，同一提交的两次运行也会超过上限，只写入报告；
+                // 延迟是模拟时间，只取决于种子与管线的行为
+                if (metric >= 4 && drift > options.maxDrift) {
+                    failures.add(String.format(Locale.US, "%s drifted from %d to %d (x%.2f, limit x%.2f)",
+                        names[metric], before, after, drift, options.maxDrift));
+                }
+            }
+        }
+
+        // 移除全部通知后，每个随通知增长的结构都应回到空
+        int storeSize = handler.size();
+        int entries = book.getEntryCount();
+        int groups = book.getGroupCount();
+        int ids = idAllocator.size();
+        int queueDepth = session.getControlPointQueueDepth();
+        int traceActive = session.getPipelineTrace().getActiveCount();
+        report.put("drained.store_size", Integer.toString(storeSize));
+        report.put("drained.renderer_entries", Integer.toString(entries));
+        report.put("drained.renderer_groups", Integer.toString(groups));
+        report.put("drained.notification_ids", Integer.toString(ids));
+        report.put("drained.control_point_queue", Integer.toString(queueDepth));
+        report.put("drained.trace_active", Integer.toString(traceActive));
+        if (storeSize + entries + groups + ids + queueDepth + traceActive > 0) {
+            failures.add("after removing all notifications: store=" + storeSize + " rendererEntries=" + entries
+                + " groups=" + groups + " ids=" + ids + " controlPointQueue=" + queueDepth + " traceActive=" + traceActive);
+        }
+        if (protocolErrors > 0) {
+            failures.add(protocolErrors + " protocol errors");
+        }
+        for (int i = 0; i < windows.size(); i++) {
+            Window w = windows.get(i);
+            report.put(String.format(Locale.US, "window.%02d", i), String.format(Locale.US,
+                "hour=%.1f posted=%d heap=%d alloc=%d ns=%d/%d ds=%d/%d latency=%d/%d store=%d storeBytes=%d shown=%d ids=%d",
+                w.endHour, w.posted, w.heapBytes, w.allocBytes, w.nsP50, w.nsP99, w.dsP50, w.dsP99,
+                w.latencyP50, w.latencyP99, w.storeSize, w.storeBytes, w.rendererEntries, w.ids));
+        }
+
+        System.out.println(String.format(Locale.US,
+            "posted=%d modified=%d rendered=%d filtered=%d removed=%d actions=%d reconciledStale=%d in %dms",
+            posted, modified, rendered, filtered, removedEvents, actions, reconciledStale, elapsedMillis));
+        System.out.println(String.format(Locale.US,
+            "peripheral: ns=%d dsFragments=%d writes=%d injectedFailures=%d disconnects=%d; maxStore=%d",
+            peripheral.getNotificationSourceSent(), peripheral.getDataSourceFragmentsSent(),
+            peripheral.getWritesReceived(), peripheral.getInjectedFailures(), peripheral.getDisconnects(), maxStoreSize));
+        System.out.println("post-to-render latency (simulated us): " + totalLatency.format());
+        for (String key : new String[] { "heap.growth_bytes", "heap.slope_bytes_per_hour", "alloc.bytes_per_notification",
+                "cost.ns.p50_drift", "cost.ns.p99_drift", "cost.ds.p50_drift", "cost.ds.p99_drift", "latency.p99_drift" }) {
+            if (report.containsKey(key)) {
+                System.out.println(key + "=" + report.get(key));
+            }
+        }
+        System.out.println(String.format(Locale.US,
+            "drained: store=%d rendererEntries=%d groups=%d ids=%d controlPointQueue=%d traceActive=%d",
+            storeSize, entries, groups, ids, queueDepth, traceActive));
+        return failures;
+    }
+
+    private void sample(long atMicros) {
+        Window w = new Window();
+        w.endHour = (double) atMicros / MICROS_PER_HOUR;
+        w.posted = windowPosted;
+        w.allocBytes = windowAllocBytes;
+        w.nsP50 = nsCost.getPercentile(50);
+        w.nsP99 = nsCost.getPercentile(99);
+        w.dsP50 = dsCost.getPercentile(50);
+        w.dsP99 = dsCost.getPercentile(99);
+        w.latencyP50 = latency.getPercentile(50);
+        w.latencyP99 = latency.getPercentile(99);
+        w.storeSize = handler.size();
+        w.storeBytes = handler.estimateMemoryBytes();
+        w.rendererEntries = book.getEntryCount();
+        w.ids = idAllocator.size();
+        w.traceActive = session.getPipelineTrace().getActiveCount();
+        w.active = peripheral.activeCount();
+        w.heapBytes = usedHeapAfterGc();
+        windows.add(w);
+        maxStoreSize = Math.max(maxStoreSize, w.storeSize);
+
+        System.out.println(String.format(Locale.US,
+            "%6d %5.1f %7d %8d %8d %7d %7d %7d %7d %10.1f %10.1f %6d %6d %5d %6d %7d",
+            windows.size() - 1, w.endHour, w.posted, w.heapBytes / 1024, w.allocBytes / Math.max(1, w.posted),
+            w.nsP50, w.nsP99, w.dsP50, w.dsP99, w.latencyP50 / 1000.0, w.latencyP99 / 1000.0,
+            w.storeSize, w.rendererEntries, w.ids, w.traceActive, w.active));
+
+        nsCost.reset();
+        dsCost.reset();
+        latency.reset();
+        windowPosted = 0;
+        windowAllocBytes = 0;
+    }
+
+    private void scheduleArrival() {
+        double meanMicros = (double) MICROS_PER_HOUR / Math.max(1, options.ratePerHour);
+        clock.schedule((long) exponential(meanMicros), () -> {
+            if (stopped) {
+                return;
+            }
+            post(pickProfile(), null);
+            scheduleArrival();
+        });
+    }
+
+    /**
+     * 同一应用在短时间内连续发出多条社交通知，例如群聊
+     */
+    private void burst() {
+        if (stopped) {
+            return;
+        }
+        Profile profile = profile("social");
+        String appId = profile.appIds[random.nextInt(profile.appIds.length)];
+        for (int i = 0; i < options.burstSize; i++) {
+            clock.schedule(i * BURST_INTERVAL_MICROS, () -> {
+                if (!stopped) {
+                    post(profile, appId);
+                }
+            });
+        }
+        clock.schedule(options.burstEveryMinutes * MICROS_PER_MINUTE, this::burst);
+    }
+
+    private void disconnect() {
+        if (stopped) {
+            return;
+        }
+        peripheral.disconnect();
+        long downtimeMicros = options.downtimeSeconds * MICROS_PER_SECOND;
+        clock.schedule(downtimeMicros, this::connect);
+        if (options.flapMillis > 0) {
+            clock.schedule(downtimeMicros + options.flapMillis * 1000, this::flap);
+        }
+        clock.schedule(options.disconnectEveryMinutes * MICROS_PER_MINUTE, this::disconnect);
+    }
+
+    /**
+     * 对账之前链路再次断开：断开期间在 iPhone 上移除的通知没有在本次连接中对账，
+     * 它们的通知 ID 属于更早的纪元，要在下一次连接对账时释放
+     */
+    private void flap() {
+        if (stopped || !peripheral.isConnected()) {
+            return;
+        }
+        peripheral.disconnect();
+        clock.schedule(options.downtimeSeconds * MICROS_PER_SECOND, this::connect);
+    }
+
+    /**
+     * 与 BridgeService 一样在会话建立前开始新的通知 ID 纪元
+     */
+    private void connect() {
+        if (peripheral.isConnected()) {
+            return;
+        }
+        idAllocator.beginSession();
+        peripheral.connect();
+    }
+
+    private void post(Profile profile, String appId) {
+        String app = appId != null ? appId : profile.appIds[random.nextInt(profile.appIds.length)];
+        String title = sentence(profile.minTitleBytes, profile.maxTitleBytes);
+        String message = sentence(profile.minMessageBytes, profile.maxMessageBytes);
+        boolean connected = peripheral.isConnected();
+        long now = clock.nowMicros();
+        int uid = peripheral.post(profile.categoryId, app, title, message, profile.withActions);
+        if (connected) {
+            sentAt.put(uid, now);
+        }
+        posted++;
+        windowPosted++;
+        while (peripheral.activeCount() > options.maxActive) {
+            peripheral.removeOldest();
+        }
+
+        long lifetime = (long) exponential(options.lifetimeMinutes * profile.lifetimeScale * MICROS_PER_MINUTE);
+        clock.schedule(lifetime, () -> peripheral.remove(uid));
+        if (random.nextDouble() < options.modifyFraction) {
+            clock.schedule(lifetime / 2, () -> modify(uid, profile));
+        }
+    }
+
+    private void modify(int uid, Profile profile) {
+        if (stopped) {
+            return;
+        }
+        String title = sentence(profile.minTitleBytes, profile.maxTitleBytes);
+        String message = sentence(profile.minMessageBytes, profile.maxMessageBytes);
+        boolean connected = peripheral.isConnected();
+        long now = clock.nowMicros();
+        if (peripheral.modify(uid, title, message)) {
+            modified++;
+            if (connected) {
+                sentAt.put(uid, now);
+            }
+        }
+    }
+
+    /**
+     * NotificationRenderer.render 中与平台无关的部分：生成标题与内容，更新条目与分组
+     * @return 没有可显示的内容时返回 false
+     */
+    private boolean render(NotificationSnapshot info) {
+        if (!text.format(info)) {
+            session.getPipelineTrace().discard(info.getRawUid());
+            return false;
+        }
+        NotificationBook.Entry<Void> entry = book.entryFor(info);
+        book.assignGroup(entry, info.getAppId());
+        text.update(entry, info);
+        session.getPipelineTrace().finish(entry.rawUid, PipelineTrace.STAGE_POSTED);
+        return true;
+    }
+
+    /**
+     * 用户在几十秒后通过桥接端清除通知
+     */
+    private void scheduleAction(String uid, int rawUid) {
+        clock.schedule(5 * MICROS_PER_SECOND + (long) (random.nextDouble() * 55 * MICROS_PER_SECOND), () -> {
+            if (stopped || !session.isConnected() || !peripheral.contains(rawUid)) {
+                return;
+            }
+            actions++;
+            beginMeasure();
+            session.enqueueControlPoint(handler.createPerformActionCommand(uid, false), null);
+            endMeasure(null);
+        });
+    }
+
+    private Profile pickProfile() {
+        int value = random.nextInt(totalWeight);
+        for (int i = 0; i < mix.length; i++) {
+            value -= mixWeights[i];
+            if (value < 0) {
+                return mix[i];
+            }
+        }
+        return mix[mix.length - 1];
+    }
+
+    private String sentence(int minBytes, int maxBytes) {
+        return BurstTest.sentence(random, minBytes + random.nextInt(maxBytes - minBytes + 1));
+    }
+
+    private double exponential(double mean) {
+        return -mean * Math.log(1 - random.nextDouble());
+    }
+
+    private void initAllocationCounter() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof ThreadMXBean && ((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+            threadId = Thread.currentThread().getId();
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < 1000; i++) {
+                long before = threads.getThreadAllocatedBytes(threadId);
+                min = Math.min(min, threads.getThreadAllocatedBytes(threadId) - before);
+            }
+            measureOverheadBytes = min;
+        }
+    }
+
+    private void beginMeasure() {
+        measureStartBytes = threads != null ? threads.getThreadAllocatedBytes(threadId) : 0;
+        measureStartNanos = System.nanoTime();
+    }
+
+    private void endMeasure(LatencyHistogram cost) {
+        long nanos = System.nanoTime() - measureStartNanos;
+        if (cost != null) {
+            cost.record(nanos);
+        }
+        if (threads != null) {
+            windowAllocBytes += threads.getThreadAllocatedBytes(threadId) - measureStartBytes - measureOverheadBytes;
+        }
+    }
+
+    private long usedHeapAfterGc() {
+        // 连续几次 Full GC，让软引用与 finalizer 释放的对象也被回收
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return 堆占用对模拟时间的最小二乘斜率（字节/小时）
+     */
+    private static long heapSlope(List<Window> windows) {
+        double meanX = 0;
+        double meanY = 0;
+        for (Window w : windows) {
+            meanX += w.endHour;
+            meanY += w.heapBytes;
+        }
+        meanX /= windows.size();
+        meanY /= windows.size();
+        double covariance = 0;
+        double variance = 0;
+        for (Window w : windows) {
+            covariance += (w.endHour - meanX) * (w.heapBytes - meanY);
+            variance += (w.endHour - meanX) * (w.endHour - meanX);
+        }
+        return variance > 0 ? (long) (covariance / variance) : 0;
+    }
+
+    /**
+     * @param metric 0-3 为 NS/DS 处理耗时的 p50/p99，4-5 为延迟的 p50/p99，HEAP 为堆占用
+     * @return windows[from, to) 中该指标的中位数，不受个别窗口中 GC 或断开的影响
+     */
+    private static long median(List<Window> windows, int from, int to, int metric) {
+        long[] values = new long[to - from];
+        for (int i = from; i < to; i++) {
+            Window w = windows.get(i);
+            switch (metric) {
+                case 0: values[i - from] = w.nsP50; break;
+                case 1: values[i - from] = w.nsP99; break;
+                case 2: values[i - from] = w.dsP50; break;
+                case 3: values[i - from] = w.dsP99; break;
+                case 4: values[i - from] = w.latencyP50; break;
+                case 5: values[i - from] = w.latencyP99; break;
+                default: values[i - from] = w.heapBytes; break;
+            }
+        }
+        Arrays.sort(values);
+        return values.length > 0 ? values[values.length / 2] : 0;
+    }
+
+    private static Profile profile(String name) {
+        for (Profile profile : PROFILES) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    private static String profileNames() {
+        List<String> names = new ArrayList<>();
+        for (Profile profile : PROFILES) {
+            names.add(profile.name);
+        }
+        return String.join(",", names);
+    }
+
+    /**
+     * 比较两份报告：逐项打印数值指标，COMPARED_KEYS 中的指标比基准高出 tolerance 以上视为退步
+     * @return 没有退步时返回 true
+     */
+    static boolean compare(Properties base, Properties current, double tolerance) {
+        List<String> compared = Arrays.asList(COMPARED_KEYS);
+        TreeSet<String> keys = new TreeSet<>(base.stringPropertyNames());
+        keys.retainAll(current.stringPropertyNames());
+        List<String> regressions = new ArrayList<>();
+        for (String key : keys) {
+            double before;
+            double after;
+            try {
+                before = Double.parseDouble(base.getProperty(key));
+                after = Double.parseDouble(current.getProperty(key));
+            } catch (NumberFormatException e) {
+                // 窗口明细与配置项
+                continue;
+            }
+            String change = before != 0 ? String.format(Locale.US, "%+.1f%%", (after - before) * 100 / Math.abs(before)) : "";
+            boolean regressed = compared.contains(key) && after > before * (1 + tolerance);
+            System.out.println(String.format(Locale.US, "%-36s %14s %14s %8s%s", key, base.getProperty(key),
+                current.getProperty(key), change, regressed ? "  REGRESSED" : ""));
+            if (regressed) {
+                regressions.add(key);
+            }
+        }
+        for (String key : new String[] { "soak.hours", "soak.rate_per_hour", "soak.mix", "soak.seed" }) {
+            if (!String.valueOf(base.getProperty(key)).equals(String.valueOf(current.getProperty(key)))) {
+                System.out.println("note: " + key + " differs (" + base.getProperty(key) + " vs "
+                    + current.getProperty(key) + "), results may not be comparable");
+            }
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println("FAIL: regressed beyond " + Math.round(tolerance * 100) + "%: " + regressions);
+        }
+        System.out.println(regressions.isEmpty() ? "PASS" : "FAILED");
+        return regressions.isEmpty();
+    }
+}
@@ -0,0 +1,142 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按记录的时间把 AncsTrace 中的外设事件交给会话
+ * 会话发出的 Control Point 写入不会送到任何设备：遇到记录中的 CPACK 时以记录的状态完成最早的未完成写入，
+ * 并与记录中同一位置的 CP 命令比较，用于发现解析或获取逻辑的行为变化。
+ * 记录中没有 CP/CPACK（例如手写的记录）时，每个 Data Source 分片之前先以成功完成未完成的写入
+ */
+public class TraceReplayer implements GattTransport {
+    private static final String TAG = "TraceReplayer";
+
+    private final List<AncsTrace.Record> records;
+    // 0 表示不等待，尽快回放
+    private final double speed;
+    // 以下字段只在回放线程上访问
+    private byte[] pendingWrite;
+    private int recordedCommandIndex = 0;
+    private int writesIssued = 0;
+    private int commandMismatches = 0;
+    private int unansweredAcks = 0;
+
+    public TraceReplayer(List<AncsTrace.Record> records, double speed) {
+        this.records = records;
+        this.speed = speed;
+    }
+
+    /**
+     * 在当前线程上回放全部记录
+     */
+    public void replay(GattTransport.Listener listener) throws InterruptedException {
+        boolean hasAcks = false;
+        for (AncsTrace.Record record : records) {
+            if (record.type == AncsTrace.TYPE_CONTROL_POINT_ACK) {
+                hasAcks = true;
+                break;
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        long firstMicros = records.isEmpty() ? 0 : records.get(0).timeMicros;
+        for (AncsTrace.Record record : records) {
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) ((record.timeMicros - firstMicros) * 1000 / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+            }
+            switch (record.type) {
+                case AncsTrace.TYPE_CONNECT:
+                    listener.onConnected();
+                    break;
+                case AncsTrace.TYPE_READY:
+                    listener.onReady();
+                    break;
+                case AncsTrace.TYPE_DISCONNECT:
+                    pendingWrite = null;
+                    listener.onDisconnected();
+                    break;
+                case AncsTrace.TYPE_NOTIFICATION_SOURCE:
+                    listener.onNotificationSource(record.data);
+                    break;
+                case AncsTrace.TYPE_DATA_SOURCE:
+                    if (!hasAcks) {
+                        completeWrite(listener, 0, null);
+                    }
+                    listener.onDataSource(record.data);
+                    break;
+                case AncsTrace.TYPE_CONTROL_POINT_ACK:
+                    completeWrite(listener, record.data.length > 0 ? record.data[0] & 0xFF : 0, record);
+                    break;
+                default:
+                    // CP 记录只用于比较
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public boolean writeControlPoint(byte[] command) {
+        // 在会话的回调中调用，不能在这里直接完成写入
+        pendingWrite = command.clone();
+        writesIssued++;
+        return true;
+    }
+
+    public int getWritesIssued() {
+        return writesIssued;
+    }
+
+    public int getCommandMismatches() {
+        return commandMismatches;
+    }
+
+    /**
+     * @return 记录中有写入结果、但会话当时没有未完成写入的次数
+     */
+    public int getUnansweredAcks() {
+        return unansweredAcks;
+    }
+
+    private void completeWrite(GattTransport.Listener listener, int status, AncsTrace.Record ack) {
+        if (pendingWrite == null) {
+            if (ack != null) {
+                unansweredAcks++;
+            }
+            return;
+        }
+        if (ack != null) {
+            byte[] recorded = nextRecordedCommand(ack);
+            if (recorded != null && !Arrays.equals(recorded, pendingWrite)) {
+                commandMismatches++;
+                AncsLog.w(TAG, "Command differs from trace at " + ack.timeMicros + "us");
+            }
+        }
+        pendingWrite = null;
+        listener.onControlPointWriteComplete(status);
+    }
+
+    /**
+     * @return ack 之前最近一条尚未比较过的 CP 记录
+     */
+    private byte[] nextRecordedCommand(AncsTrace.Record ack) {
+        byte[] found = null;
+        while (recordedCommandIndex < records.size()) {
+            AncsTrace.Record record = records.get(recordedCommandIndex);
+            if (record == ack) {
+                break;
+            }
+            recordedCommandIndex++;
+            if (record.type == AncsTrace.TYPE_CONTROL_POINT) {
+                found = record.data;
+                break;
+            }
+        }
+        return found;
+    }
+}
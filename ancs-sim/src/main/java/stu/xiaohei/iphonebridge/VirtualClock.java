@@ -0,0 +1,95 @@
+package stu.xiaohei.iphonebridge;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 模拟时间的事件循环，所有任务在调用 runUntil 的线程上按时间顺序执行，
+ * 时间只在执行任务时前进，因此几天的模拟时间可以在几秒内跑完且结果可重复。
+ * 同时作为 AncsSession 的 Scheduler，与 SimScheduler 一样同一任务只保留最后一次 postDelayed
+ */
+class VirtualClock implements AncsSession.Scheduler {
+    private static final class Event implements Comparable<Event> {
+        final long atMicros;
+        final long sequence;
+        final Runnable task;
+        boolean cancelled;
+
+        Event(long atMicros, long sequence, Runnable task) {
+            this.atMicros = atMicros;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            // 同一时刻按安排顺序执行
+            if (atMicros != other.atMicros) {
+                return atMicros < other.atMicros ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> queue = new PriorityQueue<>();
+    // 通过 Scheduler 接口安排、可被 removeCallbacks 取消的任务
+    private final Map<Runnable, Event> callbacks = new HashMap<>();
+    private long nowMicros = 0;
+    private long nextSequence = 0;
+
+    long nowMicros() {
+        return nowMicros;
+    }
+
+    long nowMillis() {
+        return nowMicros / 1000;
+    }
+
+    void schedule(long delayMicros, Runnable task) {
+        queue.add(new Event(nowMicros + Math.max(0, delayMicros), nextSequence++, task));
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMs) {
+        Event event = new Event(nowMicros + Math.max(0, delayMs) * 1000, nextSequence++, task);
+        Event previous = callbacks.put(task, event);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        queue.add(event);
+    }
+
+    @Override
+    public void removeCallbacks(Runnable task) {
+        Event event = callbacks.remove(task);
+        if (event != null) {
+            event.cancelled = true;
+        }
+    }
+
+    /**
+     * 依次执行到 endMicros（包含）为止的任务，之后时间停在 endMicros
+     */
+    void runUntil(long endMicros) {
+        while (!queue.isEmpty() && queue.peek().atMicros <= endMicros) {
+            Event event = queue.poll();
+            if (event.cancelled) {
+                continue;
+            }
+            if (callbacks.get(event.task) == event) {
+                callbacks.remove(event.task);
+            }
+            nowMicros = event.atMicros;
+            event.task.run();
+        }
+        nowMicros = Math.max(nowMicros, endMicros);
+    }
+
+    /**
+     * @return 尚未执行的任务数，包括已取消的
+     */
+    int pending() {
+        return queue.size();
+    }
+}
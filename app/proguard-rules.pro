@@ -27,4 +27,16 @@
 # Keep ANCS related classes
 -keep class stu.xiaohei.iphonebridge.ANCSConstants { *; }
 -keep class stu.xiaohei.iphonebridge.NotificationHandler { *; }
--keep class stu.xiaohei.iphonebridge.BridgeService { *; }
\ No newline at end of file
+-keep class stu.xiaohei.iphonebridge.BridgeService { *; }
+
+# release 构建中删除调试日志及其字符串拼接
+-assumenosideeffects class android.util.Log {
+    public static int v(...);
+    public static int d(...);
+}
+-assumenosideeffects class stu.xiaohei.iphonebridge.AncsLog {
+    public static void d(...);
+}
+-assumevalues class stu.xiaohei.iphonebridge.AncsLog {
+    public static boolean isDebugEnabled() return false;
+}
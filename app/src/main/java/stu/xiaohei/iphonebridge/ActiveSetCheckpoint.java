@@ -0,0 +1,256 @@
+package stu.xiaohei.iphonebridge;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 活动通知集合的检查点
+ * 服务被系统杀死重建后，NotificationHandler 与通知 ID 映射都会丢失，重连时 iPhone 重放的每条已有通知都要重新获取属性。
+ * 这里把活动通知（UID、属性、已发送的 Android 通知 ID）连同会话纪元写入一个紧凑文件，服务启动时在后台线程读回；
+ * 重连后类别一致的已有通知沿用检查点中的属性，不再获取全部属性；iPhone 在 12 小时内重启时 UID 从 0 重新计数，
+ * 同一 UID 会被分配给另一条通知，所以 AncsSession 每次连接先对第一条重放只获取应用 ID 与日期核对，
+ * 不一致时本次重放的条目全部按新通知获取。没有日期的条目（获取命令加入日期之前写入的检查点）都会核对失败。
+ * 读取与写入都在检查点自己的线程上进行，不占用主线程与蓝牙回调线程。
+ * 文件格式（大端序）：
+ * 头部 int MAGIC, byte VERSION, UTF 设备地址, long 保存时间, int 会话纪元, int 条目数；
+ * 条目 int UID, int Android ID, byte 类别, byte 事件标志, long 首次收到时间, int 属性 CRC32, byte 属性数, 属性 (byte ID, short 长度, 字节)
+ */
+public class ActiveSetCheckpoint {
+    private static final String TAG = "ActiveSetCheckpoint";
+    private static final int MAGIC = 0x41435350;
+    private static final byte VERSION = 1;
+    // 变化后延迟保存，合并短时间内的多次修改
+    private static final long SAVE_DELAY_MS = 2000;
+    // 超过该时间的检查点视为不同的 iPhone 会话
+    private static final long MAX_AGE_MS = 12 * 60 * 60 * 1000L;
+
+    /**
+     * 后台恢复的参数与结果，都在检查点线程上回调
+     */
+    public interface RestoreCallback {
+        /**
+         * @return 将要重连的设备，可在此读取配置；为 null 时不恢复
+         */
+        String getExpectedAddress();
+
+        /**
+         * 恢复结束，无论是否恢复了通知
+         */
+        void onRestored(int count);
+    }
+
+    private final AtomicFile file;
+    private final NotificationHandler notificationHandler;
+    private final NotificationIdAllocator idAllocator;
+    private final Runnable saveRunnable = this::save;
+    private final HandlerThread thread;
+    // 创建后不再改变，scheduleSave 无需加锁
+    private final Handler handler;
+    // 文件写入锁，只在 save 中持有
+    private final Object writeLock = new Object();
+    // 只在持有 writeLock 时使用，按最长的属性增长
+    private byte[] valueBuffer = new byte[1024];
+    private volatile String deviceAddress;
+    // 恢复完成之前不保存，否则会用不完整的活动集合覆盖检查点
+    private volatile boolean restorePending = false;
+
+    public ActiveSetCheckpoint(File file, NotificationHandler notificationHandler, NotificationIdAllocator idAllocator) {
+        this.file = new AtomicFile(file);
+        this.notificationHandler = notificationHandler;
+        this.idAllocator = idAllocator;
+        thread = new HandlerThread("ActiveSetCheckpoint", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * 设置当前连接的设备，保存时写入检查点
+     */
+    public void setDeviceAddress(String address) {
+        deviceAddress = address;
+    }
+
+    /**
+     * 在检查点线程上读取检查点，恢复通知记录与通知 ID 映射；
+     * 调用方需让 AncsSession 在 onRestored 之前保留已有通知的事件
+     */
+    public void restoreAsync(RestoreCallback callback) {
+        restorePending = true;
+        handler.post(() -> {
+            int count = restore(callback.getExpectedAddress());
+            restorePending = false;
+            callback.onRestored(count);
+        });
+    }
+
+    /**
+     * @param expectedAddress 将要重连的设备，与检查点中的设备不同时不恢复
+     * @return 恢复的通知数
+     */
+    private int restore(String expectedAddress) {
+        if (expectedAddress == null) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                Log.w(TAG, "Unrecognized checkpoint, ignoring");
+                return 0;
+            }
+            String address = in.readUTF();
+            long savedAt = in.readLong();
+            int epoch = in.readInt();
+            int count = in.readInt();
+            long age = System.currentTimeMillis() - savedAt;
+            // 时间窗口内 iPhone 也可能已经重启，条目是否仍是同一条通知由重连后的核对决定
+            if (!expectedAddress.equals(address) || age < 0 || age > MAX_AGE_MS) {
+                Log.d(TAG, "Checkpoint from another session (device=" + address + ", age=" + age + "ms), ignoring");
+                return 0;
+            }
+
+            int restored = 0;
+            int corrupted = 0;
+            CRC32 crc = new CRC32();
+            byte[] value = new byte[1024];
+            for (int i = 0; i < count; i++) {
+                NotificationHandler.NotificationInfo info = new NotificationHandler.NotificationInfo(null);
+                info.rawUid = in.readInt();
+                int androidId = in.readInt();
+                info.categoryId = in.readByte();
+                info.eventFlags = in.readByte();
+                info.receivedAt = in.readLong();
+                int hash = in.readInt();
+                int attributeCount = in.readUnsignedByte();
+                crc.reset();
+                for (int a = 0; a < attributeCount; a++) {
+                    int attributeId = in.readUnsignedByte();
+                    int length = in.readUnsignedShort();
+                    if (length > value.length) {
+                        value = new byte[length];
+                    }
+                    in.readFully(value, 0, length);
+                    crc.update(attributeId);
+                    crc.update(value, 0, length);
+                    info.attributes.set(attributeId, value, 0, length);
+                }
+                if ((int) crc.getValue() != hash) {
+                    // 属性损坏时放弃该条目，重连后照常获取
+                    corrupted++;
+                    continue;
+                }
+                info.uid = NotificationHandler.formatUid(info.rawUid);
+                info.eventId = NotificationHandler.EVENT_ID_NOTIFICATION_ADDED;
+                info.hasPositiveAction = (info.eventFlags & NotificationHandler.EVENT_FLAG_POSITIVE_ACTION) != 0;
+                info.hasNegativeAction = (info.eventFlags & NotificationHandler.EVENT_FLAG_NEGATIVE_ACTION) != 0;
+                notificationHandler.restore(info);
+                if (androidId != NotificationIdAllocator.NO_ID) {
+                    idAllocator.restore(info.rawUid, androidId);
+                }
+                restored++;
+            }
+            Log.i(TAG, "Restored " + restored + " notifications from epoch " + epoch
+                + (corrupted > 0 ? ", dropped " + corrupted + " corrupted" : ""));
+            return restored;
+        } catch (FileNotFoundException e) {
+            return 0;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read checkpoint", e);
+            return 0;
+        }
+    }
+
+    /**
+     * 活动集合变化后调用，可在任意线程调用，不加锁，也不会等待正在进行的写入
+     */
+    public void scheduleSave() {
+        handler.removeCallbacks(saveRunnable);
+        handler.postDelayed(saveRunnable, SAVE_DELAY_MS);
+    }
+
+    /**
+     * 立即写入尚未保存的修改并停止后台线程，之后的 scheduleSave 不再生效
+     */
+    public void flush() {
+        handler.removeCallbacks(saveRunnable);
+        thread.quit();
+        save();
+    }
+
+    private void save() {
+        synchronized (writeLock) {
+            write();
+        }
+    }
+
+    private void write() {
+        String address = deviceAddress;
+        if (address == null || restorePending) {
+            return;
+        }
+        List<NotificationSnapshot> active = notificationHandler.getActiveNotifications();
+        int epoch = idAllocator.getEpoch();
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(address);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(epoch);
+            out.writeInt(active.size());
+            CRC32 crc = new CRC32();
+            for (NotificationSnapshot notification : active) {
+                AttributeBlock attributes = notification.getAttributes();
+                out.writeInt(notification.getRawUid());
+                out.writeInt(idAllocator.get(notification.getRawUid()));
+                out.writeByte(notification.getCategoryId());
+                out.writeByte(notification.getEventFlags());
+                out.writeLong(notification.getReceivedAt());
+                int attributeCount = 0;
+                crc.reset();
+                for (int id = 0; id < AttributeBlock.ATTRIBUTE_COUNT; id++) {
+                    if (attributes.has(id)) {
+                        if (attributes.length(id) > valueBuffer.length) {
+                            valueBuffer = new byte[attributes.length(id)];
+                        }
+                        int length = attributes.copyTo(id, valueBuffer, 0);
+                        crc.update(id);
+                        crc.update(valueBuffer, 0, length);
+                        attributeCount++;
+                    }
+                }
+                out.writeInt((int) crc.getValue());
+                out.writeByte(attributeCount);
+                for (int id = 0; id < AttributeBlock.ATTRIBUTE_COUNT; id++) {
+                    if (attributes.has(id)) {
+                        int length = attributes.copyTo(id, valueBuffer, 0);
+                        out.writeByte(id);
+                        out.writeShort(length);
+                        out.write(valueBuffer, 0, length);
+                    }
+                }
+            }
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write checkpoint", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+}
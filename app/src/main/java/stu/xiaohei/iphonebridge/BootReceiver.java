@@ -4,6 +4,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.SystemClock;
 import android.util.Log;
 
 public class BootReceiver extends BroadcastReceiver {
@@ -28,7 +29,10 @@ public class BootReceiver extends BroadcastReceiver {
                 Log.d(TAG, "Starting BridgeService on boot for device: " + lastDevice);
                 
                 // 启动前台服务
+                // 直接带上设备地址和开机时刻，服务无需再读取配置即可立即发起连接
                 Intent serviceIntent = new Intent(context, BridgeService.class);
+                serviceIntent.putExtra(BridgeService.EXTRA_DEVICE_ADDRESS, lastDevice);
+                serviceIntent.putExtra(BridgeService.EXTRA_BOOT_ELAPSED_NANOS, SystemClock.elapsedRealtimeNanos());
                 try {
                     context.startForegroundService(serviceIntent);
                 } catch (Exception e) {
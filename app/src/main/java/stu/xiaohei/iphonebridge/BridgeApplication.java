@@ -0,0 +1,40 @@
+package stu.xiaohei.iphonebridge;
+
+import android.app.Application;
+import android.util.Log;
+
+/**
+ * 进程入口：在任何组件创建之前把 ancs-core 的日志接到 android.util.Log，
+ * 逐包的调试日志只在 debug 构建中开启
+ */
+public class BridgeApplication extends Application {
+
+    private static final AncsLog.Logger ANDROID_LOGGER = new AncsLog.Logger() {
+        @Override
+        public void d(String tag, String message) {
+            Log.d(tag, message);
+        }
+
+        @Override
+        public void i(String tag, String message) {
+            Log.i(tag, message);
+        }
+
+        @Override
+        public void w(String tag, String message, Throwable error) {
+            Log.w(tag, message, error);
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable error) {
+            Log.e(tag, message, error);
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        AncsLog.setLogger(ANDROID_LOGGER);
+        AncsLog.setDebugEnabled(BuildConfig.DEBUG);
+    }
+}
@@ -22,11 +22,25 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
+import android.os.SystemClock;
 import android.util.Log;
+import android.widget.Toast;
 
 import androidx.core.app.NotificationCompat;
+import androidx.lifecycle.LifecycleOwner;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 public class BridgeService extends Service {
     private static final String TAG = "BridgeService";
@@ -34,7 +48,27 @@ public class BridgeService extends Service {
     private static final int NOTIFICATION_ID = 1;
     private static final String PREFS_NAME = "iPhoneBridgePrefs";
     private static final String PREF_LAST_DEVICE = "lastConnectedDevice";
+    private static final String PREF_GROUPING_ENABLED = "groupingEnabled";
+    private static final String PREF_BURST_THRESHOLD = "burstThreshold";
     private static final long RECONNECT_INTERVAL = 3 * 60 * 1000; // 3分钟
+    // 通知操作写入成功后等待 iPhone 发来 REMOVED/MODIFIED 的时间
+    private static final long ACTION_CONFIRM_TIMEOUT = 5 * 1000;
+    // Control Point 就绪之前点击的通知按钮最多等待的时间，覆盖冷启动时的连接与服务发现
+    private static final long HELD_ACTION_TIMEOUT = 15 * 1000;
+    private static final String HISTORY_DIR = "history";
+    private static final long HISTORY_STOP_TIMEOUT = 1000;
+    private static final String CHECKPOINT_FILE = "active_set.bin";
+    private static final String TRACE_DIR = "traces";
+    // dump 默认输出的原始数据包数
+    private static final int DUMP_DEFAULT_PACKETS = 50;
+    
+    // 启动参数：由 BootReceiver 传入，避免冷启动时读取配置
+    public static final String EXTRA_DEVICE_ADDRESS = "device_address";
+    public static final String EXTRA_BOOT_ELAPSED_NANOS = "boot_elapsed_nanos";
+    
+    // 通知分组摘要上的"全部清除"
+    public static final String ACTION_DISMISS_GROUP = "stu.xiaohei.iphonebridge.ACTION_DISMISS_GROUP";
+    public static final String EXTRA_APP_ID = "app_id";
     
     // ANCS UUIDs
     private static final String SERVICE_ANCS = "7905F431-B5CE-4E99-A40F-4B1E122D00D0";
@@ -55,21 +89,93 @@ public class BridgeService extends Service {
     private BluetoothGattCharacteristic dataSourceChar;
     
     private NotificationHandler notificationHandler;
-    private ServiceCallback serviceCallback;
+    private NotificationChannels notificationChannels;
+    private NotificationRenderer notificationRenderer;
+    private final NotificationIdAllocator idAllocator = new NotificationIdAllocator();
+    // 持久化的事件历史，在延迟初始化中启动写线程
+    private HistoryLog historyLog;
+    // 基于历史日志的全文搜索，索引在后台线程中增量更新
+    private HistorySearch historySearch;
+    private final ObserverRegistry<ServiceCallback> observers = new ObserverRegistry<>();
+    // 活动通知检查点，服务重建后恢复，重连时跳过已有通知的属性获取
+    private ActiveSetCheckpoint checkpoint;
+    // 只在首次 onStartCommand 时发起恢复
+    private boolean restoreStarted = false;
+    // 在检查点线程上写入
+    private volatile int restoredCount = 0;
+    // ANCS 协议逻辑：属性获取、Data Source 重组与重连后的对账
+    private AncsSession session;
+    // 冷启动与连接建立的步骤顺序
+    private AncsStartup startup;
     
     // 自动重连相关
     private Handler reconnectHandler = new Handler();
     private Runnable reconnectRunnable;
     private boolean shouldReconnect = false;
-    private SharedPreferences sharedPreferences;
+    private volatile SharedPreferences sharedPreferences;
     
     // 电源管理
     private PowerManager.WakeLock wakeLock;
+    // 唤醒锁的累计持有时间，当前持有时另加 acquire 以来的时间；由主线程写入，dump 读取不加锁
+    private volatile long wakeLockAcquiredAt = 0;
+    private volatile long wakeLockHeldMillis = 0;
+    
+    // 连接状态与最近的状态变化，供 dump 输出
+    private final ConnectionStateLog connectionState = new ConnectionStateLog();
+    // 解析错误或按需时把最近的原始数据包写成可回放的记录
+    private PacketTraceWriter packetTraceWriter;
+    
+    // 冷启动
+    private long createdNanos;
+    private StartupTrace startupTrace;
+    private boolean foregroundStarted = false;
+    // 开机启动时随 Intent 传入的设备地址，只在主线程使用
+    private String startAddress;
+    
+    // 未完成的通知操作
+    private final PendingActionTracker pendingActions = new PendingActionTracker();
+    // Control Point 就绪之前点击的通知按钮（例如点击时服务刚被创建），就绪后按顺序执行；只在主线程使用
+    private final List<HeldAction> heldActions = new ArrayList<>();
+    
+    /**
+     * 等待 Control Point 就绪的通知按钮点击
+     */
+    private static final class HeldAction {
+        final String uid;
+        final boolean positive;
+        final long requestNanos;
+        final int notificationId;
+        
+        HeldAction(String uid, boolean positive, long requestNanos, int notificationId) {
+            this.uid = uid;
+            this.positive = positive;
+            this.requestNanos = requestNanos;
+            this.notificationId = notificationId;
+        }
+    }
+    
+    /**
+     * 批量清除时用于挑选通知
+     */
+    public interface NotificationSelector {
+        boolean matches(NotificationSnapshot info);
+    }
     
+    /**
+     * 批量清除进度，在主线程回调
+     */
+    public interface BulkDismissListener {
+        void onProgress(int completed, int failed, int total);
+        void onComplete(int completed, int failed, int total);
+    }
+    
+    /**
+     * 服务事件订阅者，在订阅时指定的 Executor 上回调，只需实现关心的方法
+     */
     public interface ServiceCallback {
-        void onConnectionStateChanged(boolean connected);
-        void onNotificationReceived(NotificationHandler.NotificationInfo info);
-        void onServiceReady();
+        default void onConnectionStateChanged(boolean connected) {}
+        default void onNotificationReceived(NotificationSnapshot notification) {}
+        default void onServiceReady() {}
     }
     
     public class LocalBinder extends Binder {
@@ -81,8 +187,10 @@ public class BridgeService extends Service {
     @Override
     public void onCreate() {
         super.onCreate();
+        createdNanos = SystemClock.elapsedRealtimeNanos();
         Log.d(TAG, "Service created");
         
+        // 这里只做发起 GATT 连接所必需的初始化，其余工作推迟到连接发起之后
         try {
             bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
             if (bluetoothManager == null) {
@@ -99,20 +207,18 @@ public class BridgeService extends Service {
             }
             
             notificationHandler = new NotificationHandler();
-            sharedPreferences = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-            
-            // 初始化电源管理
-            PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "iPhoneBridge::ServiceWakeLock");
-            wakeLock.acquire();
+            historyLog = new HistoryLog(new File(getFilesDir(), HISTORY_DIR));
+            historySearch = new HistorySearch(historyLog);
+            notificationChannels = new NotificationChannels(this);
+            session = new AncsSession(this::writeControlPoint, notificationHandler, sessionScheduler, sessionListener);
+            startup = new AncsStartup(startupHost, startupLink, sessionScheduler, session);
+            notificationRenderer = new NotificationRenderer(this, notificationChannels, idAllocator,
+                session.getPipelineTrace());
+            packetTraceWriter = new PacketTraceWriter(new File(getFilesDir(), TRACE_DIR));
+            checkpoint = new ActiveSetCheckpoint(new File(getFilesDir(), CHECKPOINT_FILE), notificationHandler, idAllocator);
             
             // 初始化自动重连
             initAutoReconnect();
-            
-            createNotificationChannel();
-            startForeground(NOTIFICATION_ID, createNotification());
-            
-            Log.d(TAG, "Service initialized successfully");
         } catch (Exception e) {
             Log.e(TAG, "Error initializing service", e);
             stopSelf();
@@ -123,18 +229,222 @@ public class BridgeService extends Service {
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "Service started");
         
-        // 启动自动重连
-        if (shouldReconnect) {
-            reconnectHandler.removeCallbacks(reconnectRunnable);
-            reconnectHandler.postDelayed(reconnectRunnable, RECONNECT_INTERVAL);
-        } else {
-            // 尝试连接上次连接的设备
-            startAutoReconnect();
+        // 通知按钮直接以服务 Intent 送达，无需绑定服务
+        if (intent != null && handleNotificationAction(intent) && foregroundStarted) {
+            return START_STICKY;
         }
         
+        if (startupTrace == null) {
+            long originNanos = intent != null ? intent.getLongExtra(EXTRA_BOOT_ELAPSED_NANOS, createdNanos) : createdNanos;
+            startupTrace = new StartupTrace(SystemClock::elapsedRealtimeNanos, originNanos);
+            startupTrace.markAt("service_create", createdNanos);
+        }
+        
+        if (bluetoothAdapter == null) {
+            // onCreate 初始化失败，仍需进入前台以满足 startForegroundService 的要求
+            startForegroundOnce();
+            return START_NOT_STICKY;
+        }
+        
+        // 先发起 GATT 连接，再进入前台，其余初始化推迟执行
+        startAddress = intent != null ? intent.getStringExtra(EXTRA_DEVICE_ADDRESS) : null;
+        if (!restoreStarted) {
+            restoreStarted = true;
+            restoreCheckpoint(startAddress);
+        }
+        startup.start(startupTrace);
+        
         return START_STICKY;
     }
     
+    /**
+     * 处理通知栏按钮
+     * @return 是通知操作 Intent 时返回 true
+     */
+    private boolean handleNotificationAction(Intent intent) {
+        String action = intent.getAction();
+        if (ACTION_DISMISS_GROUP.equals(action)) {
+            String appId = intent.getStringExtra(EXTRA_APP_ID);
+            dismissNotifications(byAppId(appId), null);
+            return true;
+        }
+        
+        boolean isPositive;
+        if (NotificationActionReceiver.ACTION_POSITIVE.equals(action)) {
+            isPositive = true;
+        } else if (NotificationActionReceiver.ACTION_NEGATIVE.equals(action)) {
+            isPositive = false;
+        } else {
+            return false;
+        }
+        
+        long requestNanos = SystemClock.elapsedRealtimeNanos();
+        String uid = intent.getStringExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_UID);
+        if (uid == null) {
+            Log.e(TAG, "Notification UID is null");
+            return true;
+        }
+        
+        int notificationId = intent.getIntExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_ID, NotificationIdAllocator.NO_ID);
+        if (!queueTappedAction(uid, isPositive, requestNanos, notificationId)) {
+            // 服务刚被点击启动或连接尚未就绪：通知保留在通知栏，等 Control Point 就绪后再执行
+            HeldAction held = new HeldAction(uid, isPositive, requestNanos, notificationId);
+            heldActions.add(held);
+            reconnectHandler.postAtTime(() -> onHeldActionTimeout(held), held,
+                SystemClock.uptimeMillis() + HELD_ACTION_TIMEOUT);
+            Log.i(TAG, "Control Point not ready, holding action for " + uid);
+        }
+        return true;
+    }
+    
+    /**
+     * 先把命令放入 Control Point 队列，再取消通知并提示；没有放入队列时通知保持不变
+     * @return 没有放入队列（Control Point 未就绪）时返回 false
+     */
+    private boolean queueTappedAction(String uid, boolean positive, long requestNanos, int notificationId) {
+        if (!performNotificationAction(uid, positive, requestNanos, notificationId != NotificationIdAllocator.NO_ID)) {
+            return false;
+        }
+        Log.d(TAG, "Action queued " + (SystemClock.elapsedRealtimeNanos() - requestNanos) / 1000 + "us after tap");
+        
+        // 立即取消通知，提供即时反馈
+        if (notificationId != NotificationIdAllocator.NO_ID) {
+            NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.cancel(notificationId);
+        }
+        
+        // 获取通知信息以显示操作名称
+        NotificationSnapshot info = getNotificationInfo(uid);
+        String actionLabel = positive ?
+            (info != null && info.getPositiveActionLabel() != null ? info.getPositiveActionLabel() : "确认") :
+            (info != null && info.getNegativeActionLabel() != null ? info.getNegativeActionLabel() : "取消");
+        Toast.makeText(this, "正在执行: " + actionLabel, Toast.LENGTH_SHORT).show();
+        return true;
+    }
+    
+    /**
+     * Control Point 就绪：按点击顺序执行等待中的通知按钮
+     */
+    private void drainHeldActions() {
+        if (heldActions.isEmpty()) {
+            return;
+        }
+        List<HeldAction> held = new ArrayList<>(heldActions);
+        heldActions.clear();
+        for (HeldAction action : held) {
+            reconnectHandler.removeCallbacksAndMessages(action);
+            if (!queueTappedAction(action.uid, action.positive, action.requestNanos, action.notificationId)) {
+                // 就绪后又立即断开，交给超时处理
+                heldActions.add(action);
+                reconnectHandler.postAtTime(() -> onHeldActionTimeout(action), action,
+                    SystemClock.uptimeMillis() + HELD_ACTION_TIMEOUT);
+            }
+        }
+        Log.i(TAG, "Executed " + (held.size() - heldActions.size()) + " actions held until Control Point was ready");
+    }
+    
+    /**
+     * 等待期间没有连接上 iPhone：放弃该操作，通知一直没有取消，只需提示
+     */
+    private void onHeldActionTimeout(HeldAction action) {
+        if (!heldActions.remove(action)) {
+            return;
+        }
+        Log.w(TAG, "Control Point not ready in time, dropping action for " + action.uid);
+        showActionFailure("未连接到 iPhone");
+    }
+    
+    /**
+     * 检查点在后台线程上读取，与连接建立并行；恢复完成之前 AncsSession 保留收到的已有通知
+     * @param address 随 Intent 传入的设备，为 null 时在后台线程上读取上次连接的设备
+     */
+    private void restoreCheckpoint(final String address) {
+        session.awaitRestore();
+        checkpoint.restoreAsync(new ActiveSetCheckpoint.RestoreCallback() {
+            @Override
+            public String getExpectedAddress() {
+                return address != null ? address : getPrefs().getString(PREF_LAST_DEVICE, null);
+            }
+            
+            @Override
+            public void onRestored(int count) {
+                restoredCount = count;
+                session.onRestoreComplete();
+            }
+        });
+    }
+    
+    private void startForegroundOnce() {
+        if (foregroundStarted) {
+            return;
+        }
+        foregroundStarted = true;
+        createNotificationChannel();
+        startForeground(NOTIFICATION_ID, createNotification());
+    }
+    
+    /**
+     * 冷启动中由服务完成的步骤，顺序由 AncsStartup 决定
+     */
+    private final AncsStartup.Host startupHost = new AncsStartup.Host() {
+        @Override
+        public boolean connect() {
+            if (shouldReconnect) {
+                // 启动自动重连
+                reconnectHandler.removeCallbacks(reconnectRunnable);
+                reconnectHandler.postDelayed(reconnectRunnable, RECONNECT_INTERVAL);
+                return false;
+            }
+            if (startAddress != null) {
+                // 开机启动：地址已随 Intent 传入，跳过配置读取
+                connectToAddress(startAddress);
+            } else {
+                // 尝试连接上次连接的设备
+                startAutoReconnect();
+            }
+            return bluetoothGatt != null;
+        }
+        
+        @Override
+        public void startForeground() {
+            startForegroundOnce();
+        }
+        
+        @Override
+        public void deferredInit() {
+            BridgeService.this.deferredInit();
+        }
+    };
+    
+    /**
+     * 不影响连接建立的初始化工作，在 GATT 连接发起之后执行
+     */
+    private void deferredInit() {
+        SharedPreferences prefs = getPrefs();
+        notificationChannels.createAll();
+        notificationRenderer.setGroupingEnabled(prefs.getBoolean(PREF_GROUPING_ENABLED, true));
+        notificationRenderer.setBurstThreshold(
+            prefs.getInt(PREF_BURST_THRESHOLD, NotificationRenderer.DEFAULT_BURST_THRESHOLD));
+        
+        // 初始化电源管理
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "iPhoneBridge::ServiceWakeLock");
+        wakeLock.acquire();
+        wakeLockAcquiredAt = SystemClock.elapsedRealtime();
+        
+        historyLog.start();
+        historySearch.start();
+        
+        Log.d(TAG, "Service initialized successfully");
+    }
+    
+    private SharedPreferences getPrefs() {
+        if (sharedPreferences == null) {
+            sharedPreferences = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        }
+        return sharedPreferences;
+    }
+    
     @Override
     public void onDestroy() {
         Log.d(TAG, "Service destroyed");
@@ -142,11 +452,27 @@ public class BridgeService extends Service {
         // 释放资源
         if (wakeLock != null && wakeLock.isHeld()) {
             wakeLock.release();
+            wakeLockHeldMillis += SystemClock.elapsedRealtime() - wakeLockAcquiredAt;
+            wakeLockAcquiredAt = 0;
         }
         
-        reconnectHandler.removeCallbacks(reconnectRunnable);
+        // 同时移除尚未执行的延迟初始化
+        reconnectHandler.removeCallbacksAndMessages(null);
         disconnect();
         
+        if (historySearch != null) {
+            historySearch.stop();
+        }
+        if (historyLog != null) {
+            historyLog.stop(HISTORY_STOP_TIMEOUT);
+        }
+        if (checkpoint != null) {
+            checkpoint.flush();
+        }
+        if (packetTraceWriter != null) {
+            packetTraceWriter.stop();
+        }
+        
         super.onDestroy();
     }
     
@@ -155,8 +481,27 @@ public class BridgeService extends Service {
         return binder;
     }
     
-    public void setServiceCallback(ServiceCallback callback) {
-        this.serviceCallback = callback;
+    /**
+     * 订阅服务事件直到 owner 停止，必须在主线程调用
+     * @return owner 未处于 STARTED 状态时返回 false
+     */
+    public boolean subscribe(LifecycleOwner owner, ServiceCallback callback, Executor executor) {
+        return observers.subscribe(owner, callback, executor);
+    }
+    
+    /**
+     * 订阅服务事件直到调用 unsubscribe
+     */
+    public void subscribe(ServiceCallback callback, Executor executor) {
+        observers.subscribe(callback, executor);
+    }
+    
+    public void unsubscribe(ServiceCallback callback) {
+        observers.unsubscribe(callback);
+    }
+    
+    private void dispatchNotification(NotificationSnapshot notification) {
+        observers.dispatch(callback -> callback.onNotificationReceived(notification));
     }
     
     private void initAutoReconnect() {
@@ -165,7 +510,7 @@ public class BridgeService extends Service {
             public void run() {
                 if (shouldReconnect && connectedDevice != null && !isConnected()) {
                     Log.d(TAG, "Attempting to reconnect to device: " + connectedDevice.getAddress());
-                    connectToDevice(connectedDevice);
+                    connectGatt(connectedDevice);
                 }
                 
                 if (shouldReconnect) {
@@ -181,22 +526,37 @@ public class BridgeService extends Service {
             return;
         }
         
+        // 保存设备地址以便重连
+        getPrefs().edit().putString(PREF_LAST_DEVICE, device.getAddress()).apply();
+        
+        connectGatt(device);
+    }
+    
+    private void connectToAddress(String address) {
+        try {
+            connectGatt(bluetoothAdapter.getRemoteDevice(address));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to get device for address: " + address, e);
+        }
+    }
+    
+    private void connectGatt(BluetoothDevice device) {
         connectedDevice = device;
+        checkpoint.setDeviceAddress(device.getAddress());
         shouldReconnect = true;
         
-        // 保存设备地址以便重连
-        sharedPreferences.edit().putString(PREF_LAST_DEVICE, device.getAddress()).apply();
-        
         if (bluetoothGatt != null) {
             bluetoothGatt.close();
         }
         
+        connectionState.transition(ConnectionStateLog.STATE_CONNECTING, 0, SystemClock.elapsedRealtime());
         bluetoothGatt = device.connectGatt(this, false, gattCallback);
     }
     
     public void disconnect() {
         shouldReconnect = false;
         reconnectHandler.removeCallbacks(reconnectRunnable);
+        connectionState.transition(ConnectionStateLog.STATE_IDLE, 0, SystemClock.elapsedRealtime());
         
         if (bluetoothGatt != null) {
             bluetoothGatt.disconnect();
@@ -206,14 +566,9 @@ public class BridgeService extends Service {
     }
     
     public void startAutoReconnect() {
-        String lastDeviceAddress = sharedPreferences.getString(PREF_LAST_DEVICE, null);
+        String lastDeviceAddress = getPrefs().getString(PREF_LAST_DEVICE, null);
         if (lastDeviceAddress != null && bluetoothAdapter != null) {
-            try {
-                BluetoothDevice device = bluetoothAdapter.getRemoteDevice(lastDeviceAddress);
-                connectToDevice(device);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to get last connected device", e);
-            }
+            connectToAddress(lastDeviceAddress);
         }
     }
     
@@ -226,11 +581,12 @@ public class BridgeService extends Service {
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
             if (newState == BluetoothProfile.STATE_CONNECTED) {
                 Log.i(TAG, "Connected to GATT server");
-                gatt.discoverServices();
+                connectionState.transition(ConnectionStateLog.STATE_CONNECTED, status, SystemClock.elapsedRealtime());
+                // 新连接开始新的会话纪元，本次连接中没有再出现的 UID 在对账时释放
+                idAllocator.beginSession();
+                startup.onLinkConnected();
                 
-                if (serviceCallback != null) {
-                    serviceCallback.onConnectionStateChanged(true);
-                }
+                observers.dispatch(callback -> callback.onConnectionStateChanged(true));
                 
                 updateNotification("已连接到 iPhone");
                 
@@ -239,10 +595,11 @@ public class BridgeService extends Service {
                 
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 Log.i(TAG, "Disconnected from GATT server");
+                connectionState.transition(ConnectionStateLog.STATE_DISCONNECTED, status, SystemClock.elapsedRealtime());
+                // 未完成的 Control Point 命令随连接一起失效
+                startup.onLinkDisconnected();
                 
-                if (serviceCallback != null) {
-                    serviceCallback.onConnectionStateChanged(false);
-                }
+                observers.dispatch(callback -> callback.onConnectionStateChanged(false));
                 
                 updateNotification("连接已断开，将在3分钟后重连");
                 
@@ -264,20 +621,17 @@ public class BridgeService extends Service {
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
                 ancsService = gatt.getService(UUID.fromString(SERVICE_ANCS));
-                
                 if (ancsService != null) {
-                    Log.i(TAG, "ANCS service found");
-                    
                     notificationSourceChar = ancsService.getCharacteristic(UUID.fromString(CHAR_NOTIFICATION_SOURCE));
                     controlPointChar = ancsService.getCharacteristic(UUID.fromString(CHAR_CONTROL_POINT));
                     dataSourceChar = ancsService.getCharacteristic(UUID.fromString(CHAR_DATA_SOURCE));
-                    
-                    // 按照ANCS规范，先启用 Data Source 通知
-                    setNotificationEnabled(dataSourceChar);
-                    
+                }
+                
+                if (startup.onServicesDiscovered(ancsService != null)) {
+                    Log.i(TAG, "ANCS service found");
+                    connectionState.transition(ConnectionStateLog.STATE_SUBSCRIBING, status, SystemClock.elapsedRealtime());
                     updateNotification("ANCS 服务已就绪");
-                } else {
-                    Log.e(TAG, "ANCS service not found");
+                } else if (ancsService == null) {
                     updateNotification("未找到 ANCS 服务");
                 }
             }
@@ -285,272 +639,200 @@ public class BridgeService extends Service {
         
         @Override
         public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                if (descriptor.getCharacteristic().getUuid().equals(UUID.fromString(CHAR_DATA_SOURCE))) {
-                    // Data Source 启用后，启用 Notification Source
-                    setNotificationEnabled(notificationSourceChar);
-                } else if (descriptor.getCharacteristic().getUuid().equals(UUID.fromString(CHAR_NOTIFICATION_SOURCE))) {
-                    Log.i(TAG, "ANCS notifications enabled");
-                    updateNotification("正在接收 iPhone 通知");
-                    
-                    if (serviceCallback != null) {
-                        serviceCallback.onServiceReady();
-                    }
-                }
+            UUID uuid = descriptor.getCharacteristic().getUuid();
+            int characteristic;
+            if (uuid.equals(UUID.fromString(CHAR_DATA_SOURCE))) {
+                characteristic = AncsStartup.CHARACTERISTIC_DATA_SOURCE;
+            } else if (uuid.equals(UUID.fromString(CHAR_NOTIFICATION_SOURCE))) {
+                characteristic = AncsStartup.CHARACTERISTIC_NOTIFICATION_SOURCE;
+            } else {
+                return;
+            }
+            if (startup.onNotificationsEnabled(characteristic, status)) {
+                connectionState.transition(ConnectionStateLog.STATE_READY, status, SystemClock.elapsedRealtime());
+                updateNotification("正在接收 iPhone 通知");
+                observers.dispatch(ServiceCallback::onServiceReady);
+                reconnectHandler.post(BridgeService.this::drainHeldActions);
             }
         }
         
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
             if (characteristic.getUuid().equals(UUID.fromString(CHAR_NOTIFICATION_SOURCE))) {
-                handleNotificationSource(characteristic.getValue());
+                session.onNotificationSource(characteristic.getValue());
             } else if (characteristic.getUuid().equals(UUID.fromString(CHAR_DATA_SOURCE))) {
-                handleDataSource(characteristic.getValue());
+                session.onDataSource(characteristic.getValue());
             }
         }
         
         @Override
         public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
             if (status == BluetoothGatt.GATT_SUCCESS) {
-                Log.d(TAG, "Characteristic write successful");
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Characteristic write successful");
+                }
             } else {
                 Log.e(TAG, "Characteristic write failed with status: " + status);
             }
+            
+            if (characteristic.getUuid().equals(UUID.fromString(CHAR_CONTROL_POINT))) {
+                session.onControlPointWriteComplete(status);
+            }
+        }
+    };
+    
+    /**
+     * 连接建立后的 GATT 操作，由 AncsStartup 按顺序发出
+     */
+    private final AncsStartup.Link startupLink = new AncsStartup.Link() {
+        @Override
+        public boolean discoverServices() {
+            BluetoothGatt gatt = bluetoothGatt;
+            return gatt != null && gatt.discoverServices();
+        }
+        
+        @Override
+        public boolean enableNotifications(int characteristic) {
+            return setNotificationEnabled(characteristic == AncsStartup.CHARACTERISTIC_DATA_SOURCE
+                ? dataSourceChar : notificationSourceChar);
         }
     };
     
-    private void setNotificationEnabled(BluetoothGattCharacteristic characteristic) {
+    private boolean setNotificationEnabled(BluetoothGattCharacteristic characteristic) {
         if (bluetoothGatt == null || characteristic == null) {
-            return;
+            return false;
         }
         
         bluetoothGatt.setCharacteristicNotification(characteristic, true);
         
         BluetoothGattDescriptor descriptor = characteristic.getDescriptor(UUID.fromString(DESCRIPTOR_CONFIG));
-        if (descriptor != null) {
-            descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-            bluetoothGatt.writeDescriptor(descriptor);
+        if (descriptor == null) {
+            return false;
         }
+        descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+        return bluetoothGatt.writeDescriptor(descriptor);
     }
     
-    private void handleNotificationSource(byte[] data) {
-        if (data == null || data.length < 8) {
-            Log.e(TAG, "Invalid notification source data");
-            return;
+    /**
+     * AncsSession 的延迟任务在主线程执行
+     */
+    private final AncsSession.Scheduler sessionScheduler = new AncsSession.Scheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            reconnectHandler.postDelayed(task, delayMs);
         }
         
-        // 解析通知基本信息
-        byte eventId = data[0];
-        byte eventFlags = data[1];
-        byte categoryId = data[2];
-        byte categoryCount = data[3];
-        byte[] uid = {data[4], data[5], data[6], data[7]};
-        
-        Log.d(TAG, String.format("EventId:%d\nEventFlags:%02x\nCategory id:%d\nCategory Count:%d\nNotificationUId:%02X%02X%02X%02X",
-            eventId & 0xFF, eventFlags & 0xFF, categoryId & 0xFF, categoryCount & 0xFF,
-            uid[0] & 0xFF, uid[1] & 0xFF, uid[2] & 0xFF, uid[3] & 0xFF));
-        
-        NotificationHandler.NotificationInfo info = notificationHandler.parseNotificationSource(data);
-        
-        if (info != null) {
-            // 只对新增和修改的通知获取详细信息
-            if (info.eventId == NotificationHandler.EVENT_ID_NOTIFICATION_ADDED || 
-                info.eventId == NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED) {
-                
-                // 使用示例代码中的命令格式获取更多通知信息
-                getMoreAboutNotification(data);
-                // 注意：不在这里显示通知，等待Data Source解析完成后再显示
-            } else if (info.eventId == NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED) {
-                // 对于移除的通知，取消对应的Android通知
-                cancelLocalNotification(info);
-                
-                // 通知UI更新
-                if (serviceCallback != null) {
-                    serviceCallback.onNotificationReceived(info);
-                }
-            }
-        }
-    }
-    
-    private void getMoreAboutNotification(byte[] nsData) {
-        byte[] getNotificationAttribute = {
-            (byte) 0x00,  // Command ID: Get Notification Attributes
-            // UID
-            nsData[4], nsData[5], nsData[6], nsData[7],
-            // app id
-            (byte) 0x00,
-            // title
-            (byte) 0x01, (byte) 0xff, (byte) 0xff,
-            // message
-            (byte) 0x03, (byte) 0xff, (byte) 0xff,
-            // positive action label
-            (byte) 0x06, (byte) 0xff, (byte) 0x00,
-            // negative action label
-            (byte) 0x07, (byte) 0xff, (byte) 0x00
-        };
-
-        if (bluetoothGatt != null && controlPointChar != null) {
-            controlPointChar.setValue(getNotificationAttribute);
-            boolean success = bluetoothGatt.writeCharacteristic(controlPointChar);
-            Log.d(TAG, "Write get notification attributes command result: " + success);
+        @Override
+        public void removeCallbacks(Runnable task) {
+            reconnectHandler.removeCallbacks(task);
         }
-    }
+    };
     
-    private void handleDataSource(byte[] data) {
-        notificationHandler.parseDataSource(data);
-        
-        // 获取更新后的通知信息
-        if (data.length >= 5) {
-            String uid = String.format("%02X%02X%02X%02X", 
-                data[1] & 0xFF, data[2] & 0xFF, data[3] & 0xFF, data[4] & 0xFF);
+    private final AncsSession.Listener sessionListener = new AncsSession.Listener() {
+        @Override
+        public void onNotificationSource(NotificationSnapshot info) {
+            historyLog.append(info, System.currentTimeMillis());
             
-            NotificationHandler.NotificationInfo info = notificationHandler.getNotification(uid);
-            if (info != null) {
-                // 通知UI更新
-                if (serviceCallback != null) {
-                    serviceCallback.onNotificationReceived(info);
-                }
-                
-                // 在Data Source解析完成后显示本地通知
-                if (info.eventId == NotificationHandler.EVENT_ID_NOTIFICATION_ADDED || 
-                    info.eventId == NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED) {
-                    showLocalNotification(info);
+            if (info.getEventId() != NotificationHandler.EVENT_ID_NOTIFICATION_ADDED) {
+                // REMOVED/MODIFIED 表示之前对该通知执行的操作已生效
+                PendingActionTracker.PendingAction action = pendingActions.onConfirmed(info.getUid(), SystemClock.elapsedRealtimeNanos());
+                if (action != null) {
+                    // 确认超时以操作本身为 token，只撤销这一次操作的计时
+                    reconnectHandler.removeCallbacksAndMessages(action);
+                    Log.d(TAG, "Action confirmed for " + info.getUid() + " after "
+                        + (SystemClock.elapsedRealtimeNanos() - action.startNanos) / 1000000 + "ms");
                 }
             }
         }
-    }
-    
-    private void showLocalNotification(NotificationHandler.NotificationInfo info) {
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-
-        String channelId = "iphone_notifications";
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                channelId,
-                "iPhone 通知",
-                NotificationManager.IMPORTANCE_DEFAULT
-            );
-            notificationManager.createNotificationChannel(channel);
+        
+        @Override
+        public void onAttributesRetained(NotificationSnapshot info) {
+            // Android 通知仍在显示，只把 ID 沿用到新的会话纪元
+            notificationRenderer.retain(info);
+            dispatchNotification(info);
         }
-
-        String appName = ANCSConstants.getAppDisplayName(info.appId);
-        String notificationTitle = "";
-        String notificationContent = "";
-
-        // 检查是否为应用程序类型的通知（除了系统通知类型外的其他类型）
-        boolean isAppNotification = info.categoryId != NotificationHandler.CATEGORY_ID_INCOMING_CALL &&
-                                   info.categoryId != NotificationHandler.CATEGORY_ID_MISSED_CALL &&
-                                   info.categoryId != NotificationHandler.CATEGORY_ID_VOICEMAIL;
-
-        if (isAppNotification) {
-            // 对于应用程序类型，将消息内容的第一行作为标题，第二行作为消息内容
-            String fullContent = "";
-            if (info.title != null && !info.title.isEmpty()) {
-                fullContent += info.title;
-            }
-            if (info.subtitle != null && !info.subtitle.isEmpty()) {
-                if (!fullContent.isEmpty()) fullContent += "\n";
-                fullContent += info.subtitle;
-            }
-            if (info.message != null && !info.message.isEmpty()) {
-                if (!fullContent.isEmpty()) fullContent += "\n";
-                fullContent += info.message;
-            }
-
-            if (!fullContent.isEmpty()) {
-                String[] lines = fullContent.split("\n", 2);
-                notificationTitle = lines[0];
-                notificationContent = lines.length > 1 ? lines[1] : "";
+        
+        @Override
+        public void onNotificationReady(NotificationSnapshot info) {
+            historyLog.append(info, System.currentTimeMillis());
+            historySearch.add(info);
+            checkpoint.scheduleSave();
+            
+            // 通知UI更新
+            dispatchNotification(info);
+            
+            // 在Data Source解析完成后显示本地通知
+            PipelineTrace pipelineTrace = session.getPipelineTrace();
+            if (info.getEventId() == NotificationHandler.EVENT_ID_NOTIFICATION_ADDED || 
+                info.getEventId() == NotificationHandler.EVENT_ID_NOTIFICATION_MODIFIED) {
+                pipelineTrace.mark(info.getRawUid(), PipelineTrace.STAGE_DECIDED);
+                showLocalNotification(info);
             } else {
-                // 如果没有有效内容，不推送通知
-                return;
-            }
-        } else {
-            // 对于系统通知类型，使用应用名称作为标题
-            notificationTitle = appName;
-
-            // 构建完整的通知内容
-            String fullMessage = "";
-            if (info.title != null && !info.title.isEmpty()) {
-                fullMessage += info.title;
-            }
-            if (info.subtitle != null && !info.subtitle.isEmpty()) {
-                if (!fullMessage.isEmpty()) fullMessage += "\n";
-                fullMessage += info.subtitle;
+                pipelineTrace.discard(info.getRawUid());
             }
-            if (info.message != null && !info.message.isEmpty()) {
-                if (!fullMessage.isEmpty()) fullMessage += "\n";
-                fullMessage += info.message;
-            }
-
-            if (fullMessage.isEmpty()) {
-                // 如果没有有效内容，不推送通知
-                return;
+        }
+        
+        @Override
+        public void onNotificationRemoved(NotificationSnapshot info) {
+            // 对于移除的通知，取消对应的Android通知
+            cancelLocalNotification(info);
+            checkpoint.scheduleSave();
+            
+            // 通知UI更新
+            dispatchNotification(info);
+        }
+        
+        @Override
+        public void onReconciled(List<NotificationSnapshot> removed) {
+            // 断开期间被移除的通知：一次性取消对应的 Android 通知
+            int cancelled = removed.isEmpty() ? 0 : notificationRenderer.cancelStale(removed);
+            long now = System.currentTimeMillis();
+            for (NotificationSnapshot notification : removed) {
+                historyLog.append(notification, now);
+                dispatchNotification(notification);
             }
-            notificationContent = fullMessage;
+            Log.i(TAG, "Reconnect reconciled: stale=" + removed.size() + " androidCancelled=" + cancelled
+                + " restoredFromCheckpoint=" + restoredCount);
+            checkpoint.scheduleSave();
         }
-
-        // 创建点击通知时打开详情页的Intent
-        Intent detailIntent = NotificationDetailActivity.createIntent(null, info.uid);
-        detailIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-        PendingIntent detailPendingIntent = PendingIntent.getActivity(
-            this,
-            info.uid.hashCode(),
-            detailIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, channelId)
-            .setSmallIcon(android.R.drawable.ic_dialog_info)
-            .setContentTitle(notificationTitle)
-            .setContentText(notificationContent)
-            .setStyle(new NotificationCompat.BigTextStyle().bigText(notificationContent))
-            .setPriority(NotificationCompat.PRIORITY_DEFAULT)
-            .setContentIntent(detailPendingIntent)
-            .setAutoCancel(true);
-
-        // 添加操作按钮
-        if (info.hasPositiveAction) {
-            String positiveLabel = info.positiveActionLabel != null ? info.positiveActionLabel : "确认";
-            Intent positiveIntent = new Intent(this, NotificationActionReceiver.class);
-            positiveIntent.setAction(NotificationActionReceiver.ACTION_POSITIVE);
-            positiveIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_UID, info.uid);
-            PendingIntent positivePendingIntent = PendingIntent.getBroadcast(
-                this,
-                (info.uid + "_positive").hashCode(),
-                positiveIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            builder.addAction(android.R.drawable.ic_input_add, positiveLabel, positivePendingIntent);
+        
+        @Override
+        public void onProtocolError(String reason) {
+            packetTraceWriter.writeAsync(session.getPacketRing(), reason);
         }
-
-        if (info.hasNegativeAction) {
-            String negativeLabel = info.negativeActionLabel != null ? info.negativeActionLabel : "取消";
-            Intent negativeIntent = new Intent(this, NotificationActionReceiver.class);
-            negativeIntent.setAction(NotificationActionReceiver.ACTION_NEGATIVE);
-            negativeIntent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_UID, info.uid);
-            PendingIntent negativePendingIntent = PendingIntent.getBroadcast(
-                this,
-                (info.uid + "_negative").hashCode(),
-                negativeIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            builder.addAction(android.R.drawable.ic_delete, negativeLabel, negativePendingIntent);
+    };
+    
+    /**
+     * AncsSession 的 GattTransport，由其 Control Point 队列调用，同一时间只有一个写入在进行
+     */
+    private boolean writeControlPoint(byte[] command) {
+        if (bluetoothGatt == null || controlPointChar == null) {
+            return false;
         }
-
-        notificationManager.notify(info.uid.hashCode(), builder.build());
+        controlPointChar.setValue(command);
+        boolean success = bluetoothGatt.writeCharacteristic(controlPointChar);
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Write control point command " + (command[0] & 0xFF) + " result: " + success);
+        }
+        return success;
     }
     
-    private void cancelLocalNotification(NotificationHandler.NotificationInfo info) {
+    private void showLocalNotification(NotificationSnapshot info) {
+        // 渠道已在服务启动时创建，这里只在延迟初始化尚未执行时兜底
+        if (!notificationChannels.isCreated()) {
+            notificationChannels.createAll();
+        }
+        notificationRenderer.render(info);
+    }
+    
+    private void cancelLocalNotification(NotificationSnapshot info) {
         if (info == null) {
             return;
         }
         
-        NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        // 使用与显示通知时相同的ID来取消通知
-        notificationManager.cancel(info.uid.hashCode());
+        notificationRenderer.cancel(info);
         
-        Log.d(TAG, "Cancelled local notification for UID: " + info.uid);
+        Log.d(TAG, "Cancelled local notification for UID: " + info.getUid());
     }
     
     private void createNotificationChannel() {
@@ -590,20 +872,417 @@ public class BridgeService extends Service {
         return notification;
     }
     
-    public void performNotificationAction(String uid, boolean positive) {
+    /**
+     * @return Control Point 未就绪、命令没有放入队列时返回 false
+     */
+    public boolean performNotificationAction(String uid, boolean positive) {
+        return performNotificationAction(uid, positive, SystemClock.elapsedRealtimeNanos(), false);
+    }
+    
+    /**
+     * @param notificationCancelled 调用方会立即取消对应的 Android 通知，操作失败时需要重新显示
+     * @return 命令已放入队列或同一通知的操作已在进行中时返回 true，Control Point 未就绪时返回 false
+     */
+    private boolean performNotificationAction(String uid, boolean positive, long requestNanos, boolean notificationCancelled) {
         if (notificationHandler == null || controlPointChar == null || bluetoothGatt == null) {
             Log.e(TAG, "Cannot perform action - service not ready");
-            return;
+            return false;
         }
         
+        PendingActionTracker.PendingAction action = pendingActions.begin(uid, positive, requestNanos);
+        if (action == null) {
+            Log.d(TAG, "Action already pending for notification " + uid);
+            return true;
+        }
+        action.notificationCancelled = notificationCancelled;
+        
         byte[] command = notificationHandler.createPerformActionCommand(uid, positive);
-        controlPointChar.setValue(command);
-        bluetoothGatt.writeCharacteristic(controlPointChar);
+        session.enqueueControlPoint(command, actionWriteCallback);
         
-        Log.d(TAG, "Performed " + (positive ? "positive" : "negative") + " action for notification " + uid);
+        Log.d(TAG, "Queued " + (positive ? "positive" : "negative") + " action for notification " + uid);
+        return true;
+    }
+    
+    private final ControlPointQueue.Callback actionWriteCallback = new ControlPointQueue.Callback() {
+        @Override
+        public void onWriteComplete(byte[] command, int status) {
+            if (handleActionWrite(command, status, this) == PendingActionTracker.DECISION_GIVE_UP) {
+                showActionFailure(describeWriteStatus(status));
+            }
+        }
+    };
+    
+    /**
+     * 处理通知操作命令的写入结果；放弃时重新显示已被取消的 Android 通知，提示由调用方负责
+     * @param retryCallback 重试时重新入队使用的回调
+     * @return PendingActionTracker.DECISION_*：写入成功为 DECISION_WRITTEN，正在重试为 DECISION_RETRY，
+     *         失败且不再重试为 DECISION_GIVE_UP，操作已经完成为 DECISION_IGNORE
+     */
+    private int handleActionWrite(byte[] command, int status, ControlPointQueue.Callback retryCallback) {
+        String uid = NotificationHandler.formatUid(command, 1);
+        long now = SystemClock.elapsedRealtimeNanos();
+        
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            PendingActionTracker.PendingAction action = pendingActions.onWritten(uid, now);
+            if (action != null) {
+                Log.i(TAG, "Tap-to-write latency: " + (now - action.startNanos) / 1000000 + "ms");
+                // 等待 iPhone 发来对应的 REMOVED/MODIFIED 事件；同一 UID 之后的操作有自己的计时
+                reconnectHandler.postAtTime(() -> onActionTimeout(action), action,
+                    SystemClock.uptimeMillis() + ACTION_CONFIRM_TIMEOUT);
+            }
+            return PendingActionTracker.DECISION_WRITTEN;
+        }
+        
+        PendingActionTracker.PendingAction action = pendingActions.get(uid);
+        int decision = pendingActions.onWriteFailed(uid, status, now);
+        if (decision == PendingActionTracker.DECISION_RETRY) {
+            Log.w(TAG, "Retrying action for " + uid + ", status: " + status);
+            session.enqueueControlPoint(command, retryCallback);
+        } else if (decision == PendingActionTracker.DECISION_GIVE_UP) {
+            Log.e(TAG, "Action failed for " + uid + ": " + describeWriteStatus(status));
+            if (action != null && action.notificationCancelled) {
+                restoreNotification(uid);
+            }
+        }
+        return decision;
+    }
+    
+    /**
+     * 对选中的通知批量执行消极操作（清除）
+     * 所有命令一次性放入 Control Point 队列，依次连续写入
+     * @param listener 可为 null
+     * @return 实际发出清除命令的通知数
+     */
+    public int dismissNotifications(NotificationSelector selector, BulkDismissListener listener) {
+        if (notificationHandler == null || controlPointChar == null || bluetoothGatt == null) {
+            Log.e(TAG, "Cannot dismiss notifications - service not ready");
+            return 0;
+        }
+        
+        List<NotificationSnapshot> active = notificationHandler.getActiveNotifications();
+        List<byte[]> commands = new ArrayList<>();
+        long now = SystemClock.elapsedRealtimeNanos();
+        for (NotificationSnapshot info : active) {
+            if (!info.hasNegativeAction() || !selector.matches(info)) {
+                continue;
+            }
+            PendingActionTracker.PendingAction action = pendingActions.begin(info.getUid(), false, now);
+            if (action == null) {
+                continue;
+            }
+            action.bulk = true;
+            commands.add(notificationHandler.createPerformActionCommand(info.getUid(), false));
+        }
+        
+        // 先确定总数再入队，避免写入回调早于统计完成
+        BulkDismiss job = new BulkDismiss(listener, commands.size());
+        for (byte[] command : commands) {
+            session.enqueueControlPoint(command, job);
+        }
+        
+        Log.d(TAG, "Bulk dismiss queued " + job.total + " of " + active.size() + " notifications");
+        if (job.total == 0 && listener != null) {
+            reconnectHandler.post(() -> listener.onComplete(0, 0, 0));
+        }
+        return job.total;
+    }
+    
+    public int dismissNotifications(Set<String> uids, BulkDismissListener listener) {
+        final Set<String> selected = new HashSet<>(uids);
+        return dismissNotifications(info -> selected.contains(info.getUid()), listener);
+    }
+    
+    public static NotificationSelector byAppId(String appId) {
+        return info -> appId != null && appId.equals(info.getAppId());
+    }
+    
+    public static NotificationSelector byCategory(byte categoryId) {
+        return info -> info.getCategoryId() == categoryId;
+    }
+    
+    public static NotificationSelector olderThan(long ageMillis) {
+        final long cutoff = System.currentTimeMillis() - ageMillis;
+        return info -> info.getReceivedAt() <= cutoff;
+    }
+    
+    /**
+     * 一次批量清除的进度
+     */
+    private class BulkDismiss implements ControlPointQueue.Callback {
+        private final BulkDismissListener listener;
+        final int total;
+        private int completed = 0;
+        private int failed = 0;
+        
+        BulkDismiss(BulkDismissListener listener, int total) {
+            this.listener = listener;
+            this.total = total;
+        }
+        
+        @Override
+        public void onWriteComplete(byte[] command, int status) {
+            int decision = handleActionWrite(command, status, this);
+            if (decision == PendingActionTracker.DECISION_RETRY) {
+                return;
+            }
+            final int done;
+            final int errors;
+            synchronized (this) {
+                // DECISION_IGNORE：写入失败前 iPhone 已经确认了该通知的移除
+                if (decision == PendingActionTracker.DECISION_GIVE_UP) {
+                    failed++;
+                } else {
+                    completed++;
+                }
+                done = completed;
+                errors = failed;
+            }
+            if (done + errors < total) {
+                if (listener != null) {
+                    reconnectHandler.post(() -> listener.onProgress(done, errors, total));
+                }
+                return;
+            }
+            // 失败只在结束时汇总一次，断开时不会每条命令各提示一次
+            if (listener != null) {
+                reconnectHandler.post(() -> listener.onComplete(done, errors, total));
+            } else if (errors > 0) {
+                showActionFailure(errors + " 条通知未能清除");
+            }
+        }
+    }
+    
+    private void onActionTimeout(PendingActionTracker.PendingAction action) {
+        if (!pendingActions.onTimeout(action, SystemClock.elapsedRealtimeNanos())) {
+            return;
+        }
+        Log.w(TAG, "No confirmation for action on " + action.uid);
+        if (action.notificationCancelled) {
+            restoreNotification(action.uid);
+        }
+        if (!action.bulk) {
+            showActionFailure("iPhone 未响应");
+        }
+    }
+    
+    private static String describeWriteStatus(int status) {
+        if (status >= 0xA0 && status <= 0xA3) {
+            return ANCSConstants.getErrorMessage((byte) status);
+        }
+        if (status == ControlPointQueue.STATUS_DISCONNECTED) {
+            return "连接已断开";
+        }
+        if (status == ControlPointQueue.STATUS_TIMEOUT) {
+            return "写入超时";
+        }
+        return "写入失败: " + status;
+    }
+    
+    /**
+     * 操作失败：通知栏中的通知在点击按钮时已被提前取消，重新显示
+     */
+    private void restoreNotification(String uid) {
+        NotificationSnapshot info = notificationHandler.getNotification(uid);
+        if (info != null && info.getEventId() != NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED) {
+            showLocalNotification(info);
+        }
+    }
+    
+    private void showActionFailure(String reason) {
+        reconnectHandler.post(() -> Toast.makeText(this, "操作失败: " + reason, Toast.LENGTH_SHORT).show());
+    }
+    
+    /**
+     * @return 通知操作的结果计数与延迟分布
+     */
+    public String getActionStats() {
+        return pendingActions.formatStats();
+    }
+    
+    /**
+     * @return 各 ANCS 类别已发送的通知数量，下标为 categoryId
+     */
+    public long[] getCategoryPostCounts() {
+        return notificationChannels != null ? notificationChannels.getPostCounts() : new long[0];
+    }
+    
+    /**
+     * @return 当前所有通知的快照，按首次收到的时间排序，订阅者（重新）订阅后用于同步
+     */
+    public List<NotificationSnapshot> getActiveSnapshots() {
+        if (notificationHandler == null) {
+            return new ArrayList<>();
+        }
+        List<NotificationSnapshot> snapshots = notificationHandler.getActiveNotifications();
+        Collections.sort(snapshots, (a, b) -> Long.compare(a.getReceivedAt(), b.getReceivedAt()));
+        return snapshots;
+    }
+    
+    /**
+     * 按时间顺序回放持久化的事件历史，会读取文件，不要在主线程调用
+     * @return 回放的记录数
+     */
+    public int replayHistory(HistoryLog.Visitor visitor) throws IOException {
+        return historyLog.replay(visitor);
+    }
+    
+    /**
+     * 在通知历史中搜索标题、副标题、内容和应用 ID，结果在 executor 上回调
+     */
+    public void searchHistory(String query, int limit, Executor executor, HistorySearch.Callback callback) {
+        historySearch.search(query, limit, executor, callback);
+    }
+    
+    /**
+     * @return 通知各阶段（Notification Source 到 notify 返回）耗时的 p50/p99
+     */
+    public String getPipelineStats() {
+        return session != null ? session.getPipelineTrace().format() : "";
+    }
+    
+    public String getHistoryStats() {
+        return historyLog.formatStats();
+    }
+    
+    public String getObserverStats() {
+        return observers.formatStats();
+    }
+    
+    /**
+     * adb shell dumpsys activity service stu.xiaohei.iphonebridge/.BridgeService [--compact] [--packets N] [--write-trace]
+     * 只读取原子计数器与无锁结构，不会阻塞 GATT 回调；--compact 每行输出一个 key=value，供脚本采集；
+     * --write-trace 把保留的全部数据包写入 files/traces 下的 AncsTrace 文件
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        boolean compact = false;
+        boolean writeTrace = false;
+        int packets = -1;
+        for (int i = 0; args != null && i < args.length; i++) {
+            if ("--compact".equals(args[i])) {
+                compact = true;
+            } else if ("--write-trace".equals(args[i])) {
+                writeTrace = true;
+            } else if ("--packets".equals(args[i]) && i + 1 < args.length) {
+                try {
+                    packets = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    writer.println("Invalid packet count: " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (session == null) {
+            writer.println(compact ? "state=UNINITIALIZED" : "Service not initialized");
+            return;
+        }
+        
+        long now = SystemClock.elapsedRealtime();
+        String packetLines = "";
+        // 紧凑模式默认不输出数据包
+        int packetCount = packets >= 0 ? packets : (compact ? 0 : DUMP_DEFAULT_PACKETS);
+        if (packetCount > 0) {
+            StringBuilder sb = new StringBuilder(packetCount * 64);
+            try {
+                session.getPacketRing().writeTo(sb, packetCount);
+            } catch (IOException e) {
+                // StringBuilder 不会抛出
+            }
+            packetLines = sb.toString();
+        }
+        if (compact) {
+            dumpCompact(writer, now, packetLines);
+        } else {
+            dumpText(writer, now, packetCount, packetLines);
+        }
+        if (writeTrace) {
+            try {
+                File file = writePacketTrace("dumpsys");
+                writer.println(compact ? "trace_file=" + file : "Trace written to " + file);
+            } catch (IOException e) {
+                writer.println(compact ? "trace_error=" + e.getMessage() : "Failed to write trace: " + e);
+            }
+        }
+    }
+    
+    /**
+     * 把最近的原始数据包写成 AncsTrace 文件，可用 ancs-sim replay 回放；会写文件，不要在主线程调用
+     * @return 写入的文件
+     */
+    public File writePacketTrace(String reason) throws IOException {
+        return packetTraceWriter.write(session.getPacketRing(), reason);
+    }
+    
+    private long getWakeLockMillis(long now) {
+        long acquiredAt = wakeLockAcquiredAt;
+        return wakeLockHeldMillis + (acquiredAt > 0 ? now - acquiredAt : 0);
+    }
+    
+    private void dumpText(PrintWriter writer, long now, int packetCount, String packetLines) {
+        writer.println(String.format(Locale.US, "Connection: %s for %dms, transitions=%d",
+            ConnectionStateLog.stateName(connectionState.getState()), now - connectionState.getStateSinceMillis(),
+            connectionState.getTransitionCount()));
+        writer.print(connectionState.formatHistory(now));
+        writer.println(String.format(Locale.US, "Control point: queueDepth=%d writeTimeouts=%d droppedResponses=%d",
+            session.getControlPointQueueDepth(), session.getControlPointTimeoutCount(), session.getDroppedResponseCount()));
+        writer.println(String.format(Locale.US, "Store: notifications=%d memory=%dKB preExisting=%d fetchesSaved=%d unreconciled=%d",
+            notificationHandler.size(), notificationHandler.estimateMemoryBytes() / 1024,
+            session.getPreExistingCount(), session.getFetchesSaved(), session.getUnreconciledCount()));
+        writer.println(String.format(Locale.US, "Filter: checked=%d filtered=%d",
+            NotificationFilter.getCheckedCount(), NotificationFilter.getFilteredCount()));
+        writer.println(String.format(Locale.US, "Wake lock: held=%b total=%dms",
+            wakeLockAcquiredAt > 0, getWakeLockMillis(now)));
+        writer.println("Pipeline latency (us):");
+        writer.print(session.getPipelineTrace().format());
+        if (packetCount > 0) {
+            writer.println("Last " + packetCount + " packets of " + session.getPacketRing().getRecordCount()
+                + " (AncsTrace format):");
+            writer.print(packetLines);
+        }
+    }
+    
+    private void dumpCompact(PrintWriter writer, long now, String packetLines) {
+        writer.println("state=" + ConnectionStateLog.stateName(connectionState.getState()));
+        writer.println("state_ms=" + (now - connectionState.getStateSinceMillis()));
+        writer.println("transitions=" + connectionState.getTransitionCount());
+        writer.println("transition_history=" + connectionState.formatHistoryCompact(now));
+        writer.println("cp_queue_depth=" + session.getControlPointQueueDepth());
+        writer.println("cp_write_timeouts=" + session.getControlPointTimeoutCount());
+        writer.println("dropped_responses=" + session.getDroppedResponseCount());
+        writer.println("store_size=" + notificationHandler.size());
+        writer.println("store_bytes=" + notificationHandler.estimateMemoryBytes());
+        writer.println("pre_existing=" + session.getPreExistingCount());
+        writer.println("fetches_saved=" + session.getFetchesSaved());
+        writer.println("unreconciled=" + session.getUnreconciledCount());
+        writer.println("filter_checked=" + NotificationFilter.getCheckedCount());
+        writer.println("filter_filtered=" + NotificationFilter.getFilteredCount());
+        writer.println("wakelock_held=" + (wakeLockAcquiredAt > 0 ? 1 : 0));
+        writer.println("wakelock_ms=" + getWakeLockMillis(now));
+        PipelineTrace pipelineTrace = session.getPipelineTrace();
+        writer.println("latency_completed=" + pipelineTrace.getCompletedCount());
+        writer.println("latency_discarded=" + pipelineTrace.getDiscardedCount());
+        writer.println("latency_evicted=" + pipelineTrace.getEvictedCount());
+        for (int stage = 1; stage < PipelineTrace.STAGE_COUNT; stage++) {
+            dumpHistogram(writer, PipelineTrace.stageName(stage), pipelineTrace.getStageHistogram(stage));
+        }
+        dumpHistogram(writer, "total", pipelineTrace.getTotalHistogram());
+        writer.println("packets_recorded=" + session.getPacketRing().getRecordCount());
+        if (!packetLines.isEmpty()) {
+            for (String line : packetLines.split("\n")) {
+                writer.println("packet=" + line);
+            }
+        }
+    }
+    
+    private static void dumpHistogram(PrintWriter writer, String name, LatencyHistogram histogram) {
+        String prefix = "latency." + name + ".";
+        writer.println(prefix + "count=" + histogram.getCount());
+        writer.println(prefix + "p50_us=" + histogram.getPercentile(50));
+        writer.println(prefix + "p99_us=" + histogram.getPercentile(99));
+        writer.println(prefix + "max_us=" + histogram.getMax());
     }
     
-    public NotificationHandler.NotificationInfo getNotificationInfo(String uid) {
+    public NotificationSnapshot getNotificationInfo(String uid) {
         if (notificationHandler != null) {
             return notificationHandler.getNotification(uid);
         }
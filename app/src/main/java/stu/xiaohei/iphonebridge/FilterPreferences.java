@@ -0,0 +1,54 @@
+package stu.xiaohei.iphonebridge;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.HashSet;
+
+/**
+ * 把通知过滤设置保存在 SharedPreferences 中
+ */
+public class FilterPreferences implements NotificationFilter.Store {
+    private static final String PREFS_NAME = "FilterPrefs";
+    private static final String PREF_FILTER_ENABLED = "filter_enabled";
+    private static final String PREF_FILTER_MODE = "filter_mode";
+    private static final String PREF_WHITELIST = "whitelist";
+    private static final String PREF_BLACKLIST = "blacklist";
+    private static final String PREF_REGEX_ENABLED = "regex_enabled";
+    private static final String PREF_REGEX_PATTERN = "regex_pattern";
+
+    private final SharedPreferences mPrefs;
+
+    public FilterPreferences(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * 创建使用已保存设置的过滤器
+     */
+    public static NotificationFilter createFilter(Context context) {
+        return new NotificationFilter(new FilterPreferences(context));
+    }
+
+    @Override
+    public void load(NotificationFilter filter) {
+        filter.setFilterEnabled(mPrefs.getBoolean(PREF_FILTER_ENABLED, false));
+        filter.setFilterMode(mPrefs.getInt(PREF_FILTER_MODE, NotificationFilter.MODE_BLACKLIST));
+        filter.setWhitelist(mPrefs.getStringSet(PREF_WHITELIST, new HashSet<>()));
+        filter.setBlacklist(mPrefs.getStringSet(PREF_BLACKLIST, new HashSet<>()));
+        filter.setRegexEnabled(mPrefs.getBoolean(PREF_REGEX_ENABLED, false));
+        filter.setRegexPattern(mPrefs.getString(PREF_REGEX_PATTERN, ""));
+    }
+
+    @Override
+    public void save(NotificationFilter filter) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putBoolean(PREF_FILTER_ENABLED, filter.isFilterEnabled());
+        editor.putInt(PREF_FILTER_MODE, filter.getFilterMode());
+        editor.putStringSet(PREF_WHITELIST, filter.getWhitelist());
+        editor.putStringSet(PREF_BLACKLIST, filter.getBlacklist());
+        editor.putBoolean(PREF_REGEX_ENABLED, filter.isRegexEnabled());
+        editor.putString(PREF_REGEX_PATTERN, filter.getRegexPattern());
+        editor.apply();
+    }
+}
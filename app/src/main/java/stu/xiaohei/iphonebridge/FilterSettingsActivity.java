@@ -49,7 +49,7 @@ public class FilterSettingsActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_filter_settings);
 
-        mFilter = new NotificationFilter(this);
+        mFilter = FilterPreferences.createFilter(this);
 
         initViews();
         loadCurrentSettings();
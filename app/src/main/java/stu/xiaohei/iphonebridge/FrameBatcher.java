@@ -0,0 +1,149 @@
+package stu.xiaohei.iphonebridge;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按显示帧合并服务发往界面的通知事件
+ * 任意线程调用 submit，事件先进入缓冲区，下一帧开始时在主线程一次性交给 Listener；
+ * 同一帧内同一 UID 的多个事件只保留最后一个。两个缓冲区交替使用，稳定状态下不分配内存
+ */
+public class FrameBatcher implements Choreographer.FrameCallback {
+    private static final String TAG = "FrameBatcher";
+    // 超过该大小的批次记录日志
+    private static final int LARGE_BATCH = 32;
+
+    public interface Listener {
+        /**
+         * 在主线程调用，batch 只在回调期间有效
+         */
+        void onBatch(List<NotificationSnapshot> batch);
+    }
+
+    private final Choreographer choreographer;
+    private final Listener listener;
+    private final Object lock = new Object();
+    private ArrayList<NotificationSnapshot> pending = new ArrayList<>();
+    private ArrayList<NotificationSnapshot> delivering = new ArrayList<>();
+    // UID -> pending 中的位置
+    private final LongIntHashMap pendingIndex = new LongIntHashMap(64, -1);
+    private boolean scheduled = false;
+    private boolean cancelled = false;
+
+    private final AtomicLong eventCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final LatencyHistogram batchSizes = new LatencyHistogram();
+
+    /**
+     * 必须在主线程创建
+     */
+    public FrameBatcher(Listener listener) {
+        this.choreographer = Choreographer.getInstance();
+        this.listener = listener;
+    }
+
+    public void submit(NotificationSnapshot notification) {
+        eventCount.incrementAndGet();
+        long key = notification.getRawUid() & 0xFFFFFFFFL;
+        synchronized (lock) {
+            if (cancelled) {
+                return;
+            }
+            int index = pendingIndex.get(key);
+            if (index >= 0) {
+                pending.set(index, notification);
+                collapsedCount.incrementAndGet();
+            } else {
+                pendingIndex.put(key, pending.size());
+                pending.add(notification);
+            }
+            if (!scheduled) {
+                scheduled = true;
+                choreographer.postFrameCallback(this);
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        ArrayList<NotificationSnapshot> batch;
+        synchronized (lock) {
+            scheduled = false;
+            if (cancelled || pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = delivering;
+            delivering = batch;
+            pendingIndex.clear();
+        }
+
+        int size = batch.size();
+        batchCount.incrementAndGet();
+        batchSizes.record(size);
+        if (size >= LARGE_BATCH) {
+            Log.d(TAG, "Delivering batch of " + size + " events");
+        }
+        try {
+            listener.onBatch(batch);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * 丢弃未交付的事件，之后的 submit 照常生效
+     */
+    public void clear() {
+        synchronized (lock) {
+            pending.clear();
+            pendingIndex.clear();
+            if (scheduled) {
+                scheduled = false;
+                choreographer.removeFrameCallback(this);
+            }
+        }
+    }
+
+    /**
+     * 丢弃未交付的事件，之后的 submit 不再生效
+     */
+    public void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+            pending.clear();
+            pendingIndex.clear();
+            if (scheduled) {
+                scheduled = false;
+                choreographer.removeFrameCallback(this);
+            }
+        }
+    }
+
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public LatencyHistogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    public String formatStats() {
+        return String.format(Locale.US, "events=%d collapsed=%d batches=%d size: %s",
+            eventCount.get(), collapsedCount.get(), batchCount.get(), batchSizes.format());
+    }
+}
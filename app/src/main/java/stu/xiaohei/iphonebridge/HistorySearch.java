@@ -0,0 +1,154 @@
+package stu.xiaohei.iphonebridge;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 通知历史全文搜索
+ * SearchIndex 只在后台线程中访问：启动时从 HistoryLog 回放重建索引，
+ * 之后新到达的通知先进入队列，攒够一段时间后分批加入索引；查询也投递到同一线程执行，不需要加锁
+ */
+public class HistorySearch {
+    private static final String TAG = "HistorySearch";
+    // 新通知攒批的等待时间
+    private static final long BATCH_DELAY_MS = 250;
+    // 每批最多处理的通知数，剩余的重新投递，避免长时间阻塞查询
+    private static final int MAX_BATCH = 256;
+    // 超过该文档数时从历史日志重建；日志会按段清理，重建后只剩保留期内的记录
+    private static final int MAX_DOCS = 500000;
+
+    public interface Callback {
+        void onResults(String query, List<SearchIndex.Result> results, long elapsedMicros);
+    }
+
+    private final HistoryLog historyLog;
+    private final SearchIndex index = new SearchIndex();
+    private final ConcurrentLinkedQueue<NotificationSnapshot> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainRunnable = this::drain;
+    private HandlerThread thread;
+    private volatile Handler handler;
+    private volatile boolean ready = false;
+
+    public HistorySearch(HistoryLog historyLog) {
+        this.historyLog = historyLog;
+    }
+
+    /**
+     * 启动后台线程并从历史日志重建索引，启动前加入的通知在重建后处理
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new HandlerThread("HistorySearch", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        Handler h = new Handler(thread.getLooper());
+        h.post(this::rebuild);
+        handler = h;
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            handler = null;
+            thread.quit();
+            thread = null;
+        }
+        queue.clear();
+    }
+
+    /**
+     * 加入一条已解析的通知，可在任意线程调用
+     */
+    public void add(NotificationSnapshot notification) {
+        if (notification.isRemoved() || notification.getAttributes().byteSize() == 0) {
+            return;
+        }
+        queue.offer(notification);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        Handler h = handler;
+        if (h != null && drainScheduled.compareAndSet(false, true)) {
+            h.postDelayed(drainRunnable, BATCH_DELAY_MS);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        int count = 0;
+        NotificationSnapshot notification;
+        while (count < MAX_BATCH && (notification = queue.poll()) != null) {
+            index.add(notification.getRawUid(), notification.getReceivedAt(), notification.getAttributes());
+            count++;
+        }
+        if (index.getDocCount() >= MAX_DOCS) {
+            rebuild();
+        }
+        if (!queue.isEmpty()) {
+            Handler h = handler;
+            if (h != null && drainScheduled.compareAndSet(false, true)) {
+                h.post(drainRunnable);
+            }
+        }
+    }
+
+    private void rebuild() {
+        long start = SystemClock.elapsedRealtime();
+        index.clear();
+        try {
+            historyLog.replay(record -> {
+                index.add(record.rawUid, record.receivedAt, record.attributes.build());
+                return true;
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to replay history for index", e);
+        }
+        ready = true;
+        Log.d(TAG, "Index rebuilt in " + (SystemClock.elapsedRealtime() - start) + " ms: " + formatIndexStats());
+    }
+
+    /**
+     * 异步查询，结果在 executor 上回调；服务未启动时回调空结果
+     */
+    public void search(String query, int limit, Executor executor, Callback callback) {
+        Handler h = handler;
+        if (h == null) {
+            executor.execute(() -> callback.onResults(query, Collections.emptyList(), 0));
+            return;
+        }
+        h.post(() -> {
+            long start = System.nanoTime();
+            List<SearchIndex.Result> results = index.search(query, limit);
+            long elapsedMicros = (System.nanoTime() - start) / 1000;
+            executor.execute(() -> callback.onResults(query, results, elapsedMicros));
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 只在后台线程中读取索引统计
+     */
+    private String formatIndexStats() {
+        return String.format(Locale.US, "docs=%d live=%d terms=%d postingBytes=%d",
+            index.getDocCount(), index.getLiveDocCount(), index.getTermCount(), index.getPostingBytes());
+    }
+}
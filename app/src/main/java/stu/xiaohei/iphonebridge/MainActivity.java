@@ -29,24 +29,24 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.provider.Settings;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
-import android.view.LayoutInflater;
 import android.view.View;
-import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
-import android.widget.ListView;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
@@ -77,87 +77,26 @@ public class MainActivity extends AppCompatActivity {
     private Button mConnectButton;
     private Button mAutoConnectButton;
     private Button mFilterButton;
-    private ListView mNotificationList;
-    private NotificationAdapter mNotificationAdapter;
+    private Button mDismissAllButton;
+    private RecyclerView mNotificationList;
+    private NotificationListAdapter mNotificationAdapter;
+    private EditText mSearchInput;
+    private TextView mSearchStatusText;
+    private RecyclerView mSearchResultList;
+    private SearchResultAdapter mSearchResultAdapter;
+    private final Runnable mSearchRunnable = this::runSearch;
 
     private Handler mHandler = new Handler();
     private boolean mScanning = false;
     private static final long SCAN_PERIOD = 10000;
+    // 输入停顿后再查询
+    private static final long SEARCH_DELAY = 200;
+    private static final int SEARCH_LIMIT = 200;
 
-    private List<NotificationItem> mNotifications = new ArrayList<>();
     private NotificationHandler mNotificationHandler = new NotificationHandler();
     private NotificationFilter mNotificationFilter;
-
-    // 通知项数据类
-    public static class NotificationItem {
-        public String uid;
-        public String title;
-        public String message;
-        public String app;
-        public String time;
-        public int categoryId;
-        public int eventId;
-
-        public NotificationItem(String uid) {
-            this.uid = uid;
-            this.time = new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date());
-        }
-    }
-
-    // 自定义适配器
-    private class NotificationAdapter extends ArrayAdapter<NotificationItem> {
-        public NotificationAdapter(Context context) {
-            super(context, 0);
-        }
-
-        @Override
-        public View getView(int position, View convertView, ViewGroup parent) {
-            if (convertView == null) {
-                convertView = LayoutInflater.from(getContext()).inflate(
-                    android.R.layout.simple_list_item_2, parent, false);
-            }
-
-            NotificationItem item = getItem(position);
-            TextView text1 = convertView.findViewById(android.R.id.text1);
-            TextView text2 = convertView.findViewById(android.R.id.text2);
-
-            // 与通知详情页面保持一致的显示逻辑
-            String displayTitle = "";
-            String displaySubtitle = "";
-
-            // 对于所有类型的通知，将消息内容的第一行作为标题
-            String fullContent = "";
-            if (item.title != null && !item.title.isEmpty()) {
-                fullContent += item.title;
-            }
-            if (item.message != null && !item.message.isEmpty()) {
-                if (!fullContent.isEmpty()) fullContent += "\n";
-                fullContent += item.message;
-            }
-
-            if (!fullContent.isEmpty()) {
-                String[] lines = fullContent.split("\n", 2);
-                displayTitle = lines[0];
-                displaySubtitle = item.time;
-                if (lines.length > 1 && !lines[1].isEmpty()) {
-                    displaySubtitle += " - " + lines[1];
-                }
-            } else {
-                // 空通知已经在添加时被过滤，这里不应该出现
-                displayTitle = "未知通知";
-                displaySubtitle = item.time;
-            }
-
-            if (item.eventId == NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED) {
-                displayTitle += " (已移除)";
-            }
-
-            text1.setText(displayTitle);
-            text2.setText(displaySubtitle);
-
-            return convertView;
-        }
-    }
+    // 服务回调来自蓝牙线程，按显示帧合并后再更新列表
+    private FrameBatcher mNotificationBatcher;
 
     private ServiceConnection mServiceConnection = new ServiceConnection() {
         @Override
@@ -166,25 +105,7 @@ public class MainActivity extends AppCompatActivity {
             mBridgeService = binder.getService();
             mServiceBound = true;
 
-            mBridgeService.setServiceCallback(new BridgeService.ServiceCallback() {
-                @Override
-                public void onConnectionStateChanged(boolean connected) {
-                    runOnUiThread(() -> {
-                        updateStatus(connected ? "已连接" : "已断开");
-                        mConnectButton.setText(connected ? "断开连接" : "连接设备");
-                    });
-                }
-
-                @Override
-                public void onNotificationReceived(NotificationHandler.NotificationInfo info) {
-                    runOnUiThread(() -> addNotificationToList(info));
-                }
-
-                @Override
-                public void onServiceReady() {
-                    runOnUiThread(() -> updateStatus("服务就绪，正在接收通知"));
-                }
-            });
+            subscribeToService();
         }
 
         @Override
@@ -199,13 +120,14 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main_improved);
 
         initViews();
+        mNotificationBatcher = new FrameBatcher(this::applyNotificationBatch);
         checkPermissions();
         initBluetooth();
         registerBondReceiver();
         requestBatteryOptimizationWhitelist();
 
         // 初始化通知过滤器
-        mNotificationFilter = new NotificationFilter(this);
+        mNotificationFilter = FilterPreferences.createFilter(this);
 
         // 启动服务
         Intent serviceIntent = new Intent(this, BridgeService.class);
@@ -213,6 +135,57 @@ public class MainActivity extends AppCompatActivity {
         bindService(serviceIntent, mServiceConnection, BIND_AUTO_CREATE);
     }
 
+    // 在蓝牙线程上直接回调：通知交给 FrameBatcher 按帧合并，其余事件自行切换到主线程
+    private final BridgeService.ServiceCallback mServiceCallback = new BridgeService.ServiceCallback() {
+        @Override
+        public void onConnectionStateChanged(boolean connected) {
+            runOnUiThread(() -> {
+                updateStatus(connected ? "已连接" : "已断开");
+                mConnectButton.setText(connected ? "断开连接" : "连接设备");
+            });
+        }
+
+        @Override
+        public void onNotificationReceived(NotificationSnapshot notification) {
+            mNotificationBatcher.submit(notification);
+        }
+
+        @Override
+        public void onServiceReady() {
+            runOnUiThread(() -> updateStatus("服务就绪，正在接收通知"));
+        }
+    };
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        subscribeToService();
+    }
+
+    /**
+     * 订阅在 onStop 时自动取消；重新订阅后用服务中的通知重建列表，补上停止期间错过的事件。
+     * 停止之前还没交付的事件比重建用的通知旧，先丢弃，否则下一帧会把已移除的通知加回列表
+     */
+    private void subscribeToService() {
+        if (!mServiceBound || mBridgeService == null) {
+            return;
+        }
+        mNotificationBatcher.clear();
+        if (!mBridgeService.subscribe(this, mServiceCallback, ObserverRegistry.DIRECT_EXECUTOR)) {
+            return;
+        }
+
+        mNotificationAdapter.beginBatch();
+        try {
+            mNotificationAdapter.clear();
+            for (NotificationSnapshot notification : mBridgeService.getActiveSnapshots()) {
+                addNotificationToList(notification);
+            }
+        } finally {
+            mNotificationAdapter.endBatch();
+        }
+    }
+
     private void initViews() {
         mStatusText = findViewById(R.id.statusText);
         mDeviceInfoText = findViewById(R.id.deviceInfoText);
@@ -220,11 +193,41 @@ public class MainActivity extends AppCompatActivity {
         mConnectButton = findViewById(R.id.connectButton);
         mAutoConnectButton = findViewById(R.id.autoConnectButton);
         mFilterButton = findViewById(R.id.filterButton);
+        mDismissAllButton = findViewById(R.id.dismissAllButton);
         mNotificationList = findViewById(R.id.notificationList);
 
-        mNotificationAdapter = new NotificationAdapter(this);
+        // 反向布局：列表末尾（最新的通知）显示在最上面
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        layoutManager.setReverseLayout(true);
+        layoutManager.setStackFromEnd(true);
+        mNotificationList.setLayoutManager(layoutManager);
+        mNotificationList.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        mNotificationAdapter = new NotificationListAdapter();
         mNotificationList.setAdapter(mNotificationAdapter);
 
+        mSearchInput = findViewById(R.id.searchInput);
+        mSearchStatusText = findViewById(R.id.searchStatusText);
+        mSearchResultList = findViewById(R.id.searchResultList);
+        mSearchResultList.setLayoutManager(new LinearLayoutManager(this));
+        mSearchResultList.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        mSearchResultAdapter = new SearchResultAdapter();
+        mSearchResultList.setAdapter(mSearchResultAdapter);
+        mSearchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mHandler.removeCallbacks(mSearchRunnable);
+                mHandler.postDelayed(mSearchRunnable, SEARCH_DELAY);
+            }
+        });
+
         mScanButton.setOnClickListener(v -> startScan());
         mConnectButton.setOnClickListener(v -> toggleConnection());
         mAutoConnectButton.setOnClickListener(v -> {
@@ -239,18 +242,51 @@ public class MainActivity extends AppCompatActivity {
             startActivity(intent);
         });
 
-        mNotificationList.setOnItemClickListener((parent, view, position, id) -> {
-            NotificationItem item = mNotificationAdapter.getItem(position);
-            if (item != null) {
-                Intent intent = NotificationDetailActivity.createIntent(this, item.uid);
-                startActivity(intent);
-            }
+        mDismissAllButton.setOnClickListener(v -> dismissAllNotifications());
+
+        mNotificationAdapter.setOnItemClickListener(item -> {
+            Intent intent = NotificationDetailActivity.createIntent(this, item.uid);
+            startActivity(intent);
         });
 
         mConnectButton.setEnabled(false);
         updateDeviceInfo(null);
     }
 
+    /**
+     * 搜索框为空时显示当前通知列表，否则显示历史搜索结果
+     */
+    private void runSearch() {
+        String query = mSearchInput.getText().toString().trim();
+        boolean searching = !query.isEmpty();
+        mNotificationList.setVisibility(searching ? View.GONE : View.VISIBLE);
+        mSearchResultList.setVisibility(searching ? View.VISIBLE : View.GONE);
+        mSearchStatusText.setVisibility(searching ? View.VISIBLE : View.GONE);
+        if (!searching) {
+            mSearchResultAdapter.setResults(new ArrayList<>());
+            return;
+        }
+        if (!mServiceBound || mBridgeService == null) {
+            mSearchStatusText.setText("服务未就绪");
+            return;
+        }
+
+        mBridgeService.searchHistory(query, SEARCH_LIMIT, ContextCompat.getMainExecutor(this),
+            (resultQuery, results, elapsedMicros) -> {
+                // 忽略输入已经变化后才返回的旧结果
+                if (isDestroyed() || !resultQuery.equals(mSearchInput.getText().toString().trim())) {
+                    return;
+                }
+                mSearchResultAdapter.setResults(results);
+                if (results.isEmpty()) {
+                    mSearchStatusText.setText("没有匹配的通知（至少输入两个连续的字）");
+                } else {
+                    mSearchStatusText.setText(String.format(Locale.getDefault(), "找到 %d 条，用时 %.1f ms",
+                        results.size(), elapsedMicros / 1000.0));
+                }
+            });
+    }
+
     private void updateDeviceInfo(BluetoothDevice device) {
         if (device == null) {
             mDeviceInfoText.setText("未选择设备");
@@ -272,6 +308,36 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    private void dismissAllNotifications() {
+        if (!mServiceBound || mBridgeService == null) {
+            Toast.makeText(this, "服务未就绪", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        int queued = mBridgeService.dismissNotifications(info -> true, new BridgeService.BulkDismissListener() {
+            @Override
+            public void onProgress(int completed, int failed, int total) {
+                updateStatus(String.format(Locale.getDefault(), "正在清除 %d/%d", completed + failed, total));
+            }
+
+            @Override
+            public void onComplete(int completed, int failed, int total) {
+                mDismissAllButton.setEnabled(true);
+                if (failed > 0) {
+                    updateStatus(String.format(Locale.getDefault(), "已清除 %d 条，%d 条失败", completed, failed));
+                } else {
+                    updateStatus(String.format(Locale.getDefault(), "已清除 %d 条通知", completed));
+                }
+            }
+        });
+
+        if (queued > 0) {
+            mDismissAllButton.setEnabled(false);
+        } else {
+            Toast.makeText(this, "没有可清除的通知", Toast.LENGTH_SHORT).show();
+        }
+    }
+
     private void autoConnectLastDevice() {
         if (mServiceBound && mBridgeService != null) {
             mBridgeService.startAutoReconnect();
@@ -359,8 +425,7 @@ public class MainActivity extends AppCompatActivity {
 
         if (!mScanning) {
             // 清除之前的扫描结果
-            mNotifications.clear();
-            mNotificationAdapter.notifyDataSetChanged();
+            mNotificationAdapter.clear();
 
             mHandler.postDelayed(() -> {
                 mScanning = false;
@@ -410,62 +475,32 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void addNotificationToList(NotificationHandler.NotificationInfo info) {
-        NotificationItem item = new NotificationItem(info.uid);
-        item.title = info.title;
-        item.message = info.message;
-        item.app = info.appId;
-        item.categoryId = info.categoryId;
-        item.eventId = info.eventId;
-
-        // 根据事件类型处理
-        if (info.eventId == NotificationHandler.EVENT_ID_NOTIFICATION_REMOVED) {
-            // 删除通知
-            for (int i = 0; i < mNotificationAdapter.getCount(); i++) {
-                if (mNotificationAdapter.getItem(i).uid.equals(info.uid)) {
-                    mNotificationAdapter.remove(mNotificationAdapter.getItem(i));
-                    break;
-                }
-            }
-        } else {
-            // 检查通知内容是否为空，如果为空则不添加到列表
-            String fullContent = "";
-            if (info.title != null && !info.title.isEmpty()) {
-                fullContent += info.title;
-            }
-            if (info.message != null && !info.message.isEmpty()) {
-                if (!fullContent.isEmpty()) fullContent += "\n";
-                fullContent += info.message;
-            }
-
-            if (fullContent.isEmpty()) {
-                // 如果没有有效内容，不添加到通知列表
-                return;
-            }
-
-            // 应用过滤规则
-            if (!mNotificationFilter.shouldShowNotification(info.title, info.message)) {
-                Log.d(TAG, "Notification filtered: " + info.title);
-                return; // 被过滤掉，不显示
+    private void applyNotificationBatch(List<NotificationSnapshot> batch) {
+        mNotificationAdapter.beginBatch();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                addNotificationToList(batch.get(i));
             }
+        } finally {
+            mNotificationAdapter.endBatch();
+        }
+    }
 
-            // 添加或更新通知
-            boolean found = false;
-            for (int i = 0; i < mNotificationAdapter.getCount(); i++) {
-                if (mNotificationAdapter.getItem(i).uid.equals(info.uid)) {
-                    mNotificationAdapter.getItem(i).title = info.title;
-                    mNotificationAdapter.getItem(i).message = info.message;
-                    found = true;
-                    break;
-                }
-            }
+    private void addNotificationToList(NotificationSnapshot notification) {
+        // 根据事件类型处理
+        if (notification.isRemoved()) {
+            mNotificationAdapter.remove(notification.getRawUid());
+            return;
+        }
 
-            if (!found) {
-                mNotificationAdapter.insert(item, 0);
-            }
+        // 应用过滤规则
+        if (!mNotificationFilter.shouldShowNotification(notification.getAttributes())) {
+            Log.d(TAG, "Notification filtered: " + notification.getUid());
+            return; // 被过滤掉，不显示
         }
 
-        mNotificationAdapter.notifyDataSetChanged();
+        // 添加或更新通知，没有有效内容的通知不会添加到列表
+        mNotificationAdapter.upsert(notification);
     }
 
     @Override
@@ -473,7 +508,7 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
         // 重新加载过滤器设置（用户可能刚从设置页面返回）
         if (mNotificationFilter != null) {
-            mNotificationFilter = new NotificationFilter(this);
+            mNotificationFilter = FilterPreferences.createFilter(this);
         }
     }
 
@@ -549,6 +584,10 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
 
+        mHandler.removeCallbacks(mSearchRunnable);
+        mNotificationBatcher.cancel();
+        Log.d(TAG, "Notification batches: " + mNotificationBatcher.formatStats());
+
         if (mServiceBound) {
             unbindService(mServiceConnection);
             mServiceBound = false;
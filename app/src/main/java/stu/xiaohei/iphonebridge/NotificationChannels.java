@@ -0,0 +1,123 @@
+package stu.xiaohei.iphonebridge;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+
+import androidx.core.app.NotificationCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按 ANCS 类别划分的通知渠道
+ * 渠道在服务启动时一次性创建，发送通知时只按 categoryId 查表，不再产生渠道相关的 IPC
+ */
+public class NotificationChannels {
+    // 旧版本所有类别共用的渠道
+    private static final String LEGACY_CHANNEL_ID = "iphone_notifications";
+    private static final String CHANNEL_PREFIX = "ancs_category_";
+
+    // ANCS 类别 0~11，超出范围的类别归入"其他"
+    private static final int CATEGORY_COUNT = NotificationHandler.CATEGORY_ID_ENTERTAINMENT + 1;
+    private static final String[] CHANNEL_IDS = new String[CATEGORY_COUNT];
+    static {
+        for (int i = 0; i < CATEGORY_COUNT; i++) {
+            CHANNEL_IDS[i] = CHANNEL_PREFIX + i;
+        }
+    }
+
+    private final Context context;
+    private final AtomicLongArray postCounts = new AtomicLongArray(CATEGORY_COUNT);
+    private volatile boolean created = false;
+
+    public NotificationChannels(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * 创建所有类别的渠道，并删除旧的共用渠道，只执行一次
+     */
+    public synchronized void createAll() {
+        if (created) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            List<NotificationChannel> channels = new ArrayList<>(CATEGORY_COUNT);
+            for (int i = 0; i < CATEGORY_COUNT; i++) {
+                NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_IDS[i],
+                    "iPhone " + NotificationHandler.getCategoryName((byte) i),
+                    importanceFor((byte) i)
+                );
+                channels.add(channel);
+            }
+
+            NotificationManager manager = context.getSystemService(NotificationManager.class);
+            manager.createNotificationChannels(channels);
+            manager.deleteNotificationChannel(LEGACY_CHANNEL_ID);
+        }
+        created = true;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    public static String channelFor(byte categoryId) {
+        return CHANNEL_IDS[index(categoryId)];
+    }
+
+    /**
+     * Android 8.0 以下没有渠道，使用与渠道重要性对应的优先级
+     */
+    public static int priorityFor(byte categoryId) {
+        switch (importanceFor(categoryId)) {
+            case NotificationManager.IMPORTANCE_HIGH:
+                return NotificationCompat.PRIORITY_HIGH;
+            case NotificationManager.IMPORTANCE_LOW:
+                return NotificationCompat.PRIORITY_LOW;
+            default:
+                return NotificationCompat.PRIORITY_DEFAULT;
+        }
+    }
+
+    private static int importanceFor(byte categoryId) {
+        switch (categoryId) {
+            case NotificationHandler.CATEGORY_ID_INCOMING_CALL:
+            case NotificationHandler.CATEGORY_ID_MISSED_CALL:
+                return NotificationManager.IMPORTANCE_HIGH;
+            case NotificationHandler.CATEGORY_ID_NEWS:
+            case NotificationHandler.CATEGORY_ID_ENTERTAINMENT:
+                return NotificationManager.IMPORTANCE_LOW;
+            default:
+                return NotificationManager.IMPORTANCE_DEFAULT;
+        }
+    }
+
+    private static int index(byte categoryId) {
+        int i = categoryId & 0xFF;
+        return i < CATEGORY_COUNT ? i : NotificationHandler.CATEGORY_ID_OTHER;
+    }
+
+    public void recordPost(byte categoryId) {
+        postCounts.incrementAndGet(index(categoryId));
+    }
+
+    public long getPostCount(byte categoryId) {
+        return postCounts.get(index(categoryId));
+    }
+
+    /**
+     * @return 各类别已发送的通知数量，下标为 categoryId
+     */
+    public long[] getPostCounts() {
+        long[] counts = new long[CATEGORY_COUNT];
+        for (int i = 0; i < CATEGORY_COUNT; i++) {
+            counts[i] = postCounts.get(i);
+        }
+        return counts;
+    }
+}
@@ -3,6 +3,7 @@ package stu.xiaohei.iphonebridge;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
@@ -13,6 +14,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 
 public class NotificationDetailActivity extends AppCompatActivity {
     private static final String EXTRA_NOTIFICATION_UID = "notification_uid";
@@ -28,7 +30,26 @@ public class NotificationDetailActivity extends AppCompatActivity {
     private BridgeService bridgeService;
     private boolean serviceBound = false;
     private String notificationUid;
-    private NotificationHandler.NotificationInfo notificationInfo;
+    private NotificationSnapshot notificationInfo;
+    private boolean actionPerformed = false;
+    
+    // 通知在 iPhone 上被修改或移除时同步更新页面
+    private final BridgeService.ServiceCallback serviceCallback = new BridgeService.ServiceCallback() {
+        @Override
+        public void onNotificationReceived(NotificationSnapshot notification) {
+            if (!notification.getUid().equals(notificationUid)) {
+                return;
+            }
+            if (notification.isRemoved()) {
+                if (!actionPerformed) {
+                    Toast.makeText(NotificationDetailActivity.this, "通知已在 iPhone 上移除", Toast.LENGTH_SHORT).show();
+                }
+                finish();
+            } else {
+                loadNotificationDetails();
+            }
+        }
+    };
     
     private ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
@@ -36,6 +57,8 @@ public class NotificationDetailActivity extends AppCompatActivity {
             BridgeService.LocalBinder binder = (BridgeService.LocalBinder) service;
             bridgeService = binder.getService();
             serviceBound = true;
+            bridgeService.subscribe(NotificationDetailActivity.this, serviceCallback,
+                ContextCompat.getMainExecutor(NotificationDetailActivity.this));
             loadNotificationDetails();
         }
         
@@ -101,11 +124,12 @@ public class NotificationDetailActivity extends AppCompatActivity {
         
         if (notificationInfo == null) {
             // 如果没有找到，创建一个示例
-            notificationInfo = new NotificationHandler.NotificationInfo(notificationUid);
-            notificationInfo.title = "示例通知";
-            notificationInfo.message = "这是一个示例通知内容";
-            notificationInfo.categoryId = NotificationHandler.CATEGORY_ID_SOCIAL;
-            notificationInfo.hasNegativeAction = true;
+            NotificationHandler.NotificationInfo sample = new NotificationHandler.NotificationInfo(notificationUid);
+            sample.attributes.set(NotificationHandler.ATTRIBUTE_ID_TITLE, "示例通知");
+            sample.attributes.set(NotificationHandler.ATTRIBUTE_ID_MESSAGE, "这是一个示例通知内容");
+            sample.categoryId = NotificationHandler.CATEGORY_ID_SOCIAL;
+            sample.hasNegativeAction = true;
+            notificationInfo = NotificationSnapshot.of(sample);
         }
         
         updateUI();
@@ -116,22 +140,22 @@ public class NotificationDetailActivity extends AppCompatActivity {
             return;
         }
         
-        String appName = notificationInfo.appId != null ? notificationInfo.appId : "iPhone 应用";
+        String appName = notificationInfo.getAppId() != null ? notificationInfo.getAppId() : "iPhone 应用";
         String displayTitle = "";
         String displayMessage = "";
         
         // 对于所有类型的通知，将消息内容的第一行作为标题，第二行作为消息内容
         String fullContent = "";
-        if (notificationInfo.title != null && !notificationInfo.title.isEmpty()) {
-            fullContent += notificationInfo.title;
+        if (notificationInfo.getTitle() != null && !notificationInfo.getTitle().isEmpty()) {
+            fullContent += notificationInfo.getTitle();
         }
-        if (notificationInfo.subtitle != null && !notificationInfo.subtitle.isEmpty()) {
+        if (notificationInfo.getSubtitle() != null && !notificationInfo.getSubtitle().isEmpty()) {
             if (!fullContent.isEmpty()) fullContent += "\n";
-            fullContent += notificationInfo.subtitle;
+            fullContent += notificationInfo.getSubtitle();
         }
-        if (notificationInfo.message != null && !notificationInfo.message.isEmpty()) {
+        if (notificationInfo.getMessage() != null && !notificationInfo.getMessage().isEmpty()) {
             if (!fullContent.isEmpty()) fullContent += "\n";
-            fullContent += notificationInfo.message;
+            fullContent += notificationInfo.getMessage();
         }
         
         if (!fullContent.isEmpty()) {
@@ -151,29 +175,29 @@ public class NotificationDetailActivity extends AppCompatActivity {
         
         // 处理时间显示，如果为未知则使用当前系统时间
         String timeText;
-        if (notificationInfo.date != null && !notificationInfo.date.isEmpty() && !"未知".equals(notificationInfo.date)) {
-            timeText = notificationInfo.date;
+        if (notificationInfo.getDate() != null && !notificationInfo.getDate().isEmpty() && !"未知".equals(notificationInfo.getDate())) {
+            timeText = notificationInfo.getDate();
         } else {
             timeText = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss", java.util.Locale.getDefault())
                     .format(new java.util.Date());
         }
         dateText.setText("时间: " + timeText);
         
-        categoryText.setText("类别: " + NotificationHandler.getCategoryName(notificationInfo.categoryId));
+        categoryText.setText("类别: " + NotificationHandler.getCategoryName(notificationInfo.getCategoryId()));
         
         // 根据可用操作显示按钮
-        if (notificationInfo.hasPositiveAction) {
+        if (notificationInfo.hasPositiveAction()) {
             positiveButton.setVisibility(View.VISIBLE);
-            positiveButton.setText(notificationInfo.positiveActionLabel != null ? 
-                notificationInfo.positiveActionLabel : "确认");
+            positiveButton.setText(notificationInfo.getPositiveActionLabel() != null ? 
+                notificationInfo.getPositiveActionLabel() : "确认");
         } else {
             positiveButton.setVisibility(View.GONE);
         }
         
-        if (notificationInfo.hasNegativeAction) {
+        if (notificationInfo.hasNegativeAction()) {
             negativeButton.setVisibility(View.VISIBLE);
-            negativeButton.setText(notificationInfo.negativeActionLabel != null ? 
-                notificationInfo.negativeActionLabel : "取消");
+            negativeButton.setText(notificationInfo.getNegativeActionLabel() != null ? 
+                notificationInfo.getNegativeActionLabel() : "取消");
         } else {
             negativeButton.setVisibility(View.GONE);
         }
@@ -187,15 +211,18 @@ public class NotificationDetailActivity extends AppCompatActivity {
         // 执行操作
         String actionType = positive ? "积极" : "消极";
         String actionLabel = positive ? 
-            (notificationInfo.positiveActionLabel != null ? notificationInfo.positiveActionLabel : "确认") :
-            (notificationInfo.negativeActionLabel != null ? notificationInfo.negativeActionLabel : "取消");
+            (notificationInfo.getPositiveActionLabel() != null ? notificationInfo.getPositiveActionLabel() : "确认") :
+            (notificationInfo.getNegativeActionLabel() != null ? notificationInfo.getNegativeActionLabel() : "取消");
             
+        // 通过服务发送命令到iPhone
+        if (!bridgeService.performNotificationAction(notificationUid, positive)) {
+            Toast.makeText(this, "操作失败: 未连接到 iPhone", Toast.LENGTH_SHORT).show();
+            return;
+        }
         Toast.makeText(this, 
             "正在执行操作: " + actionLabel, 
             Toast.LENGTH_SHORT).show();
-        
-        // 通过服务发送命令到iPhone
-        bridgeService.performNotificationAction(notificationUid, positive);
+        actionPerformed = true;
         
         // 延迟关闭，让用户看到提示
         new android.os.Handler().postDelayed(this::finish, 1000);
@@ -0,0 +1,277 @@
+package stu.xiaohei.iphonebridge;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 主界面通知列表适配器
+ * 条目按到达顺序追加在末尾，由反向布局把最新的显示在最上面，新通知不会移动已有条目的位置；
+ * UID 到位置的索引随增删增量维护，每个事件 O(1) 定位。
+ * 差异由 AsyncListDiffer 在后台线程计算，只刷新变化的那一行
+ */
+public class NotificationListAdapter extends RecyclerView.Adapter<NotificationListAdapter.ViewHolder> {
+    private static final int NO_POSITION = -1;
+
+    public interface OnItemClickListener {
+        void onItemClick(Item item);
+    }
+
+    /**
+     * 不可变的列表项，内容变化时整体替换，便于 DiffUtil 比较
+     */
+    public static final class Item {
+        public final int rawUid;
+        public final String uid;
+        public final String appId;
+        public final int categoryId;
+        public final String time;
+        public final String displayTitle;
+        public final String displaySubtitle;
+
+        Item(NotificationSnapshot notification, String time, String displayTitle, String displaySubtitle) {
+            this.rawUid = notification.getRawUid();
+            this.uid = notification.getUid();
+            this.appId = notification.getAppId();
+            this.categoryId = notification.getCategoryId();
+            this.time = time;
+            this.displayTitle = displayTitle;
+            this.displaySubtitle = displaySubtitle;
+        }
+
+        /**
+         * 与通知详情页面保持一致的显示逻辑：标题和消息合并后的第一行作为标题
+         * @return 没有有效内容时返回 null
+         */
+        static Item from(NotificationSnapshot notification, String time) {
+            String title = notification.getTitle();
+            String message = notification.getMessage();
+            String fullContent = "";
+            if (title != null && !title.isEmpty()) {
+                fullContent += title;
+            }
+            if (message != null && !message.isEmpty()) {
+                if (!fullContent.isEmpty()) fullContent += "\n";
+                fullContent += message;
+            }
+            if (fullContent.isEmpty()) {
+                return null;
+            }
+
+            String[] lines = fullContent.split("\n", 2);
+            String subtitle = time;
+            if (lines.length > 1 && !lines[1].isEmpty()) {
+                subtitle += " - " + lines[1];
+            }
+            return new Item(notification, time, lines[0], subtitle);
+        }
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView text1;
+        final TextView text2;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            text1 = itemView.findViewById(android.R.id.text1);
+            text2 = itemView.findViewById(android.R.id.text2);
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<Item> DIFF_CALLBACK = new DiffUtil.ItemCallback<Item>() {
+        @Override
+        public boolean areItemsTheSame(Item oldItem, Item newItem) {
+            return oldItem.rawUid == newItem.rawUid;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Item oldItem, Item newItem) {
+            return oldItem.displayTitle.equals(newItem.displayTitle)
+                && oldItem.displaySubtitle.equals(newItem.displaySubtitle);
+        }
+    };
+
+    private final AsyncListDiffer<Item> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    // 最新的列表状态，只在主线程修改；differ 中的列表可能还停留在上一次提交
+    private final ArrayList<Item> items = new ArrayList<>();
+    // UID -> items 中的位置
+    private final LongIntHashMap positions = new LongIntHashMap(256, NO_POSITION);
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+    private final Date timeBuffer = new Date();
+    private OnItemClickListener clickListener;
+    private RecyclerView recyclerView;
+    // beginBatch 与 endBatch 之间的修改合并为一次提交
+    private boolean batching = false;
+    private boolean dirty = false;
+    private boolean appended = false;
+
+    public NotificationListAdapter() {
+        setHasStableIds(true);
+    }
+
+    public void setOnItemClickListener(OnItemClickListener listener) {
+        this.clickListener = listener;
+    }
+
+    private static long key(int rawUid) {
+        return rawUid & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 添加或更新通知，显示的时间为首次收到该通知的时间
+     * @return 通知没有可显示的内容时返回 false
+     */
+    public boolean upsert(NotificationSnapshot notification) {
+        int position = positions.get(key(notification.getRawUid()));
+        String time;
+        if (position != NO_POSITION) {
+            time = items.get(position).time;
+        } else {
+            long receivedAt = notification.getReceivedAt();
+            timeBuffer.setTime(receivedAt > 0 ? receivedAt : System.currentTimeMillis());
+            time = timeFormat.format(timeBuffer);
+        }
+
+        Item item = Item.from(notification, time);
+        if (item == null) {
+            return false;
+        }
+
+        if (position != NO_POSITION) {
+            items.set(position, item);
+        } else {
+            positions.put(key(notification.getRawUid()), items.size());
+            items.add(item);
+            appended = true;
+        }
+        changed();
+        return true;
+    }
+
+    /**
+     * @return 列表中没有该 UID 时返回 false
+     */
+    public boolean remove(int rawUid) {
+        int position = positions.remove(key(rawUid));
+        if (position == NO_POSITION) {
+            return false;
+        }
+        items.remove(position);
+        // 只有被删除位置之后的条目需要前移
+        for (int i = position; i < items.size(); i++) {
+            positions.put(key(items.get(i).rawUid), i);
+        }
+        changed();
+        return true;
+    }
+
+    public void clear() {
+        items.clear();
+        positions.clear();
+        changed();
+    }
+
+    /**
+     * 之后的修改暂不提交，直到 endBatch
+     */
+    public void beginBatch() {
+        batching = true;
+    }
+
+    public void endBatch() {
+        batching = false;
+        if (dirty) {
+            submit();
+        }
+    }
+
+    private void changed() {
+        dirty = true;
+        if (!batching) {
+            submit();
+        }
+    }
+
+    /**
+     * @return 该 UID 在最新列表状态中的位置，不存在时返回 -1
+     */
+    public int positionOf(int rawUid) {
+        return positions.get(key(rawUid));
+    }
+
+    /**
+     * 提交最新的列表状态；有新追加的条目且用户正停留在最新一条时，
+     * 提交后滚动到新条目，保持与原来插入到顶部相同的体验
+     */
+    private void submit() {
+        Runnable commitCallback = null;
+        if (appended && recyclerView != null && recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            int shown = differ.getCurrentList().size();
+            if (shown == 0 || layoutManager.findLastVisibleItemPosition() >= shown - 1) {
+                final RecyclerView target = recyclerView;
+                commitCallback = () -> target.scrollToPosition(getItemCount() - 1);
+            }
+        }
+        dirty = false;
+        appended = false;
+        differ.submitList(new ArrayList<>(items), commitCallback);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        this.recyclerView = null;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(
+            android.R.layout.simple_list_item_2, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION && clickListener != null) {
+                clickListener.onItemClick(differ.getCurrentList().get(position));
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Item item = differ.getCurrentList().get(position);
+        holder.text1.setText(item.displayTitle);
+        holder.text2.setText(item.displaySubtitle);
+    }
+
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return key(differ.getCurrentList().get(position).rawUid);
+    }
+
+    public List<Item> getCurrentList() {
+        return differ.getCurrentList();
+    }
+}
@@ -0,0 +1,406 @@
+package stu.xiaohei.iphonebridge;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.core.app.NotificationCompat;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 将 ANCS 通知渲染为 Android 通知
+ * 每个 UID 的 Builder 与 PendingIntent 只创建一次，MODIFIED 时只更新发生变化的字段
+ * 分组模式下按 ANCS 应用标识分组并维护摘要通知，突发期间只更新摘要，突发结束后再补发子通知
+ * ID、条目与分组的簿记由 ancs-core 的 NotificationBook 负责，这里只构建与发送 Android 通知
+ */
+public class NotificationRenderer {
+    private static final String TAG = "NotificationRenderer";
+
+    public static final int DEFAULT_BURST_THRESHOLD = 5;
+    // 统计突发的时间窗口
+    private static final long BURST_WINDOW_MS = 1000;
+    // 超过该时间没有新通知视为突发结束
+    private static final long BURST_QUIET_MS = 1500;
+    private static final int SUMMARY_MAX_LINES = 5;
+
+    private final Context context;
+    private final NotificationManager notificationManager;
+    private final NotificationChannels channels;
+    // notify 返回时结束该通知的分阶段追踪
+    private final PipelineTrace pipelineTrace;
+    private final NotificationBook<View> book;
+    // 以摘要 ID 为键
+    private final SparseArray<Summary> summaries = new SparseArray<>();
+
+    // 分组与突发
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable drainRunnable = this::drainBurst;
+    private final Set<NotificationBook.Entry<View>> deferred = new LinkedHashSet<>();
+    private boolean groupingEnabled = true;
+    private int burstThreshold = DEFAULT_BURST_THRESHOLD;
+    private long burstWindowStart = 0;
+    private int burstWindowCount = 0;
+    private boolean inBurst = false;
+
+    // 标题、正文与操作标签的生成与比较，只在持有锁时使用
+    private final NotificationText text = new NotificationText();
+    // 拼接摘要行的复用缓冲区，只在持有锁时使用
+    private final StringBuilder lineBuffer = new StringBuilder(256);
+
+    // 发送耗时统计
+    private long postCount = 0;
+    private long totalPostNanos = 0;
+    private long maxPostNanos = 0;
+
+    /**
+     * 单条通知的渲染缓存
+     */
+    private static class View {
+        final NotificationCompat.Builder builder;
+        final NotificationCompat.BigTextStyle style = new NotificationCompat.BigTextStyle();
+        PendingIntent positiveIntent;
+        PendingIntent negativeIntent;
+        String channelId;
+
+        View(NotificationCompat.Builder builder) {
+            this.builder = builder;
+        }
+    }
+
+    /**
+     * 分组的摘要通知，第一次发送摘要时创建
+     */
+    private static class Summary {
+        final String appName;
+        final NotificationCompat.Builder builder;
+
+        Summary(String appName, NotificationCompat.Builder builder) {
+            this.appName = appName;
+            this.builder = builder;
+        }
+    }
+
+    private final NotificationBook.Poster<View> poster = new NotificationBook.Poster<View>() {
+        @Override
+        public View createView(int id, NotificationSnapshot info) {
+            return createEntryView(id, info);
+        }
+
+        @Override
+        public void onGroupAssigned(NotificationBook.Entry<View> entry) {
+            entry.view.builder.setGroup(entry.group.key);
+        }
+
+        @Override
+        public void cancel(int id) {
+            notificationManager.cancel(id);
+        }
+
+        @Override
+        public void onRemoved(NotificationBook.Entry<View> entry) {
+            deferred.remove(entry);
+        }
+
+        @Override
+        public void onGroupChanged(NotificationBook.Group<View> group) {
+            if (group.summaryPosted) {
+                postSummary(group);
+            }
+        }
+
+        @Override
+        public void onGroupRemoved(NotificationBook.Group<View> group) {
+            if (group.summaryPosted) {
+                notificationManager.cancel(group.summaryId);
+            }
+            summaries.remove(group.summaryId);
+        }
+    };
+
+    public NotificationRenderer(Context context, NotificationChannels channels, NotificationIdAllocator idAllocator,
+                                PipelineTrace pipelineTrace) {
+        this.context = context;
+        this.channels = channels;
+        this.pipelineTrace = pipelineTrace;
+        this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.book = new NotificationBook<>(idAllocator, poster);
+    }
+
+    public synchronized void setGroupingEnabled(boolean enabled) {
+        groupingEnabled = enabled;
+    }
+
+    /**
+     * @param threshold 时间窗口内超过该数量的通知视为突发
+     */
+    public synchronized void setBurstThreshold(int threshold) {
+        burstThreshold = Math.max(1, threshold);
+    }
+
+    /**
+     * 发送或更新通知
+     * @return 没有可显示的内容时返回 false
+     */
+    public synchronized boolean render(NotificationSnapshot info) {
+        long start = System.nanoTime();
+
+        if (!text.format(info)) {
+            // 如果没有有效内容，不推送通知
+            pipelineTrace.discard(info.getRawUid());
+            return false;
+        }
+
+        NotificationBook.Entry<View> entry = book.entryFor(info);
+        View view = entry.view;
+        NotificationCompat.Builder builder = view.builder;
+
+        String channelId = NotificationChannels.channelFor(info.getCategoryId());
+        if (!channelId.equals(view.channelId)) {
+            view.channelId = channelId;
+            builder.setChannelId(channelId);
+            builder.setPriority(NotificationChannels.priorityFor(info.getCategoryId()));
+        }
+        if (groupingEnabled) {
+            book.assignGroup(entry, info.getAppId());
+        }
+        int changed = text.update(entry, info);
+        if ((changed & NotificationText.CHANGED_TITLE) != 0) {
+            builder.setContentTitle(entry.title);
+        }
+        if ((changed & NotificationText.CHANGED_CONTENT) != 0) {
+            builder.setContentText(entry.content);
+            view.style.bigText(entry.content);
+        }
+        if ((changed & NotificationText.CHANGED_ACTIONS) != 0) {
+            updateActions(entry, info);
+        }
+
+        if (entry.group != null && isBurst()) {
+            // 突发期间推迟子通知，只更新摘要
+            deferred.add(entry);
+            postSummary(entry.group);
+            handler.removeCallbacks(drainRunnable);
+            handler.postDelayed(drainRunnable, BURST_QUIET_MS);
+        } else {
+            builder.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_ALL);
+            notificationManager.notify(entry.id, builder.build());
+            pipelineTrace.finish(entry.rawUid, PipelineTrace.STAGE_POSTED);
+            if (entry.group != null && entry.group.members.size() > 1) {
+                postSummary(entry.group);
+            }
+        }
+        channels.recordPost(info.getCategoryId());
+
+        recordPostLatency(System.nanoTime() - start);
+        return true;
+    }
+
+    private boolean isBurst() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - burstWindowStart > BURST_WINDOW_MS) {
+            burstWindowStart = now;
+            burstWindowCount = 0;
+        }
+        burstWindowCount++;
+        if (!inBurst && burstWindowCount > burstThreshold) {
+            inBurst = true;
+            Log.d(TAG, "Notification burst detected, deferring individual posts");
+        }
+        return inBurst;
+    }
+
+    /**
+     * 突发结束：一次性补发被推迟的子通知，子通知不再单独提醒
+     */
+    private synchronized void drainBurst() {
+        inBurst = false;
+        Set<NotificationBook.Group<View>> touched = new LinkedHashSet<>();
+        for (NotificationBook.Entry<View> entry : deferred) {
+            entry.view.builder.setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
+            notificationManager.notify(entry.id, entry.view.builder.build());
+            pipelineTrace.finish(entry.rawUid, PipelineTrace.STAGE_POSTED);
+            if (entry.group != null) {
+                touched.add(entry.group);
+            }
+        }
+        Log.d(TAG, "Burst drained, posted " + deferred.size() + " deferred notifications");
+        deferred.clear();
+        for (NotificationBook.Group<View> group : touched) {
+            postSummary(group);
+        }
+    }
+
+    /**
+     * 摘要通知使用 InboxStyle 列出该应用最新的几条通知
+     */
+    private void postSummary(NotificationBook.Group<View> group) {
+        Summary summary = summaries.get(group.summaryId);
+        if (summary == null) {
+            Intent mainIntent = new Intent(context, MainActivity.class);
+            PendingIntent mainPendingIntent = PendingIntent.getActivity(
+                context,
+                NotificationIdAllocator.requestCode(group.summaryId, NotificationIdAllocator.REQUEST_SUMMARY),
+                mainIntent,
+                PendingIntent.FLAG_IMMUTABLE
+            );
+            String appName = ANCSConstants.getAppDisplayName(group.appId);
+            summary = new Summary(appName, new NotificationCompat.Builder(context, group.members.get(0).view.channelId)
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setContentTitle(appName)
+                .setGroup(group.key)
+                .setGroupSummary(true)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(mainPendingIntent)
+                .setAutoCancel(true));
+            summaries.put(group.summaryId, summary);
+            if (group.appId != null) {
+                // 一次清除该应用的所有通知
+                Intent dismissIntent = new Intent(context, BridgeService.class);
+                dismissIntent.setAction(BridgeService.ACTION_DISMISS_GROUP);
+                dismissIntent.putExtra(BridgeService.EXTRA_APP_ID, group.appId);
+                PendingIntent dismissPendingIntent = PendingIntent.getService(
+                    context,
+                    NotificationIdAllocator.requestCode(group.summaryId, NotificationIdAllocator.REQUEST_NEGATIVE),
+                    dismissIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+                );
+                summary.builder.addAction(android.R.drawable.ic_delete, "全部清除", dismissPendingIntent);
+            }
+        }
+
+        int count = group.members.size();
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+            .setBigContentTitle(summary.appName)
+            .setSummaryText(count + " 条通知");
+        StringBuilder line = lineBuffer;
+        for (int i = count - 1; i >= 0 && i >= count - SUMMARY_MAX_LINES; i--) {
+            NotificationBook.Entry<View> member = group.members.get(i);
+            line.setLength(0);
+            line.append(member.title);
+            if (member.content != null && !member.content.isEmpty()) {
+                line.append("  ").append(member.content);
+            }
+            style.addLine(line.toString());
+        }
+
+        // 突发期间由摘要负责提醒一次，平时由子通知提醒
+        summary.builder
+            .setContentText(count + " 条通知")
+            .setNumber(count)
+            .setStyle(style)
+            .setGroupAlertBehavior(inBurst ? NotificationCompat.GROUP_ALERT_ALL : NotificationCompat.GROUP_ALERT_CHILDREN);
+        notificationManager.notify(group.summaryId, summary.builder.build());
+        group.summaryPosted = true;
+    }
+
+    /**
+     * 重放的已有通知仍在显示，不重新发送，只把 ID 沿用到新的会话纪元
+     */
+    public synchronized void retain(NotificationSnapshot info) {
+        book.retain(info.getRawUid());
+    }
+
+    /**
+     * 取消通知并释放对应的缓存
+     */
+    public synchronized void cancel(NotificationSnapshot info) {
+        book.cancel(info.getRawUid());
+    }
+
+    /**
+     * 批量取消之前的会话纪元中显示、本次连接中已不存在的通知，受影响的分组在最后各更新一次摘要
+     * @return 取消的 Android 通知数
+     */
+    public synchronized int cancelStale(List<NotificationSnapshot> stale) {
+        return book.cancelStale(stale);
+    }
+
+    private View createEntryView(int id, NotificationSnapshot info) {
+        // 创建点击通知时打开详情页的Intent
+        Intent detailIntent = NotificationDetailActivity.createIntent(context, info.getUid());
+        detailIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        PendingIntent detailPendingIntent = PendingIntent.getActivity(
+            context,
+            NotificationIdAllocator.requestCode(id, NotificationIdAllocator.REQUEST_DETAIL),
+            detailIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        View view = new View(new NotificationCompat.Builder(context, NotificationChannels.channelFor(info.getCategoryId())));
+        view.builder
+            .setSmallIcon(android.R.drawable.ic_dialog_info)
+            .setStyle(view.style)
+            .setContentIntent(detailPendingIntent)
+            .setAutoCancel(true);
+        return view;
+    }
+
+    /**
+     * 操作按钮只在标签或可用状态变化时按条目中的标签重建，PendingIntent 在首次需要时创建后复用
+     */
+    private void updateActions(NotificationBook.Entry<View> entry, NotificationSnapshot info) {
+        String positiveLabel = entry.positiveLabel;
+        String negativeLabel = entry.negativeLabel;
+        View view = entry.view;
+        NotificationCompat.Builder builder = view.builder;
+        builder.clearActions();
+        if (positiveLabel != null) {
+            if (view.positiveIntent == null) {
+                view.positiveIntent = createActionIntent(entry.id, info.getUid(), true);
+            }
+            builder.addAction(android.R.drawable.ic_input_add, positiveLabel, view.positiveIntent);
+        }
+        if (negativeLabel != null) {
+            if (view.negativeIntent == null) {
+                view.negativeIntent = createActionIntent(entry.id, info.getUid(), false);
+            }
+            builder.addAction(android.R.drawable.ic_delete, negativeLabel, view.negativeIntent);
+        }
+    }
+
+    /**
+     * 操作按钮直接启动正在运行的 BridgeService，省去广播接收器绑定服务的往返
+     */
+    private PendingIntent createActionIntent(int id, String uid, boolean positive) {
+        Intent intent = new Intent(context, BridgeService.class);
+        intent.setAction(positive ? NotificationActionReceiver.ACTION_POSITIVE : NotificationActionReceiver.ACTION_NEGATIVE);
+        intent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_UID, uid);
+        intent.putExtra(NotificationActionReceiver.EXTRA_NOTIFICATION_ID, id);
+        return PendingIntent.getService(
+            context,
+            NotificationIdAllocator.requestCode(id, positive ? NotificationIdAllocator.REQUEST_POSITIVE : NotificationIdAllocator.REQUEST_NEGATIVE),
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private void recordPostLatency(long nanos) {
+        postCount++;
+        totalPostNanos += nanos;
+        if (nanos > maxPostNanos) {
+            maxPostNanos = nanos;
+        }
+        if (postCount % 100 == 0) {
+            Log.d(TAG, "Post latency: " + formatStats());
+        }
+    }
+
+    /**
+     * @return 发送次数、平均与最大耗时，用于对比优化前后的发送延迟
+     */
+    public synchronized String formatStats() {
+        long avgMicros = postCount > 0 ? totalPostNanos / postCount / 1000 : 0;
+        return String.format(Locale.US, "posts=%d avg=%dus max=%dus cached=%d",
+            postCount, avgMicros, maxPostNanos / 1000, book.getEntryCount());
+    }
+}
@@ -0,0 +1,147 @@
+package stu.xiaohei.iphonebridge;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多订阅者的观察者注册表
+ * 每个订阅者指定自己的 Executor，事件在各自的 Executor 上投递，不占用发布线程；
+ * 绑定了 Lifecycle 的订阅者在 ON_STOP 时自动移除。没有订阅者时事件只计数不投递
+ */
+public class ObserverRegistry<T> {
+
+    public interface Event<T> {
+        void deliver(T observer);
+    }
+
+    /**
+     * 在调用线程上直接执行，适合自己做线程切换或合并的订阅者
+     */
+    public static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    private final class Subscriber implements LifecycleEventObserver {
+        final T observer;
+        final Executor executor;
+        final Lifecycle lifecycle;
+        // 移除后仍在 Executor 队列中的事件不再投递
+        volatile boolean active = true;
+
+        Subscriber(T observer, Executor executor, Lifecycle lifecycle) {
+            this.observer = observer;
+            this.executor = executor;
+            this.lifecycle = lifecycle;
+        }
+
+        @Override
+        public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
+            if (event == Lifecycle.Event.ON_STOP || event == Lifecycle.Event.ON_DESTROY) {
+                remove(this);
+            }
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong idleCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 订阅直到调用 unsubscribe；同一个观察者重复订阅时替换原来的订阅
+     */
+    public void subscribe(T observer, Executor executor) {
+        unsubscribe(observer);
+        subscribers.add(new Subscriber(observer, executor, null));
+    }
+
+    /**
+     * 订阅直到 owner 进入 ON_STOP，必须在主线程调用
+     * @return owner 未处于 STARTED 状态时不订阅并返回 false
+     */
+    public boolean subscribe(LifecycleOwner owner, T observer, Executor executor) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (!lifecycle.getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            return false;
+        }
+        unsubscribe(observer);
+        Subscriber subscriber = new Subscriber(observer, executor, lifecycle);
+        subscribers.add(subscriber);
+        lifecycle.addObserver(subscriber);
+        return true;
+    }
+
+    /**
+     * @return 该观察者之前是否已订阅
+     */
+    public boolean unsubscribe(T observer) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.observer == observer) {
+                remove(subscriber);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.active = false;
+        subscribers.remove(subscriber);
+        if (subscriber.lifecycle != null) {
+            subscriber.lifecycle.removeObserver(subscriber);
+        }
+    }
+
+    public boolean isEmpty() {
+        return subscribers.isEmpty();
+    }
+
+    public int size() {
+        return subscribers.size();
+    }
+
+    /**
+     * 向所有订阅者投递事件
+     * @return 没有订阅者时返回 false，事件只计入 idle 计数
+     */
+    public boolean dispatch(Event<T> event) {
+        if (subscribers.isEmpty()) {
+            idleCount.incrementAndGet();
+            return false;
+        }
+        dispatchedCount.incrementAndGet();
+        for (Subscriber subscriber : subscribers) {
+            try {
+                subscriber.executor.execute(() -> {
+                    if (subscriber.active) {
+                        event.deliver(subscriber.observer);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejectedCount.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    /**
+     * @return 没有订阅者期间到达的事件数
+     */
+    public long getIdleCount() {
+        return idleCount.get();
+    }
+
+    public String formatStats() {
+        return String.format(Locale.US, "subscribers=%d dispatched=%d idle=%d rejected=%d",
+            subscribers.size(), dispatchedCount.get(), idleCount.get(), rejectedCount.get());
+    }
+}
@@ -0,0 +1,107 @@
+package stu.xiaohei.iphonebridge;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 把 PacketRing 中最近的原始数据包写成 AncsTrace 文件，可以直接交给 ancs-sim replay 回放
+ * 按需写入（dumpsys --write-trace）时在调用线程写；解析错误触发的写入在后台线程进行并限制频率，
+ * 目录中只保留最近的 MAX_FILES 个文件
+ */
+public class PacketTraceWriter {
+    private static final String TAG = "PacketTraceWriter";
+    private static final String PREFIX = "ancs-";
+    private static final String SUFFIX = ".trace";
+    private static final int MAX_FILES = 5;
+    // 连续的解析错误通常来自同一次数据错乱，只保留第一次的现场
+    private static final long MIN_AUTO_INTERVAL_MS = 60 * 1000;
+
+    private final File directory;
+    private HandlerThread thread;
+    private Handler handler;
+    private long lastAutoWriteAt = -MIN_AUTO_INTERVAL_MS;
+
+    public PacketTraceWriter(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * 在当前线程写入
+     * @param reason 写在文件开头的注释
+     * @return 写入的文件
+     */
+    public File write(PacketRing ring, String reason) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, PREFIX + System.currentTimeMillis() + SUFFIX);
+        int records;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("# " + reason + "\n");
+            records = ring.writeTo(out, 0);
+        }
+        trim();
+        Log.i(TAG, "Wrote " + records + " packets to " + file + ": " + reason);
+        return file;
+    }
+
+    /**
+     * 解析错误时调用，可在任意线程调用；距上次自动写入不足 MIN_AUTO_INTERVAL_MS 时忽略
+     */
+    public synchronized void writeAsync(PacketRing ring, String reason) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastAutoWriteAt < MIN_AUTO_INTERVAL_MS) {
+            return;
+        }
+        lastAutoWriteAt = now;
+        if (handler == null) {
+            thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        handler.post(() -> {
+            try {
+                write(ring, reason);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write packet trace", e);
+            }
+        });
+    }
+
+    /**
+     * 停止后台线程，已提交的写入仍会完成
+     */
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.quitSafely();
+            thread = null;
+            handler = null;
+        }
+    }
+
+    private void trim() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null || files.length <= MAX_FILES) {
+            return;
+        }
+        // 删除最早写入的文件
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - MAX_FILES; i++) {
+            if (!files[i].delete()) {
+                Log.w(TAG, "Failed to delete " + files[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package stu.xiaohei.iphonebridge;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 历史搜索结果列表，按相关度排列，每次查询整体替换
+ */
+public class SearchResultAdapter extends RecyclerView.Adapter<NotificationListAdapter.ViewHolder> {
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss", Locale.getDefault());
+    private final Date timeBuffer = new Date();
+    private List<SearchIndex.Result> results = new ArrayList<>();
+
+    public void setResults(List<SearchIndex.Result> results) {
+        this.results = results;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public NotificationListAdapter.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(
+            android.R.layout.simple_list_item_2, parent, false);
+        return new NotificationListAdapter.ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(NotificationListAdapter.ViewHolder holder, int position) {
+        SearchIndex.Result result = results.get(position);
+        timeBuffer.setTime(result.receivedAt);
+        holder.text1.setText(result.snippet);
+        holder.text2.setText(timeFormat.format(timeBuffer));
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+}